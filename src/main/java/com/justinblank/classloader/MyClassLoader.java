@@ -4,6 +4,20 @@ public class MyClassLoader extends ClassLoader {
 
     private static final MyClassLoader INSTANCE = new MyClassLoader();
 
+    public MyClassLoader() {
+        super();
+    }
+
+    /**
+     * Create a loader with the given parent. Classes defined in a loader other than the shared instance can be
+     * unloaded once the loader and all of its classes and their instances are unreachable.
+     *
+     * @param parent the parent loader
+     */
+    public MyClassLoader(ClassLoader parent) {
+        super(parent);
+    }
+
     public static MyClassLoader getInstance() {
         return INSTANCE;
     }
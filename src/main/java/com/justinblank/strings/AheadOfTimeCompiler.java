@@ -0,0 +1,120 @@
+package com.justinblank.strings;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Compiles the regexes in a manifest to class files at build time, so that they can be used without compiling or
+ * defining any classes at runtime. Alongside the classes, it writes an index, which {@link PatternRegistry} reads to
+ * look up the precompiled pattern for a regex.
+ *
+ * Each line of the manifest has a fully qualified class name and a regex, separated by the first '=' on the line.
+ * Blank lines and lines starting with '#' are ignored. Backslashes are not interpreted, so a line can be written
+ * exactly as the regex would be in a string literal after unescaping, e.g. {@code com.example.Digits=\d+}.
+ *
+ * The main method takes the manifest and the output directory, so it can be run from a build with the
+ * exec-maven-plugin, in the process-classes phase, with target/classes as the output directory.
+ */
+public class AheadOfTimeCompiler {
+
+    static final String INDEX_SEPARATOR = "=";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: AheadOfTimeCompiler <manifest> <output directory>");
+            System.exit(1);
+        }
+        List<String> classNames = compile(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("Compiled " + classNames.size() + " regexes");
+    }
+
+    /**
+     * Compile every regex in a manifest, writing the classes and the index under the output directory. Any existing
+     * index in the output directory is replaced.
+     *
+     * @param manifest        the manifest
+     * @param outputDirectory the root directory for the classes, e.g. target/classes
+     * @return the names of the classes that were written
+     * @throws IOException if the manifest can't be read, or the output can't be written
+     * @throws IllegalArgumentException if the manifest is malformed, or one of its regexes can't be compiled
+     */
+    public static List<String> compile(Path manifest, Path outputDirectory) throws IOException {
+        Map<String, String> regexes = readManifest(manifest);
+        for (Map.Entry<String, String> e : regexes.entrySet()) {
+            String className = e.getKey();
+            String regex = e.getValue();
+            byte[] classBytes;
+            try {
+                classBytes = DFACompiler.generateClassAsBytes(regex, className.replace('.', '/'));
+            }
+            catch (RuntimeException ex) {
+                throw new IllegalArgumentException("Failed to compile regex '" + regex + "' for class " + className, ex);
+            }
+            Path classFile = outputDirectory.resolve(className.replace('.', '/') + ".class");
+            Files.createDirectories(classFile.getParent());
+            Files.write(classFile, classBytes);
+        }
+        writeIndex(regexes, outputDirectory.resolve(PatternRegistry.INDEX_RESOURCE));
+        return new ArrayList<>(regexes.keySet());
+    }
+
+    static Map<String, String> readManifest(Path manifest) throws IOException {
+        Map<String, String> regexes = new LinkedHashMap<>();
+        Set<String> seenRegexes = new HashSet<>();
+        List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.indexOf(INDEX_SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException(manifest + ":" + (i + 1) + ": expected className=regex");
+            }
+            String className = line.substring(0, separator).trim();
+            String regex = line.substring(separator + 1);
+            if (!isClassName(className)) {
+                throw new IllegalArgumentException(manifest + ":" + (i + 1) + ": invalid class name '" + className + "'");
+            }
+            if (regexes.containsKey(className)) {
+                throw new IllegalArgumentException(manifest + ":" + (i + 1) + ": duplicate class name " + className);
+            }
+            if (!seenRegexes.add(regex)) {
+                throw new IllegalArgumentException(manifest + ":" + (i + 1) + ": duplicate regex '" + regex + "'");
+            }
+            regexes.put(className, regex);
+        }
+        return regexes;
+    }
+
+    private static boolean isClassName(String className) {
+        if (className.isEmpty()) {
+            return false;
+        }
+        for (String part : className.split("\\.", -1)) {
+            if (part.isEmpty() || !Character.isJavaIdentifierStart(part.charAt(0))) {
+                return false;
+            }
+            for (int i = 1; i < part.length(); i++) {
+                if (!Character.isJavaIdentifierPart(part.charAt(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void writeIndex(Map<String, String> regexes, Path index) throws IOException {
+        Files.createDirectories(index.getParent());
+        try (OutputStream os = Files.newOutputStream(index)) {
+            for (Map.Entry<String, String> e : regexes.entrySet()) {
+                os.write((e.getKey() + INDEX_SEPARATOR + e.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.justinblank.strings;
+
+import com.justinblank.strings.RegexAST.*;
+import com.justinblank.strings.Search.SearchMethod;
+import com.justinblank.strings.Search.SearchMethodUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An NFA for small regexes, simulated with bitmasks. The regex is compiled to a Glushkov automaton, which has one
+ * state per char range in the regex, plus an initial state, and no epsilon transitions, so that a set of states fits in
+ * a long, and a transition on any char is a handful of table lookups and bitwise operations.
+ *
+ * To find leftmost-longest matches, the active states are kept in groups, ordered by the index where their threads
+ * started, as in {@link LazyDFA}. A state reached by two groups is only kept in the earlier one, so there are never
+ * more groups than states.
+ */
+class BitParallelNFA implements SearchMethod {
+
+    static final int MAX_POSITIONS = Long.SIZE;
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final long INITIAL = 1L;
+
+    private final CharClasses charClasses;
+    // for each char class, the states that can be entered by reading a char in that class
+    private final long[] classMasks;
+    // for each 8 bit chunk of a set of states, the states that can follow any state in the chunk
+    private final long[] followTable;
+    private final int chunks;
+    private final long firstMask;
+    private final long acceptingMask;
+    private final boolean nullable;
+    private final Prefilter.Search unanchoredSearch = (s, start, end) -> search(s, start, end, false);
+    // Holds scratch space that no search is using, so that it can be reused without locking
+    private final AtomicReference<Groups> idleGroups = new AtomicReference<>();
+    private Prefilter prefilter;
+
+    private BitParallelNFA(Glushkov glushkov, Fragment fragment) {
+        int positions = glushkov.ranges.size();
+        this.charClasses = CharClasses.fromRanges(glushkov.ranges.subList(1, positions));
+        this.classMasks = new long[charClasses.classCount()];
+        for (int position = 1; position < positions; position++) {
+            CharRange range = glushkov.ranges.get(position);
+            int lastClass = charClasses.classOf(range.getEnd());
+            for (int charClass = charClasses.classOf(range.getStart()); charClass <= lastClass; charClass++) {
+                classMasks[charClass] |= 1L << position;
+            }
+        }
+        this.chunks = (positions + CHUNK_BITS - 1) / CHUNK_BITS;
+        this.followTable = new long[chunks * CHUNK_SIZE];
+        glushkov.follow[0] = fragment.first;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            for (int bits = 1; bits < CHUNK_SIZE; bits++) {
+                int lowest = Integer.numberOfTrailingZeros(bits);
+                int position = chunk * CHUNK_BITS + lowest;
+                long follow = position < positions ? glushkov.follow[position] : 0;
+                followTable[chunk * CHUNK_SIZE + bits] = follow | followTable[chunk * CHUNK_SIZE + (bits & (bits - 1))];
+            }
+        }
+        this.firstMask = fragment.first;
+        this.nullable = fragment.nullable;
+        this.acceptingMask = fragment.last | (fragment.nullable ? INITIAL : 0);
+    }
+
+    /**
+     * Check whether a regex is small enough to be matched with this class.
+     *
+     * @param node the parsed regex
+     * @return true if the regex has few enough char ranges, after expanding counted repetitions
+     */
+    static boolean fits(Node node) {
+        // one position is used by the initial state
+        return positions(node) < MAX_POSITIONS;
+    }
+
+    static BitParallelNFA create(Node node) {
+        if (!fits(node)) {
+            throw new IllegalArgumentException("Regex needs " + positions(node) + " positions, but at most " +
+                    (MAX_POSITIONS - 1) + " are supported");
+        }
+        Glushkov glushkov = new Glushkov();
+        Fragment fragment = glushkov.build(node);
+        BitParallelNFA nfa = new BitParallelNFA(glushkov, fragment);
+        nfa.prefilter = Prefilter.create(node).orElse(null);
+        return nfa;
+    }
+
+    private static long positions(Node node) {
+        if (node instanceof Concatenation) {
+            Concatenation concatenation = (Concatenation) node;
+            return positions(concatenation.head) + positions(concatenation.tail);
+        }
+        else if (node instanceof Union) {
+            Union union = (Union) node;
+            return positions(union.left) + positions(union.right);
+        }
+        else if (node instanceof Repetition) {
+            return positions(((Repetition) node).node);
+        }
+        else if (node instanceof CountedRepetition) {
+            CountedRepetition countedRepetition = (CountedRepetition) node;
+            return Math.min((long) countedRepetition.max * positions(countedRepetition.node), Integer.MAX_VALUE);
+        }
+        else if (node instanceof Group) {
+            return positions(((Group) node).node);
+        }
+        else if (node instanceof LiteralNode) {
+            return ((LiteralNode) node).getLiteral().length();
+        }
+        return 1;
+    }
+
+    public boolean matches(String s) {
+        MatchResult result = find(s, 0, s.length(), true);
+        return result.matched && result.end == s.length();
+    }
+
+    @Override
+    public MatchResult find(String s, int start, int end, boolean anchored) {
+        SearchMethodUtil.checkIndices(s, start, end);
+        if (prefilter != null && !anchored) {
+            return prefilter.find(s, start, end, unanchoredSearch);
+        }
+        return search(s, start, end, anchored);
+    }
+
+    private MatchResult search(String s, int start, int end, boolean anchored) {
+        Groups groups = idleGroups.getAndSet(null);
+        if (groups == null) {
+            groups = new Groups();
+        }
+        try {
+            return search(groups, s, start, end, anchored);
+        }
+        finally {
+            idleGroups.set(groups);
+        }
+    }
+
+    private MatchResult search(Groups groups, String s, int start, int end, boolean anchored) {
+        long[] masks = groups.masks;
+        int[] starts = groups.starts;
+        int count = 0;
+        int matchStart = -1;
+        int matchEnd = -1;
+        for (int i = start; ; i++) {
+            if (matchStart < 0 && (!anchored || i == start)) {
+                if (count == 0 && !anchored && !nullable) {
+                    i = skipToCandidate(s, i, end);
+                }
+                // a thread started here has the lowest priority
+                masks[count] = INITIAL;
+                starts[count] = i;
+                count++;
+            }
+            for (int g = 0; g < count; g++) {
+                if ((masks[g] & acceptingMask) != 0) {
+                    matchStart = starts[g];
+                    matchEnd = i;
+                    // every later group started after this match
+                    count = g + 1;
+                    break;
+                }
+            }
+            if (count == 0 || i == end) {
+                break;
+            }
+            long charMask = classMasks[charClasses.classOf(s.charAt(i))];
+            long seen = 0;
+            int live = 0;
+            for (int g = 0; g < count; g++) {
+                long next = follow(masks[g]) & charMask & ~seen;
+                if (next != 0) {
+                    seen |= next;
+                    masks[live] = next;
+                    starts[live] = starts[g];
+                    live++;
+                }
+            }
+            count = live;
+        }
+        if (matchStart < 0) {
+            return MatchResult.failure();
+        }
+        return MatchResult.success(matchStart, matchEnd);
+    }
+
+    /**
+     * Find the first index in the range where a match could begin, or the end of the range.
+     */
+    private int skipToCandidate(String s, int i, int end) {
+        while (i < end && (classMasks[charClasses.classOf(s.charAt(i))] & firstMask) == 0) {
+            i++;
+        }
+        return i;
+    }
+
+    private long follow(long states) {
+        long follow = 0;
+        for (int chunk = 0; chunk < chunks && states != 0; chunk++) {
+            follow |= followTable[(chunk << CHUNK_BITS) | (int) (states & (CHUNK_SIZE - 1))];
+            states >>>= CHUNK_BITS;
+        }
+        return follow;
+    }
+
+    /**
+     * The groups of states used by a search, ordered by the index where their threads began.
+     */
+    private static class Groups {
+        final long[] masks = new long[MAX_POSITIONS];
+        final int[] starts = new int[MAX_POSITIONS];
+    }
+
+    /**
+     * The first and last positions of part of a regex, and whether it can match the empty string.
+     */
+    private static class Fragment {
+        final long first;
+        final long last;
+        final boolean nullable;
+
+        Fragment(long first, long last, boolean nullable) {
+            this.first = first;
+            this.last = last;
+            this.nullable = nullable;
+        }
+    }
+
+    /**
+     * Numbers the char ranges in a regex, and records which positions can follow each other. Position 0 is the initial
+     * state, which is followed by the first positions of the regex.
+     */
+    private static class Glushkov {
+        final List<CharRange> ranges = new ArrayList<>();
+        final long[] follow = new long[MAX_POSITIONS];
+
+        Glushkov() {
+            ranges.add(null);
+        }
+
+        Fragment build(Node node) {
+            if (node instanceof Concatenation) {
+                Concatenation concatenation = (Concatenation) node;
+                return concatenate(build(concatenation.head), build(concatenation.tail));
+            }
+            else if (node instanceof Union) {
+                Union union = (Union) node;
+                Fragment left = build(union.left);
+                Fragment right = build(union.right);
+                return new Fragment(left.first | right.first, left.last | right.last, left.nullable || right.nullable);
+            }
+            else if (node instanceof Repetition) {
+                Fragment fragment = build(((Repetition) node).node);
+                addFollow(fragment.last, fragment.first);
+                return new Fragment(fragment.first, fragment.last, true);
+            }
+            else if (node instanceof CountedRepetition) {
+                CountedRepetition countedRepetition = (CountedRepetition) node;
+                Fragment result = new Fragment(0, 0, true);
+                for (int i = 0; i < countedRepetition.max; i++) {
+                    Fragment repeated = build(countedRepetition.node);
+                    if (i >= countedRepetition.min) {
+                        repeated = new Fragment(repeated.first, repeated.last, true);
+                    }
+                    result = concatenate(result, repeated);
+                }
+                return result;
+            }
+            else if (node instanceof Group) {
+                return build(((Group) node).node);
+            }
+            else if (node instanceof LiteralNode) {
+                String literal = ((LiteralNode) node).getLiteral();
+                Fragment result = new Fragment(0, 0, true);
+                for (int i = 0; i < literal.length(); i++) {
+                    result = concatenate(result, position(new CharRange(literal.charAt(i), literal.charAt(i))));
+                }
+                return result;
+            }
+            else if (node instanceof CharRangeNode) {
+                return position(((CharRangeNode) node).range());
+            }
+            throw new IllegalStateException("Unhandled ast node type=" + node.getClass().getSimpleName());
+        }
+
+        private Fragment position(CharRange range) {
+            long bit = 1L << ranges.size();
+            ranges.add(range);
+            return new Fragment(bit, bit, false);
+        }
+
+        private Fragment concatenate(Fragment head, Fragment tail) {
+            addFollow(head.last, tail.first);
+            long first = head.nullable ? head.first | tail.first : head.first;
+            long last = tail.nullable ? head.last | tail.last : tail.last;
+            return new Fragment(first, last, head.nullable && tail.nullable);
+        }
+
+        private void addFollow(long positions, long followers) {
+            while (positions != 0) {
+                follow[Long.numberOfTrailingZeros(positions)] |= followers;
+                positions &= positions - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.justinblank.strings;
+
+/**
+ * The encodings that text can be matched in without first decoding it to a String.
+ */
+public enum ByteEncoding {
+    /**
+     * ISO-8859-1, where each byte is the char with the same value.
+     */
+    LATIN_1,
+    /**
+     * UTF-8, decoded as described in {@link Utf8}.
+     */
+    UTF_8
+}
@@ -0,0 +1,189 @@
+package com.justinblank.strings;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Stores the classes generated for regexes in a directory, so that a regex compiled by one process can be loaded by
+ * another without being parsed, determinized or generated again.
+ *
+ * Files are named by a hash of the regex and of the library's own classes, so that a new version of the compiler
+ * doesn't load classes generated by an old one. The cache is best effort: failing to read or write a file is treated
+ * as a miss, and a file that doesn't load is deleted.
+ */
+class BytecodeDiskCache {
+
+    private static final String CLASS_NAME_PREFIX = "DiskCachedPattern";
+    private static final String SUFFIX = ".class";
+    private static volatile String compilerVersion;
+
+    private final Path directory;
+
+    BytecodeDiskCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    /**
+     * Get the key for a regex compiled with some options, which also serves as the name of its file and as part of the
+     * name of its class.
+     *
+     * @param regex   the regex
+     * @param options the options
+     * @return the key
+     */
+    String key(String regex, CompileOptions options) {
+        MessageDigest digest = sha256();
+        digest.update(compilerVersion().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(options.toString().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(regex.getBytes(StandardCharsets.UTF_8));
+        return hex(digest.digest());
+    }
+
+    static String className(String key) {
+        return CLASS_NAME_PREFIX + key;
+    }
+
+    /**
+     * Read the cached class for a key.
+     *
+     * @param key the key
+     * @return the bytes of the class, or null if it isn't cached
+     */
+    byte[] read(String key) {
+        try {
+            return Files.readAllBytes(directory.resolve(key + SUFFIX));
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Store a class, writing it to a temporary file first, so that other processes never see a partial file.
+     */
+    void write(String key, byte[] classBytes) {
+        Path file = directory.resolve(key + SUFFIX);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temp, classBytes);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e) {
+            deleteQuietly(temp);
+        }
+    }
+
+    void delete(String key) {
+        deleteQuietly(directory.resolve(key + SUFFIX));
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e) {
+            // the cache is best effort
+        }
+    }
+
+    /**
+     * Compute a version for the compiler from the bytes of its classes, so that any change to it invalidates the
+     * cache, without needing a version number to be maintained by hand. Rather than trying to list the classes that
+     * can affect the generated code, which include nested classes and the AST, every class in this package and the
+     * packages below it is hashed.
+     */
+    static String compilerVersion() {
+        String version = compilerVersion;
+        if (version == null) {
+            URL resource = BytecodeDiskCache.class.getResource(BytecodeDiskCache.class.getSimpleName() + SUFFIX);
+            if (resource == null) {
+                throw new IllegalStateException("Couldn't find class file for " + BytecodeDiskCache.class.getName());
+            }
+            try {
+                URI uri = resource.toURI();
+                if ("jar".equals(uri.getScheme())) {
+                    try (FileSystem fs = FileSystems.newFileSystem(uri, Map.of())) {
+                        version = hashClassFiles(fs.provider().getPath(uri).getParent());
+                    }
+                    catch (FileSystemAlreadyExistsException e) {
+                        version = hashClassFiles(FileSystems.getFileSystem(uri).provider().getPath(uri).getParent());
+                    }
+                }
+                else {
+                    version = hashClassFiles(Path.of(uri).getParent());
+                }
+            }
+            catch (IOException | URISyntaxException | FileSystemNotFoundException e) {
+                throw new IllegalStateException("Couldn't read class files for " + resource, e);
+            }
+            compilerVersion = version;
+        }
+        return version;
+    }
+
+    /**
+     * Hash the names and contents of the class files under a directory, in order of their names.
+     *
+     * @param directory the directory
+     * @return the hash
+     * @throws IOException if the files can't be read
+     */
+    static String hashClassFiles(Path directory) throws IOException {
+        List<Path> classFiles;
+        try (Stream<Path> files = Files.walk(directory)) {
+            classFiles = files.filter(path -> path.toString().endsWith(SUFFIX))
+                    .sorted((a, b) -> directory.relativize(a).toString().compareTo(directory.relativize(b).toString()))
+                    .collect(Collectors.toList());
+        }
+        if (classFiles.isEmpty()) {
+            throw new IOException("No class files in " + directory);
+        }
+        MessageDigest digest = sha256();
+        for (Path classFile : classFiles) {
+            digest.update(directory.relativize(classFile).toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Files.readAllBytes(classFile));
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // every JVM is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package com.justinblank.strings;
+
+import java.util.*;
+
+/**
+ * A map from chars to equivalence classes, such that no character range in a regex distinguishes between two chars in
+ * the same class. Classes are numbered consecutively from zero, in the order of the chars they contain.
+ *
+ * The map is stored in two levels: the high byte of a char selects a block of 256 entries, and the low byte selects
+ * the class within that block. Identical blocks are only stored once, so a regex over ASCII needs two blocks rather
+ * than a full 64K table.
+ */
+class CharClasses {
+
+    static final int BLOCK_SIZE = 256;
+
+    // for each high byte, the offset of its block in the leaves array
+    private final char[] blocks;
+    private final char[] leaves;
+    private final int classCount;
+
+    private CharClasses(char[] blocks, char[] leaves, int classCount) {
+        this.blocks = blocks;
+        this.leaves = leaves;
+        this.classCount = classCount;
+    }
+
+    /**
+     * Compute the classes for a regex in a single pass over its instructions.
+     *
+     * @param instrs the instructions of the regex
+     * @return the char classes
+     */
+    static CharClasses fromInstrs(RegexInstr[] instrs) {
+        BitSet boundaries = new BitSet(Character.MAX_VALUE + 2);
+        for (RegexInstr instr : instrs) {
+            if (instr.opcode == RegexInstr.Opcode.CHAR_RANGE) {
+                boundaries.set(instr.start);
+                boundaries.set(instr.end + 1);
+            }
+        }
+        return fromBoundaries(boundaries);
+    }
+
+    static CharClasses fromRanges(Collection<CharRange> ranges) {
+        BitSet boundaries = new BitSet(Character.MAX_VALUE + 2);
+        for (CharRange range : ranges) {
+            boundaries.set(range.getStart());
+            boundaries.set(range.getEnd() + 1);
+        }
+        return fromBoundaries(boundaries);
+    }
+
+    private static CharClasses fromBoundaries(BitSet boundaries) {
+        char[] blocks = new char[BLOCK_SIZE];
+        List<char[]> distinctBlocks = new ArrayList<>();
+        Map<String, Integer> blockOffsets = new HashMap<>();
+        int currentClass = 0;
+        for (int high = 0; high < BLOCK_SIZE; high++) {
+            char[] block = new char[BLOCK_SIZE];
+            for (int low = 0; low < BLOCK_SIZE; low++) {
+                int c = high * BLOCK_SIZE + low;
+                if (c > 0 && boundaries.get(c)) {
+                    currentClass++;
+                }
+                block[low] = (char) currentClass;
+            }
+            Integer offset = blockOffsets.get(String.valueOf(block));
+            if (offset == null) {
+                offset = distinctBlocks.size() * BLOCK_SIZE;
+                blockOffsets.put(String.valueOf(block), offset);
+                distinctBlocks.add(block);
+            }
+            blocks[high] = (char) (int) offset;
+        }
+        char[] leaves = new char[distinctBlocks.size() * BLOCK_SIZE];
+        for (int i = 0; i < distinctBlocks.size(); i++) {
+            System.arraycopy(distinctBlocks.get(i), 0, leaves, i * BLOCK_SIZE, BLOCK_SIZE);
+        }
+        return new CharClasses(blocks, leaves, currentClass + 1);
+    }
+
+    int classOf(char c) {
+        return leaves[blocks[c >>> 8] + (c & 0xFF)];
+    }
+
+    int classCount() {
+        return classCount;
+    }
+
+    /**
+     * Check whether these classes can be used with a DFA, i.e. that no transition of the DFA splits a class.
+     *
+     * @param dfa the root of the dfa
+     * @return true if every transition of the dfa begins and ends on a class boundary
+     */
+    boolean refines(DFA dfa) {
+        for (DFA state : dfa.allStates()) {
+            for (var transition : state.getTransitions()) {
+                CharRange range = transition.getLeft();
+                if (range.getStart() > 0 && classOf(range.getStart()) == classOf((char) (range.getStart() - 1))) {
+                    return false;
+                }
+                if (range.getEnd() < Character.MAX_VALUE && classOf(range.getEnd()) == classOf((char) (range.getEnd() + 1))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    char[] getBlocks() {
+        return blocks;
+    }
+
+    char[] getLeaves() {
+        return leaves;
+    }
+}
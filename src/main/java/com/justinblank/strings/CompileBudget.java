@@ -0,0 +1,46 @@
+package com.justinblank.strings;
+
+/**
+ * The limits for a single compile. The state limit is checked by the DFA builders as they create states, so it applies
+ * to the DFAs before they're minimized. The time limit is checked as states are created, during minimization, and
+ * before code is generated.
+ */
+class CompileBudget {
+
+    static final CompileBudget UNLIMITED = new CompileBudget(Integer.MAX_VALUE, false, Long.MAX_VALUE);
+
+    private final int maxStates;
+    private final boolean timed;
+    private final long deadline;
+
+    CompileBudget(int maxStates, boolean timed, long deadline) {
+        this.maxStates = maxStates;
+        this.timed = timed;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Check that a DFA with the given number of states is within the budget, and that time hasn't run out.
+     *
+     * @param states the number of states
+     * @throws CompileBudgetExceededException if either limit is exceeded
+     */
+    void check(int states) {
+        if (states > maxStates) {
+            throw new CompileBudgetExceededException("DFA exceeded the limit of " + maxStates + " states");
+        }
+        checkTime();
+    }
+
+    /**
+     * Check that time hasn't run out.
+     *
+     * @throws CompileBudgetExceededException if it has
+     */
+    void checkTime() {
+        // deadline may be negative if nanoTime is, so compare the difference
+        if (timed && System.nanoTime() - deadline > 0) {
+            throw new CompileBudgetExceededException("Compile exceeded its time limit");
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.justinblank.strings;
+
+/**
+ * Thrown when compiling a regex exceeds the limits of its {@link CompileOptions}, and the options don't allow falling
+ * back to a lazy DFA.
+ */
+public class CompileBudgetExceededException extends RuntimeException {
+
+    CompileBudgetExceededException(String s) {
+        super(s);
+    }
+}
@@ -0,0 +1,125 @@
+package com.justinblank.strings;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Limits on the work done compiling a regex with {@link DFACompiler#compile(String, String, CompileOptions)}, so that
+ * a regex whose DFA blows up can't stall the caller.
+ *
+ * The state limit applies to each of the DFAs built for a regex, and is checked as the DFA is built, before it is
+ * minimized, so a regex can exceed it even if its minimal DFA would not. The time limit covers the whole compile. When
+ * either limit is exceeded, the compile is abandoned, and by default a {@link LazyDFA} is returned instead, which only
+ * builds the states a search reaches, and falls back to simulating the NFA if that is too expensive.
+ *
+ * Options are immutable, and each of the with methods returns a copy.
+ */
+public final class CompileOptions {
+
+    private static final CompileOptions DEFAULTS = new CompileOptions(DFACompiler.MAX_STATES, null, true);
+
+    private final int maxStates;
+    private final Duration maxCompileTime;
+    private final boolean fallback;
+
+    private CompileOptions(int maxStates, Duration maxCompileTime, boolean fallback) {
+        this.maxStates = maxStates;
+        this.maxCompileTime = maxCompileTime;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Get the default options, which allow as many states as a compiled DFA can have, have no time limit, and fall
+     * back to a lazy DFA.
+     *
+     * @return the default options
+     */
+    public static CompileOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Limit the number of states in each DFA.
+     *
+     * @param maxStates the maximum number of states, which can be at most {@link DFACompiler#MAX_STATES}
+     * @return options with the limit
+     */
+    public CompileOptions withMaxStates(int maxStates) {
+        if (maxStates < 1 || maxStates > DFACompiler.MAX_STATES) {
+            throw new IllegalArgumentException("maxStates must be between 1 and " + DFACompiler.MAX_STATES + ", got "
+                    + maxStates);
+        }
+        return new CompileOptions(maxStates, maxCompileTime, fallback);
+    }
+
+    /**
+     * Limit the time taken to compile a regex.
+     *
+     * @param maxCompileTime the maximum time
+     * @return options with the limit
+     */
+    public CompileOptions withMaxCompileTime(Duration maxCompileTime) {
+        Objects.requireNonNull(maxCompileTime, "maxCompileTime");
+        if (maxCompileTime.isNegative() || maxCompileTime.isZero()) {
+            throw new IllegalArgumentException("maxCompileTime must be positive, got " + maxCompileTime);
+        }
+        return new CompileOptions(maxStates, maxCompileTime, fallback);
+    }
+
+    /**
+     * Choose what happens when a limit is exceeded.
+     *
+     * @param fallback if true, a lazy DFA is returned, otherwise a {@link CompileBudgetExceededException} is thrown
+     * @return options with the behavior
+     */
+    public CompileOptions withFallback(boolean fallback) {
+        return new CompileOptions(maxStates, maxCompileTime, fallback);
+    }
+
+    public int getMaxStates() {
+        return maxStates;
+    }
+
+    /**
+     * Get the time limit.
+     *
+     * @return the time limit, or null if there isn't one
+     */
+    public Duration getMaxCompileTime() {
+        return maxCompileTime;
+    }
+
+    public boolean isFallback() {
+        return fallback;
+    }
+
+    /**
+     * Start the clock on a compile with these options.
+     *
+     * @return the budget for the compile
+     */
+    CompileBudget startBudget() {
+        long deadline = maxCompileTime == null ? Long.MAX_VALUE : System.nanoTime() + maxCompileTime.toNanos();
+        return new CompileBudget(maxStates, maxCompileTime != null, deadline);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CompileOptions that = (CompileOptions) o;
+        return maxStates == that.maxStates && fallback == that.fallback
+                && Objects.equals(maxCompileTime, that.maxCompileTime);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxStates, maxCompileTime, fallback);
+    }
+
+    @Override
+    public String toString() {
+        return "CompileOptions{maxStates=" + maxStates + ", maxCompileTime=" + maxCompileTime + ", fallback="
+                + fallback + "}";
+    }
+}
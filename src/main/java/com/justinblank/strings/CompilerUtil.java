@@ -36,6 +36,7 @@ class CompilerUtil {
             switch (constant) {
                 case -1: {
                     mv.visitInsn(ICONST_M1);
+                    break;
                 }
                 case 0: {
                     mv.visitInsn(ICONST_0);
@@ -63,8 +64,11 @@ class CompilerUtil {
             }
         } else if (constant <= 127 && constant >= 0) {
             mv.visitIntInsn(BIPUSH, constant);
-        } else {
+        } else if (constant <= Short.MAX_VALUE && constant >= Short.MIN_VALUE) {
             mv.visitIntInsn(SIPUSH, constant);
+        } else {
+            // e.g. a char above \u7fff, which SIPUSH would sign extend
+            mv.visitLdcInsn(constant);
         }
     }
 
@@ -15,7 +15,13 @@ class DFA {
     private DFA root;
     // Only populated on the root
     private List<DFA> states;
+    // Only populated on the root, and only once the DFA is fully built
+    private CharClasses charClasses;
     private List<Pair<CharRange, DFA>> transitions = new ArrayList<>();
+    // The target state for each char class, populated along with the root's charClasses
+    private DFA[] classTransitions;
+    // For DFAs built for a RegexSet, the sorted indices of the regexes that match in this state, otherwise null
+    private int[] matchingPatterns;
 
     static DFA root(boolean accepting) {
         return new DFA(true, accepting, 0);
@@ -54,6 +60,13 @@ class DFA {
 
     protected void addTransition(CharRange charRange, DFA dfa) {
         assert !charRange.isEmpty() : "cannot add an epsilon transition to a DFA";
+        classTransitions = null;
+        // the builders add transitions in order, which can be appended without searching or sorting the list
+        int size = transitions.size();
+        if (size == 0 || transitions.get(size - 1).getLeft().getEnd() < charRange.getStart()) {
+            transitions.add(Pair.of(charRange, dfa));
+            return;
+        }
         if (transitions.stream().anyMatch(t -> t.getLeft().equals(charRange))) {
             return;
         }
@@ -62,6 +75,33 @@ class DFA {
         transitions.sort(Comparator.comparingInt(p -> p.getLeft().getStart()));
     }
 
+    /**
+     * Use the given char classes for transitions, replacing a scan of the transition list with an array lookup. Only
+     * applicable to the root node, and only once all transitions have been added.
+     *
+     * @param charClasses char classes that no transition of this DFA splits
+     */
+    void setCharClasses(CharClasses charClasses) {
+        assert isRoot();
+        assert charClasses.refines(this) : "char classes must not split any transition";
+        for (DFA state : states) {
+            DFA[] targets = new DFA[charClasses.classCount()];
+            for (Pair<CharRange, DFA> transition : state.transitions) {
+                CharRange range = transition.getLeft();
+                int end = charClasses.classOf(range.getEnd());
+                for (int charClass = charClasses.classOf(range.getStart()); charClass <= end; charClass++) {
+                    targets[charClass] = transition.getRight();
+                }
+            }
+            state.classTransitions = targets;
+        }
+        this.charClasses = charClasses;
+    }
+
+    CharClasses getCharClasses() {
+        return charClasses;
+    }
+
     protected List<Pair<CharRange, DFA>> getTransitions() {
         return transitions;
     }
@@ -70,7 +110,18 @@ class DFA {
         return accepting;
     }
 
+    int[] getMatchingPatterns() {
+        return matchingPatterns;
+    }
+
+    void setMatchingPatterns(int[] matchingPatterns) {
+        this.matchingPatterns = matchingPatterns;
+    }
+
     protected DFA transition(char c) {
+        if (classTransitions != null) {
+            return classTransitions[root.charClasses.classOf(c)];
+        }
         for (Pair<CharRange, DFA> transition : transitions) {
             if (transition.getLeft().inRange(c)) {
                 return transition.getRight();
@@ -112,6 +163,7 @@ class DFA {
                 clearSearchStateArray(newStateStarts);
             }
             char c = s.charAt(i);
+            int charClass = charClasses != null ? charClasses.classOf(c) : -1;
             int earliestCurrentStart = Integer.MAX_VALUE;
             for (int j = 0; j < stateStarts.length; j++) {
                 int stateStart = stateStarts[j];
@@ -121,7 +173,7 @@ class DFA {
                 shouldConsider |= j == 0 && matchStart == Integer.MAX_VALUE;
                 if (shouldConsider) {
                     DFA dfa = states.get(j);
-                    DFA found = dfa.transition(c);
+                    DFA found = charClass >= 0 && dfa.classTransitions != null ? dfa.classTransitions[charClass] : dfa.transition(c);
                     if (found != null) {
                         int foundStateNumber = found.stateNumber;
                         if (newStateStarts[foundStateNumber] == -1 ||
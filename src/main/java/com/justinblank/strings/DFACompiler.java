@@ -2,9 +2,6 @@ package com.justinblank.strings;
 
 import com.justinblank.classloader.MyClassLoader;
 import com.justinblank.strings.RegexAST.Node;
-import net.bytebuddy.ByteBuddy;
-import net.bytebuddy.dynamic.DynamicType;
-import net.bytebuddy.implementation.MethodDelegation;
 import org.apache.commons.lang3.tuple.Pair;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
@@ -17,7 +14,6 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.justinblank.strings.CompilerUtil.*;
-import static net.bytebuddy.matcher.ElementMatchers.named;
 import static org.objectweb.asm.Opcodes.*;
 
 public class DFACompiler {
@@ -27,8 +23,21 @@ public class DFACompiler {
     protected static final String LENGTH_FIELD = "length";
     protected static final String STRING_FIELD = "string";
     protected static final String INDEX_FIELD = "index";
+    protected static final String LAST_MATCH_FIELD = "lastMatch";
+    protected static final String SEARCH_STATE_PREFIX = "searchState";
+    protected static final String REVERSE_STATE_PREFIX = "reverseState";
+    protected static final String MATCH_RESULT_DESCRIPTOR = "Lcom/justinblank/strings/MatchResult;";
+    protected static final String CLASS_BLOCKS_FIELD = "CLASS_BLOCKS";
+    protected static final String CLASS_LEAVES_FIELD = "CLASS_LEAVES";
+    // Keeps each chunk of the leaves below the constant pool's limit of 65535 bytes, even at three bytes per char
+    private static final int MAX_STRING_CONSTANT_CHARS = 16384;
     // TODO: measure threshold, 8 is just a random choice
     public static final int MAX_STATES_FOR_SWITCH = 8;
+    // The most initial chars that containedIn skips to with one String.indexOf call per char
+    static final int MAX_INDEX_OF_CHARS = 3;
+    // Somewhere between this value and Short.MAX_VALUE, we run into classes that can't be created because they're so
+    // large
+    public static final int MAX_STATES = Short.MAX_VALUE / 2;
 
     private Map<DFA, Integer> dfaMethodMap = new IdentityHashMap<>();
     private Map<Integer, DFA> stateMap = new HashMap<>();
@@ -36,58 +45,162 @@ public class DFACompiler {
     private ClassWriter classWriter;
     private DFA dfa;
     private DFA dfaReversed;
+    private DFA searchDFA;
     private Factorization factors;
+    private CharClasses charClasses;
     private final Map<Character, String> rangeConstants = new HashMap<>();
 
-    protected DFACompiler(ClassWriter classWriter, String className, DFA dfa, DFA dfaReversed, Factorization factors) {
-        // Somewhere between this value and Short.MAX_VALUE, we run into classes that can't be created because they're
-        // so large
-        if (dfa.statesCount() > Short.MAX_VALUE / 2) {
-            throw new IllegalArgumentException("Can't compile DFAs with more than " + (Short.MAX_VALUE / 2) + " states");
+    protected DFACompiler(ClassWriter classWriter, String className, DFA dfa, DFA dfaReversed, DFA searchDFA,
+                          Factorization factors) {
+        if (dfa.statesCount() > MAX_STATES || dfaReversed.statesCount() > MAX_STATES
+                || searchDFA.statesCount() > MAX_STATES) {
+            throw new IllegalArgumentException("Can't compile DFAs with more than " + MAX_STATES + " states");
         }
         this.classWriter = classWriter;
         this.className = className;
         this.dfa = dfa;
         this.dfaReversed = dfaReversed;
+        this.searchDFA = searchDFA;
         this.factors = factors;
+        this.charClasses = findCharClasses(dfaReversed, searchDFA);
+    }
+
+    /**
+     * Get the char classes used by the automata that find runs. These are normally computed from the NFA when the
+     * DFAs are built, but are recomputed from the transitions if they are missing.
+     */
+    private static CharClasses findCharClasses(DFA dfaReversed, DFA searchDFA) {
+        CharClasses charClasses = searchDFA.getCharClasses();
+        if (charClasses == null) {
+            List<CharRange> ranges = new ArrayList<>();
+            for (DFA automaton : List.of(dfaReversed, searchDFA)) {
+                for (DFA state : automaton.allStates()) {
+                    for (Pair<CharRange, DFA> transition : state.getTransitions()) {
+                        ranges.add(transition.getLeft());
+                    }
+                }
+            }
+            charClasses = CharClasses.fromRanges(ranges);
+        }
+        assert charClasses.refines(dfaReversed) && charClasses.refines(searchDFA);
+        return charClasses;
     }
 
     public static Pattern compile(String regex, String className) {
-        Node node = RegexParser.parse(regex);
-        Factorization factors = node.bestFactors();
-        DFA dfa = NFAToDFACompiler.compile(new NFA(RegexInstrBuilder.createNFA(node)));
-        DFA dfaReversed = NFAToDFACompiler.compile(new NFA(RegexInstrBuilder.createNFA(node.reversed())));
-        byte[] classBytes = generateClassAsBytes(dfa, dfaReversed, factors, className);
-        Class<?> matcherClass = MyClassLoader.getInstance().loadClass(className, classBytes);
-        Class<? extends Pattern> c = createPatternClass("Pattern"  + className, (Class<? extends Matcher>) matcherClass);
+        return loadPattern(className, generateClassAsBytes(regex, className), MyClassLoader.getInstance());
+    }
+
+    /**
+     * Compile a regex within the limits of the options. If the regex's DFAs are too large, or take too long to build,
+     * the compile is abandoned, and unless the options disallow it, a {@link LazyDFA} is returned instead.
+     *
+     * @param regex     the regex
+     * @param className the name of the generated class
+     * @param options   the limits
+     * @return the pattern
+     * @throws CompileBudgetExceededException if a limit is exceeded, and the options don't allow falling back
+     */
+    public static Pattern compile(String regex, String className, CompileOptions options) {
+        byte[] classBytes;
         try {
-            return (Pattern) c.getDeclaredConstructors()[0].newInstance();
-        } catch (Throwable t) {
-            // TODO: determine good exceptions/result types
-            throw new RuntimeException(t);
+            classBytes = generateClassAsBytes(regex, className, options.startBudget());
+        }
+        catch (CompileBudgetExceededException e) {
+            if (!options.isFallback()) {
+                throw e;
+            }
+            return LazyDFA.compile(regex);
         }
+        return loadPattern(className, classBytes, MyClassLoader.getInstance());
+    }
+
+    /**
+     * Compile a set of regexes to a generated class, which runs the set's DFAs. The class is defined in the shared
+     * loader, so the name must be unique. If the DFAs are too large for a class, the set falls back to simulating its
+     * NFA.
+     *
+     * @param regexes   the regexes
+     * @param className the name of the generated class
+     * @return the set
+     */
+    public static RegexSet compileSet(List<String> regexes, String className) {
+        return compileSet(regexes, className, CompileOptions.defaults());
+    }
+
+    /**
+     * Compile a set of regexes to a generated class, within the limits of the options.
+     *
+     * @param regexes   the regexes
+     * @param className the name of the generated class
+     * @param options   the limits
+     * @return the set
+     * @throws CompileBudgetExceededException if a limit is exceeded, and the options don't allow falling back
+     */
+    public static RegexSet compileSet(List<String> regexes, String className, CompileOptions options) {
+        return RegexSet.compile(regexes, options, (dfa, searchDFA) -> {
+            byte[] classBytes = RegexSetCompiler.generateClassAsBytes(dfa, searchDFA, className);
+            Class<?> automatonClass = MyClassLoader.getInstance().loadClass(className, classBytes);
+            try {
+                return (RegexSet.Automaton) automatonClass.getConstructor().newInstance();
+            }
+            catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to instantiate generated class " + className, e);
+            }
+        });
+    }
+
+    /**
+     * Compile a regex, defining its class in a classloader of its own, rather than the shared loader used by
+     * {@link #compile(String, String)}. Once the pattern, and any matchers created from it, are unreachable, the
+     * class can be unloaded, so this should be used when patterns are compiled and discarded repeatedly. Since each
+     * pattern has its own loader, class names don't need to be unique.
+     *
+     * @param regex     the regex
+     * @param className the name of the generated class
+     * @return the pattern
+     */
+    public static Pattern compileCollectable(String regex, String className) {
+        return loadPattern(className, generateClassAsBytes(regex, className),
+                new MyClassLoader(DFACompiler.class.getClassLoader()));
+    }
+
+    /**
+     * Load a class generated for a regex, and create a pattern that uses it.
+     *
+     * @param className  the name the class was generated with
+     * @param classBytes the bytes of the class
+     * @param loader     the loader to define the class in
+     * @return the pattern
+     */
+    static Pattern loadPattern(String className, byte[] classBytes, MyClassLoader loader) {
+        return new GeneratedPattern(loader.loadClass(className, classBytes));
     }
 
-    static byte[] generateClassAsBytes(DFA dfa, DFA dfaReversed, Factorization factors, String name) {
+    static byte[] generateClassAsBytes(String regex, String className) {
+        return generateClassAsBytes(regex, className, CompileBudget.UNLIMITED);
+    }
+
+    static byte[] generateClassAsBytes(String regex, String className, CompileBudget budget) {
+        Node node = RegexParser.parse(regex);
+        NFA nfa = new NFA(RegexInstrBuilder.createNFA(node));
+        DFA dfa = NFAToDFACompiler.compile(nfa, budget);
+        DFA dfaReversed = NFAToDFACompiler.compile(new NFA(RegexInstrBuilder.createNFA(node.reversed())), budget);
+        DFA searchDFA = SearchDFACompiler.compile(nfa, budget);
+        budget.checkTime();
+        return generateClassAsBytes(dfa, dfaReversed, searchDFA, node.bestFactors(), className);
+    }
+
+    static byte[] generateClassAsBytes(DFA dfa, DFA dfaReversed, DFA searchDFA, Factorization factors, String name) {
         ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
         cw.visit(Opcodes.V9, ACC_PUBLIC, name, null, "java/lang/Object", new String[]{"com/justinblank/strings/Matcher"});
-        DFACompiler compiler = new DFACompiler(cw, name, dfa, dfaReversed, factors);
+        DFACompiler compiler = new DFACompiler(cw, name, dfa, dfaReversed, searchDFA, factors);
         compiler.compile();
 
         return cw.toByteArray();
     }
 
     public static void writeClass(String regex, String name, OutputStream os) throws IOException {
-        Node node = RegexParser.parse(regex);
-        DFA dfa = DFA.createDFA(regex);
-        DFA dfaReversed = NFAToDFACompiler.compile(new NFA(RegexInstrBuilder.createNFA(node.reversed())));
-        os.write(generateClassAsBytes(dfa, dfaReversed, node.bestFactors(), name));
-    }
-
-    private static Class<? extends Pattern> createPatternClass(String name, Class<? extends Matcher> m) {
-        DynamicType.Builder<? extends Pattern> builder = new ByteBuddy().subclass(Pattern.class).name(name);
-        builder = builder.method(named("matcher")).intercept(MethodDelegation.toConstructor(m));
-        return builder.make().load(MyClassLoader.getInstance()).getLoaded();
+        os.write(generateClassAsBytes(regex, name));
     }
 
     protected void compile() {
@@ -98,6 +211,7 @@ public class DFACompiler {
         generateTransitionMethods();
         addContainedInMethod();
         addMatchMethod();
+        addFindMethods();
         if (isLargeStateCount()) {
             generateStateGroupMethods();
         }
@@ -153,6 +267,8 @@ public class DFACompiler {
                 acceptingStates.add(e.getKey());
             }
         }
+        // the map is keyed by identity, so sort for the generated code to be reproducible
+        acceptingStates.sort(Comparator.comparingInt(DFA::getStateNumber));
         return acceptingStates;
     }
 
@@ -162,23 +278,83 @@ public class DFACompiler {
         this.classWriter.visitField(ACC_PRIVATE, STRING_FIELD, "Ljava/lang/String;", null, null);
         this.classWriter.visitField(ACC_PRIVATE, LENGTH_FIELD, "I", null, 0);
         this.classWriter.visitField(ACC_PRIVATE, STATE_FIELD, "I", null, 0);
+        this.classWriter.visitField(ACC_PRIVATE, LAST_MATCH_FIELD, "I", null, 0);
     }
 
+    /**
+     * Add the containedIn method, which runs the search DFA until it first reaches an accepting state. While the search
+     * DFA is in its initial state, no match is in progress, so when the pattern's initial chars are known, the method
+     * skips ahead to the next of them without entering the state machine.
+     */
     protected void addContainedInMethod() {
-        addMatchMethodInternal(true);
-    }
+        MethodVisitor mv = this.classWriter.visitMethod(ACC_PUBLIC, "containedIn", "()Z", null, null);
+        if (searchDFA.isAccepting()) {
+            mv.visitInsn(ICONST_1);
+            mv.visitInsn(IRETURN);
+            mv.visitMaxs(-1, -1);
+            mv.visitEnd();
+            return;
+        }
 
-    protected void addMatchMethod() {
-        addMatchMethodInternal(false);
-    }
+        Label iterateLabel = new Label();
+        Label readLabel = new Label();
+        Label failLabel = new Label();
 
-    protected void addMatchMethodInternal(boolean containedIn) {
-        MethodVisitor mv;
-        if (containedIn) {
-            mv = this.classWriter.visitMethod(ACC_PUBLIC, "containedIn", "()Z", null, null);
-        } else {
-            mv = this.classWriter.visitMethod(ACC_PUBLIC, "matches", "()Z", null, null);
+        MatchingVars vars = new MatchingVars(4, 1, 5, 2, 3);
+        // the locals after the matching vars hold the next index of each initial char, when they're found by indexOf
+        int nextIndexVar = 6;
+
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, vars.counterVar);
+        emitInitializeFind(mv, vars, searchDFA, vars.counterVar);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, LENGTH_FIELD, "I");
+        mv.visitVarInsn(ISTORE, vars.lengthVar);
+
+        Optional<List<Character>> initialChars = factors.getInitialChars();
+        boolean skipToInitialChars = initialChars.isPresent() && initialChars.get().size() < MAX_STATES_FOR_SWITCH;
+        boolean useIndexOf = skipToInitialChars && initialChars.get().size() <= MAX_INDEX_OF_CHARS;
+        if (useIndexOf) {
+            // -1 is before every index, so each char's first occurrence is found the first time the loop runs
+            for (int i = 0; i < initialChars.get().size(); i++) {
+                mv.visitInsn(ICONST_M1);
+                mv.visitVarInsn(ISTORE, nextIndexVar + i);
+            }
+        }
+
+        mv.visitLabel(iterateLabel);
+        if (skipToInitialChars) {
+            mv.visitVarInsn(ILOAD, vars.stateVar);
+            mv.visitJumpInsn(IFNE, readLabel);
+            if (useIndexOf) {
+                emitSkipToInitialChar(mv, vars, nextIndexVar, initialChars.get());
+            }
+            else {
+                emitSwitchToInitialChar(mv, vars, initialChars.get(), readLabel, failLabel);
+            }
         }
+        mv.visitLabel(readLabel);
+        emitBoundsCheck(mv, vars, failLabel);
+        emitReadChar(mv, vars);
+        emitCharClassLookup(mv, vars);
+        mv.visitVarInsn(ISTORE, vars.charVar);
+        // the search DFA reads every char before its first match, so the state can't be -1 here
+        emitFindDispatch(mv, vars, searchDFA, SEARCH_STATE_PREFIX);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, LAST_MATCH_FIELD, "I");
+        mv.visitJumpInsn(IFLT, iterateLabel);
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(IRETURN);
+
+        mv.visitLabel(failLabel);
+        mv.visitInsn(ICONST_0);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+    }
+
+    protected void addMatchMethod() {
+        MethodVisitor mv = this.classWriter.visitMethod(ACC_PUBLIC, "matches", "()Z", null, null);
 
         Label returnLabel = new Label();
         Label iterateLabel = new Label();
@@ -197,43 +373,18 @@ public class DFACompiler {
         mv.visitVarInsn(ALOAD, 0);
         mv.visitFieldInsn(GETFIELD, className, STRING_FIELD, "Ljava/lang/String;");
         mv.visitVarInsn(ASTORE, vars.stringVar);
-        mv.visitVarInsn(ALOAD, vars.stringVar);
 
         // push string length to local var
         mv.visitVarInsn(ALOAD, 0);
         mv.visitFieldInsn(GETFIELD, className, LENGTH_FIELD, "I");
         mv.visitVarInsn(ISTORE, vars.lengthVar);
-        mv.visitVarInsn(ILOAD, vars.lengthVar);
 
-        if (containedIn) {
-            mv.visitInsn(ICONST_M1);
-            mv.visitVarInsn(ISTORE, vars.stateVar);
-        }
         mv.visitLabel(iterateLabel);
 
-        // Check state. If we're in matching mode, return when state is negative, otherwise continue.
-        // If we're in searching mode, reset the search on a negative state, otherwise check for acceptance
-        if (containedIn) {
-            emitInvokeWasAccepted(mv, vars);
-            mv.visitInsn(ICONST_1);
-            mv.visitJumpInsn(IF_ICMPEQ, returnLabel);
-
-            Optional<String> prefix = factors.getSharedPrefix();
-            Optional<List<Character>> initialChars = factors.getInitialChars();
-            if (initialChars.isPresent() && initialChars.get().size() < MAX_STATES_FOR_SWITCH) {
-                emitPrefixFindingLoop(mv, vars, initialChars.get(), postStateCheckLabel, returnLabel, failLabel);
-            } else {
-                mv.visitVarInsn(ILOAD, vars.stateVar);
-                mv.visitInsn(ICONST_M1);
-                mv.visitJumpInsn(IF_ICMPNE, postStateCheckLabel);
-                mv.visitInsn(ICONST_0);
-                mv.visitVarInsn(ISTORE, vars.stateVar);
-            }
-        } else {
-            mv.visitVarInsn(ILOAD, vars.stateVar);
-            mv.visitInsn(ICONST_M1);
-            mv.visitJumpInsn(IF_ICMPEQ, failLabel);
-        }
+        // return when state is negative
+        mv.visitVarInsn(ILOAD, vars.stateVar);
+        mv.visitInsn(ICONST_M1);
+        mv.visitJumpInsn(IF_ICMPEQ, failLabel);
 
         mv.visitLabel(postStateCheckLabel);
         // read next char, store in local var
@@ -283,6 +434,348 @@ public class DFACompiler {
         mv.visitEnd();
     }
 
+    /**
+     * Add the find method and its helpers. Finding is done in two passes: the search DFA is run forward from the
+     * starting index to find the end of the leftmost-longest match, then the reversed DFA is run backwards from that
+     * end to find where the match started.
+     *
+     * Both passes map each char to its char class before dispatching, so that the transition methods can switch on
+     * the class, rather than comparing the char against each range in turn.
+     */
+    protected void addFindMethods() {
+        addCharClassFields();
+        addFindMethod();
+        addFindEndMethod();
+        addFindStartMethod();
+        for (DFA state : searchDFA.allStates()) {
+            generateFindTransitionMethod(state, SEARCH_STATE_PREFIX);
+        }
+        for (DFA state : dfaReversed.allStates()) {
+            generateFindTransitionMethod(state, REVERSE_STATE_PREFIX);
+        }
+        if (searchDFA.statesCount() > 64) {
+            generateFindStateGroupMethods(searchDFA, SEARCH_STATE_PREFIX);
+        }
+        if (dfaReversed.statesCount() > 64) {
+            generateFindStateGroupMethods(dfaReversed, REVERSE_STATE_PREFIX);
+        }
+    }
+
+    /**
+     * Add static fields holding the two levels of the char class map, and a static initializer that loads them from
+     * string constants.
+     */
+    private void addCharClassFields() {
+        classWriter.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, CLASS_BLOCKS_FIELD, "[C", null, null);
+        classWriter.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, CLASS_LEAVES_FIELD, "[C", null, null);
+        MethodVisitor mv = classWriter.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        emitCharArrayConstant(mv, charClasses.getBlocks());
+        mv.visitFieldInsn(PUTSTATIC, className, CLASS_BLOCKS_FIELD, "[C");
+        emitCharArrayConstant(mv, charClasses.getLeaves());
+        mv.visitFieldInsn(PUTSTATIC, className, CLASS_LEAVES_FIELD, "[C");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+    }
+
+    static void emitCharArrayConstant(MethodVisitor mv, char[] chars) {
+        String s = String.valueOf(chars);
+        mv.visitLdcInsn(s.substring(0, Math.min(s.length(), MAX_STRING_CONSTANT_CHARS)));
+        for (int i = MAX_STRING_CONSTANT_CHARS; i < s.length(); i += MAX_STRING_CONSTANT_CHARS) {
+            mv.visitLdcInsn(s.substring(i, Math.min(s.length(), i + MAX_STRING_CONSTANT_CHARS)));
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;", false);
+        }
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "toCharArray", "()[C", false);
+    }
+
+    /**
+     * Emits bytecodes to replace the char on top of the stack with its char class.
+     *
+     * @param mv   the current method visitor
+     * @param vars the variable indices for the current method
+     */
+    private void emitCharClassLookup(MethodVisitor mv, MatchingVars vars) {
+        emitCharClassLookup(mv, className, vars.charVar);
+    }
+
+    /**
+     * Emits bytecodes to replace the char on top of the stack with its char class, for a class that has the char class
+     * fields.
+     *
+     * @param mv        the current method visitor
+     * @param className the name of the class being generated
+     * @param charVar   a local variable that the char can be stored in
+     */
+    static void emitCharClassLookup(MethodVisitor mv, String className, int charVar) {
+        mv.visitVarInsn(ISTORE, charVar);
+        mv.visitFieldInsn(GETSTATIC, className, CLASS_LEAVES_FIELD, "[C");
+        mv.visitFieldInsn(GETSTATIC, className, CLASS_BLOCKS_FIELD, "[C");
+        mv.visitVarInsn(ILOAD, charVar);
+        mv.visitIntInsn(BIPUSH, 8);
+        mv.visitInsn(IUSHR);
+        mv.visitInsn(CALOAD);
+        mv.visitVarInsn(ILOAD, charVar);
+        mv.visitIntInsn(SIPUSH, 0xFF);
+        mv.visitInsn(IAND);
+        mv.visitInsn(IADD);
+        mv.visitInsn(CALOAD);
+    }
+
+    private void addFindMethod() {
+        MethodVisitor mv = this.classWriter.visitMethod(ACC_PUBLIC, "find", "(I)" + MATCH_RESULT_DESCRIPTOR, null, null);
+        Label foundLabel = new Label();
+
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, STRING_FIELD, STRING_DESCRIPTOR);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, LENGTH_FIELD, "I");
+        mv.visitMethodInsn(INVOKESTATIC, "com/justinblank/strings/Search/SearchMethodUtil", "checkIndices", "(Ljava/lang/String;II)V", false);
+
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitMethodInsn(INVOKEVIRTUAL, className, "findEnd", "(I)I", false);
+        mv.visitVarInsn(ISTORE, 2);
+        mv.visitVarInsn(ILOAD, 2);
+        mv.visitInsn(ICONST_M1);
+        mv.visitJumpInsn(IF_ICMPNE, foundLabel);
+        mv.visitMethodInsn(INVOKESTATIC, "com/justinblank/strings/MatchResult", "failure", "()" + MATCH_RESULT_DESCRIPTOR, false);
+        mv.visitInsn(ARETURN);
+
+        mv.visitLabel(foundLabel);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitVarInsn(ILOAD, 2);
+        mv.visitMethodInsn(INVOKEVIRTUAL, className, "findStart", "(II)I", false);
+        mv.visitVarInsn(ILOAD, 2);
+        mv.visitMethodInsn(INVOKESTATIC, "com/justinblank/strings/MatchResult", "success", "(II)" + MATCH_RESULT_DESCRIPTOR, false);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+    }
+
+    /**
+     * Add a method that runs the search DFA forward from the given index, returning the end of the leftmost-longest
+     * match, or -1 if there is no match.
+     */
+    private void addFindEndMethod() {
+        MethodVisitor mv = this.classWriter.visitMethod(ACC_PRIVATE, "findEnd", "(I)I", null, null);
+        MatchingVars vars = new MatchingVars(5, 2, 4, 3, 6);
+        Label iterateLabel = new Label();
+        Label returnLabel = new Label();
+
+        emitInitializeFind(mv, vars, searchDFA, 1);
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitVarInsn(ISTORE, vars.counterVar);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, LENGTH_FIELD, "I");
+        mv.visitVarInsn(ISTORE, vars.lengthVar);
+
+        mv.visitLabel(iterateLabel);
+        mv.visitVarInsn(ILOAD, vars.stateVar);
+        mv.visitInsn(ICONST_M1);
+        mv.visitJumpInsn(IF_ICMPEQ, returnLabel);
+        emitBoundsCheck(mv, vars, returnLabel);
+        emitReadChar(mv, vars);
+        emitCharClassLookup(mv, vars);
+        mv.visitVarInsn(ISTORE, vars.charVar);
+        emitFindDispatch(mv, vars, searchDFA, SEARCH_STATE_PREFIX);
+        mv.visitJumpInsn(GOTO, iterateLabel);
+
+        mv.visitLabel(returnLabel);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, LAST_MATCH_FIELD, "I");
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+    }
+
+    /**
+     * Add a method that runs the reversed DFA backwards from the end of a match, returning the earliest index, no
+     * smaller than the starting index, at which the match can start.
+     */
+    private void addFindStartMethod() {
+        MethodVisitor mv = this.classWriter.visitMethod(ACC_PRIVATE, "findStart", "(II)I", null, null);
+        MatchingVars vars = MatchingVars.backwards(5, 2, 4, 1, 6);
+        Label iterateLabel = new Label();
+        Label returnLabel = new Label();
+
+        emitInitializeFind(mv, vars, dfaReversed, 2);
+
+        mv.visitLabel(iterateLabel);
+        mv.visitVarInsn(ILOAD, vars.stateVar);
+        mv.visitInsn(ICONST_M1);
+        mv.visitJumpInsn(IF_ICMPEQ, returnLabel);
+        // the length var holds the lower bound of the search when going backwards
+        mv.visitVarInsn(ILOAD, vars.counterVar);
+        mv.visitVarInsn(ILOAD, vars.lengthVar);
+        mv.visitJumpInsn(IF_ICMPLE, returnLabel);
+        mv.visitIincInsn(vars.counterVar, -1);
+        mv.visitVarInsn(ALOAD, vars.stringVar);
+        mv.visitVarInsn(ILOAD, vars.counterVar);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "charAt", "(I)C", false);
+        emitCharClassLookup(mv, vars);
+        mv.visitVarInsn(ISTORE, vars.charVar);
+        emitFindDispatch(mv, vars, dfaReversed, REVERSE_STATE_PREFIX);
+        mv.visitJumpInsn(GOTO, iterateLabel);
+
+        mv.visitLabel(returnLabel);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, LAST_MATCH_FIELD, "I");
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+    }
+
+    /**
+     * Emits bytecodes to reset the last match field, set the state to zero, and store the string in a local variable.
+     * If the initial state of the automaton is accepting, the last match is set to the value of the given variable.
+     *
+     * @param mv         the current method visitor
+     * @param vars       the variable indices for the current method
+     * @param automaton  the dfa that's being run
+     * @param initialVar the index of the variable holding the index at which the automaton starts
+     */
+    private void emitInitializeFind(MethodVisitor mv, MatchingVars vars, DFA automaton, int initialVar) {
+        mv.visitVarInsn(ALOAD, 0);
+        if (automaton.isAccepting()) {
+            mv.visitVarInsn(ILOAD, initialVar);
+        }
+        else {
+            mv.visitInsn(ICONST_M1);
+        }
+        mv.visitFieldInsn(PUTFIELD, className, LAST_MATCH_FIELD, "I");
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, vars.stateVar);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, className, STRING_FIELD, STRING_DESCRIPTOR);
+        mv.visitVarInsn(ASTORE, vars.stringVar);
+    }
+
+    /**
+     * Emits bytecodes to call the transition method for the current state of the given automaton, with the char class
+     * held in the char variable, storing the resulting state in the state variable. Does not modify the stack.
+     *
+     * @param mv        the current method visitor
+     * @param vars      the variable indices for the current method
+     * @param automaton the dfa that's being run
+     * @param prefix    the prefix of the automaton's transition methods
+     */
+    private void emitFindDispatch(MethodVisitor mv, MatchingVars vars, DFA automaton, String prefix) {
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ILOAD, vars.charVar);
+        mv.visitVarInsn(ILOAD, vars.counterVar);
+        if (automaton.statesCount() > 64) {
+            mv.visitVarInsn(ILOAD, vars.stateVar);
+            int groupCount = 1 + automaton.statesCount() / 64;
+            Label[] groupLabels = makeLabels(groupCount);
+            Label postDispatchLabel = new Label();
+            mv.visitVarInsn(ILOAD, vars.stateVar);
+            pushShortInt(mv, 64);
+            mv.visitInsn(IDIV);
+            // the state is never negative here, so the default is unreachable
+            mv.visitTableSwitchInsn(0, groupCount - 1, groupLabels[0], groupLabels);
+            for (int i = 0; i < groupCount; i++) {
+                mv.visitLabel(groupLabels[i]);
+                mv.visitMethodInsn(INVOKEVIRTUAL, className, prefix + "Group" + i, "(III)I", false);
+                mv.visitJumpInsn(GOTO, postDispatchLabel);
+            }
+            mv.visitLabel(postDispatchLabel);
+        }
+        else {
+            Label[] stateLabels = makeLabels(automaton.statesCount());
+            Label postDispatchLabel = new Label();
+            mv.visitVarInsn(ILOAD, vars.stateVar);
+            mv.visitTableSwitchInsn(0, stateLabels.length - 1, stateLabels[0], stateLabels);
+            for (int i = 0; i < stateLabels.length; i++) {
+                mv.visitLabel(stateLabels[i]);
+                mv.visitMethodInsn(INVOKEVIRTUAL, className, prefix + i, "(II)I", false);
+                mv.visitJumpInsn(GOTO, postDispatchLabel);
+            }
+            mv.visitLabel(postDispatchLabel);
+        }
+        mv.visitVarInsn(ISTORE, vars.stateVar);
+    }
+
+    private void generateFindStateGroupMethods(DFA automaton, String prefix) {
+        int groupCount = 1 + automaton.statesCount() / 64;
+        for (int i = 0; i < groupCount; i++) {
+            MethodVisitor mv = this.classWriter.visitMethod(ACC_PRIVATE, prefix + "Group" + i, "(III)I", null, null);
+            int startState = i * 64;
+            int endState = Math.min((i + 1) * 64, automaton.statesCount());
+            Label failLabel = new Label();
+            if (startState == endState) {
+                mv.visitInsn(ICONST_M1);
+                mv.visitInsn(IRETURN);
+                mv.visitMaxs(-1, -1);
+                mv.visitEnd();
+                continue;
+            }
+            Label[] stateLabels = makeLabels(endState - startState);
+            mv.visitVarInsn(ILOAD, 3);
+            mv.visitTableSwitchInsn(startState, endState - 1, failLabel, stateLabels);
+            for (int j = startState; j < endState; j++) {
+                mv.visitLabel(stateLabels[j - startState]);
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(ILOAD, 1);
+                mv.visitVarInsn(ILOAD, 2);
+                mv.visitMethodInsn(INVOKEVIRTUAL, className, prefix + j, "(II)I", false);
+                mv.visitInsn(IRETURN);
+            }
+            mv.visitLabel(failLabel);
+            mv.visitInsn(ICONST_M1);
+            mv.visitInsn(IRETURN);
+            mv.visitMaxs(-1, -1);
+            mv.visitEnd();
+        }
+    }
+
+    /**
+     * Generate a transition method for one state of an automaton used by find. The method takes the current char class
+     * and index, and returns the next state, or -1 if there is none. If the next state is accepting, the index is
+     * stored in the last match field.
+     *
+     * @param node   the state
+     * @param prefix the prefix of the automaton's transition methods
+     */
+    private void generateFindTransitionMethod(DFA node, String prefix) {
+        MethodVisitor mv = this.classWriter.visitMethod(ACC_PRIVATE, prefix + node.getStateNumber(), "(II)I", null, null);
+        Map<DFA, Label> transitionTargets = new IdentityHashMap<>();
+        List<DFA> targets = new ArrayList<>();
+        Label failLabel = new Label();
+        Label[] classLabels = new Label[charClasses.classCount()];
+        Arrays.fill(classLabels, failLabel);
+
+        for (Pair<CharRange, DFA> transition : node.getTransitions()) {
+            Label transitionLabel = transitionTargets.computeIfAbsent(transition.getRight(), d -> {
+                targets.add(d);
+                return new Label();
+            });
+            CharRange charRange = transition.getLeft();
+            int endClass = charClasses.classOf(charRange.getEnd());
+            for (int charClass = charClasses.classOf(charRange.getStart()); charClass <= endClass; charClass++) {
+                classLabels[charClass] = transitionLabel;
+            }
+        }
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitTableSwitchInsn(0, classLabels.length - 1, failLabel, classLabels);
+        for (DFA target : targets) {
+            mv.visitLabel(transitionTargets.get(target));
+            if (target.isAccepting()) {
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(ILOAD, 2);
+                mv.visitFieldInsn(PUTFIELD, className, LAST_MATCH_FIELD, "I");
+            }
+            pushShortInt(mv, target.getStateNumber());
+            mv.visitInsn(IRETURN);
+        }
+        mv.visitLabel(failLabel);
+        mv.visitInsn(ICONST_M1);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+    }
+
     /**
      * Emits bytecodes to invoke the was accepted method, reading the state variable from the local variables
      * <p>
@@ -336,50 +829,66 @@ public class DFACompiler {
     }
 
     /**
-     * Emit an explicit loop searching for the first character of a pattern without entering the full state machine.
-     *
-     * @param mv                   the current method visitor
-     * @param vars                 the indexed variables for the current method
-     * @param chars                the prefix characters of the pattern
-     * @param postStateChangeLabel the label to jump to when a match is found
-     * @param failLabel            the label to jump to if we exhaust the string without finding our initial character
+     * Set the counter to the next index of any of the chars, or to Integer.MAX_VALUE if none of them occur again.
+     * <p>
+     * String.indexOf is an intrinsic that the JVM vectorizes, so this is much faster than testing each char. The next
+     * index of each char is kept in a local, and only searched for again once the counter has passed it, so the string
+     * is scanned at most once per char.
+     * <p>
+     * Modifies the stack by consuming nothing and pushing nothing.
      */
-    private void emitPrefixFindingLoop(MethodVisitor mv, MatchingVars vars, List<Character> chars, Label postStateChangeLabel, Label returnLabel, Label failLabel) {
-        Label innerIterationLabel = new Label();
-        mv.visitLabel(innerIterationLabel);
-        mv.visitVarInsn(ILOAD, vars.stateVar);
-        mv.visitInsn(ICONST_M1);
-        mv.visitJumpInsn(IF_ICMPNE, postStateChangeLabel);
-        emitBoundsCheck(mv, vars, failLabel);
-        emitReadChar(mv, vars);
-        if (chars.size() == 1) {
-            pushShortInt(mv, chars.get(0));
-            mv.visitJumpInsn(IF_ICMPNE, innerIterationLabel);
-            pushShortInt(mv, dfa.getTransitions().get(0).getRight().getStateNumber());
-        } else {
-            Label postMatchLabel = new Label();
-            Label[] charLabels = makeLabels(chars.size());
-            int[] charArray = new int[chars.size()];
-            for (int i = 0; i < chars.size(); i++) {
-                charArray[i] = chars.get(i);
-            }
-            mv.visitLookupSwitchInsn(innerIterationLabel, charArray, charLabels);
-            for (int i = 0; i < chars.size(); i++) {
-                mv.visitLabel(charLabels[i]);
-                DFA target = dfa.transition(chars.get(i));
-                pushShortInt(mv, target.getStateNumber());
-                mv.visitJumpInsn(GOTO, postMatchLabel);
-            }
-            // switch insn;
-            mv.visitLabel(postMatchLabel);
+    private void emitSkipToInitialChar(MethodVisitor mv, MatchingVars vars, int nextIndexVar, List<Character> chars) {
+        for (int i = 0; i < chars.size(); i++) {
+            Label upToDateLabel = new Label();
+            mv.visitVarInsn(ILOAD, nextIndexVar + i);
+            mv.visitVarInsn(ILOAD, vars.counterVar);
+            mv.visitJumpInsn(IF_ICMPGE, upToDateLabel);
+            mv.visitVarInsn(ALOAD, vars.stringVar);
+            pushShortInt(mv, chars.get(i));
+            mv.visitVarInsn(ILOAD, vars.counterVar);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "indexOf", "(II)I", false);
+            mv.visitVarInsn(ISTORE, nextIndexVar + i);
+            mv.visitVarInsn(ILOAD, nextIndexVar + i);
+            mv.visitJumpInsn(IFGE, upToDateLabel);
+            mv.visitLdcInsn(Integer.MAX_VALUE);
+            mv.visitVarInsn(ISTORE, nextIndexVar + i);
+            mv.visitLabel(upToDateLabel);
         }
-        mv.visitVarInsn(ISTORE, vars.stateVar);
-
-        emitInvokeWasAccepted(mv, vars);
-        mv.visitInsn(ICONST_0);
-        mv.visitJumpInsn(IF_ICMPNE, returnLabel);
+        mv.visitVarInsn(ILOAD, nextIndexVar);
+        for (int i = 1; i < chars.size(); i++) {
+            mv.visitVarInsn(ILOAD, nextIndexVar + i);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "min", "(II)I", false);
+        }
+        mv.visitVarInsn(ISTORE, vars.counterVar);
+    }
 
-        mv.visitJumpInsn(GOTO, postStateChangeLabel);
+    /**
+     * Advance the counter until it reaches one of the chars, jumping to the found label, or the fail label if the end of
+     * the string is reached first. Used when there are too many chars to look for each with indexOf.
+     * <p>
+     * Modifies the stack by consuming nothing and pushing nothing.
+     */
+    private void emitSwitchToInitialChar(MethodVisitor mv, MatchingVars vars, List<Character> chars, Label foundLabel,
+                                         Label failLabel) {
+        Label loopLabel = new Label();
+        Label noMatchLabel = new Label();
+        mv.visitLabel(loopLabel);
+        emitBoundsCheck(mv, vars, failLabel);
+        mv.visitVarInsn(ALOAD, vars.stringVar);
+        mv.visitVarInsn(ILOAD, vars.counterVar);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "charAt", "(I)C", false);
+        Label[] charLabels = makeLabels(chars.size());
+        int[] charArray = new int[chars.size()];
+        for (int i = 0; i < chars.size(); i++) {
+            charArray[i] = chars.get(i);
+            charLabels[i] = foundLabel;
+        }
+        mv.visitLookupSwitchInsn(noMatchLabel, charArray, charLabels);
+        // The interpreter doesn't count a switch jumping backwards as a loop iteration, so without going through a
+        // goto, the loop could never be compiled while it runs
+        mv.visitLabel(noMatchLabel);
+        mv.visitIincInsn(vars.counterVar, 1);
+        mv.visitJumpInsn(GOTO, loopLabel);
     }
 
     private void emitLoadContainedInFailure(MethodVisitor mv) {
@@ -625,10 +1134,19 @@ public class DFACompiler {
     private void generateSwitchTransitions(DFA node, MethodVisitor mv, Label iterLabel, Label failLabel) {
         int[] chars = getChars(node);
         Label[] labels = makeLabelsForCollection(node.getTransitions());
+        // the switch needs a label for every char, and each char in a range goes to its transition's label
+        Label[] charLabels = new Label[chars.length];
+        int charIndex = 0;
+        for (int i = 0; i < labels.length; i++) {
+            CharRange range = node.getTransitions().get(i).getLeft();
+            for (int c = range.getStart(); c <= range.getEnd(); c++) {
+                charLabels[charIndex++] = labels[i];
+            }
+        }
 
         mv.visitVarInsn(ILOAD, 1);
 
-        mv.visitLookupSwitchInsn(failLabel, chars, labels);
+        mv.visitLookupSwitchInsn(failLabel, chars, charLabels);
         int index = 0;
         for (Pair<CharRange, DFA> transition : node.getTransitions()) {
             mv.visitLabel(labels[index++]);
@@ -658,7 +1176,8 @@ public class DFACompiler {
     }
 
     private void generateTransitionJumps(DFA node, MethodVisitor mv, Label returnLabel, Label failLabel) {
-        Map<DFA, Label> transitionTargets = new IdentityHashMap<>();
+        // in insertion order, so that the generated code is reproducible
+        Map<DFA, Label> transitionTargets = new LinkedHashMap<>();
 
         for (Pair<CharRange, DFA> transition : node.getTransitions()) {
             Label transitionLabel = transitionTargets.computeIfAbsent(transition.getRight(), d -> new Label());
@@ -720,7 +1239,10 @@ public class DFACompiler {
      */
     protected void addCharConstants() {
         AtomicInteger constCount = new AtomicInteger(0);
-        dfa.allStates().stream().map(DFA::getTransitions).flatMap(List::stream).map(Pair::getLeft).forEach(charRange -> {
+        List<DFA> states = new ArrayList<>(dfa.allStates());
+        states.addAll(searchDFA.allStates());
+        states.addAll(dfaReversed.allStates());
+        states.stream().map(DFA::getTransitions).flatMap(List::stream).map(Pair::getLeft).forEach(charRange -> {
             if (charRange.getStart() > Short.MAX_VALUE) {
                 rangeConstants.computeIfAbsent(charRange.getStart(), c -> {
                     String constName = "CHAR_CONST_" + constCount.incrementAndGet();
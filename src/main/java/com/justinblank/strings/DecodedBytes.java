@@ -0,0 +1,120 @@
+package com.justinblank.strings;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Bytes decoded to a String, along with a map from the indices of the String back to the indices of the bytes. This
+ * is how the engines that only match Strings implement the byte-based matching methods, so that every engine agrees on
+ * how malformed UTF-8 is decoded.
+ */
+public final class DecodedBytes {
+
+    private final String string;
+    private final int offset;
+    // the index at which each char's sequence starts, followed by the end index, or null if each char is one byte
+    private final int[] byteIndices;
+
+    private DecodedBytes(String string, int offset, int[] byteIndices) {
+        this.string = string;
+        this.offset = offset;
+        this.byteIndices = byteIndices;
+    }
+
+    /**
+     * Decode part of a byte array.
+     *
+     * @param bytes    the bytes
+     * @param offset   the index of the first byte
+     * @param length   the number of bytes
+     * @param encoding the encoding
+     * @return the decoded bytes
+     */
+    public static DecodedBytes decode(byte[] bytes, int offset, int length, ByteEncoding encoding) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        if (encoding == ByteEncoding.LATIN_1 || isAscii(bytes, offset, length)) {
+            return new DecodedBytes(new String(bytes, offset, length, StandardCharsets.ISO_8859_1), offset, null);
+        }
+        // each char takes at least one byte, except that a surrogate pair takes four
+        char[] chars = new char[length];
+        int[] byteIndices = new int[length + 1];
+        int count = 0;
+        Utf8Reader reader = new Utf8Reader(bytes, offset, offset + length);
+        while (reader.hasNext()) {
+            // both chars of a pair start where its sequence does
+            byteIndices[count] = reader.inPair() ? byteIndices[count - 1] : reader.position();
+            chars[count++] = reader.next();
+        }
+        byteIndices[count] = offset + length;
+        return new DecodedBytes(new String(chars, 0, count), offset, byteIndices);
+    }
+
+    private static boolean isAscii(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String string() {
+        return string;
+    }
+
+    /**
+     * Get the index of the char that the sequence starting at a byte index decodes to.
+     *
+     * @param byteIndex the byte index, which may be the end of the bytes
+     * @return the char index, or -1 if no sequence starts at the byte index
+     */
+    public int charIndex(int byteIndex) {
+        if (byteIndices == null) {
+            return byteIndex - offset;
+        }
+        // the chars of a pair share a byte index, and the first is wanted, so find the first index that isn't smaller
+        int low = 0;
+        int high = string.length();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (byteIndices[mid] < byteIndex) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return byteIndices[low] == byteIndex ? low : -1;
+    }
+
+    /**
+     * Get the byte index at which a match starting at the char index starts.
+     */
+    public int startIndex(int charIndex) {
+        return byteIndices == null ? offset + charIndex : byteIndices[charIndex];
+    }
+
+    /**
+     * Get the byte index at which a match ending at the char index ends. A match ending between the chars of a pair
+     * ends after the pair.
+     */
+    public int endIndex(int charIndex) {
+        if (byteIndices == null) {
+            return offset + charIndex;
+        }
+        if (charIndex > 0 && charIndex < string.length() && byteIndices[charIndex] == byteIndices[charIndex - 1]) {
+            return byteIndices[charIndex + 1];
+        }
+        return byteIndices[charIndex];
+    }
+
+    /**
+     * Convert the indices of a match in the String to byte indices.
+     */
+    public MatchResult toBytes(MatchResult result) {
+        if (!result.matched) {
+            return result;
+        }
+        return MatchResult.success(startIndex(result.start), endIndex(result.end));
+    }
+}
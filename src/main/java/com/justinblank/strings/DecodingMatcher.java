@@ -0,0 +1,65 @@
+package com.justinblank.strings;
+
+import java.util.Objects;
+
+/**
+ * A matcher for bytes, for patterns that can only match Strings. The bytes are decoded once, and searches from a byte
+ * index search the decoded String from the corresponding char, so that finding successive matches takes linear time.
+ */
+class DecodingMatcher implements Matcher {
+
+    private final Pattern pattern;
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    private final ByteEncoding encoding;
+    // all the bytes, decoded the first time they're needed, and a matcher for them
+    private DecodedBytes decoded;
+    private Matcher matcher;
+
+    DecodingMatcher(Pattern pattern, byte[] bytes, int offset, int length, ByteEncoding encoding) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        this.pattern = pattern;
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.encoding = Objects.requireNonNull(encoding);
+    }
+
+    private Matcher decodedMatcher() {
+        if (matcher == null) {
+            decoded = DecodedBytes.decode(bytes, offset, length, encoding);
+            matcher = pattern.matcher(decoded.string());
+        }
+        return matcher;
+    }
+
+    @Override
+    public boolean matches() {
+        return decodedMatcher().matches();
+    }
+
+    @Override
+    public boolean containedIn() {
+        return decodedMatcher().containedIn();
+    }
+
+    @Override
+    public MatchResult find() {
+        return find(offset);
+    }
+
+    @Override
+    public MatchResult find(int from) {
+        Objects.checkFromToIndex(offset, from, offset + length);
+        Matcher matcher = decodedMatcher();
+        int charIndex = decoded.charIndex(from);
+        if (charIndex >= 0) {
+            return decoded.toBytes(matcher.find(charIndex));
+        }
+        // UTF-8 is decoded from the starting index, the same as engines that match bytes directly, so starting inside
+        // a sequence gives different chars
+        DecodedBytes remaining = DecodedBytes.decode(bytes, from, offset + length - from, encoding);
+        return remaining.toBytes(pattern.matcher(remaining.string()).find());
+    }
+}
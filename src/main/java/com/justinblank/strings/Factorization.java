@@ -108,12 +108,13 @@ public class Factorization {
     }
 
     /**
-     * Union does set union on all the components of a factorization. For any component, if either side is null,
-     * then the result is null.
+     * Union does set union on all the components of a factorization. For any component, if either side is null or
+     * empty, we know nothing about that side, so the result is null. The exception is that the empty string is a
+     * factor, prefix and suffix of every string, so if either side contains it, the result is just the empty string.
      * @param factorization the other factorization
      */
     public void union(Factorization factorization) {
-        if (this.all == null || factorization.all == null) {
+        if (isUnknown(this.all) || isUnknown(factorization.all)) {
             all = null;
         }
         else {
@@ -121,30 +122,25 @@ public class Factorization {
             newAll.addAll(factorization.all);
             all = newAll;
         }
-        if (this.prefixes == null || factorization.prefixes == null) {
-            prefixes = null;
-        }
-        else {
-            Set<String> newPrefixes = new HashSet<>(prefixes);
-            newPrefixes.addAll(factorization.prefixes);
-            prefixes = newPrefixes;
-        }
-        if (this.suffixes == null || factorization.suffixes == null) {
-            suffixes = null;
-        }
-        else {
-            Set<String> newSuffixes = new HashSet<>(suffixes);
-            newSuffixes.addAll(factorization.suffixes);
-            suffixes = newSuffixes;
-        }
-        if (this.factors == null || factorization.factors == null) {
-            factors = null;
-        }
-        else {
-            Set<String> newFactors = new HashSet<>(factors);
-            newFactors.addAll(factorization.factors);
-            factors = newFactors;
+        prefixes = unionStrings(prefixes, factorization.prefixes);
+        suffixes = unionStrings(suffixes, factorization.suffixes);
+        factors = unionStrings(factors, factorization.factors);
+    }
+
+    private static Set<String> unionStrings(Set<String> set1, Set<String> set2) {
+        if (isUnknown(set1) || isUnknown(set2)) {
+            if ((set1 != null && set1.contains("")) || (set2 != null && set2.contains(""))) {
+                return new HashSet<>(Set.of(""));
+            }
+            return null;
         }
+        Set<String> union = new HashSet<>(set1);
+        union.addAll(set2);
+        return union;
+    }
+
+    private static boolean isUnknown(Set<String> strings) {
+        return strings == null || strings.isEmpty();
     }
 
     public void concatenate(Factorization factorization) {
@@ -260,6 +256,10 @@ public class Factorization {
         }
         Set<Character> prefixChars = new HashSet<>();
         for (String prefix : prefixes) {
+            // an empty prefix means that the regex can match without consuming any particular char
+            if (prefix.isEmpty()) {
+                return Optional.empty();
+            }
             prefixChars.add(prefix.charAt(0));
         }
         List<Character> chars = new ArrayList<>(prefixChars);
@@ -0,0 +1,45 @@
+package com.justinblank.strings;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * A pattern whose matchers are instances of a class generated by {@link DFACompiler}. All compiled regexes share this
+ * class, and create matchers through a handle to the constructor of their generated class, so that compiling a regex
+ * only defines a single class.
+ */
+class GeneratedPattern implements Pattern {
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(void.class, String.class);
+    private static final MethodType FACTORY_TYPE = MethodType.methodType(Matcher.class, String.class);
+
+    private final MethodHandle factory;
+
+    GeneratedPattern(Class<?> matcherClass) {
+        if (!Matcher.class.isAssignableFrom(matcherClass)) {
+            throw new IllegalArgumentException("Class " + matcherClass.getName() + " does not implement Matcher");
+        }
+        try {
+            this.factory = MethodHandles.publicLookup().findConstructor(matcherClass, CONSTRUCTOR_TYPE)
+                    .asType(FACTORY_TYPE);
+        }
+        catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Class " + matcherClass.getName() + " has no public String constructor", e);
+        }
+    }
+
+    @Override
+    public Matcher matcher(String s) {
+        try {
+            return (Matcher) factory.invokeExact(s);
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            // the generated constructor doesn't throw checked exceptions
+            throw new IllegalStateException(t);
+        }
+    }
+}
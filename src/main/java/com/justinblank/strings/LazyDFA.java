@@ -0,0 +1,405 @@
+package com.justinblank.strings;
+
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.strings.Search.SearchMethod;
+import com.justinblank.strings.Search.SearchMethodUtil;
+
+import java.util.*;
+
+import static com.justinblank.strings.RegexInstr.Opcode.*;
+
+/**
+ * A DFA that is built from the NFA while matching, rather than ahead of time. Each DFA state is created the first time
+ * it is reached, and its transitions are stored in a table indexed by state and char class, so that once a state has
+ * been seen, a transition costs the same as in a {@link TableDFA}.
+ *
+ * The number of cached states is bounded. When the cache fills, it is flushed, and states are rebuilt as they're
+ * needed. If the cache is flushed before enough chars have been read with it since it was last empty, the pattern is
+ * assumed to be one where the DFA would blow up, and the search falls back to simulating the NFA. The chars are counted
+ * across searches, so a cache filled by earlier searches doesn't make a new search look like it's thrashing.
+ *
+ * Since the cache is shared between searches, searches on a single instance are synchronized.
+ */
+public class LazyDFA implements SearchMethod {
+
+    static final int DEFAULT_MAX_STATES = 1024;
+    // If a flush happens before we've read this many chars per cached state, the cache is thrashing
+    static final int MIN_CHARS_PER_STATE = 10;
+
+    private static final int INITIAL_STATE = 0;
+    private static final int DEAD_STATE = -1;
+    private static final int UNKNOWN_STATE = -2;
+    private static final int THRASHED = -2;
+
+    private final NFA nfa;
+    private final CharClasses charClasses;
+    private final StateCache forwards;
+    private final StateCache search;
+    private final StateCache reversed;
+    private Prefilter prefilter;
+    private int fallbacks;
+
+    private LazyDFA(NFA nfa, NFA reversedNFA, int maxStates) {
+        this.nfa = nfa;
+        this.charClasses = nfa.charClasses();
+        this.forwards = new StateCache(nfa, charClasses.classCount(), maxStates, false);
+        this.search = new StateCache(nfa, charClasses.classCount(), maxStates, true);
+        this.reversed = new StateCache(reversedNFA, charClasses.classCount(), maxStates, false);
+    }
+
+    public static LazyDFA compile(String regex) {
+        return compile(regex, DEFAULT_MAX_STATES);
+    }
+
+    /**
+     * Create a lazy DFA for the regex.
+     *
+     * @param regex     the regex
+     * @param maxStates the maximum number of states to cache for each of the automata used for matching and searching
+     * @return the lazy DFA
+     */
+    public static LazyDFA compile(String regex, int maxStates) {
+        if (maxStates < 2) {
+            throw new IllegalArgumentException("maxStates must be at least 2, got " + maxStates);
+        }
+        Node node = RegexParser.parse(regex);
+        NFA nfa = new NFA(RegexInstrBuilder.createNFA(node));
+        NFA reversedNFA = new NFA(RegexInstrBuilder.createNFA(node.reversed()));
+        LazyDFA lazyDFA = new LazyDFA(nfa, reversedNFA, maxStates);
+        lazyDFA.prefilter = Prefilter.create(node).orElse(null);
+        return lazyDFA;
+    }
+
+    public synchronized boolean matches(String s) {
+        int matchEnd = findEnd(forwards, s, 0, s.length());
+        if (matchEnd == THRASHED) {
+            fallbacks++;
+            return nfa.matches(s);
+        }
+        return matchEnd == s.length();
+    }
+
+    @Override
+    public synchronized MatchResult find(String s, int start, int end, boolean anchored) {
+        SearchMethodUtil.checkIndices(s, start, end);
+        int matchEnd;
+        if (anchored) {
+            matchEnd = findEnd(forwards, s, start, end);
+            if (matchEnd == THRASHED) {
+                fallbacks++;
+                return nfa.find(s, start, end, true);
+            }
+            if (matchEnd == -1) {
+                return MatchResult.failure();
+            }
+            return MatchResult.success(start, matchEnd);
+        }
+        if (prefilter != null) {
+            return prefilter.find(s, start, end, this::search);
+        }
+        return search(s, start, end);
+    }
+
+    private MatchResult search(String s, int start, int end) {
+        int matchEnd = findEnd(search, s, start, end);
+        if (matchEnd == THRASHED) {
+            fallbacks++;
+            return nfa.find(s, start, end, false);
+        }
+        if (matchEnd == -1) {
+            return MatchResult.failure();
+        }
+        int matchStart = findStart(s, start, matchEnd);
+        if (matchStart == THRASHED) {
+            fallbacks++;
+            return nfa.find(s, start, end, false);
+        }
+        return MatchResult.success(matchStart, matchEnd);
+    }
+
+    /**
+     * Run the given automaton forward from start, returning the last index at which it was in an accepting state, -1
+     * if it never accepted, or THRASHED if the cache thrashed.
+     */
+    private int findEnd(StateCache cache, String s, int start, int end) {
+        int classCount = cache.classCount;
+        int[] transitions = cache.transitions;
+        boolean[] accepting = cache.accepting;
+        int state = cache.initialState();
+        int lastMatch = accepting[state] ? start : -1;
+        // where the cache was last flushed, counting the chars read in earlier searches as if they came before start
+        long lastFlush = start - cache.charsSinceFlush;
+        int i = start;
+        while (i < end) {
+            char c = s.charAt(i);
+            int charClass = charClasses.classOf(c);
+            int next = transitions[state * classCount + charClass];
+            if (next == UNKNOWN_STATE) {
+                int flushes = cache.flushes;
+                next = cache.computeTransition(state, charClass, c);
+                if (cache.flushes != flushes) {
+                    if (i - lastFlush < MIN_CHARS_PER_STATE * cache.maxStates) {
+                        return THRASHED;
+                    }
+                    lastFlush = i;
+                }
+            }
+            state = next;
+            i++;
+            if (state == DEAD_STATE) {
+                break;
+            }
+            if (accepting[state]) {
+                lastMatch = i;
+            }
+        }
+        cache.charsSinceFlush = i - lastFlush;
+        return lastMatch;
+    }
+
+    /**
+     * Run the reversed automaton backward from the end of a match, returning the earliest index at which the match
+     * could have started, or THRASHED if the cache thrashed.
+     */
+    private int findStart(String s, int start, int matchEnd) {
+        int classCount = reversed.classCount;
+        int[] transitions = reversed.transitions;
+        boolean[] accepting = reversed.accepting;
+        int state = reversed.initialState();
+        int lastMatch = accepting[state] ? matchEnd : -1;
+        long lastFlush = matchEnd + reversed.charsSinceFlush;
+        int i = matchEnd;
+        while (i > start) {
+            i--;
+            char c = s.charAt(i);
+            int charClass = charClasses.classOf(c);
+            int next = transitions[state * classCount + charClass];
+            if (next == UNKNOWN_STATE) {
+                int flushes = reversed.flushes;
+                next = reversed.computeTransition(state, charClass, c);
+                if (reversed.flushes != flushes) {
+                    if (lastFlush - i < MIN_CHARS_PER_STATE * reversed.maxStates) {
+                        return THRASHED;
+                    }
+                    lastFlush = i;
+                }
+            }
+            state = next;
+            if (state == DEAD_STATE) {
+                break;
+            }
+            if (accepting[state]) {
+                lastMatch = i;
+            }
+        }
+        reversed.charsSinceFlush = lastFlush - i;
+        return lastMatch;
+    }
+
+    int cachedStates() {
+        return forwards.size + search.size + reversed.size;
+    }
+
+    int flushes() {
+        return forwards.flushes + search.flushes + reversed.flushes;
+    }
+
+    int fallbacks() {
+        return fallbacks;
+    }
+
+    /**
+     * Get the number of bytes the transition tables of the caches take up, which is allocated up front, so it is also
+     * as large as they can grow.
+     */
+    int maxTableSize() {
+        long size = 0;
+        for (StateCache cache : List.of(forwards, search, reversed)) {
+            size += (long) cache.transitions.length * Integer.BYTES + cache.accepting.length;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The states and transitions built so far for one automaton. States are numbered in the order they're created,
+     * and transitions that haven't been computed yet are marked as unknown.
+     */
+    private static class StateCache {
+        final NFA nfa;
+        final int classCount;
+        final int maxStates;
+        // whether a new thread is started at every index, as in an unanchored search
+        final boolean unanchored;
+        final int[] transitions;
+        final boolean[] accepting;
+        final StateKey[] keys;
+        final Map<StateKey, Integer> stateNumbers = new HashMap<>();
+        final StateKey initialKey;
+        int size;
+        int flushes;
+        // the chars read with this cache, over any number of searches, since it was created or last flushed
+        long charsSinceFlush;
+
+        StateCache(NFA nfa, int classCount, int maxStates, boolean unanchored) {
+            this.nfa = nfa;
+            this.classCount = classCount;
+            this.maxStates = maxStates;
+            this.unanchored = unanchored;
+            this.transitions = new int[maxStates * classCount];
+            Arrays.fill(transitions, UNKNOWN_STATE);
+            this.accepting = new boolean[maxStates];
+            this.keys = new StateKey[maxStates];
+            Set<Integer> initialClosure = nfa.epsilonClosure(0);
+            this.initialKey = new StateKey(List.of(initialClosure), unanchored && nfa.hasAcceptingState(initialClosure));
+            stateNumber(initialKey);
+        }
+
+        /**
+         * Get the initial state, which is always cached as state zero, so that starting a search never needs to add a
+         * state to a full cache.
+         */
+        int initialState() {
+            return INITIAL_STATE;
+        }
+
+        /**
+         * Compute, and cache, the transition from the given state on a char. Any char in the same char class would
+         * give the same result. If the cache is full, it is flushed before the new state is added, so the numbers of
+         * all existing states other than the initial state become invalid.
+         */
+        int computeTransition(int state, int charClass, char c) {
+            StateKey next = step(keys[state], c);
+            if (next == null) {
+                transitions[state * classCount + charClass] = DEAD_STATE;
+                return DEAD_STATE;
+            }
+            Integer existing = stateNumbers.get(next);
+            if (existing == null && size == maxStates) {
+                flush();
+                return stateNumber(next);
+            }
+            int target = stateNumber(next);
+            transitions[state * classCount + charClass] = target;
+            return target;
+        }
+
+        private int stateNumber(StateKey key) {
+            Integer existing = stateNumbers.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            int number = size++;
+            keys[number] = key;
+            accepting[number] = key.accepting(nfa);
+            stateNumbers.put(key, number);
+            return number;
+        }
+
+        private void flush() {
+            flushes++;
+            charsSinceFlush = 0;
+            size = 0;
+            stateNumbers.clear();
+            Arrays.fill(keys, null);
+            Arrays.fill(transitions, UNKNOWN_STATE);
+            stateNumber(initialKey);
+        }
+
+        /**
+         * Follow the NFA threads in the given state on a char, keeping each NFA state only in the earliest group that
+         * reaches it, and dropping any groups after the first that matches, since they can only produce later
+         * matches. This is the same construction that {@link SearchDFACompiler} uses ahead of time.
+         */
+        private StateKey step(StateKey current, char c) {
+            Set<Integer> seen = new HashSet<>();
+            List<Set<Integer>> groups = new ArrayList<>();
+            boolean matchSeen = current.matchSeen;
+            for (int[] group : current.groups) {
+                List<Integer> moves = new ArrayList<>();
+                for (int nfaState : group) {
+                    RegexInstr instr = nfa.regexInstrs[nfaState];
+                    if (instr.opcode == CHAR_RANGE && instr.start <= c && instr.end >= c) {
+                        moves.add(nfaState + 1);
+                    }
+                }
+                Set<Integer> next = nfa.epsilonClosure(moves);
+                next.removeAll(seen);
+                if (!next.isEmpty()) {
+                    seen.addAll(next);
+                    groups.add(next);
+                    if (unanchored && nfa.hasAcceptingState(next)) {
+                        matchSeen = true;
+                        break;
+                    }
+                }
+            }
+            if (unanchored && !matchSeen) {
+                Set<Integer> restart = new HashSet<>(initialKey.toSet(0));
+                restart.removeAll(seen);
+                if (!restart.isEmpty()) {
+                    groups.add(restart);
+                }
+            }
+            if (groups.isEmpty()) {
+                return null;
+            }
+            return new StateKey(groups, matchSeen);
+        }
+    }
+
+    /**
+     * The NFA states that make up a DFA state, as a list of groups ordered by the index at which their threads began.
+     */
+    private static class StateKey {
+        final int[][] groups;
+        final boolean matchSeen;
+        private final int hashCode;
+
+        StateKey(List<Set<Integer>> groups, boolean matchSeen) {
+            this.groups = new int[groups.size()][];
+            for (int i = 0; i < groups.size(); i++) {
+                int[] group = new int[groups.get(i).size()];
+                int j = 0;
+                for (Integer nfaState : groups.get(i)) {
+                    group[j++] = nfaState;
+                }
+                Arrays.sort(group);
+                this.groups[i] = group;
+            }
+            this.matchSeen = matchSeen;
+            this.hashCode = 31 * Arrays.deepHashCode(this.groups) + Boolean.hashCode(matchSeen);
+        }
+
+        Set<Integer> toSet(int group) {
+            Set<Integer> set = new HashSet<>();
+            for (int nfaState : groups[group]) {
+                set.add(nfaState);
+            }
+            return set;
+        }
+
+        boolean accepting(NFA nfa) {
+            for (int[] group : groups) {
+                for (int nfaState : group) {
+                    if (nfa.regexInstrs[nfaState].opcode == MATCH) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            StateKey that = (StateKey) o;
+            return matchSeen == that.matchSeen && Arrays.deepEquals(groups, that.groups);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -6,4 +6,16 @@ public interface Matcher {
 
     // TODO: this is a really weird interface
     boolean containedIn();
+
+    default MatchResult find() {
+        return find(0);
+    }
+
+    /**
+     * Find the leftmost-longest match that starts at or after the given index.
+     *
+     * @param from the index to start searching from
+     * @return the result of the search
+     */
+    MatchResult find(int from);
 }
@@ -4,7 +4,19 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.*;
 
-// This implements Hopcroft's Minimization Algorithm
+/**
+ * Minimizes DFAs.
+ *
+ * {@link #minimizeDFA(DFA)} uses Valmari and Lehtinen's variant of Hopcroft's algorithm, from "Efficient Minimization
+ * of DFAs with Partial Transition Functions", which runs in O(m log n) time for m transitions and n states. The
+ * transitions are labelled with the char classes of the DFA, rather than with chars, and both the states and the
+ * transitions are kept in refinable partitions made of int arrays. Since our DFAs have partial transition functions,
+ * states that can't reach an accepting state are removed first, as the algorithm requires, which also removes them
+ * from the result.
+ *
+ * The previous implementation, which repeatedly splits groups of states by comparing their transitions pairwise, is
+ * kept as {@link #minimizeDFAByPairwiseSplitting(DFA)} for comparison.
+ */
 class MinimizeDFA {
 
     private int state = 1; // Account for the fact that root will be 0
@@ -13,6 +25,166 @@ class MinimizeDFA {
     private static int successfulSplits = 0;
 
     protected static DFA minimizeDFA(DFA dfa) {
+        return minimizeDFA(dfa, CompileBudget.UNLIMITED);
+    }
+
+    /**
+     * Minimize a DFA, abandoning the minimization if time runs out.
+     *
+     * @param dfa    the root of the DFA
+     * @param budget the budget
+     * @return the root of the minimized DFA
+     * @throws CompileBudgetExceededException if time runs out
+     */
+    static DFA minimizeDFA(DFA dfa, CompileBudget budget) {
+        assert dfa.isRoot();
+        budget.checkTime();
+        List<DFA> states = new ArrayList<>(dfa.allStates());
+        states.sort(Comparator.comparingInt(DFA::getStateNumber));
+        Map<DFA, Integer> indices = new IdentityHashMap<>();
+        List<CharRange> ranges = new ArrayList<>();
+        for (int i = 0; i < states.size(); i++) {
+            indices.put(states.get(i), i);
+            for (Pair<CharRange, DFA> transition : states.get(i).getTransitions()) {
+                ranges.add(transition.getLeft());
+            }
+        }
+        CharClasses charClasses = CharClasses.fromRanges(ranges);
+        Transitions transitions = new Transitions(states, indices, charClasses);
+        budget.checkTime();
+
+        boolean[] relevant = transitions.relevantStates(states, indices.get(dfa));
+        if (!relevant[indices.get(dfa)]) {
+            // no state can reach an accepting state, so the DFA matches nothing
+            return DFA.root(false);
+        }
+        int[] stateNumbers = new int[states.size()];
+        int stateCount = 0;
+        for (int i = 0; i < states.size(); i++) {
+            stateNumbers[i] = relevant[i] ? stateCount++ : -1;
+        }
+        transitions = transitions.restrict(stateNumbers, stateCount);
+
+        RefinablePartition blocks = new RefinablePartition(stateCount);
+        for (int i = 0; i < states.size(); i++) {
+            if (relevant[i] && states.get(i).isAccepting()) {
+                blocks.mark(stateNumbers[i]);
+            }
+        }
+        blocks.split();
+        splitByMatchingPatterns(states, stateNumbers, blocks);
+        RefinablePartition cords = transitions.partitionByLabel(charClasses.classCount());
+        int[][] incoming = transitions.incoming(stateCount);
+        int[] incomingOffsets = incoming[0];
+        int[] incomingTransitions = incoming[1];
+
+        // block 0 never needs to be used as a splitter, since its splits are implied by the splits of the others
+        int block = 1;
+        int cord = 0;
+        while (cord < cords.setCount) {
+            for (int i = cords.firsts[cord]; i < cords.pasts[cord]; i++) {
+                blocks.mark(transitions.tails[cords.elements[i]]);
+            }
+            blocks.split();
+            cord++;
+            // each pass is cheap, so only look at the clock every so often
+            if ((cord & 0xFF) == 0) {
+                budget.checkTime();
+            }
+            while (block < blocks.setCount) {
+                for (int i = blocks.firsts[block]; i < blocks.pasts[block]; i++) {
+                    int target = blocks.elements[i];
+                    for (int j = incomingOffsets[target]; j < incomingOffsets[target + 1]; j++) {
+                        cords.mark(incomingTransitions[j]);
+                    }
+                }
+                cords.split();
+                block++;
+            }
+        }
+        budget.checkTime();
+        return buildMinimalDFA(dfa, states, indices, stateNumbers, blocks);
+    }
+
+    /**
+     * For DFAs built for a {@link RegexSet}, states are only equivalent if the same patterns match in them, so split
+     * the accepting states by their patterns.
+     */
+    private static void splitByMatchingPatterns(List<DFA> states, int[] stateNumbers, RefinablePartition blocks) {
+        Map<List<Integer>, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < states.size(); i++) {
+            int[] patterns = states.get(i).getMatchingPatterns();
+            if (stateNumbers[i] >= 0 && patterns != null) {
+                List<Integer> key = new ArrayList<>(patterns.length);
+                for (int pattern : patterns) {
+                    key.add(pattern);
+                }
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(stateNumbers[i]);
+            }
+        }
+        if (groups.size() < 2) {
+            return;
+        }
+        for (List<Integer> group : groups.values()) {
+            for (int state : group) {
+                blocks.mark(state);
+            }
+            blocks.split();
+        }
+    }
+
+    /**
+     * Build a DFA with a state for each block, taking the transitions of each block from one of its states.
+     */
+    private static DFA buildMinimalDFA(DFA dfa, List<DFA> states, Map<DFA, Integer> indices, int[] stateNumbers,
+                                       RefinablePartition blocks) {
+        DFA[] minimizedStates = new DFA[blocks.setCount];
+        DFA[] representatives = new DFA[blocks.setCount];
+        for (int i = 0; i < states.size(); i++) {
+            if (stateNumbers[i] >= 0) {
+                int block = blocks.sets[stateNumbers[i]];
+                if (representatives[block] == null) {
+                    representatives[block] = states.get(i);
+                }
+            }
+        }
+        int rootBlock = blocks.sets[stateNumbers[indices.get(dfa)]];
+        DFA minimalRoot = DFA.root(representatives[rootBlock].isAccepting());
+        minimalRoot.setMatchingPatterns(representatives[rootBlock].getMatchingPatterns());
+        minimizedStates[rootBlock] = minimalRoot;
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.add(rootBlock);
+        int nextStateNumber = 1;
+        while (!pending.isEmpty()) {
+            int block = pending.poll();
+            for (Pair<CharRange, DFA> transition : representatives[block].getTransitions()) {
+                int target = stateNumbers[indices.get(transition.getRight())];
+                if (target < 0) {
+                    continue;
+                }
+                int targetBlock = blocks.sets[target];
+                if (minimizedStates[targetBlock] == null) {
+                    minimizedStates[targetBlock] = new DFA(minimalRoot, representatives[targetBlock].isAccepting(),
+                            nextStateNumber++);
+                    minimizedStates[targetBlock].setMatchingPatterns(representatives[targetBlock].getMatchingPatterns());
+                    pending.add(targetBlock);
+                }
+                minimizedStates[block].addTransition(transition.getLeft(), minimizedStates[targetBlock]);
+            }
+        }
+        assert minimalRoot.statesCount() == blocks.setCount;
+        assert minimalRoot.checkRep();
+        return minimalRoot;
+    }
+
+    /**
+     * Minimize a DFA with the previous implementation, which is quadratic in the number of states in the worst case.
+     * States are only merged if their transitions have identical ranges.
+     *
+     * @param dfa the root of the DFA
+     * @return the root of the minimized DFA
+     */
+    static DFA minimizeDFAByPairwiseSplitting(DFA dfa) {
         MinimizeDFA minimizer = new MinimizeDFA();
         Map<DFA, Set<DFA>> partition = minimizer.createPartition(dfa);
         Map<Set<DFA>, DFA> newDFAMap = new IdentityHashMap<>();
@@ -232,4 +404,270 @@ class MinimizeDFA {
             this.queue = queue;
         }
     }
+
+    /**
+     * The transitions of a DFA, with one transition for each char class in each range, stored as parallel arrays of
+     * source state, char class and target state.
+     */
+    static class Transitions {
+        final int count;
+        final int[] tails;
+        final int[] labels;
+        final int[] heads;
+
+        private Transitions(int count, int[] tails, int[] labels, int[] heads) {
+            this.count = count;
+            this.tails = tails;
+            this.labels = labels;
+            this.heads = heads;
+        }
+
+        Transitions(List<DFA> states, Map<DFA, Integer> indices, CharClasses charClasses) {
+            int count = 0;
+            for (DFA state : states) {
+                for (Pair<CharRange, DFA> transition : state.getTransitions()) {
+                    CharRange range = transition.getLeft();
+                    count += 1 + charClasses.classOf(range.getEnd()) - charClasses.classOf(range.getStart());
+                }
+            }
+            this.count = count;
+            this.tails = new int[count];
+            this.labels = new int[count];
+            this.heads = new int[count];
+            int t = 0;
+            for (int i = 0; i < states.size(); i++) {
+                for (Pair<CharRange, DFA> transition : states.get(i).getTransitions()) {
+                    CharRange range = transition.getLeft();
+                    int head = indices.get(transition.getRight());
+                    int end = charClasses.classOf(range.getEnd());
+                    for (int charClass = charClasses.classOf(range.getStart()); charClass <= end; charClass++) {
+                        tails[t] = i;
+                        labels[t] = charClass;
+                        heads[t] = head;
+                        t++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Find the states that are reachable from the root, and from which an accepting state is reachable.
+         */
+        boolean[] relevantStates(List<DFA> states, int root) {
+            int[][] outgoing = adjacency(tails, heads, states.size());
+            boolean[] reachable = search(outgoing, new int[]{root}, states.size());
+            int[] accepting = new int[states.size()];
+            int acceptingCount = 0;
+            for (int i = 0; i < states.size(); i++) {
+                if (reachable[i] && states.get(i).isAccepting()) {
+                    accepting[acceptingCount++] = i;
+                }
+            }
+            int[][] incoming = adjacency(heads, tails, states.size());
+            boolean[] relevant = search(incoming, Arrays.copyOf(accepting, acceptingCount), states.size());
+            for (int i = 0; i < relevant.length; i++) {
+                relevant[i] &= reachable[i];
+            }
+            return relevant;
+        }
+
+        /**
+         * Get the transitions between relevant states, renumbering the states.
+         */
+        Transitions restrict(int[] stateNumbers, int stateCount) {
+            int kept = 0;
+            int[] newTails = new int[count];
+            int[] newLabels = new int[count];
+            int[] newHeads = new int[count];
+            for (int t = 0; t < count; t++) {
+                int tail = stateNumbers[tails[t]];
+                int head = stateNumbers[heads[t]];
+                if (tail >= 0 && head >= 0) {
+                    newTails[kept] = tail;
+                    newLabels[kept] = labels[t];
+                    newHeads[kept] = head;
+                    kept++;
+                }
+            }
+            return new Transitions(kept, newTails, newLabels, newHeads);
+        }
+
+        /**
+         * Create a partition of the transitions, with one set for each label that is used.
+         */
+        RefinablePartition partitionByLabel(int labelCount) {
+            RefinablePartition partition = new RefinablePartition(count);
+            if (count == 0) {
+                return partition;
+            }
+            int[] offsets = new int[labelCount + 1];
+            for (int t = 0; t < count; t++) {
+                offsets[labels[t] + 1]++;
+            }
+            for (int i = 0; i < labelCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] next = Arrays.copyOf(offsets, labelCount);
+            for (int t = 0; t < count; t++) {
+                int location = next[labels[t]]++;
+                partition.elements[location] = t;
+                partition.locations[t] = location;
+            }
+            partition.setCount = 0;
+            for (int label = 0; label < labelCount; label++) {
+                if (offsets[label] == offsets[label + 1]) {
+                    continue;
+                }
+                int set = partition.setCount++;
+                partition.firsts[set] = offsets[label];
+                partition.pasts[set] = offsets[label + 1];
+                for (int i = offsets[label]; i < offsets[label + 1]; i++) {
+                    partition.sets[partition.elements[i]] = set;
+                }
+            }
+            return partition;
+        }
+
+        /**
+         * Group the transitions by target state, returning the offsets of each state's group, followed by the groups.
+         */
+        int[][] incoming(int stateCount) {
+            return adjacencyTransitions(heads, stateCount);
+        }
+
+        private int[][] adjacency(int[] from, int[] to, int stateCount) {
+            int[][] grouped = adjacencyTransitions(from, stateCount);
+            int[] targets = new int[count];
+            for (int i = 0; i < count; i++) {
+                targets[i] = to[grouped[1][i]];
+            }
+            return new int[][]{grouped[0], targets};
+        }
+
+        private int[][] adjacencyTransitions(int[] from, int stateCount) {
+            int[] offsets = new int[stateCount + 1];
+            for (int t = 0; t < count; t++) {
+                offsets[from[t] + 1]++;
+            }
+            for (int i = 0; i < stateCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] next = Arrays.copyOf(offsets, stateCount);
+            int[] grouped = new int[count];
+            for (int t = 0; t < count; t++) {
+                grouped[next[from[t]]++] = t;
+            }
+            return new int[][]{offsets, grouped};
+        }
+
+        private static boolean[] search(int[][] adjacency, int[] initial, int stateCount) {
+            int[] offsets = adjacency[0];
+            int[] targets = adjacency[1];
+            boolean[] seen = new boolean[stateCount];
+            int[] stack = new int[stateCount];
+            int top = 0;
+            for (int state : initial) {
+                if (!seen[state]) {
+                    seen[state] = true;
+                    stack[top++] = state;
+                }
+            }
+            while (top > 0) {
+                int state = stack[--top];
+                for (int i = offsets[state]; i < offsets[state + 1]; i++) {
+                    int target = targets[i];
+                    if (!seen[target]) {
+                        seen[target] = true;
+                        stack[top++] = target;
+                    }
+                }
+            }
+            return seen;
+        }
+    }
+
+    /**
+     * A partition of the ints from 0 to n - 1 that can be refined by marking elements, then splitting every set that
+     * contains marked elements into its marked and unmarked parts. The elements of each set are stored contiguously,
+     * with the marked elements first, so marking an element and splitting a set take time proportional to the number
+     * of elements marked.
+     */
+    static class RefinablePartition {
+        int setCount;
+        // the elements, grouped by set
+        final int[] elements;
+        // the index of each element in elements
+        final int[] locations;
+        // the set containing each element
+        final int[] sets;
+        // the range of each set in elements
+        final int[] firsts;
+        final int[] pasts;
+        // the number of marked elements in each set
+        final int[] marked;
+        final int[] touched;
+        int touchedCount;
+
+        RefinablePartition(int size) {
+            elements = new int[size];
+            locations = new int[size];
+            sets = new int[size];
+            firsts = new int[Math.max(size, 1)];
+            pasts = new int[Math.max(size, 1)];
+            marked = new int[Math.max(size, 1)];
+            touched = new int[Math.max(size, 1)];
+            setCount = size > 0 ? 1 : 0;
+            for (int i = 0; i < size; i++) {
+                elements[i] = i;
+                locations[i] = i;
+            }
+            pasts[0] = size;
+        }
+
+        void mark(int element) {
+            int set = sets[element];
+            int location = locations[element];
+            int firstUnmarked = firsts[set] + marked[set];
+            if (location < firstUnmarked) {
+                return;
+            }
+            elements[location] = elements[firstUnmarked];
+            locations[elements[location]] = location;
+            elements[firstUnmarked] = element;
+            locations[element] = firstUnmarked;
+            if (marked[set]++ == 0) {
+                touched[touchedCount++] = set;
+            }
+        }
+
+        /**
+         * Split each set with marked elements, giving the new set number to the smaller part, and clear the marks.
+         */
+        void split() {
+            while (touchedCount > 0) {
+                int set = touched[--touchedCount];
+                int firstUnmarked = firsts[set] + marked[set];
+                if (firstUnmarked == pasts[set]) {
+                    marked[set] = 0;
+                    continue;
+                }
+                if (marked[set] <= pasts[set] - firstUnmarked) {
+                    firsts[setCount] = firsts[set];
+                    pasts[setCount] = firstUnmarked;
+                    firsts[set] = firstUnmarked;
+                }
+                else {
+                    pasts[setCount] = pasts[set];
+                    firsts[setCount] = firstUnmarked;
+                    pasts[set] = firstUnmarked;
+                }
+                for (int i = firsts[setCount]; i < pasts[setCount]; i++) {
+                    sets[elements[i]] = setCount;
+                }
+                marked[set] = 0;
+                marked[setCount] = 0;
+                setCount++;
+            }
+        }
+    }
 }
@@ -8,24 +8,47 @@ import com.justinblank.strings.Search.SearchMethods;
 import com.justinblank.util.SparseSet;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.justinblank.strings.RegexInstr.Opcode.*;
 
 class NFA implements SearchMethod {
 
     RegexInstr[] regexInstrs;
+    private CharClasses charClasses;
+    private Prefilter prefilter;
+    private final Prefilter.Search unanchoredSearch = (s, start, end) -> search(s, start, end, false);
+    // Holds scratch space that no search is using, so that it can be reused without locking
+    private final AtomicReference<Scratch> idleScratch = new AtomicReference<>();
 
     protected NFA(RegexInstr[] regexInstrs) {
         this.regexInstrs = regexInstrs;
     }
 
+    /**
+     * Get the char classes of this NFA, which are shared by all automata built from it.
+     *
+     * @return the char classes
+     */
+    CharClasses charClasses() {
+        if (charClasses == null) {
+            charClasses = CharClasses.fromInstrs(regexInstrs);
+        }
+        return charClasses;
+    }
+
     public static SearchMethod createNFA(String regex) {
         Node parse = RegexParser.parse(regex);
         var factors = parse.bestFactors();
         if (factors.isComplete()) {
             return SearchMethods.makeSearchMethod(factors.getAll());
         }
-        return new NFA(RegexInstrBuilder.createNFA(parse));
+        if (BitParallelNFA.fits(parse)) {
+            return BitParallelNFA.create(parse);
+        }
+        NFA nfa = new NFA(RegexInstrBuilder.createNFA(parse));
+        nfa.prefilter = Prefilter.create(parse).orElse(null);
+        return nfa;
     }
 
     /**
@@ -59,50 +82,6 @@ class NFA implements SearchMethod {
         return find(s).matched;
     }
 
-    private MatchResult matchResult(SparseSet states, int[] stateOrigins, int currentIndex) {
-        int lastStart = Integer.MAX_VALUE;
-        for (int i = 0; i < states.size(); i++) {
-            int stateIndex = states.getByIndex(i);
-            RegexInstr instr = regexInstrs[stateIndex];
-            if (instr.opcode == JUMP) {
-                instr = regexInstrs[instr.target1];
-            }
-            if (instr.opcode == MATCH) {
-                int successOrigin = stateOrigins[stateIndex];
-                if (successOrigin <= lastStart) {
-                    lastStart = successOrigin;
-                }
-            }
-            else if (instr.opcode == SPLIT) {
-                int origin = stateOrigins[stateIndex];
-                int target1 = instr.target1;
-                if (regexInstrs[target1].opcode == MATCH) {
-                    if (origin < lastStart) {
-                        lastStart = origin;
-                    }
-                }
-                else {
-                    states.add(target1);
-                    stateOrigins[target1] = Math.min(origin, stateOrigins[target1]);
-                }
-                int target2 = instr.target2;
-                if (regexInstrs[target2].opcode == MATCH) {
-                    if (origin < lastStart) {
-                        lastStart = origin;
-                    }
-                }
-                else {
-                    states.add(target2);
-                    stateOrigins[target2] = Math.min(origin, stateOrigins[target2]);
-                }
-            }
-        }
-        if (lastStart < Integer.MAX_VALUE) {
-            return MatchResult.success(lastStart, currentIndex);
-        }
-        return MatchResult.failure();
-    }
-
     @Override
     public int findIndex(String s) {
         MatchResult result = find(s);
@@ -111,125 +90,106 @@ class NFA implements SearchMethod {
 
     public MatchResult find(String s, int start, int end, boolean anchored) {
         SearchMethodUtil.checkIndices(s, start, end);
-        int i = start;
-        int lastStart = Integer.MAX_VALUE;
-        int lastEnd = -1;
-        int size = this.regexInstrs.length;
-        SparseSet activeStates = new SparseSet(size);
-        activeStates.add(0);
-        SparseSet newStates = new SparseSet(size);
-        int[] stateOrigins = new int[size];
-        Arrays.fill(stateOrigins, Integer.MAX_VALUE);
-        stateOrigins[0] = 0;
-        int[] newStateOrigins = new int[size];
-        Arrays.fill(newStateOrigins, Integer.MAX_VALUE);
-        for (; i < end; i++) {
-            char c = s.charAt(i);
-            // If we have returned to the initial state, during the course of a match, i.e. with a*b matching "aaab", we
-            // should not override the match in progress. Otherwise, start over, to search for a match.
-            if (i == start || (stateOrigins[0] == Integer.MAX_VALUE && !anchored && lastStart == Integer.MAX_VALUE)) {
-                activeStates.add(0);
-                stateOrigins[0] = i;
-            }
-            else if (lastStart != Integer.MAX_VALUE && activeStates.size() == 0) {
-                break;
+        if (prefilter != null && !anchored) {
+            return prefilter.find(s, start, end, unanchoredSearch);
+        }
+        return search(s, start, end, anchored);
+    }
+
+    private MatchResult search(String s, int start, int end, boolean anchored) {
+        Scratch scratch = idleScratch.getAndSet(null);
+        if (scratch == null) {
+            scratch = new Scratch(regexInstrs.length);
+        }
+        try {
+            return search(scratch, s, start, end, anchored);
+        }
+        finally {
+            idleScratch.set(scratch);
+        }
+    }
+
+    /**
+     * Simulate the NFA, tracking the index at which the thread in each state started. When several threads reach the
+     * same state, only the earliest is kept, since any match the others could find, it finds with an earlier start.
+     * Once a match is found, no new threads are started, and threads that started later than the match are dropped,
+     * but the search continues until no thread remains, so that the longest match from the leftmost start is found.
+     */
+    private MatchResult search(Scratch scratch, String s, int start, int end, boolean anchored) {
+        scratch.reset();
+        SparseSet activeStates = scratch.activeStates;
+        SparseSet newStates = scratch.newStates;
+        int[] stateOrigins = scratch.stateOrigins;
+        int[] newStateOrigins = scratch.newStateOrigins;
+        int matchStart = Integer.MAX_VALUE;
+        int matchEnd = -1;
+        for (int i = start; ; i++) {
+            if (matchEnd < 0 && (i == start || !anchored)) {
+                addThread(scratch.stack, activeStates, stateOrigins, 0, i);
             }
             for (int j = 0; j < activeStates.size(); j++) {
-                int currentState = activeStates.getByIndex(j);
-                int origin = stateOrigins[currentState];
-                if (anchored && origin > start) {
-                    continue;
-                }
-                if (origin > lastStart) {
-                    continue;
-                }
-                RegexInstr instr = this.regexInstrs[currentState];
-                int target1 = instr.target1;
-                // The only way we could have a jump here is either
-                // 1) the previous iteration left it as the result of a split--but the builder ensures a jump never
-                // follows a split
-                // 2) it followed a charrange instruction, but that block handles moving to the target of the jump
-                assert instr.opcode != JUMP;
-                if (instr.opcode == SPLIT) {
-                    activeStates.add(target1);
-                    RegexInstr target1Instr = this.regexInstrs[target1];
-                    if (target1Instr.opcode != MATCH) {
-                        if (origin < stateOrigins[target1]) {
-                            stateOrigins[target1] = origin;
-                            if (activeStates.indexOf(target1) < j) {
-                                j = activeStates.indexOf(target1) - 1;
-                            }
-                        }
-                    }
-                    int target2 = instr.target2;
-                    RegexInstr target2Instr = this.regexInstrs[target2];
-                    if (target2Instr.opcode != MATCH) {
-                        activeStates.add(target2);
-                        if (origin < stateOrigins[target2]) {
-                            stateOrigins[target2] = origin;
-                            if (activeStates.indexOf(target2) < j) {
-                                j = activeStates.indexOf(target2) - 1;
-                            }
-                        }
-                    }
-                    if (target1Instr.opcode == MATCH) {
-                        instr = target1Instr;
-                    }
-                    else if (target2Instr.opcode == MATCH) {
-                        instr = target2Instr;
-                    }
-                    else {
-                        continue;
+                int state = activeStates.getByIndex(j);
+                if (regexInstrs[state].opcode == MATCH) {
+                    int origin = stateOrigins[state];
+                    if (origin < matchStart || (origin == matchStart && i > matchEnd)) {
+                        matchStart = origin;
+                        matchEnd = i;
                     }
                 }
-                if (instr.opcode == CHAR_RANGE) {
-                    if (instr.start <= c && instr.end >= c) {
-                        int next = currentState + 1;
-                        instr = this.regexInstrs[next];
-                        if (instr.opcode != MATCH) {
-                            if (instr.opcode == JUMP) {
-                                next = instr.target1;
-                            }
-                            if (this.regexInstrs[next].opcode != MATCH) {
-                                newStates.add(next);
-                                newStateOrigins[next] = Math.min(newStateOrigins[next], origin);
-                            }
-                            else {
-                                instr = this.regexInstrs[next];
-                            }
-                        }
-                    }
-                }
-                if (instr.opcode == MATCH) {
-                    if (origin <= lastStart) {
-                        lastStart = origin;
-                        lastEnd = i;
-                    }
+            }
+            if (i == end || (activeStates.size() == 0 && (matchEnd >= 0 || anchored))) {
+                break;
+            }
+            char c = s.charAt(i);
+            for (int j = 0; j < activeStates.size(); j++) {
+                int state = activeStates.getByIndex(j);
+                RegexInstr instr = regexInstrs[state];
+                int origin = stateOrigins[state];
+                if (instr.opcode == CHAR_RANGE && origin <= matchStart && instr.start <= c && instr.end >= c) {
+                    addThread(scratch.stack, newStates, newStateOrigins, state + 1, origin);
                 }
             }
-
             SparseSet tempStates = activeStates;
             activeStates = newStates;
             newStates = tempStates;
-            newStates.clear();
             int[] tempOrigins = stateOrigins;
             stateOrigins = newStateOrigins;
             newStateOrigins = tempOrigins;
-            Arrays.fill(newStateOrigins, Integer.MAX_VALUE);
+            Scratch.clear(newStates, newStateOrigins);
         }
-        // TODO: rewrite for clarity
-        MatchResult result = null;
-        if (lastEnd > -1) {
-            result = MatchResult.success(lastStart, lastEnd + 1);
+        scratch.activeStates = activeStates;
+        scratch.newStates = newStates;
+        scratch.stateOrigins = stateOrigins;
+        scratch.newStateOrigins = newStateOrigins;
+        if (matchEnd < 0) {
+            return MatchResult.failure();
         }
-        MatchResult result2 = matchResult(activeStates, stateOrigins, i);
-        if (result == null) {
-            return result2;
-        }
-        if (result.compareTo(result2) > 0) {
-            return result;
+        return MatchResult.success(matchStart, matchEnd);
+    }
+
+    /**
+     * Add a thread, and the threads reachable from it through JUMP and SPLIT instructions, to a set of states, unless
+     * each state already has a thread that started no later.
+     */
+    private void addThread(int[] stack, SparseSet states, int[] origins, int initial, int origin) {
+        int top = 0;
+        stack[top++] = initial;
+        while (top > 0) {
+            int state = stack[--top];
+            if (states.contains(state) && origins[state] <= origin) {
+                continue;
+            }
+            states.add(state);
+            origins[state] = origin;
+            RegexInstr instr = regexInstrs[state];
+            if (instr.opcode == JUMP) {
+                stack[top++] = instr.target1;
+            }
+            else if (instr.opcode == SPLIT) {
+                stack[top++] = instr.target2;
+                stack[top++] = instr.target1;
+            }
         }
-        return result2;
     }
 
     protected boolean hasAcceptingState(Collection<Integer> indices) {
@@ -280,4 +240,41 @@ class NFA implements SearchMethod {
         }
         return closure;
     }
+
+    /**
+     * The state sets and origins used by a search, which are allocated once and reused. Only states in a set may have
+     * an origin other than Integer.MAX_VALUE, so clearing a set and its origins takes time proportional to the number
+     * of states in it, rather than the size of the NFA.
+     */
+    private static class Scratch {
+        SparseSet activeStates;
+        SparseSet newStates;
+        int[] stateOrigins;
+        int[] newStateOrigins;
+        // for following JUMP and SPLIT instructions, where each state is expanded at most once per thread, pushing at
+        // most two others
+        final int[] stack;
+
+        Scratch(int size) {
+            stack = new int[2 * size + 1];
+            activeStates = new SparseSet(size);
+            newStates = new SparseSet(size);
+            stateOrigins = new int[size];
+            Arrays.fill(stateOrigins, Integer.MAX_VALUE);
+            newStateOrigins = new int[size];
+            Arrays.fill(newStateOrigins, Integer.MAX_VALUE);
+        }
+
+        void reset() {
+            clear(activeStates, stateOrigins);
+            clear(newStates, newStateOrigins);
+        }
+
+        static void clear(SparseSet states, int[] origins) {
+            for (int i = 0; i < states.size(); i++) {
+                origins[states.getByIndex(i)] = Integer.MAX_VALUE;
+            }
+            states.clear();
+        }
+    }
 }
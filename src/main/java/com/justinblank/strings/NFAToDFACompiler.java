@@ -1,77 +1,467 @@
 package com.justinblank.strings;
 
+import com.justinblank.util.SparseSet;
+
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static com.justinblank.strings.RegexInstr.Opcode.*;
 
+/**
+ * Determinizes an NFA with the subset construction.
+ *
+ * Each DFA state corresponds to a set of NFA states, represented as a sorted int[]. Only CHAR_RANGE and MATCH
+ * instructions are included in the sets, since the other instructions have no effect once their epsilon closures have
+ * been followed, so two sets that differ only in those instructions give the same DFA state. The closure of each
+ * instruction is computed once, the first time it's needed, and the sets are interned in an open-addressing table.
+ * The target of a transition depends only on which CHAR_RANGE instructions cover its chars, so the state reached from
+ * each such group of instructions is remembered too. Without that, an NFA whose states all include a large set, such as
+ * the leading loop of an unanchored {@link RegexSet}, would rebuild and hash that set for every transition.
+ *
+ * States are expanded a level of the breadth-first search at a time. Large levels are expanded concurrently in the
+ * common fork-join pool, with each task finding the transitions of its states and looking up their targets, while the
+ * table of sets is only read. New states are then created and numbered in a sequential pass over the level, so the
+ * numbering, and therefore the generated code, is the same however many threads are used.
+ */
 public class NFAToDFACompiler {
 
-    private Map<Set<Integer>, DFA> stateSets = new HashMap<>();
-    private int state = 1; // root will always be zero
-    private DFA root;
+    // levels with fewer states than this are expanded on the calling thread
+    static final int DEFAULT_PARALLEL_THRESHOLD = 256;
+    // the number of states expanded by each fork-join task
+    private static final int STATES_PER_TASK = 32;
+
     private final NFA nfa;
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private final CompileBudget budget;
+    // the epsilon closure of each instruction, restricted to CHAR_RANGE and MATCH instructions, computed lazily
+    private final AtomicReferenceArray<int[]> closures;
+    private final StateSetTable stateSets = new StateSetTable();
+    // the index of the state reached by following a sorted set of CHAR_RANGE instructions
+    private final StateSetTable targetsByActiveSet = new StateSetTable();
+    private final List<int[]> sets = new ArrayList<>();
+    private final List<DFA> dfaStates = new ArrayList<>();
+    private DFA root;
 
     NFAToDFACompiler(NFA nfa) {
+        this(nfa, ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD, CompileBudget.UNLIMITED);
+    }
+
+    NFAToDFACompiler(NFA nfa, ForkJoinPool pool, int parallelThreshold, CompileBudget budget) {
         this.nfa = nfa;
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+        this.budget = budget;
+        this.closures = new AtomicReferenceArray<>(nfa.regexInstrs.length);
     }
 
     public static DFA compile(NFA nfa) {
-        DFA dfa = new NFAToDFACompiler(nfa)._compile(nfa);
-        return MinimizeDFA.minimizeDFA(dfa);
+        return compile(nfa, CompileBudget.UNLIMITED);
+    }
+
+    /**
+     * Build the minimal DFA for an NFA, abandoning the construction if it exceeds the budget. The state limit applies
+     * to the DFA before it is minimized, since that is the one whose size determines the cost of building it, so an NFA
+     * can be rejected even though its minimal DFA is within the limit.
+     *
+     * @param nfa    the NFA
+     * @param budget the budget
+     * @return the DFA
+     * @throws CompileBudgetExceededException if the DFA has too many states, or time runs out
+     */
+    static DFA compile(NFA nfa, CompileBudget budget) {
+        DFA dfa = new NFAToDFACompiler(nfa, ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD, budget)._compile(nfa);
+        DFA minimized = MinimizeDFA.minimizeDFA(dfa, budget);
+        minimized.setCharClasses(nfa.charClasses());
+        return minimized;
     }
 
     DFA _compile(NFA nfa) {
-        Set<Integer> states = nfa.epsilonClosure(0);
-        root = DFA.root(nfa.hasAcceptingState(states));
-        addNFAStatesToDFA(states, root);
+        int[] initial = new Expander().closure(0);
+        root = DFA.root(hasAcceptingState(initial));
+        root.setMatchingPatterns(matchingPatterns(initial));
+        stateSets.put(initial, 0);
+        sets.add(initial);
+        dfaStates.add(root);
+        int levelStart = 0;
+        while (levelStart < sets.size()) {
+            int levelEnd = sets.size();
+            Expansion[] expansions = new Expansion[levelEnd - levelStart];
+            if (expansions.length < parallelThreshold || pool.getParallelism() < 2) {
+                new Expander().expand(levelStart, levelStart, levelEnd, expansions);
+            }
+            else {
+                pool.invoke(new ExpandTask(levelStart, levelStart, levelEnd, expansions));
+            }
+            for (int i = 0; i < expansions.length; i++) {
+                addTransitions(dfaStates.get(levelStart + i), expansions[i]);
+            }
+            levelStart = levelEnd;
+        }
+        sets.clear();
         return root;
     }
 
-    private void addNFAStatesToDFA(Set<Integer> states, DFA dfa) {
-        Stack<Set<Integer>> pending = new Stack<>();
-        pending.add(states);
-        while (!pending.isEmpty()) {
-            states = pending.pop();
-            DFA foundDFA = stateSets.get(states);
-            if (foundDFA != null) {
-                dfa = foundDFA;
-            }
-            Set<Integer> epsilonClosure = nfa.epsilonClosure(states);
-            List<CharRange> ranges = CharRange.minimalCovering(findCharRanges(epsilonClosure));
-            for (CharRange range : ranges) {
-                // any element of the range is equally good here, getStart()/getEnd() doesn't matter
-                Set<Integer> moves = nfa.epsilonClosure(transition(epsilonClosure, range.getStart()));
-                DFA targetDfa = stateSets.get(moves);
-                if (targetDfa == null) {
-                    pending.add(moves);
-                    boolean accepting = nfa.hasAcceptingState(moves);
-                    targetDfa = new DFA(root, accepting, state++);
-                    stateSets.put(moves, targetDfa);
+    private void addTransitions(DFA dfa, Expansion expansion) {
+        for (int i = 0; i < expansion.ranges.length; i++) {
+            int index = expansion.targetIndices[i];
+            if (index < 0) {
+                // the target was new when the level was expanded, but may have been created since
+                int[] states = expansion.targets[i];
+                index = stateSets.get(states);
+                if (index < 0) {
+                    index = dfaStates.size();
+                    budget.check(index + 1);
+                    stateSets.put(states, index);
+                    sets.add(states);
+                    DFA state = new DFA(root, hasAcceptingState(states), index);
+                    state.setMatchingPatterns(matchingPatterns(states));
+                    dfaStates.add(state);
                 }
-                dfa.addTransition(range, targetDfa);
             }
+            int[] activeSet = expansion.activeSets[i];
+            if (activeSet != null && targetsByActiveSet.get(activeSet) < 0) {
+                targetsByActiveSet.put(activeSet, index);
+            }
+            dfa.addTransition(expansion.ranges[i], dfaStates.get(index));
         }
     }
 
-    protected List<CharRange> findCharRanges(Collection<Integer> nfas) {
-        List<CharRange> ranges = new ArrayList<>();
-        for (Integer state : nfas) {
-            RegexInstr instr = nfa.regexInstrs[state];
-            if (instr.opcode == CHAR_RANGE) {
-                ranges.add(new CharRange(instr.start, instr.end));
+    private boolean hasAcceptingState(int[] states) {
+        for (int state : states) {
+            if (nfa.regexInstrs[state].opcode == MATCH) {
+                return true;
             }
         }
-        return ranges;
+        return false;
     }
 
-    protected Set<Integer> transition(Collection<Integer> nfaStates, char c) {
-        Set<Integer> transitionStates = new HashSet<>();
-        for (Integer state : nfaStates) {
+    /**
+     * Get the patterns whose MATCH instructions are in the set, for NFAs built for a {@link RegexSet}. The instructions
+     * for the patterns are laid out in order, so the patterns are found in sorted order.
+     *
+     * @return the patterns, or null if there are none
+     */
+    private int[] matchingPatterns(int[] states) {
+        int count = 0;
+        for (int state : states) {
             RegexInstr instr = nfa.regexInstrs[state];
-            if (instr.opcode == CHAR_RANGE && instr.start <= c && instr.end >= c) {
-                transitionStates.add(state + 1);
+            if (instr.opcode == MATCH && instr.target1 >= 0) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        int[] patterns = new int[count];
+        count = 0;
+        for (int state : states) {
+            RegexInstr instr = nfa.regexInstrs[state];
+            if (instr.opcode == MATCH && instr.target1 >= 0) {
+                patterns[count++] = instr.target1;
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * The transitions of a state, with the index of each target state, or -1 if it didn't exist when the state was
+     * expanded. Transitions whose targets weren't found through their active sets keep the active set, so that it can
+     * be recorded.
+     */
+    private static class Expansion {
+        final CharRange[] ranges;
+        final int[][] targets;
+        final int[] targetIndices;
+        final int[][] activeSets;
+
+        Expansion(int count) {
+            this.ranges = new CharRange[count];
+            this.targets = new int[count][];
+            this.targetIndices = new int[count];
+            this.activeSets = new int[count][];
+        }
+    }
+
+    private class ExpandTask extends RecursiveAction {
+        private final int levelStart;
+        private final int start;
+        private final int end;
+        private final Expansion[] expansions;
+
+        ExpandTask(int levelStart, int start, int end, Expansion[] expansions) {
+            this.levelStart = levelStart;
+            this.start = start;
+            this.end = end;
+            this.expansions = expansions;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= STATES_PER_TASK) {
+                new Expander().expand(levelStart, start, end, expansions);
+                return;
+            }
+            int mid = (start + end) >>> 1;
+            invokeAll(new ExpandTask(levelStart, start, mid, expansions),
+                    new ExpandTask(levelStart, mid, end, expansions));
+        }
+    }
+
+    /**
+     * Finds the transitions of states, with its own scratch space, so that expanders can run concurrently.
+     */
+    private class Expander {
+        private final SparseSet active = new SparseSet(nfa.regexInstrs.length);
+        private final SparseSet targetStates = new SparseSet(nfa.regexInstrs.length);
+        private final SparseSet closureSeen = new SparseSet(nfa.regexInstrs.length);
+        private final int[] closureStack = new int[nfa.regexInstrs.length];
+        private CharRange[] ranges = new CharRange[16];
+        private int[][] targets = new int[16][];
+        private int[] targetIndices = new int[16];
+        private int[][] activeSets = new int[16][];
+
+        /**
+         * Expand the states from start to end, storing their expansions in the array for the level, which starts at
+         * levelStart.
+         */
+        void expand(int levelStart, int start, int end, Expansion[] expansions) {
+            for (int i = start; i < end; i++) {
+                budget.checkTime();
+                expansions[i - levelStart] = expand(sets.get(i));
+            }
+        }
+
+        /**
+         * Find the transitions of a DFA state. The boundaries of the char ranges of the set's instructions split the
+         * chars into intervals that every instruction either covers entirely or not at all. Sweeping over the
+         * intervals in order, while tracking which instructions cover the current interval, gives the target set of
+         * each interval.
+         */
+        private Expansion expand(int[] states) {
+            int rangeCount = 0;
+            for (int state : states) {
+                if (nfa.regexInstrs[state].opcode == CHAR_RANGE) {
+                    rangeCount++;
+                }
             }
+            // each event is packed as (position << 32 | instruction), and ends are recorded at end + 1
+            long[] starts = new long[rangeCount];
+            long[] ends = new long[rangeCount];
+            int count = 0;
+            for (int state : states) {
+                RegexInstr instr = nfa.regexInstrs[state];
+                if (instr.opcode == CHAR_RANGE) {
+                    starts[count] = ((long) instr.start << 32) | state;
+                    ends[count] = ((long) (instr.end + 1) << 32) | state;
+                    count++;
+                }
+            }
+            Arrays.sort(starts);
+            Arrays.sort(ends);
+            active.clear();
+            int transitionCount = 0;
+            int nextStart = 0;
+            int nextEnd = 0;
+            while (nextStart < rangeCount || nextEnd < rangeCount) {
+                int position = nextPosition(starts, nextStart, ends, nextEnd);
+                while (nextEnd < rangeCount && (int) (ends[nextEnd] >>> 32) == position) {
+                    active.remove((int) ends[nextEnd++]);
+                }
+                while (nextStart < rangeCount && (int) (starts[nextStart] >>> 32) == position) {
+                    active.add((int) starts[nextStart++]);
+                }
+                if (active.size() == 0) {
+                    continue;
+                }
+                int end = nextPosition(starts, nextStart, ends, nextEnd) - 1;
+                if (transitionCount == ranges.length) {
+                    ranges = Arrays.copyOf(ranges, transitionCount * 2);
+                    targets = Arrays.copyOf(targets, transitionCount * 2);
+                    targetIndices = Arrays.copyOf(targetIndices, transitionCount * 2);
+                    activeSets = Arrays.copyOf(activeSets, transitionCount * 2);
+                }
+                ranges[transitionCount] = new CharRange((char) position, (char) end);
+                int[] activeSet = activeSet();
+                int index = targetsByActiveSet.get(activeSet);
+                if (index >= 0) {
+                    targets[transitionCount] = null;
+                    activeSets[transitionCount] = null;
+                }
+                else {
+                    targets[transitionCount] = targetStates();
+                    activeSets[transitionCount] = activeSet;
+                    index = stateSets.get(targets[transitionCount]);
+                }
+                targetIndices[transitionCount] = index;
+                transitionCount++;
+            }
+            Expansion expansion = new Expansion(transitionCount);
+            System.arraycopy(ranges, 0, expansion.ranges, 0, transitionCount);
+            System.arraycopy(targets, 0, expansion.targets, 0, transitionCount);
+            System.arraycopy(targetIndices, 0, expansion.targetIndices, 0, transitionCount);
+            System.arraycopy(activeSets, 0, expansion.activeSets, 0, transitionCount);
+            return expansion;
+        }
+
+        /**
+         * Get the active CHAR_RANGE instructions, in sorted order.
+         */
+        private int[] activeSet() {
+            int[] activeSet = new int[active.size()];
+            for (int i = 0; i < activeSet.length; i++) {
+                activeSet[i] = active.getByIndex(i);
+            }
+            Arrays.sort(activeSet);
+            return activeSet;
+        }
+
+        /**
+         * Get the set of states reached by following the transitions of the active CHAR_RANGE instructions.
+         */
+        private int[] targetStates() {
+            targetStates.clear();
+            for (int i = 0; i < active.size(); i++) {
+                for (int state : closure(active.getByIndex(i) + 1)) {
+                    targetStates.add(state);
+                }
+            }
+            int[] states = new int[targetStates.size()];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = targetStates.getByIndex(i);
+            }
+            Arrays.sort(states);
+            return states;
+        }
+
+        /**
+         * Get the CHAR_RANGE and MATCH instructions reachable from an instruction by following JUMP and SPLIT
+         * instructions, in sorted order.
+         */
+        int[] closure(int initial) {
+            int[] closure = closures.get(initial);
+            if (closure != null) {
+                return closure;
+            }
+            RegexInstr[] instrs = nfa.regexInstrs;
+            SparseSet seen = closureSeen;
+            int[] stack = closureStack;
+            seen.clear();
+            int size = 0;
+            int top = 0;
+            int[] found = new int[16];
+            seen.add(initial);
+            stack[top++] = initial;
+            while (top > 0) {
+                int state = stack[--top];
+                RegexInstr instr = instrs[state];
+                if (instr.opcode == SPLIT) {
+                    if (seen.add(instr.target2)) {
+                        stack[top++] = instr.target2;
+                    }
+                    if (seen.add(instr.target1)) {
+                        stack[top++] = instr.target1;
+                    }
+                }
+                else if (instr.opcode == JUMP) {
+                    if (seen.add(instr.target1)) {
+                        stack[top++] = instr.target1;
+                    }
+                }
+                else if (instr.opcode == CHAR_RANGE || instr.opcode == MATCH) {
+                    if (size == found.length) {
+                        found = Arrays.copyOf(found, size * 2);
+                    }
+                    found[size++] = state;
+                }
+            }
+            closure = Arrays.copyOf(found, size);
+            Arrays.sort(closure);
+            // another thread may compute the same closure, but the results are equal
+            closures.set(initial, closure);
+            return closure;
+        }
+    }
+
+    private static int nextPosition(long[] starts, int nextStart, long[] ends, int nextEnd) {
+        int position = Integer.MAX_VALUE;
+        if (nextStart < starts.length) {
+            position = (int) (starts[nextStart] >>> 32);
+        }
+        if (nextEnd < ends.length) {
+            position = Math.min(position, (int) (ends[nextEnd] >>> 32));
+        }
+        return position;
+    }
+
+    /**
+     * A map from sorted sets of NFA states to the index of their DFA states, using open addressing with linear
+     * probing. It may be read by several threads at once, as long as none is writing.
+     */
+    static class StateSetTable {
+
+        private int[][] keys = new int[64][];
+        private int[] hashes = new int[64];
+        private int[] values = new int[64];
+        private int size;
+
+        int get(int[] states) {
+            int hash = hash(states);
+            int mask = keys.length - 1;
+            for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+                if (hashes[i] == hash && Arrays.equals(keys[i], states)) {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Add a set, which must not already be present.
+         */
+        void put(int[] states, int value) {
+            if (2 * (size + 1) > keys.length) {
+                resize();
+            }
+            insert(states, hash(states), value);
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void insert(int[] states, int hash, int value) {
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = states;
+            hashes[i] = hash;
+            values[i] = value;
+        }
+
+        private void resize() {
+            int[][] oldKeys = keys;
+            int[] oldHashes = hashes;
+            int[] oldValues = values;
+            keys = new int[oldKeys.length * 2][];
+            hashes = new int[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    insert(oldKeys[i], oldHashes[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(int[] states) {
+            int hash = Arrays.hashCode(states);
+            // spread the bits, since the table uses the low bits of the hash
+            return hash ^ (hash >>> 16);
         }
-        return transitionStates;
     }
 }
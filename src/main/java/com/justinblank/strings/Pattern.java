@@ -3,4 +3,21 @@ package com.justinblank.strings;
 public interface Pattern {
 
     Matcher matcher(String s);
+
+    /**
+     * Create a matcher for part of a byte array. The matcher's results are indices into the array, and searches start
+     * from byte indices.
+     *
+     * By default, each search decodes the bytes it covers, and runs a matcher for the decoded String. Latin-1 bytes
+     * decode to a compact String with a single copy.
+     *
+     * @param bytes    the bytes
+     * @param offset   the index of the first byte
+     * @param length   the number of bytes
+     * @param encoding the encoding of the bytes
+     * @return the matcher
+     */
+    default Matcher matcher(byte[] bytes, int offset, int length, ByteEncoding encoding) {
+        return new DecodingMatcher(this, bytes, offset, length, encoding);
+    }
 }
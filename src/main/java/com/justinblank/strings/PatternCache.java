@@ -0,0 +1,288 @@
+package com.justinblank.strings;
+
+import com.justinblank.classloader.MyClassLoader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cache of patterns compiled with {@link DFACompiler}, so that compiling the same regex again doesn't repeat the
+ * parsing, determinization and bytecode generation.
+ *
+ * Each entry is weighted by the size of its generated class, and the least recently used entries are evicted once the
+ * total weight exceeds the limit. If several threads ask for the same regex while it is being compiled, it is only
+ * compiled once, and they all receive the same pattern.
+ *
+ * Each pattern's class is defined in its own classloader, as in {@link DFACompiler#compileCollectable}, so an
+ * evicted pattern's class can be unloaded once it is no longer in use.
+ *
+ * A cache can optionally store the generated classes in a directory, so that a regex seen by an earlier process is
+ * loaded from disk rather than compiled.
+ *
+ * Patterns are cached by their regex and the {@link CompileOptions} they were compiled with. A regex that exceeds the
+ * limits in its options is cached as the {@link LazyDFA} it falls back to, weighted by the size its tables can grow
+ * to, but isn't stored on disk.
+ */
+public class PatternCache {
+
+    static final long DEFAULT_MAX_WEIGHT = 16 * 1024 * 1024;
+    private static final String CLASS_NAME_PREFIX = "CachedPattern";
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+    private static final PatternCache INSTANCE = new PatternCache(DEFAULT_MAX_WEIGHT);
+
+    private final long maxWeight;
+    private final BytecodeDiskCache diskCache;
+    // in access order, so that the first entry is the least recently used
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long diskHits;
+
+    /**
+     * Create a cache.
+     *
+     * @param maxWeight the maximum total size, in bytes, of the classes generated for cached patterns
+     */
+    public PatternCache(long maxWeight) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive, got " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.diskCache = null;
+    }
+
+    /**
+     * Create a cache that also stores the classes it generates in a directory, and loads them from there when they
+     * were generated by an earlier process.
+     *
+     * @param maxWeight          the maximum total size, in bytes, of the classes held in memory
+     * @param diskCacheDirectory the directory, which is created if it doesn't exist
+     * @throws IOException if the directory can't be created
+     */
+    public PatternCache(long maxWeight, Path diskCacheDirectory) throws IOException {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive, got " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.diskCache = new BytecodeDiskCache(diskCacheDirectory);
+    }
+
+    public static PatternCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the pattern for a regex, compiling it with the default options if it isn't cached.
+     *
+     * @param regex the regex
+     * @return the pattern
+     * @throws RegexSyntaxException if the regex is malformed
+     */
+    public Pattern compile(String regex) {
+        return compile(regex, CompileOptions.defaults());
+    }
+
+    /**
+     * Get the pattern for a regex, compiling it within the limits of the given options if it isn't cached with the
+     * same options.
+     *
+     * @param regex   the regex
+     * @param options the limits
+     * @return the pattern
+     * @throws RegexSyntaxException           if the regex is malformed
+     * @throws CompileBudgetExceededException if a limit is exceeded, and the options don't allow falling back
+     */
+    public Pattern compile(String regex, CompileOptions options) {
+        Objects.requireNonNull(options, "options");
+        Key key = new Key(regex, options);
+        Entry entry;
+        boolean compiling = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                misses++;
+                entry = new Entry();
+                Entry newEntry = entry;
+                entry.task = new FutureTask<>(() -> load(regex, options, newEntry));
+                entries.put(key, entry);
+                compiling = true;
+            }
+            else {
+                hits++;
+            }
+        }
+        if (compiling) {
+            entry.task.run();
+            finish(key, entry);
+        }
+        try {
+            return entry.task.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Create the pattern for a regex, from the disk cache if possible, recording the size of its class, or of the lazy
+     * DFA it fell back to, in the entry.
+     */
+    private Pattern load(String regex, CompileOptions options, Entry entry) {
+        entry.weight = -1;
+        String diskKey = null;
+        String className;
+        if (diskCache != null) {
+            diskKey = diskCache.key(regex, options);
+            className = BytecodeDiskCache.className(diskKey);
+            byte[] classBytes = diskCache.read(diskKey);
+            if (classBytes != null) {
+                try {
+                    Pattern pattern = DFACompiler.loadPattern(className, classBytes, newClassLoader());
+                    synchronized (this) {
+                        diskHits++;
+                    }
+                    entry.weight = classBytes.length;
+                    return pattern;
+                }
+                catch (LinkageError e) {
+                    // a corrupt or truncated file
+                    diskCache.delete(diskKey);
+                }
+            }
+        }
+        else {
+            className = CLASS_NAME_PREFIX + CLASS_COUNTER.incrementAndGet();
+        }
+        byte[] classBytes;
+        try {
+            classBytes = DFACompiler.generateClassAsBytes(regex, className, options.startBudget());
+        }
+        catch (CompileBudgetExceededException e) {
+            if (!options.isFallback()) {
+                throw e;
+            }
+            LazyDFA lazyDFA = LazyDFA.compile(regex);
+            entry.weight = lazyDFA.maxTableSize();
+            return lazyDFA;
+        }
+        Pattern pattern = DFACompiler.loadPattern(className, classBytes, newClassLoader());
+        if (diskCache != null) {
+            diskCache.write(diskKey, classBytes);
+        }
+        entry.weight = classBytes.length;
+        return pattern;
+    }
+
+    private static MyClassLoader newClassLoader() {
+        return new MyClassLoader(PatternCache.class.getClassLoader());
+    }
+
+    /**
+     * Account for a compile that has finished, removing the entry if it failed, and evicting entries if the cache is
+     * now over its limit.
+     */
+    private synchronized void finish(Key key, Entry entry) {
+        if (entry.weight < 0) {
+            entries.remove(key, entry);
+            return;
+        }
+        if (entries.get(key) != entry) {
+            return;
+        }
+        weight += entry.weight;
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            // entries that are still compiling have no weight yet, and the newest entry is always kept
+            if (eldest.weight <= 0 || eldest == entry) {
+                continue;
+            }
+            iterator.remove();
+            weight -= eldest.weight;
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.values().removeIf(entry -> entry.weight > 0);
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Get the number of misses that were loaded from the disk cache, rather than compiled.
+     *
+     * @return the number of disk hits
+     */
+    public synchronized long diskHits() {
+        return diskHits;
+    }
+
+    private static class Key {
+        final String regex;
+        final CompileOptions options;
+
+        Key(String regex, CompileOptions options) {
+            this.regex = regex;
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return regex.equals(key.regex) && options.equals(key.options);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * regex.hashCode() + options.hashCode();
+        }
+    }
+
+    private static class Entry {
+        FutureTask<Pattern> task;
+        // written by the compiling thread before it calls finish, -1 if the compile failed
+        volatile int weight;
+    }
+}
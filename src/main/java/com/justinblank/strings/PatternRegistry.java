@@ -0,0 +1,126 @@
+package com.justinblank.strings;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Looks up patterns that were compiled ahead of time by {@link AheadOfTimeCompiler}. The registry reads the indexes
+ * written by the compiler from the classpath, and loads a pattern's class the first time it is requested, so that
+ * using a precompiled pattern doesn't compile or define any classes.
+ */
+public class PatternRegistry {
+
+    static final String INDEX_RESOURCE = "META-INF/stringmatching/patterns";
+
+    private static volatile PatternRegistry instance;
+
+    private final ClassLoader classLoader;
+    // regex to class name
+    private final Map<String, String> classNames;
+    private final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+
+    private PatternRegistry(ClassLoader classLoader, Map<String, String> classNames) {
+        this.classLoader = classLoader;
+        this.classNames = classNames;
+    }
+
+    /**
+     * Get the registry of patterns visible to the classloader that loaded this class.
+     *
+     * @return the registry
+     */
+    public static PatternRegistry getInstance() {
+        PatternRegistry registry = instance;
+        if (registry == null) {
+            synchronized (PatternRegistry.class) {
+                registry = instance;
+                if (registry == null) {
+                    registry = load(PatternRegistry.class.getClassLoader());
+                    instance = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * Create a registry of the patterns whose indexes and classes are visible to a classloader.
+     *
+     * @param classLoader the classloader
+     * @return the registry
+     * @throws UncheckedIOException if an index can't be read
+     */
+    public static PatternRegistry load(ClassLoader classLoader) {
+        Map<String, String> classNames = new HashMap<>();
+        try {
+            Enumeration<URL> indexes = classLoader.getResources(INDEX_RESOURCE);
+            while (indexes.hasMoreElements()) {
+                readIndex(indexes.nextElement(), classNames);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new PatternRegistry(classLoader, classNames);
+    }
+
+    private static void readIndex(URL index, Map<String, String> classNames) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf(AheadOfTimeCompiler.INDEX_SEPARATOR);
+                if (separator > 0) {
+                    // the first index on the classpath wins, as with classes
+                    classNames.putIfAbsent(line.substring(separator + 1), line.substring(0, separator));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the precompiled pattern for a regex.
+     *
+     * @param regex the regex
+     * @return the pattern, or empty if the regex wasn't compiled ahead of time
+     */
+    public Optional<Pattern> get(String regex) {
+        String className = classNames.get(regex);
+        if (className == null) {
+            return Optional.empty();
+        }
+        return Optional.of(patterns.computeIfAbsent(regex, r -> {
+            try {
+                return new GeneratedPattern(Class.forName(className, true, classLoader));
+            }
+            catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Index lists class " + className + " for regex '" + regex +
+                        "', but the class wasn't found", e);
+            }
+        }));
+    }
+
+    /**
+     * Get the precompiled pattern for a regex, or compile it with {@link PatternCache} if there isn't one.
+     *
+     * @param regex the regex
+     * @return the pattern
+     */
+    public Pattern getOrCompile(String regex) {
+        return get(regex).orElseGet(() -> PatternCache.getInstance().compile(regex));
+    }
+
+    /**
+     * Get the regexes that have precompiled patterns.
+     *
+     * @return the regexes
+     */
+    public Set<String> regexes() {
+        return Collections.unmodifiableSet(classNames.keySet());
+    }
+}
@@ -0,0 +1,261 @@
+package com.justinblank.strings;
+
+import com.justinblank.strings.RegexAST.*;
+import com.justinblank.strings.Search.SearchMethod;
+import com.justinblank.strings.Search.SearchMethodUtil;
+import com.justinblank.util.SparseSet;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.justinblank.strings.RegexInstr.Opcode.*;
+
+/**
+ * A Pike VM, which simulates the NFA in lockstep, like {@link NFA}, but gives each thread its own capture slots, so
+ * that it can report the bounds of each group in a match, while still running in time linear in the length of the
+ * haystack.
+ *
+ * Unlike the other matchers in this package, the Pike VM uses leftmost-first semantics, as java.util.regex does:
+ * threads are kept in priority order, with the preferred branch of each split first, and once a thread matches,
+ * all lower priority threads are dropped.
+ *
+ * The thread lists and capture slots live in arrays that are allocated once and reused between searches, so a search
+ * doesn't allocate, apart from its result.
+ */
+public class PikeVM implements SearchMethod {
+
+    private final RegexInstr[] program;
+    private final int groupCount;
+    private final int slotCount;
+    // Holds scratch space that no search is using, so that it can be reused without locking
+    private final AtomicReference<Threads> idleThreads = new AtomicReference<>();
+
+    private PikeVM(RegexInstr[] program, int groupCount) {
+        this.program = program;
+        this.groupCount = groupCount;
+        this.slotCount = 2 * (groupCount + 1);
+    }
+
+    public static PikeVM compile(String regex) {
+        Node node = RegexParser.parse(regex, true);
+        return new PikeVM(RegexInstrBuilder.createCapturingNFA(node), maxGroupIndex(node));
+    }
+
+    private static int maxGroupIndex(Node node) {
+        if (node instanceof Group) {
+            Group group = (Group) node;
+            return Math.max(group.index, maxGroupIndex(group.node));
+        }
+        else if (node instanceof Concatenation) {
+            Concatenation concatenation = (Concatenation) node;
+            return Math.max(maxGroupIndex(concatenation.head), maxGroupIndex(concatenation.tail));
+        }
+        else if (node instanceof Union) {
+            Union union = (Union) node;
+            return Math.max(maxGroupIndex(union.left), maxGroupIndex(union.right));
+        }
+        else if (node instanceof Repetition) {
+            return maxGroupIndex(((Repetition) node).node);
+        }
+        else if (node instanceof CountedRepetition) {
+            return maxGroupIndex(((CountedRepetition) node).node);
+        }
+        return 0;
+    }
+
+    /**
+     * Get the number of capturing groups, not including the implicit group for the whole match.
+     *
+     * @return the number of groups
+     */
+    public int groupCount() {
+        return groupCount;
+    }
+
+    public boolean matches(String s) {
+        int[] slots = new int[slotCount];
+        return search(s, 0, s.length(), true, true, slots);
+    }
+
+    @Override
+    public MatchResult find(String s, int start, int end, boolean anchored) {
+        SearchMethodUtil.checkIndices(s, start, end);
+        int[] slots = new int[slotCount];
+        if (search(s, start, end, anchored, false, slots)) {
+            return MatchResult.success(slots[0], slots[1]);
+        }
+        return MatchResult.failure();
+    }
+
+    /**
+     * Find the leftmost-first match in a string, and return the bounds of each group in it.
+     *
+     * @param s the string
+     * @return an array where elements 2n and 2n + 1 hold the start and end of group n, group 0 being the whole match,
+     * and -1 for groups that didn't participate in the match, or null if there is no match
+     */
+    public int[] captures(String s) {
+        int[] slots = new int[slotCount];
+        if (captures(s, 0, s.length(), slots)) {
+            return slots;
+        }
+        return null;
+    }
+
+    /**
+     * Find the leftmost-first match in a range of a string, storing the bounds of each group in the given array.
+     *
+     * @param s     the string
+     * @param start the start of the range
+     * @param end   the end of the range
+     * @param slots an array of length at least 2 * (groupCount() + 1), which receives the bounds of the groups, as in
+     *              {@link #captures(String)}
+     * @return true if there was a match
+     */
+    public boolean captures(String s, int start, int end, int[] slots) {
+        SearchMethodUtil.checkIndices(s, start, end);
+        if (slots.length < slotCount) {
+            throw new IllegalArgumentException("Need " + slotCount + " slots to hold captures, got " + slots.length);
+        }
+        return search(s, start, end, false, false, slots);
+    }
+
+    private boolean search(String s, int start, int end, boolean anchored, boolean fullMatch, int[] matchSlots) {
+        Threads threads = idleThreads.getAndSet(null);
+        if (threads == null) {
+            threads = new Threads(program.length, slotCount);
+        }
+        try {
+            return search(threads, s, start, end, anchored, fullMatch, matchSlots);
+        }
+        finally {
+            idleThreads.set(threads);
+        }
+    }
+
+    /**
+     * Run the threads over the range, storing the captures of the best match in matchSlots. When fullMatch is set,
+     * only matches ending at the end of the range count.
+     */
+    private boolean search(Threads threads, String s, int start, int end, boolean anchored, boolean fullMatch,
+                           int[] matchSlots) {
+        SparseSet current = threads.current;
+        SparseSet next = threads.next;
+        int[] currentSlots = threads.currentSlots;
+        int[] nextSlots = threads.nextSlots;
+        current.clear();
+        next.clear();
+        boolean matched = false;
+        for (int i = start; ; i++) {
+            // a new thread has the lowest priority, and isn't needed once a match has been found
+            if (!matched && (!anchored || i == start)) {
+                Arrays.fill(threads.scratch, -1);
+                addThread(threads, current, currentSlots, 0, i);
+            }
+            if (current.size() == 0) {
+                break;
+            }
+            char c = i < end ? s.charAt(i) : 0;
+            for (int j = 0; j < current.size(); j++) {
+                int pc = current.getByIndex(j);
+                RegexInstr instr = program[pc];
+                if (instr.opcode == CHAR_RANGE) {
+                    if (i < end && instr.start <= c && c <= instr.end) {
+                        System.arraycopy(currentSlots, pc * slotCount, threads.scratch, 0, slotCount);
+                        addThread(threads, next, nextSlots, pc + 1, i + 1);
+                    }
+                }
+                else if (instr.opcode == MATCH && (!fullMatch || i == end)) {
+                    System.arraycopy(currentSlots, pc * slotCount, matchSlots, 0, slotCount);
+                    matched = true;
+                    // every remaining thread has a lower priority than this one
+                    break;
+                }
+            }
+            if (i >= end) {
+                break;
+            }
+            SparseSet tempSet = current;
+            current = next;
+            next = tempSet;
+            next.clear();
+            int[] tempSlots = currentSlots;
+            currentSlots = nextSlots;
+            nextSlots = tempSlots;
+        }
+        threads.current = current;
+        threads.next = next;
+        threads.currentSlots = currentSlots;
+        threads.nextSlots = nextSlots;
+        return matched;
+    }
+
+    /**
+     * Add a thread to a list, following jumps, splits and saves, with the thread's captures held in the scratch array.
+     * Threads are added in priority order, and a thread that reaches an instruction already in the list is dropped,
+     * since the thread that got there first has a higher priority. An explicit stack is used rather than recursion,
+     * with entries that either visit an instruction, or restore a capture slot after the instructions that follow a
+     * save have been visited.
+     */
+    private void addThread(Threads threads, SparseSet list, int[] listSlots, int initialPc, int index) {
+        int[] stack = threads.stack;
+        int[] scratch = threads.scratch;
+        int top = 0;
+        stack[top++] = initialPc;
+        while (top > 0) {
+            int entry = stack[--top];
+            if (entry < 0) {
+                // a restore entry, encoded as the complement of the slot, with the old value below it
+                scratch[~entry] = stack[--top];
+                continue;
+            }
+            int pc = entry;
+            if (!list.add(pc)) {
+                continue;
+            }
+            RegexInstr instr = program[pc];
+            switch (instr.opcode) {
+                case JUMP:
+                    stack[top++] = instr.target1;
+                    break;
+                case SPLIT:
+                    // push the preferred branch last, so that it's visited first
+                    stack[top++] = instr.target2;
+                    stack[top++] = instr.target1;
+                    break;
+                case SAVE:
+                    int slot = instr.target1;
+                    stack[top++] = scratch[slot];
+                    stack[top++] = ~slot;
+                    scratch[slot] = index;
+                    stack[top++] = pc + 1;
+                    break;
+                default:
+                    System.arraycopy(scratch, 0, listSlots, pc * slotCount, slotCount);
+            }
+        }
+    }
+
+    /**
+     * The scratch space for a search: two thread lists, each with a capture slot arena indexed by instruction, and the
+     * stack used to add threads.
+     */
+    private static class Threads {
+        SparseSet current;
+        SparseSet next;
+        int[] currentSlots;
+        int[] nextSlots;
+        final int[] scratch;
+        final int[] stack;
+
+        Threads(int programSize, int slotCount) {
+            current = new SparseSet(programSize);
+            next = new SparseSet(programSize);
+            currentSlots = new int[programSize * slotCount];
+            nextSlots = new int[programSize * slotCount];
+            scratch = new int[slotCount];
+            // each instruction is visited at most once, and pushes at most three entries
+            stack = new int[3 * programSize + 1];
+        }
+    }
+}
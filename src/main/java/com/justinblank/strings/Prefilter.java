@@ -0,0 +1,159 @@
+package com.justinblank.strings;
+
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.strings.Search.SearchMethod;
+import com.justinblank.strings.Search.SearchMethods;
+
+import java.util.*;
+
+/**
+ * A prefilter that uses literal search to skip over the parts of a haystack that can't contain a match, so that a
+ * regex engine only has to run near an occurrence of a factor that every match must contain.
+ *
+ * When the regex has a maximum match length, the engine is run in a window around each occurrence of a factor, which
+ * contains every match that includes that occurrence. Otherwise, the engine is run from the first point at which a
+ * match could start. In either case, if no factor is present, the search fails without running the engine at all.
+ */
+class Prefilter {
+
+    // Beyond this many factors, multi-string search is unlikely to beat running the engine directly
+    static final int MAX_FACTORS = 64;
+    private static final String LETTERS_BY_FREQUENCY = "etaoinshrdlcumwfgypbvkjxqz";
+
+    private final SearchMethod factorSearch;
+    private final int minFactorLength;
+    private final int maxMatchLength;
+
+    private Prefilter(Set<String> factors, int maxMatchLength) {
+        this.factorSearch = SearchMethods.makeSearchMethod(factors);
+        this.minFactorLength = factors.stream().mapToInt(String::length).min().orElseThrow();
+        this.maxMatchLength = maxMatchLength;
+    }
+
+    /**
+     * A search for the leftmost-longest match of a regex in a range of a string.
+     */
+    @FunctionalInterface
+    interface Search {
+        MatchResult find(String s, int start, int end);
+    }
+
+    /**
+     * Create a prefilter for a regex, if it has a set of factors, one of which must be contained in every match.
+     *
+     * @param node the parsed regex
+     * @return the prefilter, or an empty optional if there are no usable factors
+     */
+    static Optional<Prefilter> create(Node node) {
+        Factorization factorization = node.bestFactors();
+        Set<String> best = null;
+        long bestScore = Long.MAX_VALUE;
+        // a match must contain one of its factors, and must also start with one of its prefixes and end with one of its
+        // suffixes, so any of the three sets will do
+        for (Set<String> candidate : List.of(nullToEmpty(factorization.getFactors()),
+                nullToEmpty(factorization.getPrefixes()), nullToEmpty(factorization.getSuffixes()))) {
+            if (!isUsable(candidate)) {
+                continue;
+            }
+            long score = score(candidate);
+            if (score < bestScore) {
+                best = candidate;
+                bestScore = score;
+            }
+        }
+        if (best == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new Prefilter(best, node.maxLength()));
+    }
+
+    private static Set<String> nullToEmpty(Set<String> strings) {
+        return strings == null ? Collections.emptySet() : strings;
+    }
+
+    private static boolean isUsable(Set<String> factors) {
+        if (factors.isEmpty() || factors.size() > MAX_FACTORS) {
+            return false;
+        }
+        for (String factor : factors) {
+            if (factor.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estimate how often a set of factors will occur in typical text, by the frequency of the rarest char in each
+     * factor. Lower is better.
+     */
+    static long score(Set<String> factors) {
+        long score = 0;
+        for (String factor : factors) {
+            int rarest = Integer.MAX_VALUE;
+            for (int i = 0; i < factor.length(); i++) {
+                rarest = Math.min(rarest, frequency(factor.charAt(i)));
+            }
+            score += rarest;
+        }
+        return score;
+    }
+
+    /**
+     * A rough rank of how common a char is in text, from 1 to 255.
+     */
+    static int frequency(char c) {
+        if (c == ' ') {
+            return 255;
+        }
+        int letterIndex = LETTERS_BY_FREQUENCY.indexOf(Character.toLowerCase(c));
+        if (c < 128 && letterIndex >= 0) {
+            int rank = 240 - 8 * letterIndex;
+            return Character.isUpperCase(c) ? rank / 4 : rank;
+        }
+        if (c >= '0' && c <= '9') {
+            return 60;
+        }
+        if (c < 128) {
+            return 30;
+        }
+        return 10;
+    }
+
+    /**
+     * Find the leftmost-longest match in a range of a string, running the given search only where a match is possible.
+     *
+     * @param s      the string
+     * @param start  the start of the range
+     * @param end    the end of the range
+     * @param search the underlying search, which is given ranges that contain every possible match
+     * @return the match result
+     */
+    MatchResult find(String s, int start, int end, Search search) {
+        // no match starts before matchFrom
+        int matchFrom = start;
+        int factorFrom = start;
+        while (factorFrom <= end) {
+            MatchResult occurrence = factorSearch.find(s, factorFrom, end);
+            if (!occurrence.matched) {
+                return MatchResult.failure();
+            }
+            int factorStart = occurrence.start;
+            if (maxMatchLength == Integer.MAX_VALUE) {
+                return search.find(s, matchFrom, end);
+            }
+            // a match containing this occurrence begins no earlier than lo, and ends no later than hi
+            int lo = Math.max(matchFrom, factorStart + minFactorLength - maxMatchLength);
+            int hi = (int) Math.min(end, (long) factorStart + maxMatchLength);
+            MatchResult result = search.find(s, lo, hi);
+            // a match starting at or before the occurrence can't extend past the window, so it's the true match
+            if (result.matched && result.start <= factorStart) {
+                return result;
+            }
+            // any later match contains a later occurrence
+            matchFrom = factorStart + 1;
+            factorFrom = factorStart + 1;
+        }
+        return MatchResult.failure();
+    }
+}
@@ -23,6 +23,11 @@ public class CharRangeNode extends Node implements Comparable<CharRangeNode> {
         return 1;
     }
 
+    @Override
+    public int maxLength() {
+        return 1;
+    }
+
     @Override
     protected int depth() {
         return 0;
@@ -20,6 +20,12 @@ public class Concatenation extends Node {
         return head.minLength() + tail.minLength();
     }
 
+    @Override
+    public int maxLength() {
+        long maxLength = (long) head.maxLength() + tail.maxLength();
+        return (int) Math.min(maxLength, Integer.MAX_VALUE);
+    }
+
     @Override
     protected int depth() {
         return 1 + Math.max(head.depth(), tail.depth());
@@ -23,6 +23,12 @@ public class CountedRepetition extends Node {
         return min;
     }
 
+    @Override
+    public int maxLength() {
+        long maxLength = (long) max * node.maxLength();
+        return (int) Math.min(maxLength, Integer.MAX_VALUE);
+    }
+
     @Override
     protected int depth() {
         return 1 + node.depth();
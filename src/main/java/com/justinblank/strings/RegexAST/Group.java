@@ -0,0 +1,48 @@
+package com.justinblank.strings.RegexAST;
+
+import com.justinblank.strings.Factorization;
+
+import java.util.Objects;
+
+/**
+ * A capturing group. Groups are numbered from one, in the order of their opening parentheses, and are only produced
+ * when a regex is parsed for submatch extraction.
+ */
+public class Group extends Node {
+
+    public final Node node;
+    public final int index;
+
+    public Group(Node node, int index) {
+        Objects.requireNonNull(node, "Cannot group nothing");
+        if (index < 1) {
+            throw new IllegalArgumentException("Group index must be positive, got " + index);
+        }
+        this.node = node;
+        this.index = index;
+    }
+
+    protected int minLength() {
+        return node.minLength();
+    }
+
+    @Override
+    public int maxLength() {
+        return node.maxLength();
+    }
+
+    @Override
+    protected int depth() {
+        return 1 + node.depth();
+    }
+
+    @Override
+    public Factorization bestFactors() {
+        return node.bestFactors();
+    }
+
+    @Override
+    public Node reversed() {
+        return new Group(node.reversed(), index);
+    }
+}
@@ -17,6 +17,11 @@ public class LParenNode extends Node {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public int maxLength() {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     protected int depth() {
         throw new UnsupportedOperationException();
@@ -1,7 +1,6 @@
 package com.justinblank.strings.RegexAST;
 
 import com.justinblank.strings.Factorization;
-import org.apache.commons.lang3.StringUtils;
 
 public class LiteralNode extends Node {
 
@@ -20,6 +19,11 @@ public class LiteralNode extends Node {
         return string.length();
     }
 
+    @Override
+    public int maxLength() {
+        return string.length();
+    }
+
     @Override
     protected int depth() {
         return 0;
@@ -32,8 +36,13 @@ public class LiteralNode extends Node {
 
     @Override
     public Node reversed() {
-        // is this...the one and only time it's ok to reverse a unicode string? Or is this bad?
-        return new LiteralNode(StringUtils.reverse(this.string.toString()));
+        // The reversed automaton reads chars backwards, so reverse the chars, including the chars of a surrogate pair,
+        // rather than the code points that StringUtils.reverse and StringBuilder.reverse preserve
+        char[] chars = new char[string.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = string.charAt(chars.length - 1 - i);
+        }
+        return new LiteralNode(new String(chars));
     }
 
     public String getLiteral() {
@@ -6,6 +6,13 @@ public abstract class Node {
 
     protected abstract int minLength();
 
+    /**
+     * Get the maximum length of a string matched by this node.
+     *
+     * @return the maximum length, or Integer.MAX_VALUE if there is no maximum
+     */
+    public abstract int maxLength();
+
     protected abstract int depth();
 
     public abstract Factorization bestFactors();
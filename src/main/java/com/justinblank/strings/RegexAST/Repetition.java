@@ -17,6 +17,11 @@ public class Repetition extends Node {
         return 0;
     }
 
+    @Override
+    public int maxLength() {
+        return Integer.MAX_VALUE;
+    }
+
     @Override
     protected int depth() {
         return 1 + node.depth();
@@ -22,6 +22,11 @@ public class Union extends Node {
         return Math.min(left.minLength(), right.minLength());
     }
 
+    @Override
+    public int maxLength() {
+        return Math.max(left.maxLength(), right.maxLength());
+    }
+
     @Override
     protected int depth() {
         return 1 + Math.max(left.depth(), right.depth());
@@ -6,7 +6,10 @@ public class RegexInstr {
         CHAR_RANGE,
         JUMP,
         SPLIT,
-        MATCH;
+        MATCH,
+        // Records the current index in a capture slot, given by target1. Only present in programs built for submatch
+        // extraction
+        SAVE;
     }
 
     final Opcode opcode;
@@ -41,9 +44,21 @@ public class RegexInstr {
         return MATCH;
     }
 
+    /**
+     * Create a MATCH instruction for one of the patterns in a {@link RegexSet}, storing the index of the pattern in
+     * target1.
+     */
+    static RegexInstr match(int pattern) {
+        return new RegexInstr(Opcode.MATCH, 'a', 'a', pattern, -1);
+    }
+
+    static RegexInstr save(int slot) {
+        return new RegexInstr(Opcode.SAVE, 'a', 'a', slot, -1);
+    }
+
     public String toString() {
         if (opcode.equals(Opcode.MATCH)) {
-            return "Match";
+            return target1 >= 0 ? "Match: " + target1 : "Match";
         }
         else if (opcode.equals(Opcode.JUMP)) {
             return "Jump: " + target1;
@@ -51,6 +66,9 @@ public class RegexInstr {
         else if (opcode.equals(Opcode.SPLIT)) {
             return "Split: " + target1 + "," + target2;
         }
+        else if (opcode.equals(Opcode.SAVE)) {
+            return "Save: " + target1;
+        }
         else {
             return "Char: " + start + ", "+ end;
         }
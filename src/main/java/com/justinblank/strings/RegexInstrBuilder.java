@@ -9,12 +9,76 @@ import static com.justinblank.strings.RegexInstr.Opcode.SPLIT;
 
 public class RegexInstrBuilder {
 
+    private final boolean captureGroups;
+
+    public RegexInstrBuilder() {
+        this(false);
+    }
+
+    protected RegexInstrBuilder(boolean captureGroups) {
+        this.captureGroups = captureGroups;
+    }
+
     public static RegexInstr[] createNFA(Node ast) {
         return new RegexInstrBuilder().build(ast);
     }
 
+    /**
+     * Create a program for submatch extraction. Each group records its start and end in a pair of capture slots, with
+     * slots 0 and 1 holding the bounds of the whole match, and group n using slots 2n and 2n + 1.
+     *
+     * @param ast the parsed regex, including its groups
+     * @return the program
+     */
+    public static RegexInstr[] createCapturingNFA(Node ast) {
+        return new RegexInstrBuilder(true).build(ast);
+    }
+
+    /**
+     * Create a program that matches any of the given regexes, where each regex ends in a MATCH instruction tagged with
+     * its index, so that the states of the program record which regexes have matched.
+     *
+     * @param asts       the parsed regexes
+     * @param unanchored whether the program should be able to start matching at any index, rather than only at 0
+     * @return the program
+     */
+    static RegexInstr[] createSetNFA(List<Node> asts, boolean unanchored) {
+        if (asts.isEmpty()) {
+            throw new IllegalArgumentException("Cannot create a program for an empty set of regexes");
+        }
+        RegexInstrBuilder builder = new RegexInstrBuilder();
+        List<RegexInstr> regex = new ArrayList<>();
+        if (unanchored) {
+            // the equivalent of a leading .*
+            regex.add(RegexInstr.split(1, 3));
+            regex.add(RegexInstr.charRange(Character.MIN_VALUE, Character.MAX_VALUE));
+            regex.add(RegexInstr.jump(0));
+        }
+        for (int i = 0; i < asts.size(); i++) {
+            int splitIndex = regex.size();
+            if (i < asts.size() - 1) {
+                regex.add(null);
+            }
+            builder.createPartial(asts.get(i), regex);
+            regex.add(RegexInstr.match(i));
+            if (i < asts.size() - 1) {
+                regex.set(splitIndex, RegexInstr.split(splitIndex + 1, regex.size()));
+            }
+        }
+        builder.resolveJumps(regex);
+        assert builder.checkRep(regex);
+        return regex.toArray(new RegexInstr[0]);
+    }
+
     protected RegexInstr[] build(Node ast) {
-        List<RegexInstr> regex = createPartial(ast, new ArrayList<>());
+        List<RegexInstr> regex = new ArrayList<>();
+        if (captureGroups) {
+            regex.add(RegexInstr.save(0));
+        }
+        createPartial(ast, regex);
+        if (captureGroups) {
+            regex.add(RegexInstr.save(1));
+        }
         regex.add(RegexInstr.match());
         resolveJumps(regex);
         assert checkRep(regex);
@@ -123,6 +187,16 @@ public class RegexInstrBuilder {
             CharRange range = ((CharRangeNode) ast).range();
             instrs.add(RegexInstr.charRange(range.getStart(), range.getEnd()));
         }
+        else if (ast instanceof Group) {
+            Group group = (Group) ast;
+            if (captureGroups) {
+                instrs.add(RegexInstr.save(2 * group.index));
+            }
+            createPartial(group.node, instrs);
+            if (captureGroups) {
+                instrs.add(RegexInstr.save(2 * group.index + 1));
+            }
+        }
         else if (ast instanceof LiteralNode) {
             String s = ((LiteralNode) ast).getLiteral();
             for (int i = 0; i < s.length(); i++) {
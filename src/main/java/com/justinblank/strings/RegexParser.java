@@ -12,14 +12,33 @@ public class RegexParser {
     private int charRangeDepth = 1;
     private String regex;
     private Stack<Node> nodes = new Stack<>();
+    private final boolean captureGroups;
+    private int groupCount = 0;
+    private Stack<Integer> openGroups = new Stack<>();
 
     protected RegexParser(String regex) {
+        this(regex, false);
+    }
+
+    protected RegexParser(String regex, boolean captureGroups) {
         this.regex = regex;
+        this.captureGroups = captureGroups;
     }
 
     public static Node parse(String regex) {
+        return parse(regex, false);
+    }
+
+    /**
+     * Parse a regex.
+     *
+     * @param regex         the regex
+     * @param captureGroups whether parenthesized expressions should be wrapped in {@link Group} nodes
+     * @return the parsed regex
+     */
+    public static Node parse(String regex, boolean captureGroups) {
         try {
-            return new RegexParser(regex)._parse();
+            return new RegexParser(regex, captureGroups)._parse();
         }
         catch (RegexSyntaxException e) {
             throw e;
@@ -44,6 +63,7 @@ public class RegexParser {
                     throw new RegexSyntaxException("'$' not supported yet");
                 case '(':
                     nodes.push(LParenNode.getInstance());
+                    openGroups.push(++groupCount);
                     break;
                 case '{':
                     if (nodes.isEmpty()) {
@@ -89,7 +109,7 @@ public class RegexParser {
                     break;
                 case '|':
                     assertNonEmpty("'|' cannot be the final character in a regex");
-                    collapseLiterals();
+                    collapseAlternative();
                     Node last = nodes.pop();
                     nodes.push(new Union(last, null));
                     break;
@@ -134,27 +154,23 @@ public class RegexParser {
         return node;
     }
 
-    private void collapseLiterals() {
+    /**
+     * Concatenate the nodes back to the nearest open paren, or the start of the regex, so that they form the left side
+     * of a '|'. Groups, char classes and repetitions are part of the alternative as well as literals.
+     */
+    private void collapseAlternative() {
+        if (nodes.peek() instanceof LParenNode) {
+            throw new RegexSyntaxException("found '|' with no preceding content");
+        }
         Node last = nodes.pop();
 
-        while (!nodes.isEmpty()) {
-            Node previous = nodes.peek();
-            if (previous instanceof LiteralNode) {
-                previous = nodes.pop();
-                last = concatenate(previous, last);
-            }
-            else if (previous instanceof Union) {
-                Union union = (Union) previous;
-                if (union.right == null) {
-                    nodes.pop();
-                    last = new Union(union.left, last);
-                }
-                else {
-                    last = new Concatenation(nodes.pop(), last);
-                }
+        while (!nodes.isEmpty() && !(nodes.peek() instanceof LParenNode)) {
+            Node previous = nodes.pop();
+            if (previous instanceof Union && ((Union) previous).right == null) {
+                last = new Union(((Union) previous).left, last);
             }
             else {
-                break;
+                last = concatenate(previous, last);
             }
         }
         nodes.push(last);
@@ -168,19 +184,8 @@ public class RegexParser {
             if (node == null) {
                 node = next;
             }
-            else if (next instanceof Union) {
-                Union union = (Union) next;
-                if (union.left != null && union.right != null) {
-                    node = new Concatenation(union, node);
-                    continue;
-                }
-                assertNonEmpty("found '|' with no preceding content");
-                Node nextNext = nodes.pop();
-                if (nextNext instanceof LParenNode) {
-                    nodes.push(new Union(union.left, node));
-                    return;
-                }
-                node = new Union(union.left, node);
+            else if (next instanceof Union && ((Union) next).right == null) {
+                node = new Union(((Union) next).left, node);
             }
             else {
                 node = concatenate(next, node);
@@ -191,8 +196,16 @@ public class RegexParser {
         if (node == null) {
             node = new LiteralNode("");
         }
-        nodes.push(node);
+        nodes.push(group(node));
+
+    }
 
+    private Node group(Node node) {
+        int groupIndex = openGroups.pop();
+        if (captureGroups) {
+            return new Group(node, groupIndex);
+        }
+        return node;
     }
 
     private Node concatenate(Node next, Node node) {
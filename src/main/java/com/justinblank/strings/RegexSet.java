@@ -0,0 +1,426 @@
+package com.justinblank.strings;
+
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.util.SparseSet;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.IntConsumer;
+
+import static com.justinblank.strings.RegexInstr.Opcode.*;
+
+/**
+ * A set of regexes that are matched together, so that a single pass over the input finds every regex that matches.
+ *
+ * The regexes are combined into one NFA, where each regex ends in a MATCH instruction tagged with its index, and
+ * that NFA is compiled to a DFA whose accepting states record which regexes match in them. Two DFAs are built: one
+ * that matches the whole string, and one with a leading .* that finds the regexes that match anywhere in the string.
+ *
+ * The DFAs are run either by a table interpreter, as with {@link TableDFA}, or by a class generated with
+ * {@link DFACompiler#compileSet(List, String)}. If the DFAs exceed the limits of the {@link CompileOptions}, the set
+ * falls back to simulating the NFA.
+ */
+public class RegexSet {
+
+    private static final int[] NO_MATCHES = new int[0];
+
+    private final List<String> regexes;
+    private final Engine engine;
+
+    private RegexSet(List<String> regexes, Engine engine) {
+        this.regexes = regexes;
+        this.engine = engine;
+    }
+
+    /**
+     * Runs the DFAs of a set. Implemented by the table interpreter, and by classes generated by
+     * {@link DFACompiler#compileSet(List, String)}. The numbers of states are those of the DFAs the automaton was built
+     * from.
+     */
+    public interface Automaton {
+
+        /**
+         * Run the anchored DFA over the whole string.
+         *
+         * @param s the string
+         * @return the state the DFA ends in, or -1 if it reaches the dead state
+         */
+        int matchState(String s);
+
+        /**
+         * Run the unanchored DFA over the string, reporting each accepting state entered after consuming a character.
+         *
+         * @param s        the string
+         * @param acceptor called with each accepting state
+         */
+        void search(String s, IntConsumer acceptor);
+    }
+
+    public static RegexSet compile(List<String> regexes) {
+        return compile(regexes, CompileOptions.defaults());
+    }
+
+    /**
+     * Compile a set of regexes to be run by the table interpreter.
+     *
+     * @param regexes the regexes
+     * @param options the limits on the DFAs
+     * @return the set
+     * @throws CompileBudgetExceededException if a limit is exceeded, and the options don't allow falling back
+     */
+    public static RegexSet compile(List<String> regexes, CompileOptions options) {
+        return compile(regexes, options, TableAutomaton::create);
+    }
+
+    /**
+     * Compile a set of regexes, using the given function to create an automaton from the anchored and unanchored DFAs.
+     */
+    static RegexSet compile(List<String> regexes, CompileOptions options,
+                            BiFunction<DFA, DFA, Automaton> automatonFactory) {
+        Objects.requireNonNull(options, "options");
+        if (regexes.isEmpty()) {
+            throw new IllegalArgumentException("Cannot create an empty RegexSet");
+        }
+        regexes = List.copyOf(regexes);
+        List<Node> nodes = new ArrayList<>(regexes.size());
+        for (String regex : regexes) {
+            nodes.add(RegexParser.parse(regex));
+        }
+        RegexInstr[] anchored = RegexInstrBuilder.createSetNFA(nodes, false);
+        RegexInstr[] unanchored = RegexInstrBuilder.createSetNFA(nodes, true);
+        DFA dfa;
+        DFA searchDFA;
+        try {
+            CompileBudget budget = options.startBudget();
+            dfa = NFAToDFACompiler.compile(new NFA(anchored), budget);
+            searchDFA = NFAToDFACompiler.compile(new NFA(unanchored), budget);
+            // generating code for the automaton can take a while, so don't start once time has run out
+            budget.checkTime();
+        }
+        catch (CompileBudgetExceededException e) {
+            if (!options.isFallback()) {
+                throw e;
+            }
+            return new RegexSet(regexes, new NFAEngine(anchored, unanchored, regexes.size()));
+        }
+        Automaton automaton = automatonFactory.apply(dfa, searchDFA);
+        return new RegexSet(regexes, new DFAEngine(automaton, patternsByState(dfa), patternsByState(searchDFA),
+                regexes.size()));
+    }
+
+    private static int[][] patternsByState(DFA dfa) {
+        int[][] patterns = new int[dfa.statesCount()][];
+        for (DFA state : dfa.allStates()) {
+            patterns[state.getStateNumber()] = state.getMatchingPatterns();
+        }
+        return patterns;
+    }
+
+    /**
+     * Find the regexes that match the whole string.
+     *
+     * @param s the string
+     * @return the indices of the matching regexes, in ascending order
+     */
+    public int[] matches(String s) {
+        return engine.matches(s);
+    }
+
+    /**
+     * Find the regexes that match some substring of the string.
+     *
+     * @param s the string
+     * @return the indices of the matching regexes, in ascending order
+     */
+    public int[] containedIn(String s) {
+        return engine.containedIn(s);
+    }
+
+    public int size() {
+        return regexes.size();
+    }
+
+    public String get(int index) {
+        return regexes.get(index);
+    }
+
+    private interface Engine {
+        int[] matches(String s);
+
+        int[] containedIn(String s);
+    }
+
+    private static class DFAEngine implements Engine {
+
+        private final Automaton automaton;
+        private final int[][] matchPatterns;
+        private final int[][] searchPatterns;
+        private final int patternCount;
+        // Holds scratch space that no search is using, so that it can be reused without locking
+        private final AtomicReference<Collector> idleCollector = new AtomicReference<>();
+
+        DFAEngine(Automaton automaton, int[][] matchPatterns, int[][] searchPatterns, int patternCount) {
+            this.automaton = automaton;
+            this.matchPatterns = matchPatterns;
+            this.searchPatterns = searchPatterns;
+            this.patternCount = patternCount;
+        }
+
+        @Override
+        public int[] matches(String s) {
+            int state = automaton.matchState(s);
+            if (state < 0 || matchPatterns[state] == null) {
+                return NO_MATCHES;
+            }
+            return matchPatterns[state].clone();
+        }
+
+        @Override
+        public int[] containedIn(String s) {
+            Collector collector = idleCollector.getAndSet(null);
+            if (collector == null) {
+                collector = new Collector(searchPatterns, patternCount);
+            }
+            try {
+                collector.reset();
+                collector.accept(0);
+                automaton.search(s, collector);
+                return collector.found();
+            }
+            finally {
+                idleCollector.set(collector);
+            }
+        }
+    }
+
+    /**
+     * Gathers the patterns of the accepting states a search enters. The patterns of a state are only added the first
+     * time it's entered, and each pattern only once, using stamps so that resetting between searches is constant time.
+     */
+    private static class Collector implements IntConsumer {
+
+        private final int[][] patternsByState;
+        private final int[] stateStamps;
+        private final int[] patternStamps;
+        private final int[] found;
+        private int foundCount;
+        private int stamp;
+
+        Collector(int[][] patternsByState, int patternCount) {
+            this.patternsByState = patternsByState;
+            this.stateStamps = new int[patternsByState.length];
+            this.patternStamps = new int[patternCount];
+            this.found = new int[patternCount];
+        }
+
+        void reset() {
+            foundCount = 0;
+            stamp++;
+            if (stamp == 0) {
+                Arrays.fill(stateStamps, 0);
+                Arrays.fill(patternStamps, 0);
+                stamp = 1;
+            }
+        }
+
+        @Override
+        public void accept(int state) {
+            if (stateStamps[state] == stamp) {
+                return;
+            }
+            stateStamps[state] = stamp;
+            int[] patterns = patternsByState[state];
+            if (patterns == null) {
+                return;
+            }
+            for (int pattern : patterns) {
+                if (patternStamps[pattern] != stamp) {
+                    patternStamps[pattern] = stamp;
+                    found[foundCount++] = pattern;
+                }
+            }
+        }
+
+        int[] found() {
+            int[] result = Arrays.copyOf(found, foundCount);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+    /**
+     * Runs the DFAs from flat transition tables, indexed by state and char class.
+     */
+    static class TableAutomaton implements Automaton {
+
+        private static final int DEAD_STATE = -1;
+
+        private final CharClasses charClasses;
+        private final int classCount;
+        private final int[] matchTransitions;
+        private final int[] searchTransitions;
+        private final boolean[] searchAccepting;
+
+        private TableAutomaton(CharClasses charClasses, int[] matchTransitions, int[] searchTransitions,
+                               boolean[] searchAccepting) {
+            this.charClasses = charClasses;
+            this.classCount = charClasses.classCount();
+            this.matchTransitions = matchTransitions;
+            this.searchTransitions = searchTransitions;
+            this.searchAccepting = searchAccepting;
+        }
+
+        static TableAutomaton create(DFA dfa, DFA searchDFA) {
+            // the unanchored NFA only adds a range covering every char, so both DFAs share its classes
+            CharClasses charClasses = searchDFA.getCharClasses();
+            assert charClasses.refines(dfa) && charClasses.refines(searchDFA);
+            boolean[] searchAccepting = new boolean[searchDFA.statesCount()];
+            for (DFA state : searchDFA.allStates()) {
+                searchAccepting[state.getStateNumber()] = state.isAccepting();
+            }
+            return new TableAutomaton(charClasses, buildTable(dfa, charClasses), buildTable(searchDFA, charClasses),
+                    searchAccepting);
+        }
+
+        private static int[] buildTable(DFA dfa, CharClasses charClasses) {
+            int classCount = charClasses.classCount();
+            int[] transitions = new int[dfa.statesCount() * classCount];
+            Arrays.fill(transitions, DEAD_STATE);
+            for (DFA state : dfa.allStates()) {
+                int offset = state.getStateNumber() * classCount;
+                for (Pair<CharRange, DFA> transition : state.getTransitions()) {
+                    CharRange range = transition.getLeft();
+                    int endClass = charClasses.classOf(range.getEnd());
+                    for (int charClass = charClasses.classOf(range.getStart()); charClass <= endClass; charClass++) {
+                        transitions[offset + charClass] = transition.getRight().getStateNumber();
+                    }
+                }
+            }
+            return transitions;
+        }
+
+        @Override
+        public int matchState(String s) {
+            int[] transitions = matchTransitions;
+            int state = 0;
+            int length = s.length();
+            for (int i = 0; i < length; i++) {
+                state = transitions[state * classCount + charClasses.classOf(s.charAt(i))];
+                if (state == DEAD_STATE) {
+                    return DEAD_STATE;
+                }
+            }
+            return state;
+        }
+
+        @Override
+        public void search(String s, IntConsumer acceptor) {
+            int[] transitions = searchTransitions;
+            boolean[] accepting = searchAccepting;
+            int state = 0;
+            int length = s.length();
+            for (int i = 0; i < length; i++) {
+                state = transitions[state * classCount + charClasses.classOf(s.charAt(i))];
+                if (state == DEAD_STATE) {
+                    return;
+                }
+                if (accepting[state]) {
+                    acceptor.accept(state);
+                }
+            }
+        }
+    }
+
+    /**
+     * Simulates the tagged NFAs directly, for sets whose DFAs are too large to build. Each step is proportional to the
+     * size of the NFA, rather than constant.
+     */
+    private static class NFAEngine implements Engine {
+
+        private final RegexInstr[] anchored;
+        private final RegexInstr[] unanchored;
+        private final int patternCount;
+
+        NFAEngine(RegexInstr[] anchored, RegexInstr[] unanchored, int patternCount) {
+            this.anchored = anchored;
+            this.unanchored = unanchored;
+            this.patternCount = patternCount;
+        }
+
+        @Override
+        public int[] matches(String s) {
+            BitSet found = new BitSet(patternCount);
+            run(anchored, s, false, found);
+            return found.stream().toArray();
+        }
+
+        @Override
+        public int[] containedIn(String s) {
+            BitSet found = new BitSet(patternCount);
+            run(unanchored, s, true, found);
+            return found.stream().toArray();
+        }
+
+        /**
+         * Run the program over the string, adding the patterns that match to found. If everywhere is true, the patterns
+         * that match at any index are added, otherwise only those that match at the end of the string.
+         */
+        private static void run(RegexInstr[] program, String s, boolean everywhere, BitSet found) {
+            SparseSet current = new SparseSet(program.length);
+            SparseSet next = new SparseSet(program.length);
+            // each state is pushed at most once for each of its (at most two) predecessors
+            int[] stack = new int[2 * program.length + 1];
+            addClosure(program, 0, current, stack);
+            for (int i = 0; i < s.length() && current.size() > 0; i++) {
+                if (everywhere) {
+                    addMatches(program, current, found);
+                }
+                char c = s.charAt(i);
+                next.clear();
+                for (int j = 0; j < current.size(); j++) {
+                    RegexInstr instr = program[current.getByIndex(j)];
+                    if (instr.opcode == CHAR_RANGE && instr.start <= c && c <= instr.end) {
+                        addClosure(program, current.getByIndex(j) + 1, next, stack);
+                    }
+                }
+                SparseSet temp = current;
+                current = next;
+                next = temp;
+            }
+            addMatches(program, current, found);
+        }
+
+        private static void addClosure(RegexInstr[] program, int state, SparseSet states, int[] stack) {
+            int size = 0;
+            stack[size++] = state;
+            while (size > 0) {
+                int current = stack[--size];
+                if (!states.add(current)) {
+                    continue;
+                }
+                RegexInstr instr = program[current];
+                if (instr.opcode == JUMP) {
+                    stack[size++] = instr.target1;
+                }
+                else if (instr.opcode == SPLIT) {
+                    stack[size++] = instr.target2;
+                    stack[size++] = instr.target1;
+                }
+                else if (instr.opcode == SAVE) {
+                    stack[size++] = current + 1;
+                }
+            }
+        }
+
+        private static void addMatches(RegexInstr[] program, SparseSet states, BitSet found) {
+            for (int i = 0; i < states.size(); i++) {
+                RegexInstr instr = program[states.getByIndex(i)];
+                if (instr.opcode == MATCH) {
+                    found.set(instr.target1);
+                }
+            }
+        }
+    }
+}
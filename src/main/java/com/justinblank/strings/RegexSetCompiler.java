@@ -0,0 +1,290 @@
+package com.justinblank.strings;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.justinblank.strings.CompilerUtil.*;
+import static com.justinblank.strings.DFACompiler.CLASS_BLOCKS_FIELD;
+import static com.justinblank.strings.DFACompiler.CLASS_LEAVES_FIELD;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates a class implementing {@link RegexSet.Automaton} for the DFAs of a {@link RegexSet}.
+ *
+ * The transitions of each DFA are split into group methods, each of which switches on the state, then on the char
+ * class, and returns the next state. The number of states per group is chosen so that each method stays well within
+ * the limit on the size of a method, however many char classes there are.
+ */
+class RegexSetCompiler {
+
+    private static final String AUTOMATON_INTERFACE = "com/justinblank/strings/RegexSet$Automaton";
+    private static final String SEARCH_ACCEPTING_FIELD = "SEARCH_ACCEPTING";
+    private static final String MATCH_GROUP_PREFIX = "matchGroup";
+    private static final String SEARCH_GROUP_PREFIX = "searchGroup";
+    private static final String GROUP_DESCRIPTOR = "(II)I";
+    private static final int MAX_STATES_PER_GROUP = 64;
+    // A conservative bound on the bytes of code in a group method, well below the limit of 65535
+    private static final int MAX_GROUP_CODE_SIZE = 32768;
+    private static final int DEAD_STATE = -1;
+
+    private final ClassWriter classWriter;
+    private final String className;
+    private final DFA dfa;
+    private final DFA searchDFA;
+    private final CharClasses charClasses;
+    private final int statesPerGroup;
+
+    private RegexSetCompiler(ClassWriter classWriter, String className, DFA dfa, DFA searchDFA) {
+        if (dfa.statesCount() > DFACompiler.MAX_STATES || searchDFA.statesCount() > DFACompiler.MAX_STATES) {
+            throw new IllegalArgumentException("Can't compile DFAs with more than " + DFACompiler.MAX_STATES + " states");
+        }
+        this.classWriter = classWriter;
+        this.className = className;
+        this.dfa = dfa;
+        this.searchDFA = searchDFA;
+        // the unanchored NFA only adds a range covering every char, so both DFAs share its classes
+        this.charClasses = searchDFA.getCharClasses();
+        assert charClasses.refines(dfa) && charClasses.refines(searchDFA);
+        // each state needs a four byte switch entry per class, plus a few bytes for each distinct target
+        int bytesPerState = 8 * charClasses.classCount() + 16;
+        this.statesPerGroup = Math.max(1, Math.min(MAX_STATES_PER_GROUP, MAX_GROUP_CODE_SIZE / bytesPerState));
+    }
+
+    static byte[] generateClassAsBytes(DFA dfa, DFA searchDFA, String className) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V9, ACC_PUBLIC, className, null, "java/lang/Object", new String[]{AUTOMATON_INTERFACE});
+        new RegexSetCompiler(cw, className, dfa, searchDFA).compile();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private void compile() {
+        addStaticFields();
+        addConstructor();
+        addMatchStateMethod();
+        addSearchMethod();
+        addGroupMethods(dfa, MATCH_GROUP_PREFIX);
+        addGroupMethods(searchDFA, SEARCH_GROUP_PREFIX);
+    }
+
+    /**
+     * Add the char class fields, and a field marking the accepting states of the search DFA, with a static initializer
+     * that loads them from string constants.
+     */
+    private void addStaticFields() {
+        classWriter.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, CLASS_BLOCKS_FIELD, "[C", null, null);
+        classWriter.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, CLASS_LEAVES_FIELD, "[C", null, null);
+        classWriter.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, SEARCH_ACCEPTING_FIELD, "[C", null, null);
+        char[] accepting = new char[searchDFA.statesCount()];
+        for (DFA state : searchDFA.allStates()) {
+            accepting[state.getStateNumber()] = state.isAccepting() ? (char) 1 : (char) 0;
+        }
+        MethodVisitor mv = classWriter.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+        DFACompiler.emitCharArrayConstant(mv, charClasses.getBlocks());
+        mv.visitFieldInsn(PUTSTATIC, className, CLASS_BLOCKS_FIELD, "[C");
+        DFACompiler.emitCharArrayConstant(mv, charClasses.getLeaves());
+        mv.visitFieldInsn(PUTSTATIC, className, CLASS_LEAVES_FIELD, "[C");
+        DFACompiler.emitCharArrayConstant(mv, accepting);
+        mv.visitFieldInsn(PUTSTATIC, className, SEARCH_ACCEPTING_FIELD, "[C");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+    }
+
+    private void addConstructor() {
+        MethodVisitor mv = classWriter.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+    }
+
+    private void addMatchStateMethod() {
+        MethodVisitor mv = classWriter.visitMethod(ACC_PUBLIC, "matchState", "(" + STRING_DESCRIPTOR + ")I", null, null);
+        int stringVar = 1;
+        int stateVar = 2;
+        int indexVar = 3;
+        int lengthVar = 4;
+        int charVar = 5;
+        Label loopLabel = new Label();
+        Label returnLabel = new Label();
+
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, stateVar);
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, indexVar);
+        mv.visitVarInsn(ALOAD, stringVar);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "length", "()I", false);
+        mv.visitVarInsn(ISTORE, lengthVar);
+
+        mv.visitLabel(loopLabel);
+        mv.visitVarInsn(ILOAD, indexVar);
+        mv.visitVarInsn(ILOAD, lengthVar);
+        mv.visitJumpInsn(IF_ICMPGE, returnLabel);
+        emitStep(mv, stringVar, indexVar, stateVar, charVar, dfa, MATCH_GROUP_PREFIX);
+        mv.visitVarInsn(ILOAD, stateVar);
+        mv.visitJumpInsn(IFLT, returnLabel);
+        mv.visitIincInsn(indexVar, 1);
+        mv.visitJumpInsn(GOTO, loopLabel);
+
+        mv.visitLabel(returnLabel);
+        mv.visitVarInsn(ILOAD, stateVar);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+    }
+
+    private void addSearchMethod() {
+        MethodVisitor mv = classWriter.visitMethod(ACC_PUBLIC, "search",
+                "(" + STRING_DESCRIPTOR + "Ljava/util/function/IntConsumer;)V", null, null);
+        int stringVar = 1;
+        int acceptorVar = 2;
+        int stateVar = 3;
+        int indexVar = 4;
+        int lengthVar = 5;
+        int charVar = 6;
+        Label loopLabel = new Label();
+        Label nextLabel = new Label();
+        Label returnLabel = new Label();
+
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, stateVar);
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, indexVar);
+        mv.visitVarInsn(ALOAD, stringVar);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "length", "()I", false);
+        mv.visitVarInsn(ISTORE, lengthVar);
+
+        mv.visitLabel(loopLabel);
+        mv.visitVarInsn(ILOAD, indexVar);
+        mv.visitVarInsn(ILOAD, lengthVar);
+        mv.visitJumpInsn(IF_ICMPGE, returnLabel);
+        emitStep(mv, stringVar, indexVar, stateVar, charVar, searchDFA, SEARCH_GROUP_PREFIX);
+        mv.visitVarInsn(ILOAD, stateVar);
+        mv.visitJumpInsn(IFLT, returnLabel);
+        mv.visitFieldInsn(GETSTATIC, className, SEARCH_ACCEPTING_FIELD, "[C");
+        mv.visitVarInsn(ILOAD, stateVar);
+        mv.visitInsn(CALOAD);
+        mv.visitJumpInsn(IFEQ, nextLabel);
+        mv.visitVarInsn(ALOAD, acceptorVar);
+        mv.visitVarInsn(ILOAD, stateVar);
+        mv.visitMethodInsn(INVOKEINTERFACE, "java/util/function/IntConsumer", "accept", "(I)V", true);
+        mv.visitLabel(nextLabel);
+        mv.visitIincInsn(indexVar, 1);
+        mv.visitJumpInsn(GOTO, loopLabel);
+
+        mv.visitLabel(returnLabel);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(-1, -1);
+        mv.visitEnd();
+    }
+
+    /**
+     * Emits bytecodes that read the char at the current index, and store the state the DFA moves to.
+     */
+    private void emitStep(MethodVisitor mv, int stringVar, int indexVar, int stateVar, int charVar, DFA automaton,
+                          String prefix) {
+        mv.visitVarInsn(ALOAD, stringVar);
+        mv.visitVarInsn(ILOAD, indexVar);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "charAt", "(I)C", false);
+        DFACompiler.emitCharClassLookup(mv, className, charVar);
+        mv.visitVarInsn(ILOAD, stateVar);
+        int groupCount = groupCount(automaton);
+        if (groupCount == 1) {
+            mv.visitMethodInsn(INVOKESTATIC, className, prefix + 0, GROUP_DESCRIPTOR, false);
+        }
+        else {
+            Label[] groupLabels = makeLabels(groupCount);
+            Label afterLabel = new Label();
+            mv.visitInsn(DUP);
+            pushShortInt(mv, statesPerGroup);
+            mv.visitInsn(IDIV);
+            // the state is always in some group, so the default is unreachable
+            mv.visitTableSwitchInsn(0, groupCount - 1, groupLabels[0], groupLabels);
+            for (int i = 0; i < groupCount; i++) {
+                mv.visitLabel(groupLabels[i]);
+                mv.visitMethodInsn(INVOKESTATIC, className, prefix + i, GROUP_DESCRIPTOR, false);
+                mv.visitJumpInsn(GOTO, afterLabel);
+            }
+            mv.visitLabel(afterLabel);
+        }
+        mv.visitVarInsn(ISTORE, stateVar);
+    }
+
+    private int groupCount(DFA automaton) {
+        return (automaton.statesCount() + statesPerGroup - 1) / statesPerGroup;
+    }
+
+    /**
+     * Add the methods that take a char class and a state, and return the next state, or -1 for the dead state.
+     */
+    private void addGroupMethods(DFA automaton, String prefix) {
+        DFA[] states = new DFA[automaton.statesCount()];
+        for (DFA state : automaton.allStates()) {
+            states[state.getStateNumber()] = state;
+        }
+        int classCount = charClasses.classCount();
+        for (int group = 0; group < groupCount(automaton); group++) {
+            MethodVisitor mv = classWriter.visitMethod(ACC_PRIVATE | ACC_STATIC, prefix + group, GROUP_DESCRIPTOR,
+                    null, null);
+            int classVar = 0;
+            int stateVar = 1;
+            int startState = group * statesPerGroup;
+            int endState = Math.min(startState + statesPerGroup, states.length);
+            Label deadLabel = new Label();
+            Label[] stateLabels = makeLabels(endState - startState);
+
+            mv.visitVarInsn(ILOAD, stateVar);
+            mv.visitTableSwitchInsn(startState, endState - 1, deadLabel, stateLabels);
+            for (int i = startState; i < endState; i++) {
+                mv.visitLabel(stateLabels[i - startState]);
+                int[] targets = targetsByClass(states[i], classCount);
+                // share a label between the classes that go to the same state
+                Label[] classLabels = new Label[classCount];
+                Map<Integer, Label> targetLabels = new TreeMap<>();
+                for (int charClass = 0; charClass < classCount; charClass++) {
+                    int target = targets[charClass];
+                    if (target == DEAD_STATE) {
+                        classLabels[charClass] = deadLabel;
+                    }
+                    else {
+                        classLabels[charClass] = targetLabels.computeIfAbsent(target, t -> new Label());
+                    }
+                }
+                mv.visitVarInsn(ILOAD, classVar);
+                mv.visitTableSwitchInsn(0, classCount - 1, deadLabel, classLabels);
+                for (Map.Entry<Integer, Label> e : targetLabels.entrySet()) {
+                    mv.visitLabel(e.getValue());
+                    pushShortInt(mv, e.getKey());
+                    mv.visitInsn(IRETURN);
+                }
+            }
+            mv.visitLabel(deadLabel);
+            mv.visitInsn(ICONST_M1);
+            mv.visitInsn(IRETURN);
+            mv.visitMaxs(-1, -1);
+            mv.visitEnd();
+        }
+    }
+
+    private int[] targetsByClass(DFA state, int classCount) {
+        int[] targets = new int[classCount];
+        Arrays.fill(targets, DEAD_STATE);
+        for (Pair<CharRange, DFA> transition : state.getTransitions()) {
+            CharRange range = transition.getLeft();
+            int endClass = charClasses.classOf(range.getEnd());
+            for (int charClass = charClasses.classOf(range.getStart()); charClass <= endClass; charClass++) {
+                targets[charClass] = transition.getRight().getStateNumber();
+            }
+        }
+        return targets;
+    }
+}
@@ -3,7 +3,7 @@ package com.justinblank.strings.Search;
 import com.justinblank.strings.MatchResult;
 
 // Note that the name refers to the patterns this class works with. It should match non-ASCII strings.
-class ASCIIAhoCorasick implements SearchMethod {
+class ASCIIAhoCorasick implements MultiLiteralSearch {
 
     private final ASCIITrie trie;
     private final ASCIITrie partialTrie;
@@ -65,4 +65,65 @@ class ASCIIAhoCorasick implements SearchMethod {
         }
         return MatchResult.failure();
     }
+
+    @Override
+    public void findAll(String s, int start, int end, boolean overlapping, MatchHandler handler) {
+        SearchMethodUtil.checkIndices(s, start, end);
+        if (overlapping) {
+            findOverlapping(s, start, end, handler);
+        }
+        else {
+            findNonOverlapping(s, start, end, handler);
+        }
+    }
+
+    private void findOverlapping(String s, int start, int end, MatchHandler handler) {
+        ASCIITrie current = trie;
+        for (int i = start; i < end; i++) {
+            current = next(current, s.charAt(i));
+            ASCIITrie match = current.needle >= 0 ? current : current.output;
+            while (match != null) {
+                if (!handler.onMatch(match.needle, i + 1 - match.depth, i + 1)) {
+                    return;
+                }
+                match = match.output;
+            }
+        }
+    }
+
+    private void findNonOverlapping(String s, int start, int end, MatchHandler handler) {
+        int i = start;
+        while (i < end) {
+            ASCIITrie current = trie;
+            int matchNeedle = -1;
+            int matchStart = -1;
+            int matchEnd = -1;
+            for (; i < end; i++) {
+                current = next(current, s.charAt(i));
+                ASCIITrie longest = current.needle >= 0 ? current : current.output;
+                if (longest != null && (matchNeedle < 0 || i + 1 - longest.depth <= matchStart)) {
+                    matchNeedle = longest.needle;
+                    matchStart = i + 1 - longest.depth;
+                    matchEnd = i + 1;
+                }
+                // the current node is the longest suffix that could still grow into a match, so once it starts after
+                // the match, no match starting at or before it remains
+                if (matchNeedle >= 0 && i + 1 - current.depth > matchStart) {
+                    break;
+                }
+            }
+            if (matchNeedle < 0 || !handler.onMatch(matchNeedle, matchStart, matchEnd)) {
+                return;
+            }
+            i = matchEnd;
+        }
+    }
+
+    private ASCIITrie next(ASCIITrie current, char c) {
+        if (c > 127) {
+            return trie;
+        }
+        ASCIITrie next = current.followers[c];
+        return next == null ? trie : next;
+    }
 }
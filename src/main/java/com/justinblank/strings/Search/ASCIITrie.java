@@ -7,9 +7,16 @@ class ASCIITrie {
     final ASCIITrie[] followers = new ASCIITrie[128];
     ASCIITrie supplier;
     ASCIITrie root;
+    // The depth of the node in the trie, which unlike length, isn't changed when a node accepts via its supplier
+    final int depth;
+    // The index of the needle that ends at this node, or -1 if none does
+    int needle = -1;
+    // The nearest node along the supplier chain where a needle ends, used to find every match ending at an index
+    ASCIITrie output;
 
     ASCIITrie(int length) {
         this.length = length;
+        this.depth = length;
     }
 
     void addFollower(char c, ASCIITrie trie) {
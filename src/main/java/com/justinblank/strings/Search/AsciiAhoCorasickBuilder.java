@@ -7,7 +7,7 @@ class AsciiAhoCorasickBuilder {
     ASCIITrie root;
     private List<ASCIITrie> nodes = new ArrayList<>();
 
-    protected static SearchMethod buildAhoCorasick(Collection<String> strings) {
+    protected static MultiLiteralSearch buildAhoCorasick(Collection<String> strings) {
         ASCIITrie trie = new AsciiAhoCorasickBuilder().build(strings, true);
         ASCIITrie partialTrie = new AsciiAhoCorasickBuilder().build(strings, false);
         return new ASCIIAhoCorasick(trie, partialTrie);
@@ -27,9 +27,13 @@ class AsciiAhoCorasickBuilder {
     }
 
     private void buildTrieStructure(Collection<String> strings, ASCIITrie trie) {
+        int needle = 0;
         for (String s : strings) {
             if (s.equals("")) {
                 trie.accepting = true;
+                if (trie.needle < 0) {
+                    trie.needle = needle;
+                }
             }
             ASCIITrie current = trie;
             for (int i = 0; i < s.length(); i++) {
@@ -43,9 +47,14 @@ class AsciiAhoCorasickBuilder {
                 }
                 if (i == s.length() - 1) {
                     next.markAccepting();
+                    // a needle that appears more than once is reported with its first index
+                    if (next.needle < 0) {
+                        next.needle = needle;
+                    }
                 }
                 current = next;
             }
+            needle++;
         }
     }
 
@@ -60,6 +69,20 @@ class AsciiAhoCorasickBuilder {
         }
         assert allHaveSuppliers(nodes);
         nodes.stream().forEach(this::addFullTransitions);
+        addOutputs();
+    }
+
+    /**
+     * Link each node to the nearest node on its supplier chain where a needle ends. The nodes are sorted by depth, and
+     * a supplier is always shallower than its node, so its link is set first.
+     */
+    private void addOutputs() {
+        for (ASCIITrie node : nodes) {
+            if (node != root) {
+                ASCIITrie supplier = node.supplier;
+                node.output = supplier.needle >= 0 && supplier != root ? supplier : supplier.output;
+            }
+        }
     }
 
     private boolean allHaveSuppliers(List<ASCIITrie> nodes) {
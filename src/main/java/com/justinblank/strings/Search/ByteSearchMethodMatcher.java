@@ -0,0 +1,50 @@
+package com.justinblank.strings.Search;
+
+import com.justinblank.strings.ByteEncoding;
+import com.justinblank.strings.MatchResult;
+import com.justinblank.strings.Matcher;
+
+import java.util.Objects;
+
+/**
+ * A matcher for part of a byte array, which calls the byte-based methods of a {@link SearchMethod}. It's meant for
+ * methods that match bytes without decoding them, since each search covers the bytes from its starting index.
+ */
+public class ByteSearchMethodMatcher implements Matcher {
+
+    private final SearchMethod method;
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    private final ByteEncoding encoding;
+
+    public ByteSearchMethodMatcher(SearchMethod method, byte[] bytes, int offset, int length, ByteEncoding encoding) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        this.method = Objects.requireNonNull(method);
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.encoding = Objects.requireNonNull(encoding);
+    }
+
+    @Override
+    public boolean matches() {
+        return method.matches(bytes, offset, length, encoding);
+    }
+
+    @Override
+    public boolean containedIn() {
+        return method.containedIn(bytes, offset, length, encoding);
+    }
+
+    @Override
+    public MatchResult find() {
+        return find(offset);
+    }
+
+    @Override
+    public MatchResult find(int from) {
+        Objects.checkFromToIndex(offset, from, offset + length);
+        return method.find(bytes, from, offset + length - from, encoding);
+    }
+}
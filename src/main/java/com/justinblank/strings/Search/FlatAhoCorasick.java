@@ -0,0 +1,388 @@
+package com.justinblank.strings.Search;
+
+import com.justinblank.strings.ByteEncoding;
+import com.justinblank.strings.MatchResult;
+import com.justinblank.strings.Matcher;
+import com.justinblank.strings.Utf8;
+import com.justinblank.strings.Utf8Reader;
+
+import java.util.Objects;
+
+/**
+ * An Aho-Corasick automaton stored in flat int arrays, for large dictionaries.
+ *
+ * The chars that appear in the needles are each given a class, and every other char shares class 0. The transitions
+ * are a single table indexed by state and class, with the failure transitions already followed, so each char costs
+ * two array lookups, and no pointers are chased. The table holds the offset of the target state's row, rather than its
+ * number, saving a multiplication per char, and the offset is complemented if a needle ends at the target or along its
+ * failure chain, so that states without matches need no further lookups. Compared to {@link ASCIITrie}, which has an array of 128 references
+ * per node, or {@link Trie}, which has a TreeMap per node, a state only takes one int per class, plus three ints.
+ */
+class FlatAhoCorasick implements MultiLiteralSearch {
+
+    private final char[] classBlocks;
+    private final char[] classLeaves;
+    private final int classCount;
+    // transitions[offset + charClass] is the offset of the next state, complemented if any needle ends there
+    private final int[] transitions;
+    // the index of the needle ending at each state, or -1
+    private final int[] needles;
+    // the nearest state along the failure chain where a needle ends, or -1
+    private final int[] outputs;
+    // the depth of each state in the trie, which is the length of the needle ending there, if any
+    private final int[] depths;
+
+    FlatAhoCorasick(char[] classBlocks, char[] classLeaves, int classCount, int[] transitions, int[] needles,
+                    int[] outputs, int[] depths) {
+        this.classBlocks = classBlocks;
+        this.classLeaves = classLeaves;
+        this.classCount = classCount;
+        this.transitions = transitions;
+        this.needles = needles;
+        this.outputs = outputs;
+        this.depths = depths;
+    }
+
+    public boolean matches(String s) {
+        return findAnchored(s, 0, s.length()) == s.length();
+    }
+
+    public MatchResult find(String s, int start, int end, boolean anchored) {
+        SearchMethodUtil.checkIndices(s, start, end);
+        if (anchored) {
+            int matchEnd = findAnchored(s, start, end);
+            return matchEnd < 0 ? MatchResult.failure() : MatchResult.success(start, matchEnd);
+        }
+        int[] match = new int[]{-1, -1};
+        findNonOverlapping(s, start, end, (needle, matchStart, matchEnd) -> {
+            match[0] = matchStart;
+            match[1] = matchEnd;
+            return false;
+        });
+        return match[0] < 0 ? MatchResult.failure() : MatchResult.success(match[0], match[1]);
+    }
+
+    /**
+     * Find the end of the longest needle starting at start, or -1 if none does. The automaton only stays on the path
+     * of needles starting at start while its depth is the number of chars consumed.
+     */
+    private int findAnchored(String s, int start, int end) {
+        int offset = 0;
+        int matchEnd = -1;
+        for (int i = start; i < end; i++) {
+            offset = transitions[offset + classOf(s.charAt(i))];
+            if (offset < 0) {
+                offset = ~offset;
+            }
+            int state = offset / classCount;
+            if (depths[state] != i + 1 - start) {
+                break;
+            }
+            if (needles[state] >= 0) {
+                matchEnd = i + 1;
+            }
+        }
+        return matchEnd;
+    }
+
+    @Override
+    public void findAll(String s, int start, int end, boolean overlapping, MatchHandler handler) {
+        SearchMethodUtil.checkIndices(s, start, end);
+        if (overlapping) {
+            findOverlapping(s, start, end, handler);
+        }
+        else {
+            findNonOverlapping(s, start, end, handler);
+        }
+    }
+
+    private void findOverlapping(String s, int start, int end, MatchHandler handler) {
+        int offset = 0;
+        for (int i = start; i < end; i++) {
+            offset = transitions[offset + classOf(s.charAt(i))];
+            if (offset >= 0) {
+                continue;
+            }
+            offset = ~offset;
+            int state = offset / classCount;
+            int match = needles[state] >= 0 ? state : outputs[state];
+            while (match >= 0) {
+                if (!handler.onMatch(needles[match], i + 1 - depths[match], i + 1)) {
+                    return;
+                }
+                match = outputs[match];
+            }
+        }
+    }
+
+    private void findNonOverlapping(String s, int start, int end, MatchHandler handler) {
+        int i = start;
+        while (i < end) {
+            int offset = 0;
+            int matchNeedle = -1;
+            int matchStart = -1;
+            int matchEnd = -1;
+            for (; i < end; i++) {
+                offset = transitions[offset + classOf(s.charAt(i))];
+                if (offset >= 0 && matchNeedle < 0) {
+                    continue;
+                }
+                boolean hasMatch = offset < 0;
+                if (hasMatch) {
+                    offset = ~offset;
+                }
+                int state = offset / classCount;
+                if (hasMatch) {
+                    int longest = needles[state] >= 0 ? state : outputs[state];
+                    if (matchNeedle < 0 || i + 1 - depths[longest] <= matchStart) {
+                        matchNeedle = needles[longest];
+                        matchStart = i + 1 - depths[longest];
+                        matchEnd = i + 1;
+                    }
+                }
+                // the current state is the longest suffix that could still grow into a match, so once it starts after
+                // the match, no match starting at or before it remains
+                if (i + 1 - depths[state] > matchStart) {
+                    break;
+                }
+            }
+            if (matchNeedle < 0 || !handler.onMatch(matchNeedle, matchStart, matchEnd)) {
+                return;
+            }
+            i = matchEnd;
+        }
+    }
+
+    @Override
+    public Matcher matcher(byte[] bytes, int offset, int length, ByteEncoding encoding) {
+        return new ByteSearchMethodMatcher(this, bytes, offset, length, encoding);
+    }
+
+    @Override
+    public boolean matches(byte[] bytes, int offset, int length, ByteEncoding encoding) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        return findAnchored(bytes, offset, offset + length, encoding) == offset + length;
+    }
+
+    @Override
+    public MatchResult find(byte[] bytes, int offset, int length, ByteEncoding encoding, boolean anchored) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        if (anchored) {
+            int matchEnd = findAnchored(bytes, offset, offset + length, encoding);
+            return matchEnd < 0 ? MatchResult.failure() : MatchResult.success(offset, matchEnd);
+        }
+        int[] match = new int[]{-1, -1};
+        findAll(bytes, offset, length, encoding, false, (needle, matchStart, matchEnd) -> {
+            match[0] = matchStart;
+            match[1] = matchEnd;
+            return false;
+        });
+        return match[0] < 0 ? MatchResult.failure() : MatchResult.success(match[0], match[1]);
+    }
+
+    /**
+     * Report the matches in part of a byte array, without decoding it to a String. Latin-1 bytes are used as chars
+     * directly. UTF-8 is decoded one char at a time, and the depths of states are still counted in chars, so the start
+     * of each match is found by counting back over the chars of its needle.
+     */
+    @Override
+    public void findAll(byte[] bytes, int offset, int length, ByteEncoding encoding, boolean overlapping,
+                        MatchHandler handler) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        int end = offset + length;
+        if (encoding == ByteEncoding.UTF_8) {
+            if (overlapping) {
+                findOverlappingUtf8(bytes, offset, end, handler);
+            }
+            else {
+                findNonOverlappingUtf8(bytes, offset, end, handler);
+            }
+        }
+        else if (overlapping) {
+            findOverlappingLatin1(bytes, offset, end, handler);
+        }
+        else {
+            findNonOverlappingLatin1(bytes, offset, end, handler);
+        }
+    }
+
+    private int findAnchored(byte[] bytes, int start, int end, ByteEncoding encoding) {
+        int offset = 0;
+        int matchEnd = -1;
+        if (encoding == ByteEncoding.UTF_8) {
+            Utf8Reader reader = new Utf8Reader(bytes, start, end);
+            for (int chars = 1; reader.hasNext(); chars++) {
+                offset = transitions[offset + classOf(reader.next())];
+                if (offset < 0) {
+                    offset = ~offset;
+                }
+                int state = offset / classCount;
+                if (depths[state] != chars) {
+                    break;
+                }
+                if (needles[state] >= 0) {
+                    matchEnd = reader.position();
+                }
+            }
+            return matchEnd;
+        }
+        for (int i = start; i < end; i++) {
+            offset = transitions[offset + classOf((char) (bytes[i] & 0xFF))];
+            if (offset < 0) {
+                offset = ~offset;
+            }
+            int state = offset / classCount;
+            if (depths[state] != i + 1 - start) {
+                break;
+            }
+            if (needles[state] >= 0) {
+                matchEnd = i + 1;
+            }
+        }
+        return matchEnd;
+    }
+
+    private void findOverlappingLatin1(byte[] bytes, int start, int end, MatchHandler handler) {
+        int offset = 0;
+        for (int i = start; i < end; i++) {
+            offset = transitions[offset + classOf((char) (bytes[i] & 0xFF))];
+            if (offset >= 0) {
+                continue;
+            }
+            offset = ~offset;
+            int state = offset / classCount;
+            int match = needles[state] >= 0 ? state : outputs[state];
+            while (match >= 0) {
+                if (!handler.onMatch(needles[match], i + 1 - depths[match], i + 1)) {
+                    return;
+                }
+                match = outputs[match];
+            }
+        }
+    }
+
+    private void findOverlappingUtf8(byte[] bytes, int start, int end, MatchHandler handler) {
+        Utf8Reader reader = new Utf8Reader(bytes, start, end);
+        int offset = 0;
+        while (reader.hasNext()) {
+            offset = transitions[offset + classOf(reader.next())];
+            if (offset >= 0) {
+                continue;
+            }
+            offset = ~offset;
+            int state = offset / classCount;
+            int match = needles[state] >= 0 ? state : outputs[state];
+            int matchEnd = reader.position();
+            // a match ending inside a pair ends after it, so the pair's second char also has to be counted back over
+            int unread = reader.inPair() ? 1 : 0;
+            while (match >= 0) {
+                int matchStart = Utf8.charsBefore(bytes, start, matchEnd, depths[match] + unread);
+                if (!handler.onMatch(needles[match], matchStart, matchEnd)) {
+                    return;
+                }
+                match = outputs[match];
+            }
+        }
+    }
+
+    private void findNonOverlappingLatin1(byte[] bytes, int start, int end, MatchHandler handler) {
+        int i = start;
+        while (i < end) {
+            int offset = 0;
+            int matchNeedle = -1;
+            int matchStart = -1;
+            int matchEnd = -1;
+            for (; i < end; i++) {
+                offset = transitions[offset + classOf((char) (bytes[i] & 0xFF))];
+                if (offset >= 0 && matchNeedle < 0) {
+                    continue;
+                }
+                boolean hasMatch = offset < 0;
+                if (hasMatch) {
+                    offset = ~offset;
+                }
+                int state = offset / classCount;
+                if (hasMatch) {
+                    int longest = needles[state] >= 0 ? state : outputs[state];
+                    if (matchNeedle < 0 || i + 1 - depths[longest] <= matchStart) {
+                        matchNeedle = needles[longest];
+                        matchStart = i + 1 - depths[longest];
+                        matchEnd = i + 1;
+                    }
+                }
+                if (i + 1 - depths[state] > matchStart) {
+                    break;
+                }
+            }
+            if (matchNeedle < 0 || !handler.onMatch(matchNeedle, matchStart, matchEnd)) {
+                return;
+            }
+            i = matchEnd;
+        }
+    }
+
+    /**
+     * The same as {@link #findNonOverlapping(String, int, int, MatchHandler)}, with the comparisons between matches
+     * done on char indices, counted from the start, which are only converted to byte indices once a match is chosen.
+     */
+    private void findNonOverlappingUtf8(byte[] bytes, int start, int end, MatchHandler handler) {
+        Utf8Reader reader = new Utf8Reader(bytes, start, end);
+        int i = 0;
+        while (reader.hasNext()) {
+            int offset = 0;
+            int matchNeedle = -1;
+            int matchStart = -1;
+            int matchEnd = -1;
+            int matchByteEnd = -1;
+            boolean matchInPair = false;
+            while (reader.hasNext()) {
+                offset = transitions[offset + classOf(reader.next())];
+                i++;
+                if (offset >= 0 && matchNeedle < 0) {
+                    continue;
+                }
+                boolean hasMatch = offset < 0;
+                if (hasMatch) {
+                    offset = ~offset;
+                }
+                int state = offset / classCount;
+                if (hasMatch) {
+                    int longest = needles[state] >= 0 ? state : outputs[state];
+                    if (matchNeedle < 0 || i - depths[longest] <= matchStart) {
+                        matchNeedle = needles[longest];
+                        matchStart = i - depths[longest];
+                        matchEnd = i;
+                        matchByteEnd = reader.position();
+                        matchInPair = reader.inPair();
+                    }
+                }
+                if (i - depths[state] > matchStart) {
+                    break;
+                }
+            }
+            if (matchNeedle < 0) {
+                return;
+            }
+            int unread = matchInPair ? 1 : 0;
+            int matchByteStart = Utf8.charsBefore(bytes, start, matchByteEnd, matchEnd - matchStart + unread);
+            if (!handler.onMatch(matchNeedle, matchByteStart, matchByteEnd)) {
+                return;
+            }
+            // the search resumes after the whole sequence the match ended in
+            reader.reset(matchByteEnd);
+            i = matchEnd + unread;
+        }
+    }
+
+    private int classOf(char c) {
+        return classLeaves[classBlocks[c >>> 8] + (c & 0xFF)];
+    }
+
+    int stateCount() {
+        return depths.length;
+    }
+
+    int classCount() {
+        return classCount;
+    }
+}
@@ -0,0 +1,159 @@
+package com.justinblank.strings.Search;
+
+import java.util.*;
+
+/**
+ * Builds a {@link FlatAhoCorasick}. The trie is built directly into the transition table, then a breadth-first pass
+ * computes the failure transitions, filling in each missing transition from the failure state's row, which is already
+ * complete because it's shallower.
+ */
+class FlatAhoCorasickBuilder {
+
+    private static final int BLOCK_SIZE = 256;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int classCount;
+    private int[] transitions;
+    private int[] needles;
+    private int[] depths;
+    private int stateCount;
+
+    protected static MultiLiteralSearch buildAhoCorasick(Collection<String> strings) {
+        return new FlatAhoCorasickBuilder().build(strings);
+    }
+
+    protected FlatAhoCorasick build(Collection<String> strings) {
+        BitSet alphabet = new BitSet(Character.MAX_VALUE + 1);
+        for (String s : strings) {
+            if (s.isEmpty()) {
+                throw new IllegalArgumentException("Cannot build FlatAhoCorasick with an empty needle");
+            }
+            for (int i = 0; i < s.length(); i++) {
+                alphabet.set(s.charAt(i));
+            }
+        }
+        char[] blocks = new char[BLOCK_SIZE];
+        char[] leaves = buildClassMap(alphabet, blocks);
+        classCount = alphabet.cardinality() + 1;
+        transitions = new int[INITIAL_CAPACITY * classCount];
+        needles = new int[INITIAL_CAPACITY];
+        depths = new int[INITIAL_CAPACITY];
+        newState(0);
+
+        int needle = 0;
+        for (String s : strings) {
+            int state = 0;
+            for (int i = 0; i < s.length(); i++) {
+                int index = state * classCount + classOf(blocks, leaves, s.charAt(i));
+                // the root is never a child, so 0 means there's no child yet
+                if (transitions[index] == 0) {
+                    int next = newState(i + 1);
+                    transitions[index] = next;
+                }
+                state = transitions[index];
+            }
+            // a needle that appears more than once is reported with its first index
+            if (needles[state] < 0) {
+                needles[state] = needle;
+            }
+            needle++;
+        }
+        int[] outputs = addFailureTransitions();
+        encodeTransitions(outputs);
+        return new FlatAhoCorasick(blocks, leaves, classCount, Arrays.copyOf(transitions, stateCount * classCount),
+                Arrays.copyOf(needles, stateCount), outputs, Arrays.copyOf(depths, stateCount));
+    }
+
+    /**
+     * Number the chars in the alphabet from 1, in order, leaving every other char in class 0. The map has two levels,
+     * with a block of 256 leaves for each distinct set of classes in a range of 256 chars, and blocks giving the
+     * offset of the leaves for each range.
+     */
+    private static char[] buildClassMap(BitSet alphabet, char[] blocks) {
+        Map<String, Integer> blockOffsets = new HashMap<>();
+        StringBuilder leaves = new StringBuilder();
+        int currentClass = 0;
+        for (int high = 0; high < BLOCK_SIZE; high++) {
+            char[] block = new char[BLOCK_SIZE];
+            for (int low = 0; low < BLOCK_SIZE; low++) {
+                if (alphabet.get(high * BLOCK_SIZE + low)) {
+                    block[low] = (char) ++currentClass;
+                }
+            }
+            String key = String.valueOf(block);
+            Integer offset = blockOffsets.get(key);
+            if (offset == null) {
+                offset = leaves.length();
+                blockOffsets.put(key, offset);
+                leaves.append(block);
+            }
+            blocks[high] = (char) (int) offset;
+        }
+        return leaves.toString().toCharArray();
+    }
+
+    private static int classOf(char[] blocks, char[] leaves, char c) {
+        return leaves[blocks[c >>> 8] + (c & 0xFF)];
+    }
+
+    private int newState(int depth) {
+        if (stateCount == depths.length) {
+            int capacity = depths.length * 2;
+            // offsets are stored as ints, and complemented, so the table must fit in an int
+            if ((long) capacity * classCount > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many states to build FlatAhoCorasick");
+            }
+            transitions = Arrays.copyOf(transitions, capacity * classCount);
+            needles = Arrays.copyOf(needles, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+        }
+        needles[stateCount] = -1;
+        depths[stateCount] = depth;
+        return stateCount++;
+    }
+
+    /**
+     * Replace each target state in the table with the offset of its row, complemented if a match ends there.
+     */
+    private void encodeTransitions(int[] outputs) {
+        for (int i = 0; i < stateCount * classCount; i++) {
+            int target = transitions[i];
+            int offset = target * classCount;
+            transitions[i] = needles[target] >= 0 || outputs[target] >= 0 ? ~offset : offset;
+        }
+    }
+
+    /**
+     * Replace the missing transitions of each state with those of its failure state, and link each state to the
+     * nearest state on its failure chain where a needle ends.
+     *
+     * @return the output links
+     */
+    private int[] addFailureTransitions() {
+        int[] failures = new int[stateCount];
+        int[] outputs = new int[stateCount];
+        int[] queue = new int[stateCount];
+        outputs[0] = -1;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = 0;
+        while (head < tail) {
+            int state = queue[head++];
+            int offset = state * classCount;
+            int failureOffset = failures[state] * classCount;
+            for (int charClass = 0; charClass < classCount; charClass++) {
+                int child = transitions[offset + charClass];
+                if (child != 0) {
+                    int failure = state == 0 ? 0 : transitions[failureOffset + charClass];
+                    failures[child] = failure;
+                    outputs[child] = needles[failure] >= 0 ? failure : outputs[failure];
+                    queue[tail++] = child;
+                }
+                else if (state != 0) {
+                    transitions[offset + charClass] = transitions[failureOffset + charClass];
+                }
+            }
+        }
+        return outputs;
+    }
+}
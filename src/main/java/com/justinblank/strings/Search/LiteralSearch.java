@@ -0,0 +1,212 @@
+package com.justinblank.strings.Search;
+
+import com.justinblank.strings.MatchResult;
+
+/**
+ * Searches for a single literal string using the Two-Way algorithm of Crochemore and Perrin, which runs in linear time
+ * with constant extra space. Before comparing a window, the last char of the window is looked up in a Horspool style
+ * shift table, so that in typical text, long needles skip over most of the haystack without comparing it.
+ *
+ * The structure follows the long needle variant of Two-Way in glibc. The shift table is indexed by the low byte of a
+ * char, so a shift of zero only means the last char might match, and it is still compared.
+ */
+class LiteralSearch implements SearchMethod {
+
+    private static final int SHIFT_TABLE_SIZE = 256;
+
+    private final String needle;
+    private final char[] chars;
+    private final int suffix;
+    private final int period;
+    private final boolean periodic;
+    private final int[] shifts;
+
+    LiteralSearch(String needle) {
+        this.needle = needle;
+        this.chars = needle.toCharArray();
+        int length = chars.length;
+        int[] periodHolder = new int[1];
+        this.suffix = criticalFactorization(chars, periodHolder);
+        if (regionMatches(chars, 0, periodHolder[0], suffix)) {
+            this.periodic = true;
+            this.period = periodHolder[0];
+        }
+        else {
+            // the needle isn't periodic around the factorization, so this is a lower bound for the true period
+            this.periodic = false;
+            this.period = Math.max(suffix, length - suffix) + 1;
+        }
+        this.shifts = new int[SHIFT_TABLE_SIZE];
+        for (int i = 0; i < SHIFT_TABLE_SIZE; i++) {
+            shifts[i] = length;
+        }
+        for (int i = 0; i < length; i++) {
+            shifts[chars[i] & 0xFF] = length - 1 - i;
+        }
+    }
+
+    /**
+     * Find a critical factorization of the needle, returning the index of the start of the right half, and storing the
+     * local period at that index in the given array.
+     */
+    static int criticalFactorization(char[] needle, int[] period) {
+        int[] forwardPeriod = new int[1];
+        int forward = maximalSuffix(needle, forwardPeriod, false);
+        int[] reversePeriod = new int[1];
+        int reverse = maximalSuffix(needle, reversePeriod, true);
+        if (reverse < forward) {
+            period[0] = forwardPeriod[0];
+            return forward + 1;
+        }
+        period[0] = reversePeriod[0];
+        return reverse + 1;
+    }
+
+    /**
+     * Compute the maximal suffix of the needle, under the normal ordering of chars, or its reverse. Returns the index
+     * before the start of the suffix, which is -1 if the suffix is the whole needle.
+     */
+    private static int maximalSuffix(char[] needle, int[] period, boolean reversed) {
+        int maxSuffix = -1;
+        int j = 0;
+        int k = 1;
+        int p = 1;
+        while (j + k < needle.length) {
+            char a = needle[j + k];
+            char b = needle[maxSuffix + k];
+            if (reversed ? b < a : a < b) {
+                j += k;
+                k = 1;
+                p = j - maxSuffix;
+            }
+            else if (a == b) {
+                if (k != p) {
+                    k++;
+                }
+                else {
+                    j += p;
+                    k = 1;
+                }
+            }
+            else {
+                maxSuffix = j++;
+                k = 1;
+                p = 1;
+            }
+        }
+        period[0] = p;
+        return maxSuffix;
+    }
+
+    private static boolean regionMatches(char[] chars, int first, int second, int length) {
+        for (int i = 0; i < length; i++) {
+            if (chars[first + i] != chars[second + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean matches(String s) {
+        return needle.equals(s);
+    }
+
+    @Override
+    public boolean containedIn(String s) {
+        return indexOf(s, 0, s.length()) != -1;
+    }
+
+    public MatchResult find(String s, int start, int end, boolean anchored) {
+        SearchMethodUtil.checkIndices(s, start, end);
+        int index;
+        if (anchored) {
+            index = chars.length <= end - start && s.startsWith(needle, start) ? start : -1;
+        }
+        else {
+            index = indexOf(s, start, end);
+        }
+        if (index == -1) {
+            return MatchResult.failure();
+        }
+        return MatchResult.success(index, index + chars.length);
+    }
+
+    private int indexOf(String s, int start, int end) {
+        int length = chars.length;
+        if (length == 0) {
+            return start;
+        }
+        if (periodic) {
+            return periodicIndexOf(s, start, end);
+        }
+        int last = end - length;
+        int j = start;
+        while (j <= last) {
+            int shift = shifts[s.charAt(j + length - 1) & 0xFF];
+            if (shift > 0) {
+                j += shift;
+                continue;
+            }
+            int i = suffix;
+            while (i < length && chars[i] == s.charAt(i + j)) {
+                i++;
+            }
+            if (i == length) {
+                i = suffix - 1;
+                while (i >= 0 && chars[i] == s.charAt(i + j)) {
+                    i--;
+                }
+                if (i < 0) {
+                    return j;
+                }
+                j += period;
+            }
+            else {
+                j += i - suffix + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The search for a periodic needle, which remembers how much of the needle is known to match after shifting by the
+     * period, so that no char is compared more than a constant number of times.
+     */
+    private int periodicIndexOf(String s, int start, int end) {
+        int length = chars.length;
+        int last = end - length;
+        int memory = 0;
+        int j = start;
+        while (j <= last) {
+            int shift = shifts[s.charAt(j + length - 1) & 0xFF];
+            if (shift > 0) {
+                if (memory > 0 && shift < period) {
+                    shift = length - period;
+                }
+                memory = 0;
+                j += shift;
+                continue;
+            }
+            int i = Math.max(suffix, memory);
+            while (i < length && chars[i] == s.charAt(i + j)) {
+                i++;
+            }
+            if (i == length) {
+                i = suffix - 1;
+                while (i >= memory && chars[i] == s.charAt(i + j)) {
+                    i--;
+                }
+                if (i < memory) {
+                    return j;
+                }
+                j += period;
+                memory = length - period;
+            }
+            else {
+                j += i - suffix + 1;
+                memory = 0;
+            }
+        }
+        return -1;
+    }
+}
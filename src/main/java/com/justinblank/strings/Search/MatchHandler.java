@@ -0,0 +1,18 @@
+package com.justinblank.strings.Search;
+
+/**
+ * Receives the matches found by {@link MultiLiteralSearch#findAll(String, int, int, boolean, MatchHandler)}.
+ */
+@FunctionalInterface
+public interface MatchHandler {
+
+    /**
+     * Handle a single match.
+     *
+     * @param needle the index of the needle that matched
+     * @param start  the index of the first char of the match
+     * @param end    the index after the last char of the match
+     * @return true to continue searching, false to stop
+     */
+    boolean onMatch(int needle, int start, int end);
+}
@@ -0,0 +1,48 @@
+package com.justinblank.strings.Search;
+
+import com.justinblank.strings.ByteEncoding;
+import com.justinblank.strings.DecodedBytes;
+
+/**
+ * A search for several literal strings at once, which can report every match, along with the needle that matched.
+ */
+public interface MultiLiteralSearch extends SearchMethod {
+
+    /**
+     * Report the matches in part of a string to the handler, in order of their end index, or their start index, if
+     * non-overlapping. No objects are allocated per match.
+     *
+     * When overlapping, every occurrence of every needle is reported, and matches that end at the same index are
+     * reported longest first. Otherwise, matches are leftmost-longest: the match that starts earliest is chosen,
+     * preferring the longest needle that starts there, and the search resumes after its end.
+     *
+     * @param s           the string to search
+     * @param start       the index to start searching at
+     * @param end         the index to stop searching at
+     * @param overlapping whether to report overlapping matches
+     * @param handler     the handler, which can stop the search by returning false
+     */
+    void findAll(String s, int start, int end, boolean overlapping, MatchHandler handler);
+
+    default void findAll(String s, boolean overlapping, MatchHandler handler) {
+        findAll(s, 0, s.length(), overlapping, handler);
+    }
+
+    /**
+     * Report the matches in part of a byte array to the handler, as {@link #findAll(String, int, int, boolean,
+     * MatchHandler)} does, with indices into the array.
+     *
+     * @param bytes       the bytes
+     * @param offset      the index of the first byte
+     * @param length      the number of bytes
+     * @param encoding    the encoding of the bytes
+     * @param overlapping whether to report overlapping matches
+     * @param handler     the handler, which can stop the search by returning false
+     */
+    default void findAll(byte[] bytes, int offset, int length, ByteEncoding encoding, boolean overlapping,
+                         MatchHandler handler) {
+        DecodedBytes decoded = DecodedBytes.decode(bytes, offset, length, encoding);
+        findAll(decoded.string(), 0, decoded.string().length(), overlapping, (needle, start, end) ->
+                handler.onMatch(needle, decoded.startIndex(start), decoded.endIndex(end)));
+    }
+}
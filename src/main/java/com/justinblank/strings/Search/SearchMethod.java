@@ -1,5 +1,7 @@
 package com.justinblank.strings.Search;
 
+import com.justinblank.strings.ByteEncoding;
+import com.justinblank.strings.DecodedBytes;
 import com.justinblank.strings.MatchResult;
 import com.justinblank.strings.Matcher;
 import com.justinblank.strings.Pattern;
@@ -33,4 +35,35 @@ public interface SearchMethod extends Pattern {
     default boolean containedIn(String s) {
         return findIndex(s) != -1;
     }
+
+    /**
+     * Find the leftmost-longest match in part of a byte array. The indices of the result are indices into the array.
+     *
+     * By default, the bytes are decoded to a String, which is searched. Methods that can match bytes directly override
+     * this, the other byte-based methods, and {@link #matcher(byte[], int, int, ByteEncoding)}, to return a
+     * {@link ByteSearchMethodMatcher}.
+     *
+     * @param bytes    the bytes
+     * @param offset   the index of the first byte
+     * @param length   the number of bytes
+     * @param encoding the encoding of the bytes
+     * @param anchored whether the match must start at the offset
+     * @return the result of the search
+     */
+    default MatchResult find(byte[] bytes, int offset, int length, ByteEncoding encoding, boolean anchored) {
+        DecodedBytes decoded = DecodedBytes.decode(bytes, offset, length, encoding);
+        return decoded.toBytes(find(decoded.string(), 0, decoded.string().length(), anchored));
+    }
+
+    default MatchResult find(byte[] bytes, int offset, int length, ByteEncoding encoding) {
+        return find(bytes, offset, length, encoding, false);
+    }
+
+    default boolean matches(byte[] bytes, int offset, int length, ByteEncoding encoding) {
+        return matches(DecodedBytes.decode(bytes, offset, length, encoding).string());
+    }
+
+    default boolean containedIn(byte[] bytes, int offset, int length, ByteEncoding encoding) {
+        return find(bytes, offset, length, encoding).matched;
+    }
 }
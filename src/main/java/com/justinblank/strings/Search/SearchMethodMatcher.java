@@ -1,5 +1,6 @@
 package com.justinblank.strings.Search;
 
+import com.justinblank.strings.MatchResult;
 import com.justinblank.strings.Matcher;
 
 import java.util.Objects;
@@ -24,4 +25,9 @@ public class SearchMethodMatcher implements Matcher {
     public boolean containedIn() {
         return method.containedIn(s);
     }
+
+    @Override
+    public MatchResult find(int from) {
+        return method.find(s, from, s.length());
+    }
 }
@@ -1,16 +1,38 @@
 package com.justinblank.strings.Search;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Collection;
 import java.util.List;
 
 public final class SearchMethods {
 
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String TEDDY_CLASS = "com.justinblank.strings.Search.VectorTeddy";
+    private static final int MAX_TEDDY_NEEDLES = 16;
+    private static final int MIN_TEDDY_NEEDLE_LENGTH = 2;
+    // Creates a VectorTeddy, or null if the Vector API isn't available
+    private static final MethodHandle TEDDY_FACTORY = findTeddyFactory();
+
     private SearchMethods() {}
 
     public static SearchMethod makeSearchMethod(Collection<String> strings) {
         if (strings.isEmpty()) {
             throw new IllegalArgumentException("Cannot create SearchMethod using empty list of strings");
         }
+        if (strings.size() == 1) {
+            return new LiteralSearch(strings.iterator().next());
+        }
+        if (fitsTeddy(strings)) {
+            SearchMethod teddy = makeTeddy(strings);
+            if (teddy != null) {
+                return teddy;
+            }
+        }
+        if (!strings.contains("")) {
+            return FlatAhoCorasickBuilder.buildAhoCorasick(strings);
+        }
         if (allAscii(strings)) {
             return AsciiAhoCorasickBuilder.buildAhoCorasick(strings);
         }
@@ -19,6 +41,80 @@ public final class SearchMethods {
         }
     }
 
+    /**
+     * Create a search for several literal strings, which can report every match along with the index of the needle
+     * that matched. Unlike {@link #makeSearchMethod(Collection)}, this always builds an Aho-Corasick automaton, even
+     * for a single needle.
+     *
+     * @param needles the strings to search for, none of which may be empty
+     * @return the search
+     */
+    public static MultiLiteralSearch makeMultiLiteralSearch(List<String> needles) {
+        if (needles.isEmpty()) {
+            throw new IllegalArgumentException("Cannot create MultiLiteralSearch using empty list of strings");
+        }
+        for (String needle : needles) {
+            if (needle.isEmpty()) {
+                throw new IllegalArgumentException("Cannot create MultiLiteralSearch with an empty needle");
+            }
+        }
+        return FlatAhoCorasickBuilder.buildAhoCorasick(needles);
+    }
+
+    private static boolean fitsTeddy(Collection<String> strings) {
+        if (strings.size() > MAX_TEDDY_NEEDLES) {
+            return false;
+        }
+        for (String s : strings) {
+            if (s.length() < MIN_TEDDY_NEEDLE_LENGTH) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Create a search that finds candidate matches with the Vector API. The search is compiled separately, for Java 17,
+     * so it's only loaded if the jdk.incubator.vector module is present, e.g. when running with
+     * {@code --add-modules jdk.incubator.vector}.
+     *
+     * @param strings the needles
+     * @return the search, or null if the Vector API isn't available, or the needles aren't suitable
+     */
+    static SearchMethod makeTeddy(Collection<String> strings) {
+        if (TEDDY_FACTORY == null) {
+            return null;
+        }
+        try {
+            return (SearchMethod) TEDDY_FACTORY.invokeExact(strings);
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new IllegalStateException("Failed to create VectorTeddy", t);
+        }
+    }
+
+    static boolean isTeddyAvailable() {
+        return TEDDY_FACTORY != null;
+    }
+
+    private static MethodHandle findTeddyFactory() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            Class<?> teddyClass = Class.forName(TEDDY_CLASS);
+            return MethodHandles.lookup().findStatic(teddyClass, "create",
+                    MethodType.methodType(SearchMethod.class, Collection.class));
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            // the library was built without the Vector API
+            return null;
+        }
+    }
+
     // I keep double-checking StringUtils for where I missed this
     protected static boolean allAscii(String s) {
         for (int i = 0; i < s.length(); i++) {
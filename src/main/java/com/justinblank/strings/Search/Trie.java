@@ -1,25 +1,80 @@
 package com.justinblank.strings.Search;
 
-import java.util.TreeMap;
+import java.util.Arrays;
 
 class Trie {
 
+    private static final char[] NO_KEYS = new char[0];
+    private static final Trie[] NO_FOLLOWERS = new Trie[0];
+
     protected int length;
     protected boolean accepting;
     protected Trie root;
     protected Trie supplier;
-    protected TreeMap<Character, Trie> followers = new TreeMap<>();
+    // The chars with transitions, sorted so they can be binary searched, and the nodes they lead to. Only the first
+    // followerCount entries are used
+    private char[] keys = NO_KEYS;
+    private Trie[] followers = NO_FOLLOWERS;
+    private int followerCount;
+    // The depth of the node in the trie, which unlike length, isn't changed when a node accepts via its supplier
+    protected final int depth;
+    // The index of the needle that ends at this node, or -1 if none does
+    protected int needle = -1;
+    // The nearest node along the supplier chain where a needle ends, used to find every match ending at an index
+    protected Trie output;
+    // Whether the followers include every transition that follows the supplier chain to a node other than a child of
+    // the root, so that when a char has no follower, the next node is the root's follower for that char
+    protected boolean complete;
 
     protected Trie(int length) {
         this.length = length;
+        this.depth = length;
     }
 
     protected Trie next(char c) {
-        return this.followers.get(c);
+        int index = Arrays.binarySearch(keys, 0, followerCount, c);
+        return index >= 0 ? followers[index] : null;
     }
 
     void addFollower(char c, Trie trie) {
-        this.followers.put(c, trie);
+        int index = Arrays.binarySearch(keys, 0, followerCount, c);
+        if (index >= 0) {
+            followers[index] = trie;
+            return;
+        }
+        index = -index - 1;
+        if (followerCount == keys.length) {
+            int capacity = Math.max(2, keys.length * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            followers = Arrays.copyOf(followers, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, followerCount - index);
+        System.arraycopy(followers, index, followers, index + 1, followerCount - index);
+        keys[index] = c;
+        followers[index] = trie;
+        followerCount++;
+    }
+
+    int followerCount() {
+        return followerCount;
+    }
+
+    char key(int index) {
+        return keys[index];
+    }
+
+    Trie follower(int index) {
+        return followers[index];
+    }
+
+    /**
+     * Trim the arrays of followers to their size, once the node is finished.
+     */
+    void trim() {
+        if (followerCount < keys.length) {
+            keys = Arrays.copyOf(keys, followerCount);
+            followers = Arrays.copyOf(followers, followerCount);
+        }
     }
 
     void markAccepting() {
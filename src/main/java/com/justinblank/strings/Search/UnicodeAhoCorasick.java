@@ -2,12 +2,24 @@ package com.justinblank.strings.Search;
 
 import com.justinblank.strings.MatchResult;
 
-class UnicodeAhoCorasick implements SearchMethod {
+class UnicodeAhoCorasick implements MultiLiteralSearch {
+
+    private static final int PAGE_SIZE = 256;
 
     private final Trie trie;
+    // The followers of the root, indexed by the high and low bytes of the char, with pages only for the high bytes
+    // where the root has followers
+    private final Trie[][] rootPages = new Trie[PAGE_SIZE][];
 
     UnicodeAhoCorasick(Trie trie) {
         this.trie = trie;
+        for (int i = 0; i < trie.followerCount(); i++) {
+            char c = trie.key(i);
+            if (rootPages[c >>> 8] == null) {
+                rootPages[c >>> 8] = new Trie[PAGE_SIZE];
+            }
+            rootPages[c >>> 8][c & 0xFF] = trie.follower(i);
+        }
     }
 
     public boolean matches(String s) {
@@ -28,28 +40,14 @@ class UnicodeAhoCorasick implements SearchMethod {
                 }
                 return MatchResult.failure();
             }
-            char c = s.charAt(i);
-                Trie next = current.next(c);
-                while (next == null) {
-                    current = current.supplier;
-                    if (current != null && current != trie) {
-                        next = current.next(c);
-                    }
-                    else {
-                        next = trie.next(c);
-                        if (next == null) {
-                            next = trie;
-                        }
-                    }
-                }
-                current = next;
-                if (current.accepting) {
-                    int potentialLastStart = i - current.length + 1;
-                    if (lastStart == -1 || potentialLastStart <= lastStart) {
-                        lastEnd = i;
-                        lastStart = potentialLastStart;
-                    }
+            current = next(current, s.charAt(i));
+            if (current.accepting) {
+                int potentialLastStart = i - current.length + 1;
+                if (lastStart == -1 || potentialLastStart <= lastStart) {
+                    lastEnd = i;
+                    lastStart = potentialLastStart;
                 }
+            }
         }
         if (lastEnd > -1) {
             return MatchResult.success(lastStart, lastEnd + 1);
@@ -57,4 +55,79 @@ class UnicodeAhoCorasick implements SearchMethod {
 
         return MatchResult.failure();
     }
+
+    @Override
+    public void findAll(String s, int start, int end, boolean overlapping, MatchHandler handler) {
+        SearchMethodUtil.checkIndices(s, start, end);
+        if (overlapping) {
+            findOverlapping(s, start, end, handler);
+        }
+        else {
+            findNonOverlapping(s, start, end, handler);
+        }
+    }
+
+    private void findOverlapping(String s, int start, int end, MatchHandler handler) {
+        Trie current = trie;
+        for (int i = start; i < end; i++) {
+            current = next(current, s.charAt(i));
+            Trie match = current.needle >= 0 ? current : current.output;
+            while (match != null) {
+                if (!handler.onMatch(match.needle, i + 1 - match.depth, i + 1)) {
+                    return;
+                }
+                match = match.output;
+            }
+        }
+    }
+
+    private void findNonOverlapping(String s, int start, int end, MatchHandler handler) {
+        int i = start;
+        while (i < end) {
+            Trie current = trie;
+            int matchNeedle = -1;
+            int matchStart = -1;
+            int matchEnd = -1;
+            for (; i < end; i++) {
+                current = next(current, s.charAt(i));
+                Trie longest = current.needle >= 0 ? current : current.output;
+                if (longest != null && (matchNeedle < 0 || i + 1 - longest.depth <= matchStart)) {
+                    matchNeedle = longest.needle;
+                    matchStart = i + 1 - longest.depth;
+                    matchEnd = i + 1;
+                }
+                // the current node is the longest suffix that could still grow into a match, so once it starts after
+                // the match, no match starting at or before it remains
+                if (matchNeedle >= 0 && i + 1 - current.depth > matchStart) {
+                    break;
+                }
+            }
+            if (matchNeedle < 0 || !handler.onMatch(matchNeedle, matchStart, matchEnd)) {
+                return;
+            }
+            i = matchEnd;
+        }
+    }
+
+    /**
+     * Follow the transition for a char, walking the supplier chain until a node has a follower for it, or caches the
+     * transitions of its suppliers, at which point a missing follower means the root's follower.
+     */
+    private Trie next(Trie current, char c) {
+        while (current != trie) {
+            Trie next = current.next(c);
+            if (next != null) {
+                return next;
+            }
+            if (current.complete) {
+                break;
+            }
+            current = current.supplier;
+        }
+        Trie[] page = rootPages[c >>> 8];
+        if (page == null || page[c & 0xFF] == null) {
+            return trie;
+        }
+        return page[c & 0xFF];
+    }
 }
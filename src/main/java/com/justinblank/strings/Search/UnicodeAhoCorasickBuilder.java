@@ -7,14 +7,19 @@ import java.util.List;
 
 public class UnicodeAhoCorasickBuilder{
 
+    // Nodes this shallow get their supplier's transitions cached, so that searches rarely walk the supplier chain
+    private static final int MAX_DELTA_DEPTH = 4;
+    // The most followers a node can have with cached transitions, to bound the memory used for them
+    private static final int MAX_DELTA_FOLLOWERS = 64;
+
     private Trie root;
     private List<Trie> nodes = new ArrayList<>();
 
-    protected static SearchMethod buildAhoCorasick(Collection<String> strings) {
+    protected static MultiLiteralSearch buildAhoCorasick(Collection<String> strings) {
         return new UnicodeAhoCorasickBuilder().build(strings);
     }
 
-    protected SearchMethod build(Collection<String> strings) {
+    protected MultiLiteralSearch build(Collection<String> strings) {
         Trie trie = new Trie(0);
         root = trie;
         root.root = root;
@@ -22,10 +27,16 @@ public class UnicodeAhoCorasickBuilder{
         buildTrieStructure(strings, trie);
         nodes.sort(Comparator.comparing(Trie::length));
         addSuppliers();
+        addOutputs();
+        addDeltaTransitions();
+        for (Trie node : nodes) {
+            node.trim();
+        }
         return new UnicodeAhoCorasick(trie);
     }
 
     private void buildTrieStructure(Collection<String> strings, Trie trie) {
+        int needle = 0;
         for (String s : strings) {
             Trie current = trie;
             for (int i = 0; i < s.length(); i++) {
@@ -39,22 +50,77 @@ public class UnicodeAhoCorasickBuilder{
                 }
                 if (i == s.length() - 1) {
                     next.markAccepting();
+                    // a needle that appears more than once is reported with its first index
+                    if (next.needle < 0) {
+                        next.needle = needle;
+                    }
                 }
                 current = next;
             }
+            needle++;
         }
     }
 
 
     private void addSuppliers() {
         for (Trie node : nodes) {
-            node.followers.forEach((key, value) -> {
-                addSupplier(node, value, key);
-            });
+            for (int i = 0; i < node.followerCount(); i++) {
+                addSupplier(node, node.follower(i), node.key(i));
+            }
         }
         assert allHaveSuppliers(nodes);
     }
 
+    /**
+     * Link each node to the nearest node on its supplier chain where a needle ends. The nodes are sorted by depth, and
+     * a supplier is always shallower than its node, so its link is set first.
+     */
+    private void addOutputs() {
+        for (Trie node : nodes) {
+            if (node != root) {
+                Trie supplier = node.supplier;
+                node.output = supplier.needle >= 0 && supplier != root ? supplier : supplier.output;
+            }
+        }
+    }
+
+    /**
+     * Copy the transitions of each shallow node's supplier into the node, where the node doesn't have its own, so that
+     * the node's followers give the next node for every char, except those that lead to a child of the root. Each
+     * supplier is shallower than its node, so it's complete before the node is, unless it had too many followers.
+     */
+    private void addDeltaTransitions() {
+        for (Trie node : nodes) {
+            if (node == root || node.depth > MAX_DELTA_DEPTH) {
+                continue;
+            }
+            Trie supplier = node.supplier;
+            if (supplier == root) {
+                node.complete = true;
+                continue;
+            }
+            if (!supplier.complete) {
+                continue;
+            }
+            int missing = 0;
+            for (int i = 0; i < supplier.followerCount(); i++) {
+                if (node.next(supplier.key(i)) == null) {
+                    missing++;
+                }
+            }
+            if (node.followerCount() + missing > MAX_DELTA_FOLLOWERS) {
+                continue;
+            }
+            for (int i = 0; i < supplier.followerCount(); i++) {
+                char c = supplier.key(i);
+                if (node.next(c) == null) {
+                    node.addFollower(c, supplier.follower(i));
+                }
+            }
+            node.complete = true;
+        }
+    }
+
     private boolean allHaveSuppliers(List<Trie> nodes) {
         for (Trie node : nodes) {
             assert node == root || node.supplier != null;
@@ -0,0 +1,213 @@
+package com.justinblank.strings.Search;
+
+import com.justinblank.strings.MatchResult;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A search for a small set of literals, in the style of the Teddy algorithm from Hyperscan and Rust's regex crate.
+ *
+ * Each needle is put in one of eight buckets. For each of the first few chars of the needles, two tables map the low
+ * and high nibbles of the char's low byte to the buckets of the needles with a matching nibble at that offset. A
+ * search loads a vector of chars at each offset, looks up both nibbles of every lane with a shuffle, and ANDs the
+ * results, so that each lane ends up with the buckets of the needles whose first chars might match there. Only those
+ * candidates are verified against the needles.
+ *
+ * This class needs the jdk.incubator.vector module, so it's compiled separately, for Java 17, and only loaded by
+ * {@link SearchMethods} when the module is present.
+ */
+class VectorTeddy implements SearchMethod {
+
+    static final int MAX_NEEDLES = 16;
+    static final int MIN_NEEDLE_LENGTH = 2;
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int BUCKETS = 8;
+    // The number of leading chars that are fingerprinted
+    private static final int MAX_FINGERPRINT = 3;
+    private static final int NIBBLES = 16;
+    private static final int CHUNK_SIZE = 4096;
+
+    private final String[] needles;
+    private final int[][] bucketNeedles;
+    private final int fingerprint;
+    // The tables for each offset are held in fields rather than arrays, which lets the JIT keep them in registers
+    private final ShortVector low0;
+    private final ShortVector high0;
+    private final ShortVector low1;
+    private final ShortVector high1;
+    private final ShortVector low2;
+    private final ShortVector high2;
+    // Holds a buffer no search is using, so that it can be reused without locking
+    private final AtomicReference<char[]> idleBuffer = new AtomicReference<>();
+
+    private VectorTeddy(String[] needles, int[][] bucketNeedles, int fingerprint, ShortVector[] lowTables,
+                        ShortVector[] highTables) {
+        this.needles = needles;
+        this.bucketNeedles = bucketNeedles;
+        this.fingerprint = fingerprint;
+        this.low0 = lowTables[0];
+        this.high0 = highTables[0];
+        this.low1 = lowTables[1];
+        this.high1 = highTables[1];
+        // With a two char fingerprint, the third offset's tables accept everything
+        this.low2 = fingerprint > 2 ? lowTables[2] : ShortVector.broadcast(SPECIES, (short) 0xFF);
+        this.high2 = fingerprint > 2 ? highTables[2] : ShortVector.broadcast(SPECIES, (short) 0xFF);
+    }
+
+    /**
+     * Create a search for the needles, if they're suitable and the platform's vectors are wide enough to hold a table of
+     * 16 shorts.
+     *
+     * @param strings the needles
+     * @return the search, or null if it can't be used
+     */
+    static SearchMethod create(Collection<String> strings) {
+        if (SPECIES.length() < NIBBLES || strings.size() > MAX_NEEDLES || strings.isEmpty()) {
+            return null;
+        }
+        String[] needles = strings.toArray(new String[0]);
+        int minLength = Integer.MAX_VALUE;
+        for (String needle : needles) {
+            minLength = Math.min(minLength, needle.length());
+        }
+        if (minLength < MIN_NEEDLE_LENGTH) {
+            return null;
+        }
+        int fingerprint = Math.min(MAX_FINGERPRINT, minLength);
+        List<List<Integer>> buckets = new ArrayList<>();
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        short[][] low = new short[fingerprint][SPECIES.length()];
+        short[][] high = new short[fingerprint][SPECIES.length()];
+        for (int i = 0; i < needles.length; i++) {
+            int bucket = i % BUCKETS;
+            buckets.get(bucket).add(i);
+            for (int offset = 0; offset < fingerprint; offset++) {
+                int b = needles[i].charAt(offset) & 0xFF;
+                low[offset][b & 0xF] |= (short) (1 << bucket);
+                high[offset][b >>> 4] |= (short) (1 << bucket);
+            }
+        }
+        int[][] bucketNeedles = new int[BUCKETS][];
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketNeedles[i] = buckets.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        ShortVector[] lowTables = new ShortVector[fingerprint];
+        ShortVector[] highTables = new ShortVector[fingerprint];
+        for (int offset = 0; offset < fingerprint; offset++) {
+            lowTables[offset] = ShortVector.fromArray(SPECIES, low[offset], 0);
+            highTables[offset] = ShortVector.fromArray(SPECIES, high[offset], 0);
+        }
+        return new VectorTeddy(needles, bucketNeedles, fingerprint, lowTables, highTables);
+    }
+
+    public boolean matches(String s) {
+        for (String needle : needles) {
+            if (needle.equals(s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public MatchResult find(String s, int start, int end, boolean anchored) {
+        SearchMethodUtil.checkIndices(s, start, end);
+        if (anchored) {
+            int length = longestMatch(s, start, end, 0xFF);
+            return length < 0 ? MatchResult.failure() : MatchResult.success(start, start + length);
+        }
+        char[] buffer = idleBuffer.getAndSet(null);
+        if (buffer == null) {
+            buffer = new char[CHUNK_SIZE];
+        }
+        try {
+            return search(buffer, s, start, end);
+        }
+        finally {
+            idleBuffer.set(buffer);
+        }
+    }
+
+    /**
+     * Copy the string into the buffer a chunk at a time, fingerprinting each position that has room for a full load at
+     * every offset. The positions at the end of a chunk that don't are left to the next chunk, and those at the end of
+     * the string are checked without vectors.
+     */
+    private MatchResult search(char[] buffer, String s, int start, int end) {
+        int lanes = SPECIES.length();
+        int position = start;
+        while (position < end) {
+            int length = Math.min(end - position, buffer.length);
+            s.getChars(position, position + length, buffer, 0);
+            int index = 0;
+            for (; index + lanes + fingerprint - 1 <= length; index += lanes) {
+                ShortVector candidates = candidates(buffer, index);
+                long lanesWithCandidates = candidates.compare(VectorOperators.NE, (short) 0).toLong();
+                while (lanesWithCandidates != 0) {
+                    int lane = Long.numberOfTrailingZeros(lanesWithCandidates);
+                    lanesWithCandidates &= lanesWithCandidates - 1;
+                    int matchStart = position + index + lane;
+                    int matchLength = longestMatch(s, matchStart, end, candidates.lane(lane));
+                    if (matchLength >= 0) {
+                        return MatchResult.success(matchStart, matchStart + matchLength);
+                    }
+                }
+            }
+            if (position + length == end) {
+                for (; index < length; index++) {
+                    int matchLength = longestMatch(s, position + index, end, 0xFF);
+                    if (matchLength >= 0) {
+                        return MatchResult.success(position + index, position + index + matchLength);
+                    }
+                }
+                break;
+            }
+            position += index;
+        }
+        return MatchResult.failure();
+    }
+
+    private ShortVector candidates(char[] buffer, int index) {
+        ShortVector result = buckets(buffer, index, low0, high0).and(buckets(buffer, index + 1, low1, high1));
+        if (fingerprint > 2) {
+            result = result.and(buckets(buffer, index + 2, low2, high2));
+        }
+        return result;
+    }
+
+    private static ShortVector buckets(char[] buffer, int index, ShortVector lowTable, ShortVector highTable) {
+        ShortVector chars = ShortVector.fromCharArray(SPECIES, buffer, index);
+        ShortVector lowNibbles = chars.and((short) 0xF);
+        ShortVector highNibbles = chars.lanewise(VectorOperators.LSHR, 4).and((short) 0xF);
+        return lowNibbles.selectFrom(lowTable).and(highNibbles.selectFrom(highTable));
+    }
+
+    /**
+     * Find the longest needle in the given buckets that starts at the index and ends by end.
+     *
+     * @return the length of the needle, or -1 if none matches
+     */
+    private int longestMatch(String s, int index, int end, int buckets) {
+        int longest = -1;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if ((buckets & (1 << bucket)) == 0) {
+                continue;
+            }
+            for (int needle : bucketNeedles[bucket]) {
+                String candidate = needles[needle];
+                if (candidate.length() > longest && index + candidate.length() <= end
+                        && s.startsWith(candidate, index)) {
+                    longest = candidate.length();
+                }
+            }
+        }
+        return longest;
+    }
+}
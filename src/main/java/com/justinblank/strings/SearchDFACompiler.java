@@ -0,0 +1,204 @@
+package com.justinblank.strings;
+
+import java.util.*;
+
+import static com.justinblank.strings.RegexInstr.Opcode.*;
+
+/**
+ * Builds a DFA for unanchored, leftmost-longest searching. Reading a haystack from some starting index, the DFA is in
+ * an accepting state exactly when it has read the end of a match that is at least as good as any match seen so far.
+ * The last accepting index is therefore the end of the leftmost-longest match, and the start of that match can be
+ * recovered by running the reversed DFA backwards from that end.
+ *
+ * Each DFA state corresponds to a list of groups of NFA states, ordered by the index at which the threads in that
+ * group began. An NFA state only appears in the earliest group that reaches it. Once a group contains a match, all
+ * later groups are discarded, and no new threads are started. This is the same scheme RE2 uses for its longest match
+ * DFA.
+ */
+class SearchDFACompiler {
+
+    private final Map<SearchState, DFA> stateMap = new HashMap<>();
+    private final NFA nfa;
+    private final Set<Integer> initialClosure;
+    private final CompileBudget budget;
+    private DFA root;
+    private int state = 1; // root will always be zero
+
+    SearchDFACompiler(NFA nfa) {
+        this(nfa, CompileBudget.UNLIMITED);
+    }
+
+    SearchDFACompiler(NFA nfa, CompileBudget budget) {
+        this.nfa = nfa;
+        this.budget = budget;
+        this.initialClosure = nfa.epsilonClosure(0);
+    }
+
+    static DFA compile(NFA nfa) {
+        return compile(nfa, CompileBudget.UNLIMITED);
+    }
+
+    /**
+     * Build the minimal search DFA for an NFA, abandoning the construction if it exceeds the budget.
+     *
+     * @param nfa    the NFA
+     * @param budget the budget
+     * @return the DFA
+     * @throws CompileBudgetExceededException if the DFA has too many states, or time runs out
+     */
+    static DFA compile(NFA nfa, CompileBudget budget) {
+        DFA dfa = new SearchDFACompiler(nfa, budget)._compile();
+        DFA minimized = MinimizeDFA.minimizeDFA(dfa, budget);
+        minimized.setCharClasses(nfa.charClasses());
+        return minimized;
+    }
+
+    DFA _compile() {
+        List<Set<Integer>> groups = new ArrayList<>();
+        groups.add(initialClosure);
+        SearchState initial = new SearchState(groups, nfa.hasAcceptingState(initialClosure));
+        root = DFA.root(initial.matchSeen);
+        stateMap.put(initial, root);
+
+        Deque<SearchState> pending = new ArrayDeque<>();
+        pending.add(initial);
+        while (!pending.isEmpty()) {
+            SearchState current = pending.pop();
+            budget.checkTime();
+            DFA dfa = stateMap.get(current);
+            CharRange lastRange = null;
+            DFA lastTarget = null;
+            for (CharRange range : partition(current)) {
+                // any element of the range is equally good here, getStart()/getEnd() doesn't matter
+                SearchState next = transition(current, range.getStart());
+                DFA target = null;
+                if (next != null) {
+                    target = stateMap.get(next);
+                    if (target == null) {
+                        budget.check(state + 1);
+                        target = new DFA(root, next.accepting(nfa), state++);
+                        stateMap.put(next, target);
+                        pending.add(next);
+                    }
+                }
+                // merge adjacent ranges that lead to the same state, to keep transition lists short
+                if (lastTarget != null && target == lastTarget && lastRange.getEnd() + 1 == range.getStart()) {
+                    lastRange = new CharRange(lastRange.getStart(), range.getEnd());
+                }
+                else {
+                    if (lastTarget != null) {
+                        dfa.addTransition(lastRange, lastTarget);
+                    }
+                    lastRange = range;
+                    lastTarget = target;
+                }
+            }
+            if (lastTarget != null) {
+                dfa.addTransition(lastRange, lastTarget);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Partition the alphabet into ranges that behave identically with respect to the given state. Characters that no
+     * thread can consume are included, since in an unanchored search they still lead to a new thread being started.
+     */
+    private List<CharRange> partition(SearchState searchState) {
+        List<CharRange> ranges = new ArrayList<>();
+        for (Set<Integer> group : searchState.groups) {
+            for (Integer nfaState : group) {
+                RegexInstr instr = nfa.regexInstrs[nfaState];
+                if (instr.opcode == CHAR_RANGE) {
+                    ranges.add(new CharRange(instr.start, instr.end));
+                }
+            }
+        }
+        List<CharRange> covering = CharRange.minimalCovering(ranges);
+        if (searchState.matchSeen) {
+            return covering;
+        }
+        List<CharRange> partition = new ArrayList<>();
+        int next = Character.MIN_VALUE;
+        for (CharRange range : covering) {
+            if (range.getStart() > next) {
+                partition.add(new CharRange((char) next, (char) (range.getStart() - 1)));
+            }
+            partition.add(range);
+            next = range.getEnd() + 1;
+        }
+        if (next <= Character.MAX_VALUE) {
+            partition.add(new CharRange((char) next, Character.MAX_VALUE));
+        }
+        return partition;
+    }
+
+    private SearchState transition(SearchState current, char c) {
+        Set<Integer> seen = new HashSet<>();
+        List<Set<Integer>> groups = new ArrayList<>();
+        boolean matchSeen = current.matchSeen;
+        for (Set<Integer> group : current.groups) {
+            Set<Integer> moves = new HashSet<>();
+            for (Integer nfaState : group) {
+                RegexInstr instr = nfa.regexInstrs[nfaState];
+                if (instr.opcode == CHAR_RANGE && instr.start <= c && instr.end >= c) {
+                    moves.add(nfaState + 1);
+                }
+            }
+            Set<Integer> next = nfa.epsilonClosure(moves);
+            next.removeAll(seen);
+            if (!next.isEmpty()) {
+                seen.addAll(next);
+                groups.add(next);
+                if (nfa.hasAcceptingState(next)) {
+                    // any later group started later, so can only produce a worse match
+                    matchSeen = true;
+                    break;
+                }
+            }
+        }
+        if (!matchSeen) {
+            Set<Integer> restart = new HashSet<>(initialClosure);
+            restart.removeAll(seen);
+            if (!restart.isEmpty()) {
+                groups.add(restart);
+            }
+        }
+        if (groups.isEmpty()) {
+            return null;
+        }
+        return new SearchState(groups, matchSeen);
+    }
+
+    private static class SearchState {
+        final List<Set<Integer>> groups;
+        final boolean matchSeen;
+
+        SearchState(List<Set<Integer>> groups, boolean matchSeen) {
+            this.groups = groups;
+            this.matchSeen = matchSeen;
+        }
+
+        boolean accepting(NFA nfa) {
+            for (Set<Integer> group : groups) {
+                if (nfa.hasAcceptingState(group)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SearchState that = (SearchState) o;
+            return matchSeen == that.matchSeen && groups.equals(that.groups);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(groups, matchSeen);
+        }
+    }
+}
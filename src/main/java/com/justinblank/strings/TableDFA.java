@@ -0,0 +1,302 @@
+package com.justinblank.strings;
+
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.strings.Search.ByteSearchMethodMatcher;
+import com.justinblank.strings.Search.SearchMethod;
+import com.justinblank.strings.Search.SearchMethodUtil;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.*;
+
+/**
+ * A DFA interpreter that stores its transitions in flat int arrays, indexed by state and character class. Characters
+ * are first mapped to equivalence classes, so that the tables only need one column per class, rather than one per
+ * char. This avoids the cost of bytecode generation and classloading, while keeping the per-character cost of matching
+ * to two array lookups.
+ */
+public class TableDFA implements SearchMethod {
+
+    private static final int DEAD_STATE = -1;
+
+    private final CharClasses charClasses;
+    private final int classCount;
+    private final Table forwards;
+    private final Table search;
+    private final Table reversed;
+    private Prefilter prefilter;
+
+    private TableDFA(CharClasses charClasses, int classCount, Table forwards, Table search, Table reversed) {
+        this.charClasses = charClasses;
+        this.classCount = classCount;
+        this.forwards = forwards;
+        this.search = search;
+        this.reversed = reversed;
+    }
+
+    public static TableDFA compile(String regex) {
+        Node node = RegexParser.parse(regex);
+        NFA nfa = new NFA(RegexInstrBuilder.createNFA(node));
+        DFA dfa = NFAToDFACompiler.compile(nfa);
+        DFA dfaReversed = NFAToDFACompiler.compile(new NFA(RegexInstrBuilder.createNFA(node.reversed())));
+        DFA searchDFA = SearchDFACompiler.compile(nfa);
+        TableDFA tableDFA = fromDFAs(dfa, dfaReversed, searchDFA);
+        tableDFA.prefilter = Prefilter.create(node).orElse(null);
+        return tableDFA;
+    }
+
+    static TableDFA fromDFAs(DFA dfa, DFA dfaReversed, DFA searchDFA) {
+        // all three dfas come from the same set of char ranges, so they share their classes
+        CharClasses charClasses = searchDFA.getCharClasses();
+        int classCount = charClasses.classCount();
+        return new TableDFA(charClasses, classCount, buildTable(dfa, charClasses, classCount),
+                buildTable(searchDFA, charClasses, classCount), buildTable(dfaReversed, charClasses, classCount));
+    }
+
+    private static Table buildTable(DFA dfa, CharClasses charClasses, int classCount) {
+        assert charClasses.refines(dfa);
+        int stateCount = dfa.statesCount();
+        int[] transitions = new int[stateCount * classCount];
+        Arrays.fill(transitions, DEAD_STATE);
+        boolean[] accepting = new boolean[stateCount];
+        for (DFA state : dfa.allStates()) {
+            int offset = state.getStateNumber() * classCount;
+            accepting[state.getStateNumber()] = state.isAccepting();
+            for (Pair<CharRange, DFA> transition : state.getTransitions()) {
+                CharRange range = transition.getLeft();
+                // ranges never split a class, so the classes of the endpoints bound the classes of the range
+                int endClass = charClasses.classOf(range.getEnd());
+                for (int charClass = charClasses.classOf(range.getStart()); charClass <= endClass; charClass++) {
+                    transitions[offset + charClass] = transition.getRight().getStateNumber();
+                }
+            }
+        }
+        return new Table(transitions, accepting);
+    }
+
+    public boolean matches(String s) {
+        int[] transitions = forwards.transitions;
+        int state = 0;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            state = transitions[state * classCount + charClasses.classOf(s.charAt(i))];
+            if (state == DEAD_STATE) {
+                return false;
+            }
+        }
+        return forwards.accepting[state];
+    }
+
+    @Override
+    public MatchResult find(String s, int start, int end, boolean anchored) {
+        SearchMethodUtil.checkIndices(s, start, end);
+        int matchEnd;
+        if (anchored) {
+            matchEnd = findEnd(forwards, s, start, end);
+            if (matchEnd == -1) {
+                return MatchResult.failure();
+            }
+            return MatchResult.success(start, matchEnd);
+        }
+        if (prefilter != null) {
+            return prefilter.find(s, start, end, this::search);
+        }
+        return search(s, start, end);
+    }
+
+    private MatchResult search(String s, int start, int end) {
+        int matchEnd = findEnd(search, s, start, end);
+        if (matchEnd == -1) {
+            return MatchResult.failure();
+        }
+        return MatchResult.success(findStart(s, start, matchEnd), matchEnd);
+    }
+
+    /**
+     * Run the given table forward from start, returning the last index at which it was in an accepting state, or -1 if
+     * it never accepted.
+     */
+    private int findEnd(Table table, String s, int start, int end) {
+        int[] transitions = table.transitions;
+        boolean[] accepting = table.accepting;
+        int lastMatch = accepting[0] ? start : -1;
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            state = transitions[state * classCount + charClasses.classOf(s.charAt(i))];
+            if (state == DEAD_STATE) {
+                break;
+            }
+            if (accepting[state]) {
+                lastMatch = i + 1;
+            }
+        }
+        return lastMatch;
+    }
+
+    /**
+     * Run the reversed table backward from the end of a match, returning the earliest index at which the match could
+     * have started.
+     */
+    private int findStart(String s, int start, int matchEnd) {
+        int[] transitions = reversed.transitions;
+        boolean[] accepting = reversed.accepting;
+        int lastMatch = accepting[0] ? matchEnd : -1;
+        int state = 0;
+        for (int i = matchEnd - 1; i >= start; i--) {
+            state = transitions[state * classCount + charClasses.classOf(s.charAt(i))];
+            if (state == DEAD_STATE) {
+                break;
+            }
+            if (accepting[state]) {
+                lastMatch = i;
+            }
+        }
+        return lastMatch;
+    }
+
+    /**
+     * Find a match in part of a byte array, without decoding it to a String. Latin-1 bytes are used as chars directly,
+     * and UTF-8 is decoded one char at a time, going backwards to find the start of a match. The prefilter isn't used.
+     */
+    @Override
+    public MatchResult find(byte[] bytes, int offset, int length, ByteEncoding encoding, boolean anchored) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        int end = offset + length;
+        if (encoding == ByteEncoding.UTF_8) {
+            return findUtf8(bytes, offset, end, anchored);
+        }
+        int matchEnd = findEnd(anchored ? forwards : search, bytes, offset, end);
+        if (matchEnd == -1) {
+            return MatchResult.failure();
+        }
+        if (anchored) {
+            return MatchResult.success(offset, matchEnd);
+        }
+        return MatchResult.success(findStart(bytes, offset, matchEnd), matchEnd);
+    }
+
+    @Override
+    public Matcher matcher(byte[] bytes, int offset, int length, ByteEncoding encoding) {
+        return new ByteSearchMethodMatcher(this, bytes, offset, length, encoding);
+    }
+
+    @Override
+    public boolean matches(byte[] bytes, int offset, int length, ByteEncoding encoding) {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        int[] transitions = forwards.transitions;
+        int state = 0;
+        if (encoding == ByteEncoding.UTF_8) {
+            Utf8Reader reader = new Utf8Reader(bytes, offset, offset + length);
+            while (reader.hasNext()) {
+                state = transitions[state * classCount + charClasses.classOf(reader.next())];
+                if (state == DEAD_STATE) {
+                    return false;
+                }
+            }
+            return forwards.accepting[state];
+        }
+        for (int i = offset; i < offset + length; i++) {
+            state = transitions[state * classCount + charClasses.classOf((char) (bytes[i] & 0xFF))];
+            if (state == DEAD_STATE) {
+                return false;
+            }
+        }
+        return forwards.accepting[state];
+    }
+
+    private int findEnd(Table table, byte[] bytes, int start, int end) {
+        int[] transitions = table.transitions;
+        boolean[] accepting = table.accepting;
+        int lastMatch = accepting[0] ? start : -1;
+        int state = 0;
+        for (int i = start; i < end; i++) {
+            state = transitions[state * classCount + charClasses.classOf((char) (bytes[i] & 0xFF))];
+            if (state == DEAD_STATE) {
+                break;
+            }
+            if (accepting[state]) {
+                lastMatch = i + 1;
+            }
+        }
+        return lastMatch;
+    }
+
+    private int findStart(byte[] bytes, int start, int matchEnd) {
+        int[] transitions = reversed.transitions;
+        boolean[] accepting = reversed.accepting;
+        int lastMatch = accepting[0] ? matchEnd : -1;
+        int state = 0;
+        for (int i = matchEnd - 1; i >= start; i--) {
+            state = transitions[state * classCount + charClasses.classOf((char) (bytes[i] & 0xFF))];
+            if (state == DEAD_STATE) {
+                break;
+            }
+            if (accepting[state]) {
+                lastMatch = i;
+            }
+        }
+        return lastMatch;
+    }
+
+    /**
+     * The same as {@link #search(String, int, int)}, or an anchored find, for UTF-8. A match that ends between the chars
+     * of a pair is reported as ending after the pair, but the reversed table doesn't read the pair's second char.
+     */
+    private MatchResult findUtf8(byte[] bytes, int start, int end, boolean anchored) {
+        Table table = anchored ? forwards : search;
+        int[] transitions = table.transitions;
+        boolean[] accepting = table.accepting;
+        int matchEnd = accepting[0] ? start : -1;
+        boolean matchEndsInPair = false;
+        int state = 0;
+        Utf8Reader reader = new Utf8Reader(bytes, start, end);
+        while (reader.hasNext()) {
+            state = transitions[state * classCount + charClasses.classOf(reader.next())];
+            if (state == DEAD_STATE) {
+                break;
+            }
+            if (accepting[state]) {
+                matchEnd = reader.position();
+                matchEndsInPair = reader.inPair();
+            }
+        }
+        if (matchEnd == -1) {
+            return MatchResult.failure();
+        }
+        if (anchored) {
+            return MatchResult.success(start, matchEnd);
+        }
+
+        transitions = reversed.transitions;
+        accepting = reversed.accepting;
+        int matchStart = accepting[0] ? matchEnd : -1;
+        state = 0;
+        reader = Utf8Reader.backwards(bytes, start, matchEnd);
+        if (matchEndsInPair) {
+            reader.previous();
+        }
+        while (reader.hasPrevious()) {
+            state = transitions[state * classCount + charClasses.classOf(reader.previous())];
+            if (state == DEAD_STATE) {
+                break;
+            }
+            if (accepting[state]) {
+                matchStart = reader.position();
+            }
+        }
+        return MatchResult.success(matchStart, matchEnd);
+    }
+
+    int classCount() {
+        return classCount;
+    }
+
+    private static class Table {
+        final int[] transitions;
+        final boolean[] accepting;
+
+        Table(int[] transitions, boolean[] accepting) {
+            this.transitions = transitions;
+            this.accepting = accepting;
+        }
+    }
+}
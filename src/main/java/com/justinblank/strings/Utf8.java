@@ -0,0 +1,143 @@
+package com.justinblank.strings;
+
+/**
+ * Helpers for matching against UTF-8 bytes without decoding them to a String first.
+ *
+ * The bytes are decoded to UTF-16 chars one sequence at a time. A well-formed sequence decodes to its code point,
+ * which is a single char, or a surrogate pair for a supplementary code point. Any other byte, whether it's a stray
+ * continuation byte, the start of a truncated sequence, or part of an overlong encoding or an encoded surrogate,
+ * decodes to U+FFFD on its own. Since a sequence is only ever decoded whole, the same sequences are found reading the
+ * bytes backwards as forwards, which lets the reversed automata of a DFA run over bytes.
+ *
+ * Indices are always byte indices. A match that starts or ends between the two chars of a surrogate pair, which can
+ * only happen if a pattern matches unpaired surrogates, is widened to cover the whole sequence.
+ */
+public final class Utf8 {
+
+    public static final char REPLACEMENT = '\uFFFD';
+
+    private Utf8() {
+    }
+
+    /**
+     * Get the length of the well-formed sequence starting at index, if there is one that ends by end.
+     *
+     * @param bytes the bytes
+     * @param index the index of the first byte of the sequence
+     * @param end   the index past which the sequence can't extend
+     * @return the length of the sequence, or -1 if the byte at index is malformed
+     */
+    public static int sequenceLength(byte[] bytes, int index, int end) {
+        int b = bytes[index] & 0xFF;
+        if (b < 0x80) {
+            return 1;
+        }
+        int length;
+        // the bounds of the second byte, which are narrower than those of a continuation byte for the leading bytes
+        // that could start an overlong encoding, an encoded surrogate, or a code point above U+10FFFF
+        int min = 0x80;
+        int max = 0xBF;
+        if (b < 0xC2) {
+            return -1;
+        }
+        else if (b < 0xE0) {
+            length = 2;
+        }
+        else if (b < 0xF0) {
+            length = 3;
+            if (b == 0xE0) {
+                min = 0xA0;
+            }
+            else if (b == 0xED) {
+                max = 0x9F;
+            }
+        }
+        else if (b < 0xF5) {
+            length = 4;
+            if (b == 0xF0) {
+                min = 0x90;
+            }
+            else if (b == 0xF4) {
+                max = 0x8F;
+            }
+        }
+        else {
+            return -1;
+        }
+        if (end - index < length) {
+            return -1;
+        }
+        int second = bytes[index + 1] & 0xFF;
+        if (second < min || second > max) {
+            return -1;
+        }
+        for (int i = 2; i < length; i++) {
+            if ((bytes[index + i] & 0xC0) != 0x80) {
+                return -1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Decode the well-formed sequence of the given length that starts at index.
+     *
+     * @return the code point
+     */
+    public static int codePoint(byte[] bytes, int index, int length) {
+        int b = bytes[index];
+        switch (length) {
+            case 1:
+                return b;
+            case 2:
+                return ((b & 0x1F) << 6) | (bytes[index + 1] & 0x3F);
+            case 3:
+                return ((b & 0x0F) << 12) | ((bytes[index + 1] & 0x3F) << 6) | (bytes[index + 2] & 0x3F);
+            default:
+                return ((b & 0x07) << 18) | ((bytes[index + 1] & 0x3F) << 12) | ((bytes[index + 2] & 0x3F) << 6)
+                        | (bytes[index + 3] & 0x3F);
+        }
+    }
+
+    /**
+     * Find the start of the sequence, or malformed byte, that ends at index, when the bytes are decoded from start.
+     * Index must be the boundary of a sequence.
+     *
+     * Only continuation bytes can appear after the first byte of a well-formed sequence, so the sequence ending at
+     * index starts at the nearest byte that isn't a continuation byte, if the sequence starting there ends exactly at
+     * index. Otherwise, the last byte was malformed.
+     *
+     * @param bytes the bytes
+     * @param start the index the bytes are decoded from
+     * @param index the end of the sequence
+     * @return the start of the sequence
+     */
+    public static int previousBoundary(byte[] bytes, int start, int index) {
+        for (int lead = index - 1; lead >= Math.max(start, index - 4); lead--) {
+            if ((bytes[lead] & 0xC0) != 0x80) {
+                return sequenceLength(bytes, lead, index) == index - lead ? lead : index - 1;
+            }
+        }
+        return index - 1;
+    }
+
+    /**
+     * Find the index that is the given number of chars before index, when the bytes are decoded from start. Index must
+     * be the boundary of a sequence. If that falls between the chars of a surrogate pair, the start of the pair's
+     * sequence is returned.
+     *
+     * @param bytes the bytes
+     * @param start the index the bytes are decoded from
+     * @param index the index to count back from
+     * @param chars the number of chars to count back
+     * @return the index
+     */
+    public static int charsBefore(byte[] bytes, int start, int index, int chars) {
+        while (chars > 0) {
+            int previous = previousBoundary(bytes, start, index);
+            chars -= index - previous == 4 ? 2 : 1;
+            index = previous;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,120 @@
+package com.justinblank.strings;
+
+/**
+ * Reads the UTF-16 chars encoded as UTF-8 in part of a byte array, as described in {@link Utf8}, either forwards from
+ * the start or backwards from the end. The reader is small enough to be scalar replaced when a matching loop doesn't
+ * let it escape, so reading chars through it costs about as much as indexing the array.
+ */
+public final class Utf8Reader {
+
+    private final byte[] bytes;
+    private final int start;
+    private final int end;
+    // the index of the next sequence to read
+    private int index;
+    // the second char of a surrogate pair whose first char has been returned, or -1
+    private int pending = -1;
+
+    /**
+     * Create a reader positioned at the start.
+     */
+    public Utf8Reader(byte[] bytes, int start, int end) {
+        this(bytes, start, end, start);
+    }
+
+    private Utf8Reader(byte[] bytes, int start, int end, int index) {
+        this.bytes = bytes;
+        this.start = start;
+        this.end = end;
+        this.index = index;
+    }
+
+    /**
+     * Create a reader positioned at the end, which reads backwards. Only {@link #hasPrevious()} and
+     * {@link #previous()} should be called on it.
+     */
+    public static Utf8Reader backwards(byte[] bytes, int start, int end) {
+        return new Utf8Reader(bytes, start, end, end);
+    }
+
+    public boolean hasNext() {
+        return pending >= 0 || index < end;
+    }
+
+    public char next() {
+        if (pending >= 0) {
+            char c = (char) pending;
+            pending = -1;
+            return c;
+        }
+        int b = bytes[index];
+        if (b >= 0) {
+            index++;
+            return (char) b;
+        }
+        int length = Utf8.sequenceLength(bytes, index, end);
+        if (length < 0) {
+            index++;
+            return Utf8.REPLACEMENT;
+        }
+        int codePoint = Utf8.codePoint(bytes, index, length);
+        index += length;
+        if (length == 4) {
+            pending = Character.lowSurrogate(codePoint);
+            return Character.highSurrogate(codePoint);
+        }
+        return (char) codePoint;
+    }
+
+    public boolean hasPrevious() {
+        return pending >= 0 || index > start;
+    }
+
+    public char previous() {
+        if (pending >= 0) {
+            char c = (char) pending;
+            pending = -1;
+            return c;
+        }
+        int b = bytes[index - 1];
+        if (b >= 0) {
+            index--;
+            return (char) b;
+        }
+        int previous = Utf8.previousBoundary(bytes, start, index);
+        int length = index - previous;
+        index = previous;
+        if (length == 1) {
+            return Utf8.REPLACEMENT;
+        }
+        int codePoint = Utf8.codePoint(bytes, previous, length);
+        if (length == 4) {
+            pending = Character.highSurrogate(codePoint);
+            return Character.lowSurrogate(codePoint);
+        }
+        return (char) codePoint;
+    }
+
+    /**
+     * Get the byte index of the reader. Reading forwards, this is the end of the sequence the last char came from, and
+     * reading backwards, its start.
+     */
+    public int position() {
+        return index;
+    }
+
+    /**
+     * Check whether the last char read was the first of a surrogate pair.
+     */
+    public boolean inPair() {
+        return pending >= 0;
+    }
+
+    /**
+     * Move the reader to a new index, which must be the boundary of a sequence.
+     */
+    public void reset(int index) {
+        this.index = index;
+        this.pending = -1;
+    }
+}
@@ -0,0 +1,94 @@
+package com.justinblank.strings;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static com.justinblank.strings.SearchMethodTestUtil.fail;
+import static com.justinblank.strings.SearchMethodTestUtil.match;
+import static org.junit.Assert.*;
+
+public class AheadOfTimeCompilerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCompiledPatternsAreRegistered() throws Exception {
+        Path manifest = writeManifest("# comment", "", "com.example.Digits=[0-9]+", "com.example.regexes.Assignment=[a-z]+=[0-9]+");
+        Path output = folder.newFolder("classes").toPath();
+        List<String> classNames = AheadOfTimeCompiler.compile(manifest, output);
+
+        assertEquals(List.of("com.example.Digits", "com.example.regexes.Assignment"), classNames);
+        assertTrue(Files.exists(output.resolve("com/example/Digits.class")));
+        assertTrue(Files.exists(output.resolve("com/example/regexes/Assignment.class")));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{output.toUri().toURL()}, getClass().getClassLoader())) {
+            PatternRegistry registry = PatternRegistry.load(loader);
+            assertEquals(Set.of("[0-9]+", "[a-z]+=[0-9]+"), registry.regexes());
+
+            Pattern digits = registry.get("[0-9]+").get();
+            match(digits, "123");
+            fail(digits, "abc");
+            assertSame(digits, registry.get("[0-9]+").get());
+            assertEquals("com.example.Digits", digits.matcher("1").getClass().getName());
+
+            Pattern assignment = registry.get("[a-z]+=[0-9]+").get();
+            assertEquals(MatchResult.success(2, 11), assignment.matcher("  width=640;").find());
+
+            assertFalse(registry.get("[a-z]+").isPresent());
+            match(registry.getOrCompile("[a-z]+"), "abc");
+        }
+    }
+
+    @Test
+    public void testBackslashesAreNotInterpreted() throws Exception {
+        Path manifest = writeManifest("Digits=\\d+");
+        Path output = folder.newFolder("classes").toPath();
+        AheadOfTimeCompiler.compile(manifest, output);
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{output.toUri().toURL()}, getClass().getClassLoader())) {
+            match(PatternRegistry.load(loader).get("\\d+").get(), "42");
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMissingSeparator() throws Exception {
+        AheadOfTimeCompiler.readManifest(writeManifest("com.example.Digits [0-9]+"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsInvalidClassName() throws Exception {
+        AheadOfTimeCompiler.readManifest(writeManifest("com.example.1Digits=[0-9]+"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsDuplicateClassName() throws Exception {
+        AheadOfTimeCompiler.readManifest(writeManifest("Digits=[0-9]+", "Digits=[0-9]*"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMalformedRegex() throws Exception {
+        AheadOfTimeCompiler.compile(writeManifest("Broken=(ab"), folder.newFolder("classes").toPath());
+    }
+
+    @Test
+    public void testEmptyRegistry() {
+        PatternRegistry registry = PatternRegistry.getInstance();
+        assertFalse(registry.get("[0-9]+").isPresent());
+        assertSame(registry, PatternRegistry.getInstance());
+    }
+
+    private Path writeManifest(String... lines) throws IOException {
+        Path manifest = folder.newFile().toPath();
+        Files.write(manifest, List.of(lines));
+        return manifest;
+    }
+}
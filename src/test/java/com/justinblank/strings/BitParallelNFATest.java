@@ -0,0 +1,93 @@
+package com.justinblank.strings;
+
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.strings.RegexAST.NodePrinter;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.justinblank.strings.SearchMethodTestUtil.*;
+import static org.junit.Assert.*;
+
+public class BitParallelNFATest {
+
+    @Test
+    public void testLiteral() {
+        BitParallelNFA nfa = BitParallelNFA.create(RegexParser.parse("abc"));
+        match(nfa, "abc");
+        fail(nfa, "ab");
+        assertEquals(MatchResult.success(2, 5), nfa.find("xxabcxx"));
+    }
+
+    @Test
+    public void testLeftmostLongest() {
+        BitParallelNFA nfa = BitParallelNFA.create(RegexParser.parse("a|ab|bcde"));
+        assertEquals(MatchResult.success(0, 2), nfa.find("abcde"));
+        nfa = BitParallelNFA.create(RegexParser.parse("b[a-z]*d|c"));
+        assertEquals(MatchResult.success(1, 5), nfa.find("abccd"));
+    }
+
+    @Test
+    public void testEmptyMatch() {
+        BitParallelNFA nfa = BitParallelNFA.create(RegexParser.parse("a*"));
+        assertEquals(MatchResult.success(0, 0), nfa.find("bbaa"));
+        assertEquals(MatchResult.success(2, 4), nfa.find("bbaa", 2, 4));
+        match(nfa, "");
+    }
+
+    @Test
+    public void testAnchored() {
+        BitParallelNFA nfa = BitParallelNFA.create(RegexParser.parse("[0-9]+"));
+        assertFalse(nfa.find("a123", 0, 4, true).matched);
+        assertEquals(MatchResult.success(1, 4), nfa.find("a123", 1, 4, true));
+    }
+
+    @Test
+    public void testCountedRepetitionPositions() {
+        assertTrue(BitParallelNFA.fits(RegexParser.parse("[a-z]{0,63}")));
+        assertFalse(BitParallelNFA.fits(RegexParser.parse("[a-z]{0,64}")));
+        assertFalse(BitParallelNFA.fits(RegexParser.parse("(abcdefgh){8}")));
+        BitParallelNFA nfa = BitParallelNFA.create(RegexParser.parse("(ab){2,3}"));
+        assertEquals(MatchResult.success(1, 7), nfa.find("xabababab"));
+        fail(nfa, "ab");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsLargeRegex() {
+        BitParallelNFA.create(RegexParser.parse("[a-z]{100}"));
+    }
+
+    @Test
+    public void testFactoryChoosesBitParallelForSmallRegexes() {
+        assertTrue(NFA.createNFA("[a-c]+d") instanceof BitParallelNFA);
+        assertTrue(NFA.createNFA("[a-c]{100}d") instanceof NFA);
+    }
+
+    @Test
+    public void generativeMatchTest() {
+        Random random = new Random();
+        for (int maxSize = 1; maxSize < 8; maxSize++) {
+            for (int i = 0; i < 20; i++) {
+                RegexGenerator regexGenerator = new RegexGenerator(random, maxSize);
+                Node node = regexGenerator.generate();
+                String regex = NodePrinter.print(node);
+                Node parsed = RegexParser.parse(regex);
+                if (!BitParallelNFA.fits(parsed)) {
+                    continue;
+                }
+                BitParallelNFA bitParallelNFA = BitParallelNFA.create(parsed);
+                NFA nfa = NFA.createNFANoAhoCorasick(regex);
+                String hayStack = regexGenerator.generateString(node);
+                assertTrue("Failed to match regex='" + regex + "', hayStack='" + hayStack + "'", bitParallelNFA.matches(hayStack));
+                String searched = "AB" + hayStack + "CD" + hayStack;
+                for (int from = 0; from <= searched.length(); from++) {
+                    for (boolean anchored : new boolean[]{false, true}) {
+                        assertEquals("Wrong result for regex='" + regex + "', hayStack='" + searched + "', from=" + from,
+                                nfa.find(searched, from, searched.length(), anchored),
+                                bitParallelNFA.find(searched, from, searched.length(), anchored));
+                    }
+                }
+            }
+        }
+    }
+}
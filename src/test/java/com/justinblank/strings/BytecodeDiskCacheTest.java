@@ -0,0 +1,60 @@
+package com.justinblank.strings;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class BytecodeDiskCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testKeys() throws Exception {
+        BytecodeDiskCache cache = new BytecodeDiskCache(folder.newFolder().toPath());
+        CompileOptions defaults = CompileOptions.defaults();
+        assertEquals(cache.key("[a-z]+", defaults), cache.key("[a-z]+", defaults));
+        assertNotEquals(cache.key("[a-z]+", defaults), cache.key("[a-z]*", defaults));
+        assertNotEquals(cache.key("[a-z]+", defaults), cache.key("[a-z]+", defaults.withMaxStates(10)));
+        assertNotEquals(cache.key("[a-z]+", defaults),
+                cache.key("[a-z]+", defaults.withMaxCompileTime(Duration.ofSeconds(1))));
+        assertNotEquals(cache.key("[a-z]+", defaults), cache.key("[a-z]+", defaults.withFallback(false)));
+        assertTrue(cache.key("[a-z]+", defaults).matches("[0-9a-f]{64}"));
+        assertEquals(64, BytecodeDiskCache.compilerVersion().length());
+    }
+
+    @Test
+    public void testVersionCoversNestedClassesAndSubpackages() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        Files.write(directory.resolve("DFACompiler.class"), new byte[]{1});
+        Files.write(directory.resolve("MinimizeDFA$Transitions.class"), new byte[]{2});
+        Files.createDirectories(directory.resolve("RegexAST"));
+        Files.write(directory.resolve("RegexAST").resolve("Group.class"), new byte[]{3});
+        String version = BytecodeDiskCache.hashClassFiles(directory);
+        assertEquals(version, BytecodeDiskCache.hashClassFiles(directory));
+
+        Files.write(directory.resolve("MinimizeDFA$Transitions.class"), new byte[]{4});
+        String nestedChanged = BytecodeDiskCache.hashClassFiles(directory);
+        assertNotEquals(version, nestedChanged);
+
+        Files.write(directory.resolve("RegexAST").resolve("Group.class"), new byte[]{5});
+        assertNotEquals(nestedChanged, BytecodeDiskCache.hashClassFiles(directory));
+    }
+
+    @Test
+    public void testReadAndWrite() throws Exception {
+        BytecodeDiskCache cache = new BytecodeDiskCache(folder.newFolder().toPath().resolve("nested"));
+        String key = cache.key("abc", CompileOptions.defaults());
+        assertNull(cache.read(key));
+        cache.write(key, new byte[]{1, 2, 3});
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.read(key));
+        cache.delete(key);
+        assertNull(cache.read(key));
+    }
+}
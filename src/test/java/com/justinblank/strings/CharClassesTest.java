@@ -0,0 +1,66 @@
+package com.justinblank.strings;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CharClassesTest {
+
+    @Test
+    public void testSingleClassWithNoRanges() {
+        CharClasses charClasses = CharClasses.fromRanges(List.of());
+        assertEquals(1, charClasses.classCount());
+        assertEquals(0, charClasses.classOf('a'));
+        assertEquals(0, charClasses.classOf(Character.MAX_VALUE));
+        // every block is identical, so only one is stored
+        assertEquals(CharClasses.BLOCK_SIZE, charClasses.getLeaves().length);
+    }
+
+    @Test
+    public void testClassBoundaries() {
+        CharClasses charClasses = CharClasses.fromRanges(List.of(new CharRange('a', 'z'), new CharRange('0', '9')));
+        assertEquals(5, charClasses.classCount());
+        assertEquals(0, charClasses.classOf((char) 0));
+        assertEquals(0, charClasses.classOf('/'));
+        assertEquals(1, charClasses.classOf('0'));
+        assertEquals(1, charClasses.classOf('9'));
+        assertEquals(2, charClasses.classOf(':'));
+        assertEquals(3, charClasses.classOf('a'));
+        assertEquals(3, charClasses.classOf('z'));
+        assertEquals(4, charClasses.classOf('{'));
+        assertEquals(4, charClasses.classOf(Character.MAX_VALUE));
+    }
+
+    @Test
+    public void testAsciiRegexStoresTwoBlocks() {
+        NFA nfa = new NFA(RegexInstrBuilder.createNFA(RegexParser.parse("[A-Za-z][A-Za-z0-9_]*")));
+        CharClasses charClasses = nfa.charClasses();
+        assertEquals(2 * CharClasses.BLOCK_SIZE, charClasses.getLeaves().length);
+        assertEquals(charClasses.classOf('a'), charClasses.classOf('q'));
+        assertNotEquals(charClasses.classOf('a'), charClasses.classOf('_'));
+    }
+
+    @Test
+    public void testRangeSpanningBlocks() {
+        CharClasses charClasses = CharClasses.fromRanges(List.of(new CharRange('\u00f0', '\u0310')));
+        assertEquals(3, charClasses.classCount());
+        assertEquals(1, charClasses.classOf('\u00f0'));
+        assertEquals(1, charClasses.classOf('\u0200'));
+        assertEquals(1, charClasses.classOf('\u0310'));
+        assertEquals(2, charClasses.classOf('\u0311'));
+    }
+
+    @Test
+    public void testClassesRefineCompiledDFAs() {
+        String regex = "(ab|[c-f])+[0-9]?";
+        NFA nfa = new NFA(RegexInstrBuilder.createNFA(RegexParser.parse(regex)));
+        DFA dfa = NFAToDFACompiler.compile(nfa);
+        DFA searchDFA = SearchDFACompiler.compile(nfa);
+        assertTrue(nfa.charClasses().refines(dfa));
+        assertTrue(nfa.charClasses().refines(searchDFA));
+        assertTrue(dfa.matches("abc1"));
+        assertFalse(dfa.matches("abg"));
+    }
+}
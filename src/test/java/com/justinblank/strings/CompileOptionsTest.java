@@ -0,0 +1,56 @@
+package com.justinblank.strings;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompileOptionsTest {
+
+    @Test
+    public void testDefaults() {
+        CompileOptions options = CompileOptions.defaults();
+        assertEquals(DFACompiler.MAX_STATES, options.getMaxStates());
+        assertNull(options.getMaxCompileTime());
+        assertTrue(options.isFallback());
+    }
+
+    @Test
+    public void testWithMethodsReturnCopies() {
+        CompileOptions options = CompileOptions.defaults().withMaxStates(10).withMaxCompileTime(Duration.ofSeconds(1));
+        assertEquals(10, options.getMaxStates());
+        assertEquals(Duration.ofSeconds(1), options.getMaxCompileTime());
+        assertEquals(DFACompiler.MAX_STATES, CompileOptions.defaults().getMaxStates());
+        assertNull(CompileOptions.defaults().getMaxCompileTime());
+    }
+
+    @Test
+    public void testEquality() {
+        CompileOptions options = CompileOptions.defaults().withMaxStates(10).withMaxCompileTime(Duration.ofSeconds(1));
+        assertEquals(options, CompileOptions.defaults().withMaxCompileTime(Duration.ofSeconds(1)).withMaxStates(10));
+        assertEquals(options.hashCode(), CompileOptions.defaults().withMaxCompileTime(Duration.ofSeconds(1))
+                .withMaxStates(10).hashCode());
+        assertNotEquals(options, options.withFallback(false));
+        assertNotEquals(options, options.withMaxStates(11));
+        assertNotEquals(options, CompileOptions.defaults().withMaxStates(10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxStatesMustBePositive() {
+        CompileOptions.defaults().withMaxStates(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxStatesCannotExceedCompilerLimit() {
+        CompileOptions.defaults().withMaxStates(DFACompiler.MAX_STATES + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxCompileTimeMustBePositive() {
+        CompileOptions.defaults().withMaxCompileTime(Duration.ZERO);
+    }
+}
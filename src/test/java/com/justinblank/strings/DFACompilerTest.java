@@ -1,14 +1,28 @@
 package com.justinblank.strings;
 
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.strings.RegexAST.NodePrinter;
 import org.junit.Test;
 
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static com.justinblank.strings.SearchMethodTestUtil.fail;
 import static com.justinblank.strings.SearchMethodTestUtil.match;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class DFACompilerTest {
 
+    private static final AtomicInteger CLASS_NAME_COUNTER = new AtomicInteger();
+
     // There are lots of painful little fencepost type errors possible as we start to experiment with inlining and
     // handling prefixes, so we'll explicitly test sizes 1-4
     @Test
@@ -183,6 +197,68 @@ public class DFACompilerTest {
         assertTrue(pattern.matcher("059{").containedIn());
     }
 
+    @Test
+    public void testDFACompiledShortRange() {
+        // a state with a single short range transition is compiled to a switch with one case per char
+        Pattern pattern = DFACompiler.compile("[a-c]+d", "testDFACompiledShortRange");
+        match(pattern, "ad");
+        match(pattern, "bd");
+        match(pattern, "abcd");
+        fail(pattern, "abc");
+    }
+
+    @Test
+    public void testGeneratedClassIsReproducible() {
+        Random random = new Random();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            if (i > 0) {
+                sb.append('|');
+            }
+            for (int j = 0; j < 3 + random.nextInt(5); j++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        String regex = sb.toString();
+        byte[] first = DFACompiler.generateClassAsBytes(regex, "testGeneratedClassIsReproducible");
+        byte[] second = DFACompiler.generateClassAsBytes(regex, "testGeneratedClassIsReproducible");
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void testCompileWithOptionsWithinBudget() {
+        Pattern pattern = DFACompiler.compile("[a-c]+d", "testCompileWithOptionsWithinBudget",
+                CompileOptions.defaults().withMaxStates(100).withMaxCompileTime(Duration.ofMinutes(1)));
+        assertTrue(pattern instanceof GeneratedPattern);
+        match(pattern, "abcd");
+        fail(pattern, "abc");
+    }
+
+    @Test
+    public void testCompileWithOptionsFallsBackWhenStatesExceeded() {
+        // the DFA for this regex has over a million states
+        String regex = "(a|b)*a(a|b){20}";
+        long start = System.nanoTime();
+        Pattern pattern = DFACompiler.compile(regex, "testCompileWithOptionsFallsBackWhenStatesExceeded",
+                CompileOptions.defaults());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(30));
+        assertTrue(pattern instanceof LazyDFA);
+        match(pattern, "a" + "b".repeat(20));
+        fail(pattern, "a" + "b".repeat(19));
+    }
+
+    @Test(expected = CompileBudgetExceededException.class)
+    public void testCompileWithOptionsThrowsWithoutFallback() {
+        DFACompiler.compile("(a|b)*a(a|b){8}", "testCompileWithOptionsThrowsWithoutFallback",
+                CompileOptions.defaults().withMaxStates(50).withFallback(false));
+    }
+
+    @Test(expected = CompileBudgetExceededException.class)
+    public void testCompileWithOptionsEnforcesTimeLimit() {
+        DFACompiler.compile("(a|b)*a(a|b){8}", "testCompileWithOptionsEnforcesTimeLimit",
+                CompileOptions.defaults().withMaxCompileTime(Duration.ofNanos(1)).withFallback(false));
+    }
+
     @Test
     public void testDFACompiledBMP() throws Exception {
         Pattern pattern = DFACompiler.compile("[\u0600-\u06FF]", "testDFACompiledBMP");
@@ -226,6 +302,210 @@ public class DFACompilerTest {
         match(pattern, "AZDabcdefDZA");
     }
 
+@Test
+    public void testFind() {
+        Pattern pattern = DFACompiler.compile("abc", "FindLiteral");
+        assertEquals(MatchResult.success(2, 5), pattern.matcher("xxabcabc").find());
+        assertEquals(MatchResult.success(5, 8), pattern.matcher("xxabcabc").find(3));
+        assertFalse(pattern.matcher("xxabcab").find(3).matched);
+    }
+
+    @Test
+    public void testFindPrefersLeftmostMatch() {
+        Pattern pattern = DFACompiler.compile("abcd|c", "FindPrefersLeftmostMatch");
+        assertEquals(MatchResult.success(0, 4), pattern.matcher("abcd").find());
+        assertEquals(MatchResult.success(2, 3), pattern.matcher("abcd").find(1));
+    }
+
+    @Test
+    public void testFindEmptyMatch() {
+        Pattern pattern = DFACompiler.compile("a*", "FindEmptyMatch");
+        assertEquals(MatchResult.success(0, 0), pattern.matcher("baa").find());
+        assertEquals(MatchResult.success(1, 3), pattern.matcher("baa").find(1));
+        assertEquals(MatchResult.success(3, 3), pattern.matcher("baa").find(3));
+    }
+
+    @Test
+    public void testFindAgreesWithNFA() {
+        String[] regexes = {"a+b", "(EAD)|(DEAD)", "[A-Za-z][A-Za-z0-9]*", "(a|b)*c", "((12)|(23)){1,2}ab",
+                "[\u0600-\u06FF]+", IntegrationTest.MANY_STATE_REGEX_STRING};
+        String[] hayStacks = {"", "aab", "xxDEADxx", "ZZ9 a1b2", "ababcbc", "1223ab12ab", "x\u0600\u0601y",
+                "999123234456"};
+        for (String regex : regexes) {
+            checkFindAgreesWithNFA(regex, hayStacks);
+        }
+    }
+
+    @Test
+    public void testContainedInSkipsToInitialChars() {
+        // one through four initial chars, the last being too many to find with indexOf, and chars above \u7fff
+        String[] regexes = {"zy+x", "(zy|wy)x", "(zy|wyx|vy)x", "(zy|wy|vy|uy)x", "\u9000[a-z]*\u9001",
+                "(\u9000b|\uFFFFc)d"};
+        String[] hayStacks = {"", "z", "zyx", "aaaazyyyx", "zyzywyzyyx", "zzzzzzzzyyyyxx", "vywyuyzyvyx",
+                "wyxwyzyvvy", "uyx", "abc\u9000abc\u9000\u9001", "\u9000\u9000xyz\u9001",
+                "\uFFFFb\u9000c\uFFFFcd", "\u9000\uFFFFcx\u9000bd"};
+        for (String regex : regexes) {
+            Pattern pattern = DFACompiler.compile(regex, "ContainedInSkipsToInitialChars"
+                    + CLASS_NAME_COUNTER.incrementAndGet());
+            NFA nfa = NFA.createNFANoAhoCorasick(regex);
+            for (String hayStack : hayStacks) {
+                assertEquals("regex=" + regex + ", hayStack=" + hayStack, nfa.containedIn(hayStack),
+                        pattern.matcher(hayStack).containedIn());
+            }
+        }
+    }
+
+    @Test
+    public void generativeFindTest() {
+        Random random = new Random();
+        for (int maxSize = 1; maxSize < 8; maxSize++) {
+            for (int i = 0; i < 10; i++) {
+                RegexGenerator regexGenerator = new RegexGenerator(random, maxSize);
+                Node node = regexGenerator.generate();
+                String regex = NodePrinter.print(node);
+                String hayStack = regexGenerator.generateString(node);
+                String[] hayStacks = {hayStack, "AB" + hayStack + "AB", hayStack + hayStack};
+                checkFindAgreesWithNFA(regex, hayStacks);
+            }
+        }
+    }
+
+    @Test
+    public void testByteFindStartsAtOffset() {
+        Pattern pattern = DFACompiler.compile("ab", "ByteFindStartsAtOffset");
+        byte[] bytes = "xxabab".getBytes(StandardCharsets.ISO_8859_1);
+        Matcher matcher = pattern.matcher(bytes, 2, 4, ByteEncoding.LATIN_1);
+        assertEquals(MatchResult.success(2, 4), matcher.find());
+        assertEquals(MatchResult.success(4, 6), matcher.find(3));
+
+        byte[] utf8 = "\u00E9\u00E9ab".getBytes(StandardCharsets.UTF_8);
+        matcher = pattern.matcher(utf8, 2, 4, ByteEncoding.UTF_8);
+        assertEquals(MatchResult.success(4, 6), matcher.find());
+        // starting inside the second e acute, whose last byte is decoded on its own
+        assertEquals(MatchResult.success(4, 6), matcher.find(3));
+    }
+
+    @Test
+    public void testFindSupplementaryChars() {
+        Pattern pattern = DFACompiler.compile("\uD83D\uDE00", "FindSupplementaryChars");
+        assertEquals(MatchResult.success(1, 3), pattern.matcher("b\uD83D\uDE00").find());
+        byte[] bytes = "b\uD83D\uDE00".getBytes(StandardCharsets.UTF_8);
+        assertEquals(MatchResult.success(1, 5), pattern.matcher(bytes, 0, bytes.length, ByteEncoding.UTF_8).find());
+
+        pattern = DFACompiler.compile("(\uD83D\uDE00)?", "FindOptionalSupplementaryChars");
+        assertEquals(MatchResult.success(0, 2), pattern.matcher("\uD83D\uDE00").find());
+        bytes = "\uD83D\uDE00".getBytes(StandardCharsets.UTF_8);
+        assertEquals(MatchResult.success(0, 4), pattern.matcher(bytes, 0, bytes.length, ByteEncoding.UTF_8).find());
+    }
+
+    @Test
+    public void testUtf8MatchStartingAndEndingWithPairs() {
+        // 'x' and an e acute take three bytes, then the match has a four byte sequence at each end
+        byte[] bytes = "x\u00E9\uD83D\uDE00ab\uD83D\uDE01y".getBytes(StandardCharsets.UTF_8);
+        Pattern pattern = DFACompiler.compile("\uD83D\uDE00[a-z]+\uD83D\uDE01", "MatchStartingAndEndingWithPairs");
+        Matcher matcher = pattern.matcher(bytes, 0, bytes.length, ByteEncoding.UTF_8);
+        assertEquals(MatchResult.success(3, 13), matcher.find());
+        assertEquals(MatchResult.success(3, 13), matcher.find(3));
+        assertFalse(matcher.find(4).matched);
+        assertTrue(pattern.matcher(bytes, 3, 10, ByteEncoding.UTF_8).matches());
+        assertFalse(pattern.matcher(bytes, 3, 9, ByteEncoding.UTF_8).matches());
+
+        pattern = DFACompiler.compile("(\uD83D\uDE00)+", "RepeatedPairs");
+        bytes = "a\uD83D\uDE00\uD83D\uDE00b".getBytes(StandardCharsets.UTF_8);
+        matcher = pattern.matcher(bytes, 0, bytes.length, ByteEncoding.UTF_8);
+        assertEquals(MatchResult.success(1, 9), matcher.find());
+        assertEquals(MatchResult.success(5, 9), matcher.find(5));
+        assertFalse(matcher.find(9).matched);
+        assertEquals(MatchResult.success(1, 9), NFA.createNFANoAhoCorasick("(\uD83D\uDE00)+")
+                .matcher(bytes, 0, bytes.length, ByteEncoding.UTF_8).find());
+    }
+
+    @Test
+    public void generativeByteFindTest() {
+        Random random = new Random();
+        for (int maxSize = 1; maxSize < 8; maxSize++) {
+            for (int i = 0; i < 5; i++) {
+                RegexGenerator regexGenerator = new RegexGenerator(random, maxSize);
+                Node node = regexGenerator.generate();
+                String regex = NodePrinter.print(node);
+                String hayStack = "\u00E9" + regexGenerator.generateString(node) + "\uD83D\uDE00";
+                checkByteFindAgreesWithTableDFA(regex, hayStack);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLargeReversedDFAIsRejected() {
+        // the reversed automaton has to remember the last fifteen chars, though the forward ones are small
+        DFA dfa = NFAToDFACompiler.compile(new NFA(RegexInstrBuilder.createNFA(RegexParser.parse("a"))));
+        DFA dfaReversed = NFAToDFACompiler.compile(new NFA(RegexInstrBuilder.createNFA(
+                RegexParser.parse("(a|b)*a(a|b){14}"))));
+        DFACompiler.generateClassAsBytes(dfa, dfaReversed, dfa, RegexParser.parse("a").bestFactors(),
+                "LargeReversedDFA");
+    }
+
+    @Test
+    public void testCollectablePatternsCanBeCompiledRepeatedly() {
+        Pattern first = DFACompiler.compileCollectable("[a-c]+d", "CollectablePattern");
+        Pattern second = DFACompiler.compileCollectable("[0-9]+", "CollectablePattern");
+        match(first, "abcd");
+        match(second, "123");
+        fail(second, "abcd");
+    }
+
+    /**
+     * Compile and discard many patterns, checking that their classes are unloaded. The number of patterns can be raised
+     * with -DcollectablePatterns=100000 for a longer run.
+     */
+    @Test
+    public void testCollectablePatternsAreUnloaded() {
+        int patterns = Integer.getInteger("collectablePatterns", 1000);
+        ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+        System.gc();
+        long initiallyLoaded = classLoading.getLoadedClassCount();
+        for (int i = 0; i < patterns; i++) {
+            String suffix = String.valueOf(i % 100);
+            Pattern pattern = DFACompiler.compileCollectable("[a-z]+" + suffix, "StressPattern");
+            assertTrue(pattern.matcher("abc" + suffix).matches());
+        }
+        System.gc();
+        // each pattern defines a class, so without unloading, the count would grow by the number of patterns
+        assertTrue(classLoading.getLoadedClassCount() - initiallyLoaded < patterns / 2);
+    }
+
+    private void checkFindAgreesWithNFA(String regex, String[] hayStacks) {
+        Pattern pattern = DFACompiler.compile(regex, "FindAgreesWithNFA" + CLASS_NAME_COUNTER.incrementAndGet());
+        NFA nfa = NFA.createNFANoAhoCorasick(regex);
+        for (String hayStack : hayStacks) {
+            for (int from = 0; from <= hayStack.length(); from++) {
+                MatchResult expected = nfa.find(hayStack, from, hayStack.length());
+                assertEquals("Wrong result for regex='" + regex + "', hayStack='" + hayStack + "', from=" + from,
+                        expected, pattern.matcher(hayStack).find(from));
+            }
+            assertEquals("Wrong containedIn for regex='" + regex + "', hayStack='" + hayStack + "'",
+                    nfa.containedIn(hayStack), pattern.matcher(hayStack).containedIn());
+        }
+    }
+
+    private void checkByteFindAgreesWithTableDFA(String regex, String hayStack) {
+        Pattern pattern = DFACompiler.compile(regex, "ByteFindAgreesWithDFA" + CLASS_NAME_COUNTER.incrementAndGet());
+        TableDFA dfa = TableDFA.compile(regex);
+        for (ByteEncoding encoding : ByteEncoding.values()) {
+            byte[] bytes = ("AB" + hayStack).getBytes(encoding == ByteEncoding.UTF_8 ? StandardCharsets.UTF_8
+                    : StandardCharsets.ISO_8859_1);
+            int length = bytes.length - 2;
+            String message = "regex='" + regex + "', hayStack='" + hayStack + "', encoding=" + encoding;
+            Matcher matcher = pattern.matcher(bytes, 2, length, encoding);
+            assertEquals(message, dfa.find(bytes, 2, length, encoding), matcher.find());
+            for (int from = 2; from <= bytes.length; from++) {
+                assertEquals(message + ", from=" + from, dfa.find(bytes, from, bytes.length - from, encoding),
+                        matcher.find(from));
+            }
+            assertEquals(message, dfa.matches(bytes, 2, length, encoding), matcher.matches());
+            assertEquals(message, dfa.find(bytes, 2, length, encoding).matched, matcher.containedIn());
+        }
+    }
+
 //    @Test(expected =  IllegalArgumentException.class)
 //    public void testDFACompileFailsLargePattern() {
 //        String manyStateRegexString = "((123)|(234)|(345)|(456)|(567)|(678)|(789)|(0987)|(9876)|(8765)|(7654)|(6543)|(5432)|(4321)|(3210)){1,1000}";
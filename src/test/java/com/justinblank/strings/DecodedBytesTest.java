@@ -0,0 +1,69 @@
+package com.justinblank.strings;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class DecodedBytesTest {
+
+    @Test
+    public void testLatin1IndicesAreOffset() {
+        byte[] bytes = "xxab\u00E9".getBytes(StandardCharsets.ISO_8859_1);
+        DecodedBytes decoded = DecodedBytes.decode(bytes, 2, 3, ByteEncoding.LATIN_1);
+        assertEquals("ab\u00E9", decoded.string());
+        assertEquals(MatchResult.success(3, 5), decoded.toBytes(MatchResult.success(1, 3)));
+    }
+
+    @Test
+    public void testUtf8IndicesMapToSequences() {
+        // 'a', an e acute, a pair, and 'b'
+        byte[] bytes = "a\u00E9\uD83D\uDE00b".getBytes(StandardCharsets.UTF_8);
+        DecodedBytes decoded = DecodedBytes.decode(bytes, 0, bytes.length, ByteEncoding.UTF_8);
+        assertEquals("a\u00E9\uD83D\uDE00b", decoded.string());
+        assertEquals(MatchResult.success(1, 3), decoded.toBytes(MatchResult.success(1, 2)));
+        assertEquals(MatchResult.success(3, 7), decoded.toBytes(MatchResult.success(2, 4)));
+        assertEquals(MatchResult.success(7, 8), decoded.toBytes(MatchResult.success(4, 5)));
+        // matches starting or ending between the chars of the pair cover it
+        assertEquals(MatchResult.success(3, 7), decoded.toBytes(MatchResult.success(2, 3)));
+        assertEquals(MatchResult.success(3, 8), decoded.toBytes(MatchResult.success(3, 5)));
+    }
+
+    @Test
+    public void testCharIndex() {
+        byte[] bytes = "xa\u00E9\uD83D\uDE00b".getBytes(StandardCharsets.UTF_8);
+        DecodedBytes decoded = DecodedBytes.decode(bytes, 1, bytes.length - 1, ByteEncoding.UTF_8);
+        assertEquals(0, decoded.charIndex(1));
+        assertEquals(1, decoded.charIndex(2));
+        assertEquals(2, decoded.charIndex(4));
+        assertEquals(4, decoded.charIndex(8));
+        assertEquals(5, decoded.charIndex(9));
+        // inside a sequence
+        assertEquals(-1, decoded.charIndex(3));
+        assertEquals(-1, decoded.charIndex(5));
+
+        decoded = DecodedBytes.decode(bytes, 1, 2, ByteEncoding.LATIN_1);
+        assertEquals(1, decoded.charIndex(2));
+    }
+
+    @Test
+    public void testMalformedUtf8() {
+        byte[] bytes = Utf8Test.bytes(0x61, 0xE2, 0x82, 0x62);
+        DecodedBytes decoded = DecodedBytes.decode(bytes, 0, bytes.length, ByteEncoding.UTF_8);
+        assertEquals("a\uFFFD\uFFFDb", decoded.string());
+        assertEquals(MatchResult.success(2, 4), decoded.toBytes(MatchResult.success(2, 4)));
+    }
+
+    @Test
+    public void testFailureIsUnchanged() {
+        DecodedBytes decoded = DecodedBytes.decode(new byte[0], 0, 0, ByteEncoding.UTF_8);
+        assertSame(MatchResult.failure(), decoded.toBytes(MatchResult.failure()));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIndicesAreChecked() {
+        DecodedBytes.decode(new byte[4], 2, 3, ByteEncoding.LATIN_1);
+    }
+}
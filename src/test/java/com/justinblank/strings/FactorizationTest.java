@@ -53,6 +53,14 @@ public class FactorizationTest {
         assertEquals(set2, best(set1, set2));
     }
 
+    @Test
+    public void testUnionWithUnknownFactors() {
+        var node = RegexParser.parse("(a*b*)|c");
+        assertNull(node.bestFactors().getFactors());
+        node = RegexParser.parse("([i-p][K-L])|[l-o]");
+        assertNull(node.bestFactors().getPrefixes());
+    }
+
     @Test
     public void testFactorizationSimpleConcatentation() {
         var node = RegexParser.parse("AB");
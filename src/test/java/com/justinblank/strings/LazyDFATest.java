@@ -0,0 +1,136 @@
+package com.justinblank.strings;
+
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.strings.RegexAST.NodePrinter;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.justinblank.strings.SearchMethodTestUtil.*;
+import static org.junit.Assert.*;
+
+public class LazyDFATest {
+
+    private static final String HOSTILE_REGEX = "(a|b)*a(a|b){12}";
+
+    @Test
+    public void testLiteral() {
+        LazyDFA dfa = LazyDFA.compile("abc");
+        match(dfa, "abc");
+        fail(dfa, "ab");
+        find(dfa, "xxabcxx", 2, 5);
+        assertEquals(MatchResult.success(2, 5), dfa.find("xxabcxx"));
+    }
+
+    @Test
+    public void testStatesAreReused() {
+        LazyDFA dfa = LazyDFA.compile("[a-z]+[0-9]");
+        match(dfa, "abc1");
+        int states = dfa.cachedStates();
+        match(dfa, "xyz9");
+        assertEquals(states, dfa.cachedStates());
+        assertEquals(0, dfa.flushes());
+    }
+
+    @Test
+    public void testFindPrefersLeftmostLongestMatch() {
+        LazyDFA dfa = LazyDFA.compile("abcd|c");
+        assertEquals(MatchResult.success(0, 4), dfa.find("abcd"));
+        assertEquals(MatchResult.success(2, 3), dfa.find("abcd", 1, 4));
+        assertEquals(MatchResult.success(2, 3), dfa.find("abc"));
+    }
+
+    @Test
+    public void testAnchoredFind() {
+        LazyDFA dfa = LazyDFA.compile("a+");
+        assertEquals(MatchResult.success(1, 3), dfa.find("baab", 1, 4, true));
+        assertFalse(dfa.find("baab", 0, 4, true).matched);
+    }
+
+    @Test
+    public void testHostilePatternWithSmallCache() {
+        LazyDFA dfa = LazyDFA.compile(HOSTILE_REGEX, 8);
+        NFA nfa = NFA.createNFANoAhoCorasick(HOSTILE_REGEX);
+        Random random = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            String hayStack = randomABString(random, 40);
+            assertEquals("Wrong result for hayStack='" + hayStack + "'", nfa.find(hayStack), dfa.find(hayStack));
+            assertEquals(nfa.matches(hayStack), dfa.matches(hayStack));
+        }
+        assertTrue(dfa.flushes() > 0);
+    }
+
+    @Test
+    public void testCacheFilledByEarlierSearchesIsNotThrashing() {
+        // the two alternatives need thirteen states, so a search for one flushes the states left by the other
+        LazyDFA dfa = LazyDFA.compile("(abcdef)*|(ghijkl)*", 8);
+        assertTrue(dfa.matches("abcdef".repeat(20)));
+        assertTrue(dfa.matches("ghijkl".repeat(20)));
+        assertEquals(1, dfa.flushes());
+        assertEquals(0, dfa.fallbacks());
+    }
+
+    @Test
+    public void testHostilePatternWithLongHaystack() {
+        LazyDFA dfa = LazyDFA.compile(HOSTILE_REGEX, 64);
+        NFA nfa = NFA.createNFANoAhoCorasick(HOSTILE_REGEX);
+        String hayStack = randomABString(new Random(2), 5000) + "c";
+        assertEquals(nfa.find(hayStack), dfa.find(hayStack));
+        assertFalse(dfa.matches(hayStack));
+    }
+
+    @Test
+    public void testSearchAfterFlushLeavesCacheFull() {
+        // a flush in the middle of a search can leave the cache full, so the next search must still find room for
+        // its initial state
+        String regex = "(c+|c[a-c])+";
+        LazyDFA dfa = LazyDFA.compile(regex, 4);
+        NFA nfa = NFA.createNFANoAhoCorasick(regex);
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                sb.append((char) ('a' + random.nextInt(4)));
+            }
+            String hayStack = sb.toString();
+            assertEquals("Wrong result for hayStack='" + hayStack + "'", nfa.find(hayStack), dfa.find(hayStack));
+            assertEquals(nfa.matches(hayStack), dfa.matches(hayStack));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsTinyCache() {
+        LazyDFA.compile("abc", 1);
+    }
+
+    @Test
+    public void generativeFindTest() {
+        Random random = new Random();
+        for (int maxSize = 1; maxSize < 8; maxSize++) {
+            for (int i = 0; i < 20; i++) {
+                RegexGenerator regexGenerator = new RegexGenerator(random, maxSize);
+                Node node = regexGenerator.generate();
+                String regex = NodePrinter.print(node);
+                String hayStack = regexGenerator.generateString(node);
+                // a small cache, so that flushes are exercised too
+                LazyDFA dfa = LazyDFA.compile(regex, 4);
+                NFA nfa = NFA.createNFANoAhoCorasick(regex);
+                assertTrue("Failed to match regex='" + regex + "', hayStack='" + hayStack + "'", dfa.matches(hayStack));
+                String searched = "AB" + hayStack + hayStack;
+                for (int from = 0; from <= searched.length(); from++) {
+                    assertEquals("Wrong result for regex='" + regex + "', hayStack='" + searched + "', from=" + from,
+                            nfa.find(searched, from, searched.length()), dfa.find(searched, from, searched.length()));
+                }
+            }
+        }
+    }
+
+    private static String randomABString(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(random.nextBoolean() ? 'a' : 'b');
+        }
+        return sb.toString();
+    }
+}
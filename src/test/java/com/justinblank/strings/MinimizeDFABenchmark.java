@@ -0,0 +1,51 @@
+package com.justinblank.strings;
+
+import java.util.Random;
+
+/**
+ * Compares {@link MinimizeDFA#minimizeDFA(DFA)} with {@link MinimizeDFA#minimizeDFAByPairwiseSplitting(DFA)} on large
+ * DFAs. This isn't run as part of the tests, run it with e.g.
+ *
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.justinblank.strings.MinimizeDFABenchmark}
+ */
+public class MinimizeDFABenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) {
+        Random random = new Random(0);
+        for (int stateCount : new int[]{1_000, 5_000, 20_000}) {
+            DFA dfa = MinimizeDFATest.randomDFA(random, stateCount, 8);
+            benchmark("random DFA, " + stateCount + " states", dfa);
+        }
+        for (int n : new int[]{8, 11, 13}) {
+            // the minimal DFA for this regex has 2^(n+1) states
+            String regex = "(a|b)*a(a|b){" + n + "}";
+            NFA nfa = new NFA(RegexInstrBuilder.createNFA(RegexParser.parse(regex)));
+            DFA dfa = new NFAToDFACompiler(nfa)._compile(nfa);
+            benchmark(regex + ", " + dfa.statesCount() + " states", dfa);
+        }
+    }
+
+    private static void benchmark(String name, DFA dfa) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            MinimizeDFA.minimizeDFA(dfa);
+            MinimizeDFA.minimizeDFAByPairwiseSplitting(dfa);
+        }
+        long start = System.nanoTime();
+        int states = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            states = MinimizeDFA.minimizeDFA(dfa).statesCount();
+        }
+        long valmari = (System.nanoTime() - start) / ITERATIONS;
+        start = System.nanoTime();
+        int pairwiseStates = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            pairwiseStates = MinimizeDFA.minimizeDFAByPairwiseSplitting(dfa).statesCount();
+        }
+        long pairwise = (System.nanoTime() - start) / ITERATIONS;
+        System.out.printf("%s: Valmari-Lehtinen %.2fms (%d states), pairwise splitting %.2fms (%d states)%n",
+                name, valmari / 1e6, states, pairwise / 1e6, pairwiseStates);
+    }
+}
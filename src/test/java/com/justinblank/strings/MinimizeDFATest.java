@@ -1,12 +1,13 @@
 package com.justinblank.strings;
 
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.strings.RegexAST.NodePrinter;
 import org.junit.Test;
 
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class MinimizeDFATest {
@@ -39,6 +40,12 @@ public class MinimizeDFATest {
         assertEquals(minimized.statesCount(), 3);
     }
 
+    @Test(expected = CompileBudgetExceededException.class)
+    public void testMinimizationChecksTheBudget() {
+        CompileBudget expired = new CompileBudget(Integer.MAX_VALUE, true, System.nanoTime() - 1);
+        MinimizeDFA.minimizeDFA(fourStateMinimizableDFA(), expired);
+    }
+
     @Test
     public void testMinimizeMinimalDFA() {
         DFA dfa = DFA.root(false);
@@ -86,4 +93,120 @@ public class MinimizeDFATest {
         assertEquals(2, dfa.statesCount());
 
     }
+
+    @Test
+    public void testMinimizeMergesStatesWithDifferentRanges() {
+        DFA dfa = DFA.root(false);
+        DFA second1 = new DFA(dfa, false, 1);
+        DFA second2 = new DFA(dfa, false, 2);
+        DFA accepting = new DFA(dfa, true, 3);
+        dfa.addTransition(new CharRange('a', 'a'), second1);
+        dfa.addTransition(new CharRange('b', 'b'), second2);
+        second1.addTransition(new CharRange('c', 'd'), accepting);
+        second2.addTransition(new CharRange('c', 'c'), accepting);
+        second2.addTransition(new CharRange('d', 'd'), accepting);
+
+        DFA minimized = MinimizeDFA.minimizeDFA(dfa);
+        assertEquals(3, minimized.statesCount());
+        assertTrue(minimized.matches("ad"));
+        assertTrue(minimized.matches("bd"));
+        assertFalse(minimized.matches("be"));
+    }
+
+    @Test
+    public void testMinimizeRemovesDeadStates() {
+        DFA dfa = DFA.root(false);
+        DFA accepting = new DFA(dfa, true, 1);
+        DFA dead = new DFA(dfa, false, 2);
+        dfa.addTransition(new CharRange('a', 'a'), accepting);
+        dfa.addTransition(new CharRange('b', 'b'), dead);
+        dead.addTransition(new CharRange('a', 'z'), dead);
+
+        DFA minimized = MinimizeDFA.minimizeDFA(dfa);
+        assertEquals(2, minimized.statesCount());
+        assertTrue(minimized.matches("a"));
+        assertFalse(minimized.matches("ba"));
+    }
+
+    @Test
+    public void testMinimizeRandomDFAs() {
+        Random random = new Random();
+        for (int i = 0; i < 200; i++) {
+            DFA dfa = randomDFA(random, 1 + random.nextInt(40), 1 + random.nextInt(6));
+            DFA minimized = MinimizeDFA.minimizeDFA(dfa);
+            DFA pairwise = MinimizeDFA.minimizeDFAByPairwiseSplitting(dfa);
+            assertTrue(minimized.statesCount() <= pairwise.statesCount());
+            assertEquals(minimized.statesCount(), MinimizeDFA.minimizeDFA(minimized).statesCount());
+            for (int j = 0; j < 50; j++) {
+                String s = randomString(random, random.nextInt(12), 7);
+                assertEquals("Wrong result for '" + s + "'", dfa.matches(s), minimized.matches(s));
+            }
+        }
+    }
+
+    @Test
+    public void testMinimizeGeneratedRegexes() {
+        Random random = new Random();
+        for (int maxSize = 1; maxSize < 8; maxSize++) {
+            for (int i = 0; i < 20; i++) {
+                RegexGenerator regexGenerator = new RegexGenerator(random, maxSize);
+                Node node = regexGenerator.generate();
+                String regex = NodePrinter.print(node);
+                NFA nfa = new NFA(RegexInstrBuilder.createNFA(node));
+                DFA original = new NFAToDFACompiler(nfa)._compile(nfa);
+                DFA minimized = MinimizeDFA.minimizeDFA(original);
+                assertTrue(minimized.statesCount() <= MinimizeDFA.minimizeDFAByPairwiseSplitting(original).statesCount());
+                for (int j = 0; j < 5; j++) {
+                    String hayStack = regexGenerator.generateString(node);
+                    assertTrue("Failed to match regex='" + regex + "', hayStack='" + hayStack + "'",
+                            minimized.matches(hayStack));
+                    String other = hayStack + randomString(random, 1, 127);
+                    assertEquals("Wrong result for regex='" + regex + "', hayStack='" + other + "'",
+                            original.matches(other), minimized.matches(other));
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a random DFA over the chars starting from 'a', whose transitions use ranges of varying widths, so that
+     * equivalent states can have different ranges.
+     *
+     * @param random the source of randomness
+     * @param stateCount the number of states
+     * @param alphabetSize the number of chars used
+     * @return the root of the DFA
+     */
+    static DFA randomDFA(Random random, int stateCount, int alphabetSize) {
+        DFA root = DFA.root(stateCount == 1 || random.nextInt(4) == 0);
+        List<DFA> states = new ArrayList<>();
+        states.add(root);
+        for (int i = 1; i < stateCount; i++) {
+            // guarantee at least one accepting state
+            states.add(new DFA(root, i == stateCount - 1 || random.nextInt(4) == 0, i));
+        }
+        for (int i = 0; i < stateCount; i++) {
+            char start = 'a';
+            while (start < 'a' + alphabetSize) {
+                char end = (char) Math.min('a' + alphabetSize - 1, start + random.nextInt(3));
+                if (start == 'a' && i + 1 < stateCount) {
+                    // chain the states together, so that every state is reachable, as is the last, accepting state
+                    states.get(i).addTransition(new CharRange(start, end), states.get(i + 1));
+                }
+                else if (random.nextInt(5) != 0) {
+                    states.get(i).addTransition(new CharRange(start, end), states.get(random.nextInt(stateCount)));
+                }
+                start = (char) (end + 1);
+            }
+        }
+        return root;
+    }
+
+    private static String randomString(Random random, int length, int alphabetSize) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(alphabetSize)));
+        }
+        return sb.toString();
+    }
 }
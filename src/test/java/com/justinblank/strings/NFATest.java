@@ -1,5 +1,7 @@
 package com.justinblank.strings;
 
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.strings.RegexAST.NodePrinter;
 import com.justinblank.strings.Search.SearchMethod;
 import com.justinblank.strings.Search.SearchMethods;
 import org.apache.commons.lang3.StringUtils;
@@ -14,6 +16,7 @@ import org.quicktheories.generators.StringsDSL;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static com.justinblank.strings.SearchMethodTestUtil.*;
 import static com.justinblank.strings.SearchMethodTestUtil.match;
@@ -408,6 +411,81 @@ public class NFATest {
         });
     }
 
+    @Test
+    public void testReusedNFAMatchesFreshNFA() {
+        Random random = new Random();
+        for (int maxSize = 1; maxSize < 8; maxSize++) {
+            for (int i = 0; i < 20; i++) {
+                RegexGenerator regexGenerator = new RegexGenerator(random, maxSize);
+                Node node = regexGenerator.generate();
+                String regex = NodePrinter.print(node);
+                NFA reused = NFA.createNFANoAhoCorasick(regex);
+                // searches that fail partway through leave states behind, which mustn't leak into later searches
+                List<String> hayStacks = List.of("AB" + regexGenerator.generateString(node), "",
+                        regexGenerator.generateString(node) + "CD", "ABCDEFGH");
+                for (int j = 0; j < 3; j++) {
+                    for (String hayStack : hayStacks) {
+                        for (boolean anchored : new boolean[]{false, true}) {
+                            MatchResult expected = NFA.createNFANoAhoCorasick(regex).find(hayStack, 0, hayStack.length(), anchored);
+                            assertEquals("Wrong result for regex='" + regex + "', hayStack='" + hayStack + "'",
+                                    expected, reused.find(hayStack, 0, hayStack.length(), anchored));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFindPrefersLongestMatchFromLeftmostStart() {
+        NFA nfa = NFA.createNFANoAhoCorasick("[ab]([ab]?[ab]?c*)*b?");
+        assertEquals(MatchResult.success(5, 7), nfa.find("dbddcaa", 3, 7));
+    }
+
+    @Test
+    public void generativeFindAgainstOracleTest() {
+        Random random = new Random();
+        for (int maxSize = 1; maxSize < 8; maxSize++) {
+            for (int i = 0; i < 30; i++) {
+                RegexGenerator regexGenerator = new RegexGenerator(random, maxSize);
+                Node node = regexGenerator.generate();
+                String regex = NodePrinter.print(node);
+                String generated = regexGenerator.generateString(node);
+                // mix the chars of a matching string with one that probably can't match
+                String alphabet = generated + "d";
+                StringBuilder sb = new StringBuilder();
+                for (int j = 0; j < random.nextInt(12); j++) {
+                    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                String[] hayStacks = {generated, sb.toString(), sb + generated + sb};
+                NFA nfa = NFA.createNFANoAhoCorasick(regex);
+                // the DFA only matches whole strings, so it shares nothing with the search being tested
+                DFA dfa = DFA.createDFA(regex);
+                for (String hayStack : hayStacks) {
+                    for (int from = 0; from <= hayStack.length(); from++) {
+                        assertEquals("regex='" + regex + "', hayStack='" + hayStack + "', from=" + from,
+                                leftmostLongest(dfa, hayStack, from), nfa.find(hayStack, from,
+                                        hayStack.length()));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the leftmost-longest match by trying every substring, starting with the longest from each index.
+     */
+    private static MatchResult leftmostLongest(DFA dfa, String s, int from) {
+        for (int start = from; start <= s.length(); start++) {
+            for (int end = s.length(); end >= start; end--) {
+                if (dfa.matches(s.substring(start, end))) {
+                    return MatchResult.success(start, end);
+                }
+            }
+        }
+        return MatchResult.failure();
+    }
+
     @Test(expected = IndexOutOfBoundsException.class)
     public void testIllegalIndexStart() {
         NFA.createNFA("a*").find("a", -1, 1);
@@ -1,10 +1,11 @@
 package com.justinblank.strings;
 
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.strings.RegexAST.NodePrinter;
 import org.junit.Test;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -59,4 +60,118 @@ public class NFAToDFACompilerTest {
 //        assertTrue(dfa.matches("ab"));
 //        assertTrue(dfa.matches("aaaab"));
    // }
+
+    @Test
+    public void testOverlappingRanges() {
+        DFA dfa = compile("([a-m]x)|([f-z]y)|(gz)");
+        assertTrue(dfa.matches("ax"));
+        assertTrue(dfa.matches("gx"));
+        assertTrue(dfa.matches("gy"));
+        assertTrue(dfa.matches("gz"));
+        assertTrue(dfa.matches("zy"));
+        assertFalse(dfa.matches("ay"));
+        assertFalse(dfa.matches("zx"));
+        assertFalse(dfa.matches("fz"));
+    }
+
+    @Test
+    public void testRangesEndingAtMaxChar() {
+        DFA dfa = compile("[a-\uffff]+");
+        assertTrue(dfa.matches("a\uffff"));
+        assertFalse(dfa.matches("A"));
+    }
+
+    @Test
+    public void testEquivalentStateSetsAreShared() {
+        // the NFA states reached after 'a' and after 'b' differ only in the JUMP/SPLIT instructions they include
+        DFA dfa = compile("(a|b)c");
+        assertEquals(3, dfa.statesCount());
+    }
+
+    @Test
+    public void testLargeAlternation() {
+        Random random = new Random();
+        Set<String> words = new HashSet<>();
+        while (words.size() < 500) {
+            StringBuilder sb = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int i = 0; i < length; i++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            words.add(sb.toString());
+        }
+        DFA dfa = compile(String.join("|", words));
+        for (String word : words) {
+            assertTrue(dfa.matches(word));
+            assertEquals(words.contains(word + "a"), dfa.matches(word + "a"));
+        }
+    }
+
+    @Test
+    public void testGeneratedRegexes() {
+        Random random = new Random();
+        for (int maxSize = 1; maxSize < 8; maxSize++) {
+            for (int i = 0; i < 20; i++) {
+                RegexGenerator regexGenerator = new RegexGenerator(random, maxSize);
+                Node node = regexGenerator.generate();
+                String regex = NodePrinter.print(node);
+                DFA dfa = compile(regex);
+                NFA nfa = new NFA(RegexInstrBuilder.createNFA(node));
+                for (int j = 0; j < 5; j++) {
+                    String hayStack = regexGenerator.generateString(node);
+                    assertTrue("Failed to match regex='" + regex + "', hayStack='" + hayStack + "'", dfa.matches(hayStack));
+                    String truncated = hayStack.substring(0, random.nextInt(hayStack.length() + 1));
+                    assertEquals("Wrong result for regex='" + regex + "', hayStack='" + truncated + "'",
+                            nfa.matches(truncated), dfa.matches(truncated));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallelDeterminizationNumbersStatesLikeSequential() {
+        Random random = new Random();
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            words.add(sb.toString());
+        }
+        String regex = "(" + String.join("|", words) + ")[a-f]*x";
+        NFA nfa = new NFA(RegexInstrBuilder.createNFA(RegexParser.parse(regex)));
+        DFA sequential = new NFAToDFACompiler(nfa, ForkJoinPool.commonPool(), Integer.MAX_VALUE,
+                CompileBudget.UNLIMITED)._compile(nfa);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int i = 0; i < 5; i++) {
+                DFA parallel = new NFAToDFACompiler(nfa, pool, 1, CompileBudget.UNLIMITED)._compile(nfa);
+                assertEquals(describe(sequential), describe(parallel));
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<String> describe(DFA dfa) {
+        List<DFA> states = new ArrayList<>(dfa.allStates());
+        states.sort(Comparator.comparingInt(DFA::getStateNumber));
+        List<String> descriptions = new ArrayList<>();
+        for (DFA state : states) {
+            StringBuilder sb = new StringBuilder().append(state.getStateNumber()).append(state.isAccepting());
+            for (var transition : state.getTransitions()) {
+                sb.append(' ').append(transition.getLeft()).append("->").append(transition.getRight().getStateNumber());
+            }
+            descriptions.add(sb.toString());
+        }
+        return descriptions;
+    }
+
+    private static DFA compile(String regex) {
+        NFA nfa = new NFA(RegexInstrBuilder.createNFA(RegexParser.parse(regex)));
+        return new NFAToDFACompiler(nfa)._compile(nfa);
+    }
 }
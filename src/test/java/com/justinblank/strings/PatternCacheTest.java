@@ -0,0 +1,169 @@
+package com.justinblank.strings;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static com.justinblank.strings.SearchMethodTestUtil.match;
+import static org.junit.Assert.*;
+
+public class PatternCacheTest {
+
+    private static final String HOSTILE_REGEX = "(a|b)*a(a|b){12}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHitsAndMisses() {
+        PatternCache cache = new PatternCache(PatternCache.DEFAULT_MAX_WEIGHT);
+        Pattern pattern = cache.compile("[a-c]+d");
+        match(pattern, "abcd");
+        assertSame(pattern, cache.compile("[a-c]+d"));
+        cache.compile("[0-9]+");
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(2, cache.size());
+        assertTrue(cache.weight() > 0);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        PatternCache cache = new PatternCache(1);
+        Pattern first = cache.compile("abc");
+        cache.compile("def");
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.evictions());
+        assertNotSame(first, cache.compile("abc"));
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void testKeepsRecentlyUsedEntries() {
+        PatternCache probe = new PatternCache(PatternCache.DEFAULT_MAX_WEIGHT);
+        probe.compile("abc");
+        long weight = probe.weight();
+        // room for roughly two of these patterns
+        PatternCache cache = new PatternCache(weight * 5 / 2);
+        Pattern abc = cache.compile("abc");
+        cache.compile("def");
+        cache.compile("abc");
+        cache.compile("ghi");
+        assertSame(abc, cache.compile("abc"));
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    public void testFailedCompilesAreNotCached() {
+        PatternCache cache = new PatternCache(PatternCache.DEFAULT_MAX_WEIGHT);
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.compile("(ab");
+                fail("Expected a syntax error");
+            }
+            catch (RegexSyntaxException e) {
+                // expected
+            }
+        }
+        assertEquals(2, cache.misses());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testOptionsArePartOfTheKey() {
+        PatternCache cache = new PatternCache(PatternCache.DEFAULT_MAX_WEIGHT);
+        Pattern pattern = cache.compile("[a-c]+d");
+        assertSame(pattern, cache.compile("[a-c]+d", CompileOptions.defaults()));
+        Pattern limited = cache.compile("[a-c]+d", CompileOptions.defaults().withMaxStates(100));
+        assertNotSame(pattern, limited);
+        assertSame(limited, cache.compile("[a-c]+d", CompileOptions.defaults().withMaxStates(100)));
+        assertEquals(2, cache.misses());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCompilesWithinBudget() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        PatternCache cache = new PatternCache(PatternCache.DEFAULT_MAX_WEIGHT, directory);
+        CompileOptions options = CompileOptions.defaults().withMaxStates(10);
+        Pattern pattern = cache.compile(HOSTILE_REGEX, options);
+        assertTrue(pattern instanceof LazyDFA);
+        match(pattern, "ab" + "a".repeat(13));
+        assertSame(pattern, cache.compile(HOSTILE_REGEX, options));
+        assertTrue(cache.weight() > 0);
+        // there's no class to store
+        assertEquals(0, Files.list(directory).count());
+
+        try {
+            cache.compile(HOSTILE_REGEX, options.withFallback(false));
+            fail("Expected the budget to be exceeded");
+        }
+        catch (CompileBudgetExceededException e) {
+            // expected
+        }
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testConcurrentCompilesAreDeduplicated() throws Exception {
+        PatternCache cache = new PatternCache(PatternCache.DEFAULT_MAX_WEIGHT);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            List<Future<Pattern>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    latch.await();
+                    return cache.compile("([a-f]+[0-9]*)*x");
+                }));
+            }
+            latch.countDown();
+            Pattern pattern = futures.get(0).get();
+            for (Future<Pattern> future : futures) {
+                assertSame(pattern, future.get());
+            }
+            assertEquals(1, cache.misses());
+            assertEquals(threads - 1, cache.hits());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDiskCacheIsSharedBetweenCaches() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        PatternCache first = new PatternCache(PatternCache.DEFAULT_MAX_WEIGHT, directory);
+        match(first.compile("[a-c]+d"), "abcd");
+        assertEquals(0, first.diskHits());
+        assertEquals(1, Files.list(directory).count());
+
+        PatternCache second = new PatternCache(PatternCache.DEFAULT_MAX_WEIGHT, directory);
+        Pattern pattern = second.compile("[a-c]+d");
+        match(pattern, "abcd");
+        assertEquals(1, second.misses());
+        assertEquals(1, second.diskHits());
+        assertTrue(second.weight() > 0);
+    }
+
+    @Test
+    public void testCorruptDiskCacheEntriesAreReplaced() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        new PatternCache(PatternCache.DEFAULT_MAX_WEIGHT, directory).compile("[0-9]+");
+        Path file = Files.list(directory).findFirst().get();
+        byte[] classBytes = Files.readAllBytes(file);
+        Files.write(file, new byte[]{1, 2, 3});
+
+        PatternCache cache = new PatternCache(PatternCache.DEFAULT_MAX_WEIGHT, directory);
+        match(cache.compile("[0-9]+"), "123");
+        assertEquals(0, cache.diskHits());
+        assertArrayEquals(classBytes, Files.readAllBytes(file));
+    }
+}
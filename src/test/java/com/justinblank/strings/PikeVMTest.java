@@ -0,0 +1,143 @@
+package com.justinblank.strings;
+
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.strings.RegexAST.NodePrinter;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.justinblank.strings.SearchMethodTestUtil.*;
+import static org.junit.Assert.*;
+
+public class PikeVMTest {
+
+    @Test
+    public void testLiteral() {
+        PikeVM vm = PikeVM.compile("abc");
+        match(vm, "abc");
+        fail(vm, "ab");
+        assertEquals(MatchResult.success(2, 5), vm.find("xxabcxx"));
+        assertArrayEquals(new int[]{2, 5}, vm.captures("xxabcxx"));
+        assertNull(vm.captures("xxabxx"));
+    }
+
+    @Test
+    public void testGroups() {
+        PikeVM vm = PikeVM.compile("([a-z]+)=([0-9]+)");
+        assertEquals(2, vm.groupCount());
+        assertArrayEquals(new int[]{4, 13, 4, 9, 10, 13}, vm.captures("    width=640;"));
+    }
+
+    @Test
+    public void testNestedGroups() {
+        PikeVM vm = PikeVM.compile("((a)(b))c");
+        assertEquals(3, vm.groupCount());
+        assertArrayEquals(new int[]{0, 3, 0, 2, 0, 1, 1, 2}, vm.captures("abc"));
+    }
+
+    @Test
+    public void testNonParticipatingGroup() {
+        PikeVM vm = PikeVM.compile("(a)|(b)");
+        assertArrayEquals(new int[]{0, 1, -1, -1, 0, 1}, vm.captures("b"));
+    }
+
+    @Test
+    public void testNestedGroupInAlternation() {
+        PikeVM vm = PikeVM.compile("(a(b)b|c)");
+        assertArrayEquals(new int[]{0, 3, 0, 3, 1, 2}, vm.captures("abb"));
+        assertArrayEquals(new int[]{0, 1, 0, 1, -1, -1}, vm.captures("c"));
+    }
+
+    @Test
+    public void testRepeatedGroupCapturesLastIteration() {
+        PikeVM vm = PikeVM.compile("(a|b)*c");
+        assertArrayEquals(new int[]{0, 4, 2, 3}, vm.captures("abbc"));
+    }
+
+    @Test
+    public void testLeftmostFirst() {
+        PikeVM vm = PikeVM.compile("(a|ab)(c|bcd)(d*)");
+        assertArrayEquals(new int[]{0, 4, 0, 1, 1, 4, 4, 4}, vm.captures("abcd"));
+        vm = PikeVM.compile("(a*)(a*)");
+        assertArrayEquals(new int[]{0, 3, 0, 3, 3, 3}, vm.captures("aaa"));
+    }
+
+    @Test
+    public void testMatchesRequiresWholeString() {
+        PikeVM vm = PikeVM.compile("a|ab");
+        assertTrue(vm.matches("ab"));
+        assertEquals(MatchResult.success(0, 1), vm.find("ab"));
+    }
+
+    @Test
+    public void testCapturesInRange() {
+        PikeVM vm = PikeVM.compile("(x)+");
+        int[] slots = new int[4];
+        assertTrue(vm.captures("xxaxx", 2, 5, slots));
+        assertArrayEquals(new int[]{3, 5, 4, 5}, slots);
+        assertFalse(vm.captures("xxaxx", 2, 3, slots));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapturesRejectsShortSlots() {
+        PikeVM.compile("(a)").captures("a", 0, 1, new int[2]);
+    }
+
+    @Test
+    public void testGroupsDoNotChangeOtherParses() {
+        assertFalse(RegexParser.parse("(ab)c") instanceof com.justinblank.strings.RegexAST.Group);
+        assertTrue(RegexParser.parse("(ab)", true) instanceof com.justinblank.strings.RegexAST.Group);
+    }
+
+    @Test
+    public void testCapturesAgreeWithJavaRegex() {
+        String[] regexes = {"(a(b)b|c)", "x(a|b(c))*d", "((a)|b)+c", "(a[bc](d)|e(f))g", "(ab|a)(bc|c)?",
+                "((a|b)c|(d))e", "(a+)(b|(c))", "a(b(c|d)|e)+f", "([a-c]|(d)e)*f"};
+        String[] hayStacks = {"", "abb", "c", "xabbcx", "xbcbcad", "xad", "bac", "acdg", "efg", "abcbc", "abc",
+                "bcde", "de", "aab", "aaac", "abcbdef", "aef", "abdedef", "xdexf", "f"};
+        for (String regex : regexes) {
+            PikeVM vm = PikeVM.compile(regex);
+            java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(regex);
+            for (String hayStack : hayStacks) {
+                java.util.regex.Matcher matcher = pattern.matcher(hayStack);
+                int[] expected = null;
+                if (matcher.find()) {
+                    expected = new int[2 * (matcher.groupCount() + 1)];
+                    for (int group = 0; group <= matcher.groupCount(); group++) {
+                        expected[2 * group] = matcher.start(group);
+                        expected[2 * group + 1] = matcher.end(group);
+                    }
+                }
+                assertArrayEquals("regex='" + regex + "', hayStack='" + hayStack + "'", expected,
+                        vm.captures(hayStack));
+            }
+        }
+    }
+
+    @Test
+    public void generativeMatchTest() {
+        Random random = new Random();
+        for (int maxSize = 1; maxSize < 8; maxSize++) {
+            for (int i = 0; i < 20; i++) {
+                RegexGenerator regexGenerator = new RegexGenerator(random, maxSize);
+                Node node = regexGenerator.generate();
+                String regex = NodePrinter.print(node);
+                String hayStack = regexGenerator.generateString(node);
+                PikeVM vm = PikeVM.compile(regex);
+                NFA nfa = NFA.createNFANoAhoCorasick(regex);
+                assertTrue("Failed to match regex='" + regex + "', hayStack='" + hayStack + "'", vm.matches(hayStack));
+                String searched = "AB" + hayStack + hayStack;
+                for (int from = 0; from <= searched.length(); from++) {
+                    MatchResult expected = nfa.find(searched, from, searched.length());
+                    MatchResult actual = vm.find(searched, from, searched.length());
+                    // leftmost-first and leftmost-longest agree on where the match starts, but not where it ends
+                    assertEquals("Wrong result for regex='" + regex + "', hayStack='" + searched + "', from=" + from,
+                            expected.matched, actual.matched);
+                    assertEquals("Wrong start for regex='" + regex + "', hayStack='" + searched + "', from=" + from,
+                            expected.start, actual.start);
+                    assertTrue(actual.end <= expected.end);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.justinblank.strings;
+
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.strings.RegexAST.NodePrinter;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PrefilterTest {
+
+    @Test
+    public void testNoPrefilterWithoutFactors() {
+        assertFalse(Prefilter.create(RegexParser.parse("[a-z]*")).isPresent());
+        assertFalse(Prefilter.create(RegexParser.parse("a|b*")).isPresent());
+        assertFalse(Prefilter.create(RegexParser.parse("(a*b*)|c")).isPresent());
+    }
+
+    @Test
+    public void testRejectsWithoutRunningEngine() {
+        Prefilter prefilter = Prefilter.create(RegexParser.parse("[a-z]+@example")).get();
+        AtomicInteger calls = new AtomicInteger();
+        MatchResult result = prefilter.find("no address here", 0, 15, (s, start, end) -> {
+            calls.incrementAndGet();
+            return MatchResult.success(start, end);
+        });
+        assertFalse(result.matched);
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void testEngineRunsInWindowAroundFactor() {
+        Node node = RegexParser.parse("[a-z]{0,2}xyz");
+        Prefilter prefilter = Prefilter.create(node).get();
+        NFA nfa = NFA.createNFANoAhoCorasick("[a-z]{0,2}xyz");
+        String hayStack = "1234567890abxyz1234567890";
+        int[] window = new int[2];
+        MatchResult result = prefilter.find(hayStack, 0, hayStack.length(), (s, start, end) -> {
+            window[0] = start;
+            window[1] = end;
+            return nfa.find(s, start, end);
+        });
+        assertEquals(MatchResult.success(10, 15), result);
+        assertEquals(12 + 3 - node.maxLength(), window[0]);
+        assertEquals(12 + node.maxLength(), window[1]);
+    }
+
+    @Test
+    public void testPrefersRarerFactors() {
+        assertTrue(Prefilter.score(Set.of("qz")) < Prefilter.score(Set.of("e")));
+        assertTrue(Prefilter.score(Set.of("@")) < Prefilter.score(Set.of("a", "b")));
+        assertTrue(Prefilter.frequency('\u00e9') < Prefilter.frequency('e'));
+    }
+
+    @Test
+    public void testPrefilteredNFA() {
+        var method = NFA.createNFA("(ab|cd)[0-9]+x");
+        assertEquals(MatchResult.success(6, 11), method.find("ab0 cdcd12x ab"));
+        assertEquals(MatchResult.success(12, 16), method.find("ab0 cdcd12x ab3x", 10, 16));
+        assertFalse(method.find("ab0 cd1 ab").matched);
+    }
+
+    @Test
+    public void testUnionWithUnknownFactors() {
+        var method = NFA.createNFA("([i-p][K-L])|[l-o]");
+        assertEquals(MatchResult.success(2, 4), method.find("ABjKjK"));
+    }
+
+    @Test
+    public void generativePrefilterTest() {
+        Random random = new Random();
+        for (int maxSize = 1; maxSize < 8; maxSize++) {
+            for (int i = 0; i < 20; i++) {
+                RegexGenerator regexGenerator = new RegexGenerator(random, maxSize);
+                Node node = regexGenerator.generate();
+                String regex = NodePrinter.print(node);
+                String hayStack = regexGenerator.generateString(node);
+                var prefilter = Prefilter.create(RegexParser.parse(regex));
+                if (prefilter.isEmpty()) {
+                    continue;
+                }
+                NFA nfa = NFA.createNFANoAhoCorasick(regex);
+                String searched = "AB" + hayStack + "CD" + hayStack;
+                for (int from = 0; from <= searched.length(); from++) {
+                    MatchResult expected = nfa.find(searched, from, searched.length());
+                    MatchResult actual = prefilter.get().find(searched, from, searched.length(), nfa::find);
+                    assertEquals("Wrong result for regex='" + regex + "', hayStack='" + searched + "', from=" + from,
+                            expected, actual);
+                }
+            }
+        }
+    }
+}
@@ -112,6 +112,11 @@ public class NodePrinter {
                 stack.push("(");
             }
         }
+        else if (node instanceof Group) {
+            stack.push(")");
+            stack.push(((Group) node).node);
+            stack.push("(");
+        }
         else if (node instanceof Repetition) {
             stack.push("*");
             var child = ((Repetition) node).node;
@@ -12,4 +12,10 @@ public class NodeTest {
         Node node = RegexParser.parse("a*(a|b)");
         assertEquals(1, node.minLength());
     }
+
+    @Test
+    public void testReversedLiteralReversesTheCharsOfPairs() {
+        Node node = new LiteralNode("a\uD83D\uDE00b").reversed();
+        assertEquals("b\uDE00\uD83Da", ((LiteralNode) node).getLiteral());
+    }
 }
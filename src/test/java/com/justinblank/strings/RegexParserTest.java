@@ -128,6 +128,12 @@ public class RegexParserTest {
         check(node, "((A)|(BCD))|(E)");
     }
 
+    @Test
+    public void testUnionOfNonLiteralConcatenations() {
+        check("a*b|c+d", "(((a)*)(b))|(((c)((c)*))(d))");
+        check("(a[b]b|c)", "((a)(b(b)))|(c)");
+    }
+
     @Test
     public void testMultiConcatenation() {
         Node node = parse("(ab)*a");
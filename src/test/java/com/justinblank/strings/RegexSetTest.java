@@ -0,0 +1,168 @@
+package com.justinblank.strings;
+
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.strings.RegexAST.NodePrinter;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RegexSetTest {
+
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+    private static final List<String> RULES = List.of("abc", "a[a-z]c", "[0-9]+", "a(b|c)*", "x");
+
+    @Test
+    public void testMatches() {
+        for (RegexSet set : allEngines(RULES)) {
+            assertArrayEquals(new int[]{0, 1, 3}, set.matches("abc"));
+            assertArrayEquals(new int[]{1}, set.matches("adc"));
+            assertArrayEquals(new int[]{2}, set.matches("123"));
+            assertArrayEquals(new int[]{3}, set.matches("a"));
+            assertArrayEquals(new int[0], set.matches("abcd"));
+            assertArrayEquals(new int[0], set.matches(""));
+        }
+    }
+
+    @Test
+    public void testContainedIn() {
+        for (RegexSet set : allEngines(RULES)) {
+            assertArrayEquals(new int[]{0, 1, 2, 3}, set.containedIn("zzabc 123"));
+            assertArrayEquals(new int[]{2, 3, 4}, set.containedIn("x9a"));
+            assertArrayEquals(new int[0], set.containedIn("zzz"));
+            assertArrayEquals(new int[0], set.containedIn(""));
+        }
+    }
+
+    @Test
+    public void testEmptyMatchIsContainedInEveryString() {
+        for (RegexSet set : allEngines(List.of("b*", "a"))) {
+            assertArrayEquals(new int[]{0}, set.containedIn(""));
+            assertArrayEquals(new int[]{0, 1}, set.containedIn("ccca"));
+            assertArrayEquals(new int[]{0}, set.matches(""));
+        }
+    }
+
+    @Test
+    public void testDuplicatePatternsBothMatch() {
+        for (RegexSet set : allEngines(List.of("ab", "ab"))) {
+            assertArrayEquals(new int[]{0, 1}, set.matches("ab"));
+            assertArrayEquals(new int[]{0, 1}, set.containedIn("cabc"));
+        }
+    }
+
+    @Test
+    public void testSizeAndGet() {
+        RegexSet set = RegexSet.compile(RULES);
+        assertEquals(RULES.size(), set.size());
+        assertEquals("a[a-z]c", set.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptySetIsRejected() {
+        RegexSet.compile(List.of());
+    }
+
+    @Test(expected = CompileBudgetExceededException.class)
+    public void testExceedingBudgetWithoutFallbackThrows() {
+        RegexSet.compile(RULES, CompileOptions.defaults().withMaxStates(1).withFallback(false));
+    }
+
+    @Test
+    public void testManyPatterns() {
+        Random random = new Random();
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            words.add(randomWord(random));
+        }
+        String text = String.join(" ", words.subList(0, 20));
+        int[] expected = expectedContainedIn(words, text);
+        for (RegexSet set : allEngines(words)) {
+            assertArrayEquals(expected, set.containedIn(text));
+            assertArrayEquals(expectedMatches(words, words.get(7)), set.matches(words.get(7)));
+        }
+    }
+
+    @Test
+    public void testManyCharClasses() {
+        // each pattern adds boundaries, so the compiled set needs more than one state per group method
+        List<String> rules = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            char c = (char) (0x100 + 3 * i);
+            rules.add(c + "[a-z]");
+            if (i % 7 == 0) {
+                text.append(c).append('q');
+            }
+        }
+        int[] expected = expectedContainedIn(rules, text.toString());
+        for (RegexSet set : allEngines(rules)) {
+            assertArrayEquals(expected, set.containedIn(text.toString()));
+        }
+    }
+
+    @Test
+    public void testGeneratedRegexes() {
+        Random random = new Random();
+        for (int maxSize = 1; maxSize < 8; maxSize++) {
+            for (int i = 0; i < 10; i++) {
+                List<String> regexes = new ArrayList<>();
+                List<String> hayStacks = new ArrayList<>();
+                for (int j = 0; j < 1 + random.nextInt(4); j++) {
+                    RegexGenerator regexGenerator = new RegexGenerator(random, maxSize);
+                    Node node = regexGenerator.generate();
+                    regexes.add(NodePrinter.print(node));
+                    String hayStack = regexGenerator.generateString(node);
+                    hayStacks.add(hayStack);
+                    hayStacks.add(hayStack.substring(random.nextInt(hayStack.length() + 1)));
+                }
+                hayStacks.add(String.join("", hayStacks));
+                for (RegexSet set : allEngines(regexes)) {
+                    for (String hayStack : hayStacks) {
+                        String message = "regexes=" + regexes + ", hayStack='" + hayStack + "'";
+                        assertArrayEquals(message, expectedMatches(regexes, hayStack), set.matches(hayStack));
+                        assertArrayEquals(message, expectedContainedIn(regexes, hayStack), set.containedIn(hayStack));
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<RegexSet> allEngines(List<String> regexes) {
+        return List.of(RegexSet.compile(regexes),
+                DFACompiler.compileSet(regexes, "RegexSetTest" + CLASS_COUNTER.incrementAndGet()),
+                RegexSet.compile(regexes, CompileOptions.defaults().withMaxStates(1)));
+    }
+
+    private static int[] expectedMatches(List<String> regexes, String s) {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < regexes.size(); i++) {
+            if (NFA.createNFANoAhoCorasick(regexes.get(i)).matches(s)) {
+                expected.add(i);
+            }
+        }
+        return expected.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] expectedContainedIn(List<String> regexes, String s) {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < regexes.size(); i++) {
+            if (NFA.createNFANoAhoCorasick(regexes.get(i)).containedIn(s)) {
+                expected.add(i);
+            }
+        }
+        return expected.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static String randomWord(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = 2 + random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+}
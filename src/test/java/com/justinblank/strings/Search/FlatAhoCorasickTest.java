@@ -0,0 +1,168 @@
+package com.justinblank.strings.Search;
+
+import com.justinblank.strings.ByteEncoding;
+import com.justinblank.strings.DecodedBytes;
+import com.justinblank.strings.MatchResult;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FlatAhoCorasickTest {
+
+    @Test
+    public void testClassesComeFromNeedleAlphabet() {
+        FlatAhoCorasick search = new FlatAhoCorasickBuilder().build(List.of("abc", "cab", "\u05D0"));
+        // a, b, c, alef, and the class for every other char
+        assertEquals(5, search.classCount());
+        // the root, a, ab, abc, c, ca, cab, alef
+        assertEquals(8, search.stateCount());
+    }
+
+    @Test
+    public void testFind() {
+        MultiLiteralSearch search = FlatAhoCorasickBuilder.buildAhoCorasick(List.of("ab", "bcd", "c"));
+        assertEquals(MatchResult.success(0, 2), search.find("abcd"));
+        assertEquals(MatchResult.success(1, 4), search.find("abcd", 1, 4));
+        assertEquals(MatchResult.success(2, 3), search.find("xxcxx"));
+        assertFalse(search.find("xxx").matched);
+        assertFalse(search.find("abcd", 1, 2).matched);
+    }
+
+    @Test
+    public void testAnchoredFind() {
+        MultiLiteralSearch search = FlatAhoCorasickBuilder.buildAhoCorasick(List.of("a", "abc", "bc"));
+        assertEquals(MatchResult.success(0, 3), search.find("abcd", 0, 4, true));
+        assertEquals(MatchResult.success(1, 3), search.find("abcd", 1, 4, true));
+        assertFalse(search.find("xabc", 0, 4, true).matched);
+        assertTrue(search.matches("abc"));
+        assertTrue(search.matches("a"));
+        assertFalse(search.matches("ab"));
+        assertFalse(search.matches("abcbc"));
+    }
+
+    @Test
+    public void testFindAllMatchesUnicodeAhoCorasick() {
+        Random random = new Random();
+        for (int i = 0; i < 200; i++) {
+            List<String> needles = new ArrayList<>();
+            for (int j = 0; j < 1 + random.nextInt(10); j++) {
+                needles.add(randomString(random, 1 + random.nextInt(4)));
+            }
+            String hayStack = randomString(random, random.nextInt(50));
+            MultiLiteralSearch flat = FlatAhoCorasickBuilder.buildAhoCorasick(needles);
+            MultiLiteralSearch unicode = UnicodeAhoCorasickBuilder.buildAhoCorasick(needles);
+            for (boolean overlapping : new boolean[]{true, false}) {
+                assertEquals("needles=" + needles + ", hayStack=" + hayStack, findAll(unicode, hayStack, overlapping),
+                        findAll(flat, hayStack, overlapping));
+            }
+        }
+    }
+
+    @Test
+    public void testByteFind() {
+        MultiLiteralSearch search = FlatAhoCorasickBuilder.buildAhoCorasick(List.of("\u00E9b", "\uD83D\uDE00"));
+        byte[] utf8 = "a\u00E9b\uD83D\uDE00".getBytes(StandardCharsets.UTF_8);
+        assertEquals(MatchResult.success(1, 4), search.find(utf8, 0, utf8.length, ByteEncoding.UTF_8));
+        assertEquals(MatchResult.success(4, 8), search.find(utf8, 2, 6, ByteEncoding.UTF_8));
+        assertTrue(search.matches(utf8, 4, 4, ByteEncoding.UTF_8));
+        assertEquals(MatchResult.success(4, 8), search.matcher(utf8, 2, 6, ByteEncoding.UTF_8).find());
+        byte[] latin1 = "a\u00E9b".getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals(MatchResult.success(1, 3), search.find(latin1, 0, latin1.length, ByteEncoding.LATIN_1));
+        assertFalse(search.find(utf8, 0, utf8.length, ByteEncoding.LATIN_1).matched);
+    }
+
+    @Test
+    public void testByteSearchesMatchDecodedSearches() {
+        Random random = new Random();
+        for (int i = 0; i < 200; i++) {
+            List<String> needles = new ArrayList<>();
+            for (int j = 0; j < 1 + random.nextInt(10); j++) {
+                needles.add(randomCodePoints(random, 1 + random.nextInt(4)));
+            }
+            String hayStack = randomCodePoints(random, random.nextInt(50));
+            MultiLiteralSearch flat = FlatAhoCorasickBuilder.buildAhoCorasick(needles);
+            MultiLiteralSearch unicode = UnicodeAhoCorasickBuilder.buildAhoCorasick(needles);
+            for (ByteEncoding encoding : ByteEncoding.values()) {
+                byte[] bytes = hayStack.getBytes(encoding == ByteEncoding.UTF_8 ? StandardCharsets.UTF_8
+                        : StandardCharsets.ISO_8859_1);
+                if (bytes.length > 0 && random.nextBoolean()) {
+                    bytes[random.nextInt(bytes.length)] = (byte) 0xF0;
+                }
+                int offset = random.nextInt(bytes.length + 1);
+                int length = bytes.length - offset;
+                String message = "needles=" + needles + ", hayStack=" + hayStack + ", encoding=" + encoding
+                        + ", offset=" + offset;
+                // the Unicode automaton decodes the bytes
+                for (boolean overlapping : new boolean[]{true, false}) {
+                    assertEquals(message, findAll(unicode, bytes, offset, length, encoding, overlapping),
+                            findAll(flat, bytes, offset, length, encoding, overlapping));
+                }
+                DecodedBytes decoded = DecodedBytes.decode(bytes, offset, length, encoding);
+                assertEquals(message, decoded.toBytes(flat.find(decoded.string())),
+                        flat.find(bytes, offset, length, encoding));
+                assertEquals(message, decoded.toBytes(flat.find(decoded.string(), 0, decoded.string().length(), true)),
+                        flat.find(bytes, offset, length, encoding, true));
+                assertEquals(message, flat.matches(decoded.string()), flat.matches(bytes, offset, length, encoding));
+            }
+        }
+    }
+
+    @Test
+    public void testLargeDictionary() {
+        Random random = new Random();
+        List<String> needles = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            needles.add(randomString(random, 4 + random.nextInt(6)));
+        }
+        MultiLiteralSearch search = FlatAhoCorasickBuilder.buildAhoCorasick(needles);
+        for (int i = 0; i < needles.size(); i += 97) {
+            String hayStack = "\u00E9" + needles.get(i) + "\u00E9";
+            assertTrue(search.containedIn(hayStack));
+            assertTrue(search.matches(needles.get(i)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyNeedleIsRejected() {
+        FlatAhoCorasickBuilder.buildAhoCorasick(List.of("a", ""));
+    }
+
+    private static List<String> findAll(MultiLiteralSearch search, String s, boolean overlapping) {
+        List<String> matches = new ArrayList<>();
+        search.findAll(s, overlapping, (needle, start, end) -> matches.add(needle + ":" + start + ":" + end));
+        return matches;
+    }
+
+    private static List<String> findAll(MultiLiteralSearch search, byte[] bytes, int offset, int length,
+                                        ByteEncoding encoding, boolean overlapping) {
+        List<String> matches = new ArrayList<>();
+        search.findAll(bytes, offset, length, encoding, overlapping,
+                (needle, start, end) -> matches.add(needle + ":" + start + ":" + end));
+        return matches;
+    }
+
+    // like randomString, but with surrogate pairs, which are never split
+    private static String randomCodePoints(Random random, int length) {
+        String[] alphabet = {"a", "b", "\u00E9", "\u05D0", "\uD83D\uDE00"};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet[random.nextInt(alphabet.length)]);
+        }
+        return sb.toString();
+    }
+
+    // mixes a few ASCII and non-ASCII chars, so that needles share prefixes and suffixes
+    private static String randomString(Random random, int length) {
+        String alphabet = "abc\u00E9\u05D0";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
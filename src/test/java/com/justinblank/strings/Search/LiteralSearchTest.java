@@ -0,0 +1,92 @@
+package com.justinblank.strings.Search;
+
+import com.justinblank.strings.MatchResult;
+import org.junit.Test;
+import org.quicktheories.QuickTheory;
+import org.quicktheories.core.Gen;
+import org.quicktheories.generators.IntegersDSL;
+import org.quicktheories.generators.StringsDSL;
+
+import java.util.List;
+
+import static com.justinblank.strings.SearchMethodTestUtil.match;
+import static org.junit.Assert.*;
+
+public class LiteralSearchTest {
+
+    @Test
+    public void testFactoryUsesLiteralSearchForSingleString() {
+        assertTrue(SearchMethods.makeSearchMethod(List.of("abc")) instanceof LiteralSearch);
+        assertFalse(SearchMethods.makeSearchMethod(List.of("abc", "def")) instanceof LiteralSearch);
+    }
+
+    @Test
+    public void testFind() {
+        LiteralSearch method = new LiteralSearch("needle");
+        match(method, "needle");
+        assertEquals(MatchResult.success(3, 9), method.find("ackneedleneedle"));
+        assertEquals(MatchResult.success(8, 14), method.find("haystackneedle"));
+        assertFalse(method.find("haystackneedl").matched);
+        assertFalse(method.find("haystackneedle", 0, 13).matched);
+        assertEquals(MatchResult.success(8, 14), method.find("haystackneedle", 8, 14, true));
+        assertFalse(method.find("haystackneedle", 7, 14, true).matched);
+    }
+
+    @Test
+    public void testEmptyNeedle() {
+        LiteralSearch method = new LiteralSearch("");
+        match(method, "");
+        assertEquals(MatchResult.success(2, 2), method.find("abc", 2, 3));
+    }
+
+    @Test
+    public void testPeriodicNeedle() {
+        LiteralSearch method = new LiteralSearch("abaabaab");
+        assertEquals(MatchResult.success(5, 13), method.find("abaababaabaabaab"));
+        method = new LiteralSearch("aaaaaaab");
+        assertEquals(MatchResult.success(12, 20), method.find("aaaaaaaaaaaaaaaaaaab"));
+    }
+
+    @Test
+    public void testCharsSharingLowByte() {
+        // U+0161 and 'a' share the low byte, so the shift table can't tell them apart
+        LiteralSearch method = new LiteralSearch("xya");
+        assertFalse(method.find("xy\u0161xy\u0161").matched);
+        assertEquals(MatchResult.success(3, 6), method.find("xy\u0161xya"));
+    }
+
+    @Test
+    public void testCriticalFactorization() {
+        int[] period = new int[1];
+        assertEquals(0, LiteralSearch.criticalFactorization("a".toCharArray(), period));
+        assertEquals(1, period[0]);
+        LiteralSearch.criticalFactorization("abab".toCharArray(), period);
+        assertEquals(2, period[0]);
+    }
+
+    @Test
+    public void testAgreesWithIndexOf() {
+        Gen<String> strings = new StringsDSL().betweenCodePoints(97, 99).ofLengthBetween(0, 30);
+        Gen<Integer> indices = new IntegersDSL().between(0, 30);
+        QuickTheory.qt().forAll(strings, strings, indices).check((needle, hayStack, from) -> {
+            int start = Math.min(from, hayStack.length());
+            MatchResult result = new LiteralSearch(needle).find(hayStack, start, hayStack.length());
+            int expected = hayStack.indexOf(needle, start);
+            if (expected == -1) {
+                return !result.matched;
+            }
+            return result.equals(MatchResult.success(expected, expected + needle.length()));
+        });
+    }
+
+    @Test
+    public void testLongNeedleAgreesWithIndexOf() {
+        Gen<String> strings = new StringsDSL().betweenCodePoints(97, 100).ofLengthBetween(20, 60);
+        Gen<String> hayStacks = new StringsDSL().betweenCodePoints(97, 100).ofLengthBetween(0, 200);
+        QuickTheory.qt().forAll(strings, hayStacks, hayStacks).check((needle, left, right) -> {
+            String hayStack = left + needle + right;
+            int expected = hayStack.indexOf(needle);
+            return new LiteralSearch(needle).find(hayStack).equals(MatchResult.success(expected, expected + needle.length()));
+        });
+    }
+}
@@ -1,6 +1,7 @@
 package com.justinblank.strings.Search;
 
 import com.justinblank.strings.MatchResult;
+import org.junit.Assume;
 import org.junit.Test;
 import org.quicktheories.QuickTheory;
 import org.quicktheories.core.Gen;
@@ -8,10 +9,7 @@ import org.quicktheories.generators.IntegersDSL;
 import org.quicktheories.generators.ListsDSL;
 import org.quicktheories.generators.StringsDSL;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
@@ -425,4 +423,147 @@ public class SearchMethodsTest {
     public void testStartGreaterThanEnd() {
         SearchMethods.makeSearchMethod(Collections.singletonList("א")).find("abc", 2, 1);
     }
+
+    @Test
+    public void testFindAllOverlappingReportsEveryNeedle() {
+        MultiLiteralSearch search = SearchMethods.makeMultiLiteralSearch(List.of("he", "she", "his", "hers"));
+        assertEquals(List.of("1:1:4", "0:2:4", "3:2:6"), findAll(search, "ushers", true));
+    }
+
+    @Test
+    public void testFindAllNonOverlappingIsLeftmostLongest() {
+        MultiLiteralSearch search = SearchMethods.makeMultiLiteralSearch(List.of("bc", "abcd", "d", "a"));
+        assertEquals(List.of("1:0:4", "2:4:5"), findAll(search, "abcdd", false));
+        assertEquals(List.of("3:0:1", "0:1:3"), findAll(search, "abce", false));
+    }
+
+    @Test
+    public void testFindAllCanStop() {
+        MultiLiteralSearch search = SearchMethods.makeMultiLiteralSearch(List.of("a", "aa"));
+        int[] count = new int[1];
+        search.findAll("aaaa", true, (needle, start, end) -> ++count[0] < 3);
+        assertEquals(3, count[0]);
+    }
+
+    @Test
+    public void testFindAllWithinBounds() {
+        MultiLiteralSearch search = SearchMethods.makeMultiLiteralSearch(List.of("ab"));
+        List<String> matches = new ArrayList<>();
+        search.findAll("abababab", 1, 6, true, (needle, start, end) -> matches.add(needle + ":" + start + ":" + end));
+        assertEquals(List.of("0:2:4", "0:4:6"), matches);
+    }
+
+    @Test
+    public void testFindAllUnicode() {
+        String alef = "\u05D0";
+        String bet = "\u05D1";
+        MultiLiteralSearch search = SearchMethods.makeMultiLiteralSearch(List.of(alef + bet, bet, "c"));
+        assertEquals(List.of("0:0:2", "1:1:2", "2:2:3", "1:3:4"), findAll(search, alef + bet + "c" + bet, true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFindAllRejectsEmptyNeedle() {
+        SearchMethods.makeMultiLiteralSearch(List.of("a", ""));
+    }
+
+    @Test
+    public void testFindAllMatchesBruteForce() {
+        Gen<List<String>> needles = new ListsDSL().of(SMALL_ALPHABET.ofLengthBetween(1, 4)).ofSizeBetween(1, 6);
+        Gen<String> hayStacks = SMALL_ALPHABET.ofLengthBetween(0, 30);
+        QuickTheory.qt().forAll(needles, hayStacks).check((n, s) -> {
+            MultiLiteralSearch search = SearchMethods.makeMultiLiteralSearch(n);
+            return findAll(search, s, true).equals(bruteForce(n, s, true)) &&
+                    findAll(search, s, false).equals(bruteForce(n, s, false));
+        });
+        needles = new ListsDSL().of(SMALL_BMP.ofLengthBetween(1, 4)).ofSizeBetween(1, 6);
+        hayStacks = SMALL_BMP.ofLengthBetween(0, 30);
+        QuickTheory.qt().forAll(needles, hayStacks).check((n, s) -> {
+            MultiLiteralSearch search = SearchMethods.makeMultiLiteralSearch(n);
+            return findAll(search, s, true).equals(bruteForce(n, s, true)) &&
+                    findAll(search, s, false).equals(bruteForce(n, s, false));
+        });
+    }
+
+    private static List<String> findAll(MultiLiteralSearch search, String s, boolean overlapping) {
+        List<String> matches = new ArrayList<>();
+        search.findAll(s, overlapping, (needle, start, end) -> matches.add(needle + ":" + start + ":" + end));
+        return matches;
+    }
+
+    /**
+     * Find the matches of the needles by checking each index, reporting a repeated needle with its first index.
+     */
+    private static List<String> bruteForce(List<String> needles, String s, boolean overlapping) {
+        List<String> matches = new ArrayList<>();
+        if (overlapping) {
+            for (int end = 1; end <= s.length(); end++) {
+                for (int length = end; length > 0; length--) {
+                    int needle = needles.indexOf(s.substring(end - length, end));
+                    if (needle >= 0) {
+                        matches.add(needle + ":" + (end - length) + ":" + end);
+                    }
+                }
+            }
+            return matches;
+        }
+        int start = 0;
+        while (start < s.length()) {
+            int needle = -1;
+            for (int end = s.length(); end > start && needle < 0; end--) {
+                needle = needles.indexOf(s.substring(start, end));
+            }
+            if (needle >= 0) {
+                matches.add(needle + ":" + start + ":" + (start + needles.get(needle).length()));
+                start += needles.get(needle).length();
+            }
+            else {
+                start++;
+            }
+        }
+        return matches;
+    }
+
+    @Test
+    public void testTeddyIsChosenForSmallNeedleSets() {
+        Assume.assumeTrue(SearchMethods.isTeddyAvailable());
+        SearchMethod method = SearchMethods.makeSearchMethod(List.of("foo", "bar", "bazz"));
+        assertEquals("VectorTeddy", method.getClass().getSimpleName());
+        assertEquals(MatchResult.success(4, 8), method.find("xxxxbazzfoo", 0, 11));
+        assertFalse(SearchMethods.makeSearchMethod(List.of("foo", "b")).getClass().getSimpleName().equals("VectorTeddy"));
+    }
+
+    @Test
+    public void testTeddyMatchesAhoCorasick() {
+        Assume.assumeTrue(SearchMethods.isTeddyAvailable());
+        // chars sharing a low byte have the same fingerprint, so candidates need to be verified
+        String alphabet = "abc\u0161\u0162\u4E61";
+        Random random = new Random();
+        for (int i = 0; i < 500; i++) {
+            Set<String> needles = new LinkedHashSet<>();
+            int needleCount = 1 + random.nextInt(16);
+            while (needles.size() < needleCount) {
+                needles.add(randomString(random, alphabet, 2 + random.nextInt(6)));
+            }
+            SearchMethod teddy = SearchMethods.makeTeddy(needles);
+            SearchMethod ahoCorasick = FlatAhoCorasickBuilder.buildAhoCorasick(needles);
+            // long enough to span several vectors, and chunks
+            String hayStack = randomString(random, "xyz", random.nextInt(5000)) + randomString(random, alphabet, 40);
+            int start = random.nextInt(hayStack.length() + 1);
+            int end = start + random.nextInt(hayStack.length() - start + 1);
+            String message = "needles=" + needles + ", hayStack=" + hayStack + ", start=" + start + ", end=" + end;
+            assertEquals(message, ahoCorasick.find(hayStack, start, end), teddy.find(hayStack, start, end));
+            assertEquals(message, ahoCorasick.find(hayStack, start, end, true), teddy.find(hayStack, start, end, true));
+            String needle = needles.iterator().next();
+            assertTrue(teddy.matches(needle));
+            assertFalse(teddy.matches(needle + "x"));
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
 }
@@ -8,7 +8,9 @@ import org.quicktheories.generators.IntegersDSL;
 import org.quicktheories.generators.ListsDSL;
 import org.quicktheories.generators.StringsDSL;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -130,4 +132,77 @@ public class UnicodeAhoCorasickTest {
         });
     }
 
+    @Test
+    public void testFollowersAreKeptSorted() {
+        Trie trie = new Trie(0);
+        String chars = "\u6587zA\u4E2D\uD83Da";
+        for (int i = 0; i < chars.length(); i++) {
+            trie.addFollower(chars.charAt(i), new Trie(1));
+        }
+        assertEquals(chars.length(), trie.followerCount());
+        for (int i = 1; i < trie.followerCount(); i++) {
+            assertTrue(trie.key(i - 1) < trie.key(i));
+        }
+        for (int i = 0; i < chars.length(); i++) {
+            assertNotNull(trie.next(chars.charAt(i)));
+        }
+        assertNull(trie.next('b'));
+    }
+
+    @Test
+    public void testCachedTransitions() {
+        // "abc" caches the transition to "bce" from its supplier, "bc"
+        SearchMethod method = UnicodeAhoCorasickBuilder.buildAhoCorasick(List.of("abcd", "bce", "e"));
+        assertEquals(MatchResult.success(1, 4), method.find("abce"));
+        assertEquals(MatchResult.success(0, 4), method.find("abcd"));
+        assertEquals(MatchResult.success(3, 4), method.find("abxe"));
+    }
+
+    @Test
+    public void testCjkAndEmojiNeedles() {
+        String zhong = "\u4E2D";
+        String wen = "\u6587";
+        String zi = "\u5B57";
+        String grinning = "\uD83D\uDE00";
+        String smiling = "\uD83D\uDE03";
+        MultiLiteralSearch search = UnicodeAhoCorasickBuilder.buildAhoCorasick(
+                List.of(zhong + wen, wen + zi, grinning, smiling + zhong));
+        String hayStack = zhong + wen + zi + grinning + smiling + zhong + wen;
+        List<String> matches = new ArrayList<>();
+        search.findAll(hayStack, true, (needle, start, end) -> matches.add(needle + ":" + start + ":" + end));
+        assertEquals(List.of("0:0:2", "1:1:3", "2:3:5", "3:5:8", "0:7:9"), matches);
+        assertFalse(search.containedIn(grinning.substring(0, 1) + smiling.substring(1)));
+    }
+
+    @Test
+    public void testDeepNeedlesMatchFlatAhoCorasick() {
+        // long needles over a small alphabet reach nodes below the cached levels, which still walk their suppliers
+        String alphabet = "\u4E2D\u6587\u5B57\uD83D";
+        Random random = new Random();
+        for (int i = 0; i < 200; i++) {
+            List<String> needles = new ArrayList<>();
+            for (int j = 0; j < 1 + random.nextInt(20); j++) {
+                needles.add(randomString(random, alphabet, 1 + random.nextInt(10)));
+            }
+            String hayStack = randomString(random, alphabet, random.nextInt(80));
+            MultiLiteralSearch unicode = UnicodeAhoCorasickBuilder.buildAhoCorasick(needles);
+            MultiLiteralSearch flat = FlatAhoCorasickBuilder.buildAhoCorasick(needles);
+            for (boolean overlapping : new boolean[]{true, false}) {
+                List<String> expected = new ArrayList<>();
+                flat.findAll(hayStack, overlapping, (needle, start, end) -> expected.add(needle + ":" + start + ":" + end));
+                List<String> actual = new ArrayList<>();
+                unicode.findAll(hayStack, overlapping, (needle, start, end) -> actual.add(needle + ":" + start + ":" + end));
+                assertEquals("needles=" + needles + ", hayStack=" + hayStack, expected, actual);
+            }
+            assertEquals(flat.find(hayStack).matched, unicode.find(hayStack).matched);
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
 }
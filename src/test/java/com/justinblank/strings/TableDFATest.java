@@ -0,0 +1,170 @@
+package com.justinblank.strings;
+
+import com.justinblank.strings.RegexAST.Node;
+import com.justinblank.strings.RegexAST.NodePrinter;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static com.justinblank.strings.SearchMethodTestUtil.*;
+import static org.junit.Assert.*;
+
+public class TableDFATest {
+
+    @Test
+    public void testLiteral() {
+        TableDFA dfa = TableDFA.compile("abc");
+        match(dfa, "abc");
+        fail(dfa, "ab");
+        find(dfa, "xxabcxx", 2, 5);
+        assertEquals(MatchResult.success(2, 5), dfa.find("xxabcxx"));
+    }
+
+    @Test
+    public void testCharClassesAreShared() {
+        TableDFA dfa = TableDFA.compile("[a-z]+[0-9]");
+        // classes: below '0', [0-9], between '9' and 'a', [a-z], above 'z'
+        assertEquals(5, dfa.classCount());
+        match(dfa, "abc1");
+        fail(dfa, "ABC1");
+    }
+
+    @Test
+    public void testFindPrefersLeftmostLongestMatch() {
+        TableDFA dfa = TableDFA.compile("abcd|c");
+        assertEquals(MatchResult.success(0, 4), dfa.find("abcd"));
+        assertEquals(MatchResult.success(2, 3), dfa.find("abcd", 1, 4));
+        assertEquals(MatchResult.success(2, 3), dfa.find("abc"));
+    }
+
+    @Test
+    public void testAnchoredFind() {
+        TableDFA dfa = TableDFA.compile("a+");
+        assertEquals(MatchResult.success(1, 3), dfa.find("baab", 1, 4, true));
+        assertFalse(dfa.find("baab", 0, 4, true).matched);
+    }
+
+    @Test
+    public void testBMP() {
+        TableDFA dfa = TableDFA.compile("[\u0600-\u06FF]+");
+        match(dfa, "\u0600\u06FF");
+        assertEquals(MatchResult.success(1, 3), dfa.find("a\u0600\u0601\uFFFF"));
+    }
+
+    @Test
+    public void testFindBytes() {
+        TableDFA dfa = TableDFA.compile("[\u0600-\u06FF]+");
+        byte[] utf8 = "a\u0600\u0601b".getBytes(StandardCharsets.UTF_8);
+        assertEquals(MatchResult.success(1, 5), dfa.find(utf8, 0, utf8.length, ByteEncoding.UTF_8));
+        assertEquals(MatchResult.success(3, 5), dfa.find(utf8, 3, 3, ByteEncoding.UTF_8));
+        assertTrue(dfa.matches(utf8, 1, 4, ByteEncoding.UTF_8));
+        assertFalse(dfa.matches(utf8, 1, 5, ByteEncoding.UTF_8));
+        assertEquals(MatchResult.success(3, 5), dfa.matcher(utf8, 3, 3, ByteEncoding.UTF_8).find());
+        // the NFA decodes the bytes, so its matcher maps byte indices to chars
+        Matcher matcher = NFA.createNFANoAhoCorasick("[\u0600-\u06FF]+").matcher(utf8, 3, 3, ByteEncoding.UTF_8);
+        assertEquals(MatchResult.success(3, 5), matcher.find());
+        assertFalse(matcher.find(5).matched);
+
+        dfa = TableDFA.compile("b[\u00E0-\u00FF]+");
+        byte[] latin1 = "ab\u00E9\u00E8c".getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals(MatchResult.success(1, 4), dfa.find(latin1, 0, latin1.length, ByteEncoding.LATIN_1));
+        assertFalse(dfa.find(latin1, 2, 3, ByteEncoding.LATIN_1).matched);
+    }
+
+    @Test
+    public void testUtf8MatchEndingInsidePair() {
+        // the regex matches the first char of the pair, so the match covers the pair, but the start comes from the
+        // first char alone
+        TableDFA dfa = TableDFA.compile("a?\uD83D");
+        byte[] bytes = "xa\uD83D\uDE00".getBytes(StandardCharsets.UTF_8);
+        assertEquals(MatchResult.success(1, 6), dfa.find(bytes, 0, bytes.length, ByteEncoding.UTF_8));
+        assertFalse(dfa.matches(bytes, 1, 5, ByteEncoding.UTF_8));
+    }
+
+    @Test
+    public void testFindSupplementaryChars() {
+        TableDFA dfa = TableDFA.compile("\uD83D\uDE00");
+        assertEquals(MatchResult.success(1, 3), dfa.find("b\uD83D\uDE00"));
+        byte[] bytes = "b\uD83D\uDE00".getBytes(StandardCharsets.UTF_8);
+        assertEquals(MatchResult.success(1, 5), dfa.find(bytes, 0, bytes.length, ByteEncoding.UTF_8));
+
+        dfa = TableDFA.compile("(\uD83D\uDE00)?");
+        assertEquals(MatchResult.success(0, 2), dfa.find("\uD83D\uDE00"));
+        bytes = "\uD83D\uDE00".getBytes(StandardCharsets.UTF_8);
+        assertEquals(MatchResult.success(0, 4), dfa.find(bytes, 0, bytes.length, ByteEncoding.UTF_8));
+    }
+
+    @Test
+    public void testUtf8MatchStartingAndEndingWithPairs() {
+        // 'x' and an e acute take three bytes, then the match has a four byte sequence at each end
+        byte[] bytes = "x\u00E9\uD83D\uDE00ab\uD83D\uDE01y".getBytes(StandardCharsets.UTF_8);
+        TableDFA dfa = TableDFA.compile("\uD83D\uDE00[a-z]+\uD83D\uDE01");
+        assertEquals(MatchResult.success(3, 13), dfa.find(bytes, 0, bytes.length, ByteEncoding.UTF_8));
+        assertEquals(MatchResult.success(3, 13), dfa.find(bytes, 3, bytes.length - 3, ByteEncoding.UTF_8, true));
+        assertTrue(dfa.matches(bytes, 3, 10, ByteEncoding.UTF_8));
+        // starting inside the first sequence, its remaining bytes are malformed
+        assertFalse(dfa.find(bytes, 4, bytes.length - 4, ByteEncoding.UTF_8).matched);
+
+        dfa = TableDFA.compile("(\uD83D\uDE00)+");
+        bytes = "a\uD83D\uDE00\uD83D\uDE00b".getBytes(StandardCharsets.UTF_8);
+        assertEquals(MatchResult.success(1, 9), dfa.find(bytes, 0, bytes.length, ByteEncoding.UTF_8));
+        assertEquals(MatchResult.success(1, 9), dfa.matcher(bytes, 0, bytes.length, ByteEncoding.UTF_8).find());
+        assertEquals(MatchResult.success(5, 9), dfa.matcher(bytes, 0, bytes.length, ByteEncoding.UTF_8).find(5));
+    }
+
+    @Test
+    public void generativeByteFindTest() {
+        Random random = new Random();
+        for (int maxSize = 1; maxSize < 8; maxSize++) {
+            for (int i = 0; i < 20; i++) {
+                RegexGenerator regexGenerator = new RegexGenerator(random, maxSize);
+                Node node = regexGenerator.generate();
+                String regex = NodePrinter.print(node);
+                String hayStack = "AB\u00E9" + regexGenerator.generateString(node) + "\uD83D\uDE00";
+                TableDFA dfa = TableDFA.compile(regex);
+                NFA nfa = NFA.createNFANoAhoCorasick(regex);
+                for (ByteEncoding encoding : ByteEncoding.values()) {
+                    byte[] bytes = hayStack.getBytes(encoding == ByteEncoding.UTF_8 ? StandardCharsets.UTF_8
+                            : StandardCharsets.ISO_8859_1);
+                    if (random.nextBoolean()) {
+                        bytes[random.nextInt(bytes.length)] = (byte) 0x80;
+                    }
+                    for (int from = 0; from <= bytes.length; from++) {
+                        int length = bytes.length - from;
+                        String message = "regex='" + regex + "', hayStack='" + hayStack + "', encoding=" + encoding
+                                + ", from=" + from;
+                        // the NFA decodes the bytes
+                        assertEquals(message, nfa.find(bytes, from, length, encoding),
+                                dfa.find(bytes, from, length, encoding));
+                        assertEquals(message, nfa.find(bytes, from, length, encoding, true),
+                                dfa.find(bytes, from, length, encoding, true));
+                        assertEquals(message, nfa.matches(bytes, from, length, encoding),
+                                dfa.matches(bytes, from, length, encoding));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void generativeFindTest() {
+        Random random = new Random();
+        for (int maxSize = 1; maxSize < 8; maxSize++) {
+            for (int i = 0; i < 20; i++) {
+                RegexGenerator regexGenerator = new RegexGenerator(random, maxSize);
+                Node node = regexGenerator.generate();
+                String regex = NodePrinter.print(node);
+                String hayStack = regexGenerator.generateString(node);
+                TableDFA dfa = TableDFA.compile(regex);
+                NFA nfa = NFA.createNFANoAhoCorasick(regex);
+                assertTrue("Failed to match regex='" + regex + "', hayStack='" + hayStack + "'", dfa.matches(hayStack));
+                String searched = "AB" + hayStack + hayStack;
+                for (int from = 0; from <= searched.length(); from++) {
+                    assertEquals("Wrong result for regex='" + regex + "', hayStack='" + searched + "', from=" + from,
+                            nfa.find(searched, from, searched.length()), dfa.find(searched, from, searched.length()));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.justinblank.strings;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class Utf8Test {
+
+    @Test
+    public void testSequenceLength() {
+        assertEquals(1, Utf8.sequenceLength(bytes(0x41), 0, 1));
+        assertEquals(2, Utf8.sequenceLength(bytes(0xC3, 0xA9), 0, 2));
+        assertEquals(3, Utf8.sequenceLength(bytes(0xE2, 0x82, 0xAC), 0, 3));
+        assertEquals(4, Utf8.sequenceLength(bytes(0xF0, 0x9F, 0x98, 0x80), 0, 4));
+        // truncated
+        assertEquals(-1, Utf8.sequenceLength(bytes(0xE2, 0x82, 0xAC), 0, 2));
+        // stray continuation byte
+        assertEquals(-1, Utf8.sequenceLength(bytes(0x80), 0, 1));
+        // overlong encodings of '/'
+        assertEquals(-1, Utf8.sequenceLength(bytes(0xC0, 0xAF), 0, 2));
+        assertEquals(-1, Utf8.sequenceLength(bytes(0xE0, 0x80, 0xAF), 0, 3));
+        // an encoded surrogate
+        assertEquals(-1, Utf8.sequenceLength(bytes(0xED, 0xA0, 0x80), 0, 3));
+        // above U+10FFFF
+        assertEquals(-1, Utf8.sequenceLength(bytes(0xF4, 0x90, 0x80, 0x80), 0, 4));
+        assertEquals(-1, Utf8.sequenceLength(bytes(0xF5, 0x80, 0x80, 0x80), 0, 4));
+    }
+
+    @Test
+    public void testReaderDecodesWellFormedBytesLikeString() {
+        Random random = new Random();
+        for (int i = 0; i < 200; i++) {
+            String s = randomString(random, random.nextInt(40));
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            assertEquals(s, readForwards(bytes, 0, bytes.length));
+            assertEquals(s, readBackwards(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    public void testMalformedBytesAreEachReplaced() {
+        // a stray continuation byte, then a truncated three byte sequence followed by 'a'
+        byte[] bytes = bytes(0x80, 0xE2, 0x82, 0x61);
+        assertEquals("\uFFFD\uFFFD\uFFFDa", readForwards(bytes, 0, bytes.length));
+        assertEquals("\uFFFD\uFFFD\uFFFDa", readBackwards(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void testReaderFindsTheSameSequencesInBothDirections() {
+        Random random = new Random();
+        for (int i = 0; i < 1000; i++) {
+            byte[] bytes = randomBytes(random, random.nextInt(20));
+            int start = random.nextInt(bytes.length + 1);
+            List<Integer> forwards = new ArrayList<>();
+            Utf8Reader reader = new Utf8Reader(bytes, start, bytes.length);
+            forwards.add(reader.position());
+            while (reader.hasNext()) {
+                reader.next();
+                if (!reader.inPair()) {
+                    forwards.add(reader.position());
+                }
+            }
+            List<Integer> backwards = new ArrayList<>();
+            reader = Utf8Reader.backwards(bytes, start, bytes.length);
+            backwards.add(0, reader.position());
+            while (reader.hasPrevious()) {
+                reader.previous();
+                if (!reader.inPair()) {
+                    backwards.add(0, reader.position());
+                }
+            }
+            assertEquals(forwards, backwards);
+            assertEquals(readForwards(bytes, start, bytes.length), readBackwards(bytes, start, bytes.length));
+        }
+    }
+
+    @Test
+    public void testCharsBefore() {
+        // 'a', a pair, an e acute, and 'b'
+        byte[] bytes = "a\uD83D\uDE00\u00E9b".getBytes(StandardCharsets.UTF_8);
+        assertEquals(8, bytes.length);
+        assertEquals(7, Utf8.charsBefore(bytes, 0, 8, 1));
+        assertEquals(5, Utf8.charsBefore(bytes, 0, 8, 2));
+        // between the chars of the pair
+        assertEquals(1, Utf8.charsBefore(bytes, 0, 8, 3));
+        assertEquals(1, Utf8.charsBefore(bytes, 0, 8, 4));
+        assertEquals(0, Utf8.charsBefore(bytes, 0, 8, 5));
+    }
+
+    static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    /**
+     * Generate a string of ASCII, two and three byte chars, and surrogate pairs.
+     */
+    static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    sb.append((char) ('a' + random.nextInt(4)));
+                    break;
+                case 1:
+                    sb.append((char) (0xE0 + random.nextInt(4)));
+                    break;
+                case 2:
+                    sb.append((char) (0x4E00 + random.nextInt(4)));
+                    break;
+                default:
+                    sb.appendCodePoint(0x1F600 + random.nextInt(4));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Generate bytes that are mostly the parts of well-formed sequences, but often malformed.
+     */
+    static byte[] randomBytes(Random random, int length) {
+        int[] interesting = {0x61, 0x80, 0x9F, 0xA9, 0xBF, 0xC3, 0xE0, 0xE2, 0xED, 0xF0, 0xF4, 0xFF};
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) interesting[random.nextInt(interesting.length)];
+        }
+        return bytes;
+    }
+
+    private static String readForwards(byte[] bytes, int start, int end) {
+        StringBuilder sb = new StringBuilder();
+        Utf8Reader reader = new Utf8Reader(bytes, start, end);
+        while (reader.hasNext()) {
+            sb.append(reader.next());
+        }
+        return sb.toString();
+    }
+
+    private static String readBackwards(byte[] bytes, int start, int end) {
+        char[] chars = new char[end - start];
+        int index = chars.length;
+        Utf8Reader reader = Utf8Reader.backwards(bytes, start, end);
+        while (reader.hasPrevious()) {
+            chars[--index] = reader.previous();
+        }
+        return new String(chars, index, chars.length - index);
+    }
+}